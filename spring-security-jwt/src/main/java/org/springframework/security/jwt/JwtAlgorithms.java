@@ -32,6 +32,9 @@ public class JwtAlgorithms {
 		sigAlgs.put("HS512" , "HMACSHA512");
 		sigAlgs.put("RS256" , "SHA256withRSA");
 		sigAlgs.put("RS512" , "SHA512withRSA");
+		sigAlgs.put("ES256" , "SHA256withECDSA");
+		sigAlgs.put("ES384" , "SHA384withECDSA");
+		sigAlgs.put("ES512" , "SHA512withECDSA");
 
 		keyAlgs.put("RSA1_5" , "RSA/ECB/PKCS1Padding");
 
@@ -13,15 +13,18 @@
 package org.springframework.security.jwt;
 
 import static org.springframework.security.jwt.JwtAlgorithms.sigAlg;
+import static org.springframework.security.jwt.codec.Codecs.asciiEncode;
 import static org.springframework.security.jwt.codec.Codecs.b64UrlDecode;
 import static org.springframework.security.jwt.codec.Codecs.b64UrlEncode;
-import static org.springframework.security.jwt.codec.Codecs.concat;
+import static org.springframework.security.jwt.codec.Codecs.b64UrlEncodedLength;
 import static org.springframework.security.jwt.codec.Codecs.utf8Decode;
 import static org.springframework.security.jwt.codec.Codecs.utf8Encode;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.nio.CharBuffer;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 import org.codehaus.jackson.JsonFactory;
 import org.codehaus.jackson.JsonGenerator;
@@ -34,10 +37,11 @@ import org.springframework.security.jwt.crypto.sign.Signer;
  * @author Luke Taylor
  */
 public class JwtHelper {
-	static byte[] PERIOD = utf8Encode(".");
 
 	/**
-	 * Creates a token from an encoded token string.
+	 * Creates a token from an encoded token string. Only the header and the crypto segment are decoded eagerly: the
+	 * signature is verified against the original encoded header and claims, and the claims are only decoded when they
+	 * are asked for (normally after the signature has been verified).
 	 *
 	 * @param token the (non-null) encoded token (three Base-64 encoded strings separated by "." characters)
 	 */
@@ -48,12 +52,8 @@ public class JwtHelper {
 		if (firstPeriod <=0 || lastPeriod <= firstPeriod) {
 			throw new IllegalArgumentException("JWT must have 3 tokens");
 		}
-		CharBuffer buffer = CharBuffer.wrap(token, 0, firstPeriod);
-		// TODO: Use a Reader which supports CharBuffer
-		JwtHeader header = JwtHeaderHelper.create(buffer.toString());
+		JwtHeader header = JwtHeaderHelper.create(b64UrlDecode(token, 0, firstPeriod));
 
-		buffer.limit(lastPeriod).position(firstPeriod + 1);
-		byte[] claims = b64UrlDecode(buffer);
 		boolean emptyCrypto = lastPeriod == token.length() - 1;
 
 		byte[] crypto;
@@ -64,10 +64,9 @@ public class JwtHelper {
 			}
 			crypto = new byte[0];
 		} else {
-			buffer.limit(token.length()).position(lastPeriod + 1);
-			crypto = b64UrlDecode(buffer);
+			crypto = b64UrlDecode(token, lastPeriod + 1, token.length());
 		}
-		return new JwtImpl(header, claims, crypto);
+		return new JwtImpl(header, token, firstPeriod, lastPeriod, crypto, null);
 	}
 
 	public static Jwt decodeAndVerify(String token, SignatureVerifier verifier) {
@@ -77,11 +76,63 @@ public class JwtHelper {
 		return jwt;
 	}
 
+	/**
+	 * Decodes the header of a token without verifying it, e.g. to find out which key it was signed with before
+	 * verifying it with {@link #decodeAndVerify(String, SignatureVerifier)}.
+	 *
+	 * @param token the (non-null) encoded token
+	 * @return the header parameters (e.g. "alg" and "kid")
+	 */
+	public static Map<String, String> headers(String token) {
+		int firstPeriod = token.indexOf('.');
+		if (firstPeriod <= 0) {
+			throw new IllegalArgumentException("JWT must have 3 tokens");
+		}
+		HeaderParameters params = JwtHeaderHelper.parseParams(b64UrlDecode(token, 0, firstPeriod));
+		Map<String, String> result = new LinkedHashMap<String, String>();
+		result.put("alg", params.alg);
+		if (params.enc != null) {
+			result.put("enc", params.enc);
+		}
+		if (params.iv != null) {
+			result.put("iv", params.iv);
+		}
+		result.putAll(params.map);
+		return result;
+	}
+
 	public static Jwt encode(CharSequence content, Signer signer) {
-		JwtHeader header = JwtHeaderHelper.create(signer);
+		return encode(content, signer, Collections.<String, String> emptyMap());
+	}
+
+	/**
+	 * Creates a signed token with some extra header parameters, e.g. a key id ("kid") to tell the recipient which key
+	 * to verify it with. The encoded header and claims are written once, straight into the buffer that is signed, and
+	 * the token is assembled from that buffer and the signature without any intermediate segments.
+	 *
+	 * @param content the claims
+	 * @param signer the signer
+	 * @param headers extra header parameters (not "alg", "enc" or "iv")
+	 * @return the signed token
+	 */
+	public static Jwt encode(CharSequence content, Signer signer, Map<String, String> headers) {
+		JwtHeader header = JwtHeaderHelper.create(signer, headers);
+		byte[] headerBytes = header.bytes();
 		byte[] claims = utf8Encode(content);
-		byte[] crypto = signer.sign(concat(b64UrlEncode(header.bytes()), PERIOD, b64UrlEncode(claims)));
-		return new JwtImpl(header, claims, crypto);
+		int firstPeriod = b64UrlEncodedLength(headerBytes.length);
+		int lastPeriod = firstPeriod + 1 + b64UrlEncodedLength(claims.length);
+		byte[] signingInput = new byte[lastPeriod];
+		b64UrlEncode(headerBytes, 0, headerBytes.length, signingInput, 0);
+		signingInput[firstPeriod] = '.';
+		b64UrlEncode(claims, 0, claims.length, signingInput, firstPeriod + 1);
+		byte[] crypto = signer.sign(signingInput);
+		char[] token = new char[lastPeriod + 1 + b64UrlEncodedLength(crypto.length)];
+		for (int i = 0; i < lastPeriod; i++) {
+			token[i] = (char) signingInput[i];
+		}
+		token[lastPeriod] = '.';
+		b64UrlEncode(crypto, 0, crypto.length, token, lastPeriod + 1);
+		return new JwtImpl(header, new String(token), firstPeriod, lastPeriod, crypto, claims);
 	}
 }
 
@@ -94,13 +145,20 @@ class JwtHeaderHelper {
 	private static final JsonFactory f = new JsonFactory();
 
 	static JwtHeader create(String header) {
-		byte[] bytes = b64UrlDecode(header);
+		return create(b64UrlDecode(header));
+	}
+
+	static JwtHeader create(byte[] bytes) {
 		return new JwtHeader(bytes, parseParams(bytes));
 	}
 
 
 	static JwtHeader create(Signer signer) {
-		HeaderParameters p = new HeaderParameters(sigAlg(signer.algorithm()), null, null);
+		return create(signer, Collections.<String, String> emptyMap());
+	}
+
+	static JwtHeader create(Signer signer, Map<String, String> headers) {
+		HeaderParameters p = new HeaderParameters(sigAlg(signer.algorithm()), null, null, headers);
 		return new JwtHeader(serializeParams(p), p);
 	}
 
@@ -114,6 +172,7 @@ class JwtHeaderHelper {
 		try {
 			jp = f.createJsonParser(header);
 			String alg = null, enc = null, iv = null;
+			Map<String, String> map = new LinkedHashMap<String, String>();
 			jp.nextToken();
 			while (jp.nextToken() != JsonToken.END_OBJECT) {
 				String fieldname = jp.getCurrentName();
@@ -132,19 +191,23 @@ class JwtHeaderHelper {
 						throw new IllegalArgumentException("Duplicate 'enc' field");
 					}
 					enc = value;
-				} if ("iv".equals(fieldname)) {
+				} else if ("iv".equals(fieldname)) {
 					if (iv != null) {
 						throw new IllegalArgumentException("Duplicate 'iv' field");
 					}
-					iv = jp.nextToken().asString();
+					iv = value;
 				} else if ("typ".equals(fieldname)) {
 					if (!"JWT".equalsIgnoreCase(value)) {
 						throw new IllegalArgumentException("typ is not \"JWT\"");
 					}
+				} else {
+					if (map.put(fieldname, value) != null) {
+						throw new IllegalArgumentException("Duplicate '" + fieldname + "' field");
+					}
 				}
 			}
 
-			return new HeaderParameters(alg, enc, iv);
+			return new HeaderParameters(alg, enc, iv, map);
 		} catch (IOException io) {
 			throw new RuntimeException(io);
 		} finally {
@@ -171,6 +234,9 @@ class JwtHeaderHelper {
 			if (params.iv != null) {
 				g.writeStringField("iv", params.iv);
 			}
+			for (Map.Entry<String, String> entry : params.map.entrySet()) {
+				g.writeStringField(entry.getKey(), entry.getValue());
+			}
 			g.writeEndObject();
 			g.flush();
 
@@ -221,38 +287,62 @@ class HeaderParameters {
 	final String alg;
 	final String enc;
 	final String iv;
+	/**
+	 * Any other parameters (e.g. "kid"), in the order they appear in the header.
+	 */
+	final Map<String, String> map;
 
 	HeaderParameters(String alg) {
 		this(alg, null, null);
 	}
 
 	HeaderParameters(String alg, String enc, String iv) {
+		this(alg, enc, iv, Collections.<String, String> emptyMap());
+	}
+
+	HeaderParameters(String alg, String enc, String iv, Map<String, String> map) {
 		if (alg == null) {
 			throw new IllegalArgumentException("alg is required");
 		}
+		for (String name : map.keySet()) {
+			if ("alg".equals(name) || "enc".equals(name) || "iv".equals(name) || "typ".equals(name)) {
+				throw new IllegalArgumentException("Header parameter '" + name + "' cannot be set directly");
+			}
+		}
 		this.alg = alg;
 		this.enc = enc;
 		this.iv = iv;
+		this.map = map;
 	}
 
 }
 
 class JwtImpl implements Jwt {
 	private final JwtHeader header;
-	private final byte[] content;
 	private final byte[] crypto;
-	private String claims;
+	/**
+	 * The encoded token (as it was received, or as it was assembled when the claims were encoded).
+	 */
+	private final String encoded;
+	private final int firstPeriod;
+	private final int lastPeriod;
+	private volatile byte[] content;
 
 	/**
-	 * @param header the header, containing the JWS/JWE algorithm information.
-	 * @param content the base64-decoded "claims" segment (may be encrypted, depending on header information).
+	 * @param header the decoded header, containing the JWS/JWE algorithm information.
+	 * @param encoded the encoded token (the claims are decoded from it when needed)
+	 * @param firstPeriod the index of the period between the header and the claims
+	 * @param lastPeriod the index of the period between the claims and the crypto segment
 	 * @param crypto the base64-decoded "crypto" segment.
+	 * @param content the base64-decoded "claims" segment if it is already known (otherwise null)
 	 */
-	JwtImpl(JwtHeader header, byte[] content, byte[] crypto) {
+	JwtImpl(JwtHeader header, String encoded, int firstPeriod, int lastPeriod, byte[] crypto, byte[] content) {
 		this.header = header;
-		this.content = content;
+		this.encoded = encoded;
+		this.firstPeriod = firstPeriod;
+		this.lastPeriod = lastPeriod;
 		this.crypto = crypto;
-		claims = utf8Decode(content);
+		this.content = content;
 	}
 
 	/**
@@ -262,10 +352,21 @@ class JwtImpl implements Jwt {
 	 */
 	public void verifySignature(SignatureVerifier verifier) {
 		verifier.verify(signingInput(), crypto);
- 	}
+	}
 
 	private byte[] signingInput() {
-		return concat(b64UrlEncode(header.bytes()), JwtHelper.PERIOD, b64UrlEncode(content));
+		// The signature is over the encoded header and claims exactly as they were received
+		return asciiEncode(encoded, 0, lastPeriod);
+	}
+
+	private byte[] content() {
+		byte[] result = content;
+		if (result == null) {
+			// A benign race: at worst the claims are decoded twice
+			result = b64UrlDecode(encoded, firstPeriod + 1, lastPeriod);
+			content = result;
+		}
+		return result;
 	}
 
   /**
@@ -274,19 +375,19 @@ class JwtImpl implements Jwt {
    * @return the encoded header, claims and crypto segments concatenated with "." characters
    */
 	public byte[] bytes() {
-		return concat(b64UrlEncode(header.bytes()), JwtHelper.PERIOD, b64UrlEncode(content), JwtHelper.PERIOD, b64UrlEncode(crypto));
+		return asciiEncode(encoded, 0, encoded.length());
 	}
 
 	public String getClaims() {
-		return utf8Decode(content);
+		return utf8Decode(content());
 	}
 
 	public String getEncoded() {
-		return utf8Decode(bytes());
+		return encoded;
 	}
 
 	@Override
 	public String toString() {
-		return header + " " + claims + " ["+ crypto.length + " crypto bytes]";
+		return header + " " + getClaims() + " ["+ crypto.length + " crypto bytes]";
 	}
 }
@@ -0,0 +1,270 @@
+/*
+ * Copyright 2006-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.jwt.codec;
+
+import java.nio.ByteBuffer;
+
+/**
+ * URL-safe Base64 without padding (the encoding used for every segment of a JWT). Unlike {@link Base64Codec} there are
+ * no options to check, so each group of 3 bytes is a couple of table lookups, and the encoded or decoded data can be
+ * written straight into a buffer supplied by the caller (e.g. to assemble a whole token in one array). Padding
+ * characters are accepted (and ignored) at the end of encoded input.
+ *
+ * @author Dave Syer
+ */
+final class Base64UrlCodec {
+
+	private static final byte[] ENCODE = Codecs.asciiEncode(
+			"ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_", 0, 64);
+
+	private static final int[] DECODE = new int[128];
+
+	static {
+		for (int i = 0; i < DECODE.length; i++) {
+			DECODE[i] = -1;
+		}
+		for (int i = 0; i < ENCODE.length; i++) {
+			DECODE[ENCODE[i]] = i;
+		}
+	}
+
+	private Base64UrlCodec() {
+	}
+
+	/**
+	 * @param length the number of bytes to encode
+	 * @return the number of characters they encode to
+	 */
+	static int encodedLength(int length) {
+		return (length / 3) * 4 + (length % 3 == 0 ? 0 : length % 3 + 1);
+	}
+
+	/**
+	 * @param length the number of encoded characters (without padding)
+	 * @return the number of bytes they decode to
+	 */
+	static int decodedLength(int length) {
+		if (length % 4 == 1) {
+			throw new IllegalArgumentException("Invalid Base64 string");
+		}
+		return (length / 4) * 3 + (length % 4 == 0 ? 0 : length % 4 - 1);
+	}
+
+	static byte[] encode(byte[] bytes) {
+		byte[] result = new byte[encodedLength(bytes.length)];
+		encode(bytes, 0, bytes.length, result, 0);
+		return result;
+	}
+
+	/**
+	 * @return the position in the destination after the last character written
+	 */
+	static int encode(byte[] src, int offset, int length, byte[] dst, int position) {
+		int end = offset + length - length % 3;
+		while (offset < end) {
+			int bits = (src[offset++] & 0xff) << 16 | (src[offset++] & 0xff) << 8 | (src[offset++] & 0xff);
+			dst[position++] = ENCODE[bits >>> 18];
+			dst[position++] = ENCODE[(bits >>> 12) & 0x3f];
+			dst[position++] = ENCODE[(bits >>> 6) & 0x3f];
+			dst[position++] = ENCODE[bits & 0x3f];
+		}
+		if (length % 3 == 1) {
+			int bits = src[offset] & 0xff;
+			dst[position++] = ENCODE[bits >>> 2];
+			dst[position++] = ENCODE[(bits << 4) & 0x3f];
+		}
+		else if (length % 3 == 2) {
+			int bits = (src[offset] & 0xff) << 8 | (src[offset + 1] & 0xff);
+			dst[position++] = ENCODE[bits >>> 10];
+			dst[position++] = ENCODE[(bits >>> 4) & 0x3f];
+			dst[position++] = ENCODE[(bits << 2) & 0x3f];
+		}
+		return position;
+	}
+
+	/**
+	 * @return the position in the destination after the last character written
+	 */
+	static int encode(byte[] src, int offset, int length, char[] dst, int position) {
+		int end = offset + length - length % 3;
+		while (offset < end) {
+			int bits = (src[offset++] & 0xff) << 16 | (src[offset++] & 0xff) << 8 | (src[offset++] & 0xff);
+			dst[position++] = (char) ENCODE[bits >>> 18];
+			dst[position++] = (char) ENCODE[(bits >>> 12) & 0x3f];
+			dst[position++] = (char) ENCODE[(bits >>> 6) & 0x3f];
+			dst[position++] = (char) ENCODE[bits & 0x3f];
+		}
+		if (length % 3 == 1) {
+			int bits = src[offset] & 0xff;
+			dst[position++] = (char) ENCODE[bits >>> 2];
+			dst[position++] = (char) ENCODE[(bits << 4) & 0x3f];
+		}
+		else if (length % 3 == 2) {
+			int bits = (src[offset] & 0xff) << 8 | (src[offset + 1] & 0xff);
+			dst[position++] = (char) ENCODE[bits >>> 10];
+			dst[position++] = (char) ENCODE[(bits >>> 4) & 0x3f];
+			dst[position++] = (char) ENCODE[(bits << 2) & 0x3f];
+		}
+		return position;
+	}
+
+	/**
+	 * Encode the remaining bytes of the source into the destination, advancing both positions.
+	 */
+	static void encode(ByteBuffer src, ByteBuffer dst) {
+		int length = src.remaining();
+		int encoded = encodedLength(length);
+		if (dst.remaining() < encoded) {
+			throw new IllegalArgumentException("Destination buffer is too small");
+		}
+		if (src.hasArray() && dst.hasArray()) {
+			encode(src.array(), src.arrayOffset() + src.position(), length, dst.array(), dst.arrayOffset()
+					+ dst.position());
+			src.position(src.limit());
+			dst.position(dst.position() + encoded);
+		}
+		else {
+			byte[] bytes = new byte[length];
+			src.get(bytes);
+			dst.put(encode(bytes));
+		}
+	}
+
+	static byte[] decode(byte[] b64) {
+		int length = unpaddedLength(b64, 0, b64.length);
+		byte[] result = new byte[decodedLength(length)];
+		decode(b64, 0, length, result, 0);
+		return result;
+	}
+
+	static byte[] decode(CharSequence b64, int start, int end) {
+		int length = unpaddedLength(b64, start, end);
+		byte[] result = new byte[decodedLength(length)];
+		int offset = start;
+		int position = 0;
+		int last = start + length - length % 4;
+		while (offset < last) {
+			int bits = decode(b64.charAt(offset++)) << 18 | decode(b64.charAt(offset++)) << 12
+					| decode(b64.charAt(offset++)) << 6 | decode(b64.charAt(offset++));
+			if (bits < 0) {
+				throw new IllegalArgumentException("Invalid Base64 character");
+			}
+			result[position++] = (byte) (bits >>> 16);
+			result[position++] = (byte) (bits >>> 8);
+			result[position++] = (byte) bits;
+		}
+		if (length % 4 == 2) {
+			putBytes(decode(b64.charAt(offset)) << 6 | decode(b64.charAt(offset + 1)), 1, result, position);
+		}
+		else if (length % 4 == 3) {
+			putBytes(decode(b64.charAt(offset)) << 12 | decode(b64.charAt(offset + 1)) << 6
+					| decode(b64.charAt(offset + 2)), 2, result, position);
+		}
+		return result;
+	}
+
+	/**
+	 * @param length the number of encoded characters, without padding
+	 * @return the position in the destination after the last byte written
+	 */
+	static int decode(byte[] src, int offset, int length, byte[] dst, int position) {
+		decodedLength(length);
+		int last = offset + length - length % 4;
+		while (offset < last) {
+			int bits = decode(src[offset++]) << 18 | decode(src[offset++]) << 12 | decode(src[offset++]) << 6
+					| decode(src[offset++]);
+			if (bits < 0) {
+				throw new IllegalArgumentException("Invalid Base64 character");
+			}
+			dst[position++] = (byte) (bits >>> 16);
+			dst[position++] = (byte) (bits >>> 8);
+			dst[position++] = (byte) bits;
+		}
+		if (length % 4 == 2) {
+			position = putBytes(decode(src[offset]) << 6 | decode(src[offset + 1]), 1, dst, position);
+		}
+		else if (length % 4 == 3) {
+			position = putBytes(decode(src[offset]) << 12 | decode(src[offset + 1]) << 6 | decode(src[offset + 2]),
+					2, dst, position);
+		}
+		return position;
+	}
+
+	/**
+	 * Decode the remaining characters of the source into the destination, advancing both positions.
+	 */
+	static void decode(ByteBuffer src, ByteBuffer dst) {
+		byte[] bytes;
+		int offset;
+		if (src.hasArray()) {
+			bytes = src.array();
+			offset = src.arrayOffset() + src.position();
+		}
+		else {
+			bytes = new byte[src.remaining()];
+			src.duplicate().get(bytes);
+			offset = 0;
+		}
+		int length = unpaddedLength(bytes, offset, offset + src.remaining());
+		int decoded = decodedLength(length);
+		if (dst.remaining() < decoded) {
+			throw new IllegalArgumentException("Destination buffer is too small");
+		}
+		if (dst.hasArray()) {
+			decode(bytes, offset, length, dst.array(), dst.arrayOffset() + dst.position());
+			dst.position(dst.position() + decoded);
+		}
+		else {
+			byte[] result = new byte[decoded];
+			decode(bytes, offset, length, result, 0);
+			dst.put(result);
+		}
+		src.position(src.limit());
+	}
+
+	private static int decode(int c) {
+		// Negative (for a byte) or non-ASCII input is invalid
+		return (c & ~0x7f) == 0 ? DECODE[c] : -1;
+	}
+
+	/**
+	 * Write the last group of 1 or 2 bytes from some decoded bits (which are negative if any of the characters was
+	 * invalid).
+	 */
+	private static int putBytes(int bits, int count, byte[] dst, int position) {
+		if (bits < 0) {
+			throw new IllegalArgumentException("Invalid Base64 character");
+		}
+		int shift = 6 * (count + 1) - 8;
+		for (int i = 0; i < count; i++) {
+			dst[position++] = (byte) (bits >>> shift);
+			shift -= 8;
+		}
+		return position;
+	}
+
+	private static int unpaddedLength(byte[] b64, int start, int end) {
+		while (end > start && b64[end - 1] == '=') {
+			end--;
+		}
+		return end - start;
+	}
+
+	private static int unpaddedLength(CharSequence b64, int start, int end) {
+		while (end > start && b64.charAt(end - 1) == '=') {
+			end--;
+		}
+		return end - start;
+	}
+
+}
@@ -38,7 +38,7 @@ public class Codecs {
 
 	// URL-safe versions with no padding chars
 	public static byte[] b64UrlEncode(byte[] bytes) {
-		return Base64.urlEncode(bytes);
+		return Base64UrlCodec.encode(bytes);
 	}
 
 	public static byte[] b64UrlEncode(CharSequence value) {
@@ -46,19 +46,79 @@ public class Codecs {
 	}
 
 	public static byte[] b64UrlDecode(byte[] bytes) {
-		return Base64.urlDecode(bytes);
+		return Base64UrlCodec.decode(bytes);
 	}
 
 	public static byte[] b64UrlDecode(CharSequence value) {
-		return b64UrlDecode(utf8Encode(value));
+		return Base64UrlCodec.decode(value, 0, value.length());
 	}
 
+	/**
+	 * Decode a range of URL-safe Base64 characters (e.g. one segment of a token) without copying them first.
+	 */
+	public static byte[] b64UrlDecode(CharSequence value, int start, int end) {
+		return Base64UrlCodec.decode(value, start, end);
+	}
+
+	/**
+	 * The number of characters that some bytes encode to with URL-safe Base64 and no padding, so that a buffer can be
+	 * sized for {@link #b64UrlEncode(byte[], int, int, byte[], int)}.
+	 */
+	public static int b64UrlEncodedLength(int length) {
+		return Base64UrlCodec.encodedLength(length);
+	}
+
+	/**
+	 * Encode a range of bytes into a buffer supplied by the caller.
+	 *
+	 * @return the position in the destination after the last character written
+	 */
+	public static int b64UrlEncode(byte[] src, int offset, int length, byte[] dst, int position) {
+		return Base64UrlCodec.encode(src, offset, length, dst, position);
+	}
+
+	/**
+	 * Encode a range of bytes into a character buffer supplied by the caller (e.g. to build a String).
+	 *
+	 * @return the position in the destination after the last character written
+	 */
+	public static int b64UrlEncode(byte[] src, int offset, int length, char[] dst, int position) {
+		return Base64UrlCodec.encode(src, offset, length, dst, position);
+	}
+
+	/**
+	 * Encode the remaining bytes of one buffer into another, advancing the positions of both.
+	 */
+	public static void b64UrlEncode(ByteBuffer src, ByteBuffer dst) {
+		Base64UrlCodec.encode(src, dst);
+	}
+
+	/**
+	 * Decode the remaining characters of one buffer into another, advancing the positions of both.
+	 */
+	public static void b64UrlDecode(ByteBuffer src, ByteBuffer dst) {
+		Base64UrlCodec.decode(src, dst);
+	}
 
 	/**
 	 * UTF-8 encoding/decoding. Using a charset rather than `String.getBytes` is less forgiving
-	 * and will raise an exception for invalid data.
+	 * and will raise an exception for invalid data. Pure ASCII (the usual case for tokens and claims) is copied
+	 * directly, without a charset encoder or decoder.
 	 */
 	public static byte[] utf8Encode(CharSequence string) {
+		int length = string.length();
+		byte[] ascii = new byte[length];
+		for (int i = 0; i < length; i++) {
+			char c = string.charAt(i);
+			if (c > 127) {
+				return charsetEncode(string);
+			}
+			ascii[i] = (byte) c;
+		}
+		return ascii;
+	}
+
+	private static byte[] charsetEncode(CharSequence string) {
 		try {
 			ByteBuffer bytes = UTF8.newEncoder().encode(CharBuffer.wrap(string));
 			byte[] bytesCopy = new byte[bytes.limit()];
@@ -71,7 +131,16 @@ public class Codecs {
 	}
 
 	public static String utf8Decode(byte[] bytes) {
-		return utf8Decode(ByteBuffer.wrap(bytes));
+		int length = bytes.length;
+		char[] ascii = new char[length];
+		for (int i = 0; i < length; i++) {
+			byte b = bytes[i];
+			if (b < 0) {
+				return utf8Decode(ByteBuffer.wrap(bytes));
+			}
+			ascii[i] = (char) b;
+		}
+		return new String(ascii);
 	}
 
 	public static String utf8Decode(ByteBuffer bytes) {
@@ -83,6 +152,24 @@ public class Codecs {
 		}
 	}
 
+	/**
+	 * The bytes of a range of characters that are all ASCII (e.g. the Base64 encoded segments of a token), copied
+	 * directly without going through a charset encoder.
+	 *
+	 * @throws IllegalArgumentException if there is a non-ASCII character in the range
+	 */
+	public static byte[] asciiEncode(CharSequence value, int start, int end) {
+		byte[] result = new byte[end - start];
+		for (int i = start; i < end; i++) {
+			char c = value.charAt(i);
+			if (c > 127) {
+				throw new IllegalArgumentException("Non-ASCII character in input");
+			}
+			result[i - start] = (byte) c;
+		}
+		return result;
+	}
+
 	public static char[] hexEncode(byte[] bytes) {
 		return Hex.encode(bytes);
 	}
@@ -109,8 +196,6 @@ public class Codecs {
 
 
 class Base64 {
-	private static byte EQUALS = (byte)'=';
-
 	static byte[] encode(byte[] bytes) {
 		return Base64Codec.encode(bytes);
 	}
@@ -118,50 +203,6 @@ class Base64 {
 	static byte[] decode(byte[] bytes) {
 		return Base64Codec.decode(bytes);
 	}
-
-	static byte[] urlEncode(byte[] bytes) {
-		byte[] b64Bytes = Base64Codec.encodeBytesToBytes(bytes, 0, bytes.length, Base64Codec.URL_SAFE);
-
-		int length = b64Bytes.length;
-
-		while(b64Bytes[length - 1] == EQUALS) {
-		  length -= 1;
-		}
-
-		byte[] result = new byte[length];
-		System.arraycopy(b64Bytes, 0, result, 0, length);
-
-		return result;
-	}
-
-	static byte[] urlDecode(byte[] b64) {
-		// Pad with '=' as necessary before feeding to standard decoder
-		byte[] b64Bytes = null;
-
-		int lMod4 = b64.length % 4;
-
-		if (lMod4 == 0) {
-			b64Bytes = b64;
-		} else if (lMod4 == 2) {
-			b64Bytes = pad(b64, 2);
-		} else if (lMod4 == 3) {
-			b64Bytes = pad(b64, 1);
-		} else {
-			throw new IllegalArgumentException("Invalid Base64 string");
-		}
-
-		return Base64Codec.decode(b64Bytes, 0, b64Bytes.length, Base64Codec.URL_SAFE);
-	}
-
-	private static byte[] pad(byte[] bytes, int n) {
-		int l = bytes.length;
-		byte[] padded = new byte[l + n];
-		System.arraycopy(bytes, 0, padded, 0, l);
-		for (int i = l; i < l + n; i++) {
-			padded[i] = EQUALS;
-		}
-		return padded;
-	}
 }
 
 class Hex {
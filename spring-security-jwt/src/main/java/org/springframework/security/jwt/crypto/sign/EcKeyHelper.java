@@ -0,0 +1,255 @@
+/*
+ * Copyright 2006-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.jwt.crypto.sign;
+
+import static org.springframework.security.jwt.codec.Codecs.b64Decode;
+import static org.springframework.security.jwt.codec.Codecs.utf8Encode;
+
+import java.io.IOException;
+import java.security.KeyFactory;
+import java.security.KeyPair;
+import java.security.NoSuchAlgorithmException;
+import java.security.PrivateKey;
+import java.security.PublicKey;
+import java.security.interfaces.ECKey;
+import java.security.spec.InvalidKeySpecException;
+import java.security.spec.PKCS8EncodedKeySpec;
+import java.security.spec.X509EncodedKeySpec;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import org.bouncycastle.asn1.ASN1Encodable;
+import org.bouncycastle.asn1.ASN1OctetString;
+import org.bouncycastle.asn1.ASN1Sequence;
+import org.bouncycastle.asn1.DERBitString;
+import org.bouncycastle.asn1.pkcs.PrivateKeyInfo;
+import org.bouncycastle.asn1.sec.ECPrivateKey;
+import org.bouncycastle.asn1.x509.AlgorithmIdentifier;
+import org.bouncycastle.asn1.x509.SubjectPublicKeyInfo;
+import org.bouncycastle.asn1.x9.X9ObjectIdentifiers;
+
+/**
+ * Reads elliptic curve keys (SEC1 "EC PRIVATE KEY", PKCS#8 "PRIVATE KEY" and X.509 "PUBLIC KEY" PEM data) using BC
+ * ASN.1 classes but without the need to have BC added as a provider, and converts ECDSA signatures between the DER
+ * encoding produced by the JDK and the fixed length R|S concatenation used by JWS.
+ *
+ * @author Dave Syer
+ */
+class EcKeyHelper {
+	private static Pattern PEM_DATA = Pattern.compile("-----BEGIN (.*)-----(.*)-----END (.*)-----", Pattern.DOTALL);
+
+	/**
+	 * @param pemData PEM encoded key data
+	 * @return true if the data is an EC private key, either in SEC1 format or in PKCS#8 format with the EC algorithm
+	 */
+	static boolean isPrivateKey(String pemData) {
+		Matcher m = PEM_DATA.matcher(pemData.trim());
+		if (!m.matches()) {
+			return false;
+		}
+		String type = m.group(1);
+		if (type.equals("EC PRIVATE KEY")) {
+			return true;
+		}
+		if (!type.equals("PRIVATE KEY")) {
+			return false;
+		}
+		try {
+			ASN1Sequence seq = ASN1Sequence.getInstance(b64Decode(utf8Encode(m.group(2))));
+			return X9ObjectIdentifiers.id_ecPublicKey.equals(getAlgorithm(seq).getAlgorithm());
+		}
+		catch (IllegalArgumentException e) {
+			throw new IllegalArgumentException("Invalid PKCS#8 private key data", e);
+		}
+	}
+
+	static KeyPair parseKeyPair(String pemData) {
+		Matcher m = PEM_DATA.matcher(pemData.trim());
+
+		if (!m.matches()) {
+			throw new IllegalArgumentException("String is not PEM encoded data");
+		}
+
+		String type = m.group(1);
+		final byte[] content = b64Decode(utf8Encode(m.group(2)));
+
+		try {
+			KeyFactory fact = KeyFactory.getInstance("EC");
+			if (type.equals("EC PRIVATE KEY")) {
+				ECPrivateKey key = ECPrivateKey.getInstance(ASN1Sequence.getInstance(content));
+				if (key.getParameters() == null) {
+					throw new IllegalArgumentException("EC private key does not name its curve");
+				}
+				AlgorithmIdentifier algorithm = new AlgorithmIdentifier(X9ObjectIdentifiers.id_ecPublicKey,
+						key.getParameters());
+				PrivateKey privateKey = fact.generatePrivate(new PKCS8EncodedKeySpec(new PrivateKeyInfo(algorithm, key)
+						.getEncoded()));
+				return new KeyPair(createPublicKey(fact, algorithm, key.getPublicKey()), privateKey);
+			} else if (type.equals("PRIVATE KEY")) {
+				// PKCS#8: version, algorithm (with the curve as its parameters) and the SEC1 key as an octet string
+				ASN1Sequence seq = ASN1Sequence.getInstance(content);
+				AlgorithmIdentifier algorithm = getAlgorithm(seq);
+				if (!X9ObjectIdentifiers.id_ecPublicKey.equals(algorithm.getAlgorithm())) {
+					throw new IllegalArgumentException("Not an EC private key: " + algorithm.getAlgorithm());
+				}
+				ECPrivateKey key = ECPrivateKey.getInstance(ASN1Sequence.getInstance(ASN1OctetString.getInstance(
+						seq.getObjectAt(2)).getOctets()));
+				PrivateKey privateKey = fact.generatePrivate(new PKCS8EncodedKeySpec(content));
+				return new KeyPair(createPublicKey(fact, algorithm, key.getPublicKey()), privateKey);
+			} else if (type.equals("PUBLIC KEY")) {
+				return new KeyPair(fact.generatePublic(new X509EncodedKeySpec(content)), null);
+			} else {
+				throw new IllegalArgumentException(type + " is not a supported format");
+			}
+		}
+		catch (IOException e) {
+			throw new IllegalArgumentException("Invalid EC key data", e);
+		}
+		catch (InvalidKeySpecException e) {
+			throw new RuntimeException(e);
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static AlgorithmIdentifier getAlgorithm(ASN1Sequence pkcs8) {
+		if (pkcs8.size() < 3) {
+			throw new IllegalArgumentException("Invalid PKCS#8 private key ASN1 sequence");
+		}
+		return AlgorithmIdentifier.getInstance(pkcs8.getObjectAt(1));
+	}
+
+	private static PublicKey createPublicKey(KeyFactory fact, ASN1Encodable algorithm, DERBitString point)
+			throws IOException, InvalidKeySpecException {
+		if (point == null) {
+			// The public key is optional in SEC1, and can't be derived without doing the curve arithmetic
+			return null;
+		}
+		SubjectPublicKeyInfo info = new SubjectPublicKeyInfo(AlgorithmIdentifier.getInstance(algorithm),
+				point.getBytes());
+		return fact.generatePublic(new X509EncodedKeySpec(info.getEncoded()));
+	}
+
+	/**
+	 * @param key an EC key on one of the JWS curves (P-256, P-384 or P-521)
+	 * @return the JCA name of the matching JWS signature algorithm
+	 */
+	static String algorithm(ECKey key) {
+		int size = key.getParams().getCurve().getField().getFieldSize();
+		switch (size) {
+		case 256:
+			return "SHA256withECDSA";
+		case 384:
+			return "SHA384withECDSA";
+		case 521:
+			return "SHA512withECDSA";
+		default:
+			throw new IllegalArgumentException("Unsupported EC key size: " + size);
+		}
+	}
+
+	/**
+	 * @param key an EC key
+	 * @return the length of a JWS signature made with the key (R and S each padded to the size of the curve)
+	 */
+	static int signatureLength(ECKey key) {
+		return 2 * ((key.getParams().getCurve().getField().getFieldSize() + 7) / 8);
+	}
+
+	/**
+	 * Convert a DER encoded ECDSA signature (a sequence of two integers) to the JWS format.
+	 *
+	 * @param der the DER encoded signature
+	 * @param length the length of the result
+	 * @return R and S as unsigned big endian values, each padded to half the length
+	 */
+	static byte[] toJose(byte[] der, int length) {
+		if (der.length < 8 || der[0] != 0x30) {
+			throw new IllegalArgumentException("Invalid DER encoded ECDSA signature");
+		}
+		// The sequence length is one byte, or 0x81 and one byte for the largest curve
+		int offset = der[1] == (byte) 0x81 ? 3 : 2;
+		byte[] jose = new byte[length];
+		offset = copyInteger(der, offset, jose, 0, length / 2);
+		offset = copyInteger(der, offset, jose, length / 2, length / 2);
+		if (offset != der.length) {
+			throw new IllegalArgumentException("Invalid DER encoded ECDSA signature");
+		}
+		return jose;
+	}
+
+	private static int copyInteger(byte[] der, int offset, byte[] jose, int start, int size) {
+		if (offset + 2 > der.length || der[offset] != 0x02) {
+			throw new IllegalArgumentException("Invalid DER encoded ECDSA signature");
+		}
+		int length = der[offset + 1] & 0xff;
+		int end = offset + 2 + length;
+		if (end > der.length) {
+			throw new IllegalArgumentException("Invalid DER encoded ECDSA signature");
+		}
+		int from = offset + 2;
+		// Skip the sign byte (and any other leading zeros)
+		while (from < end && der[from] == 0) {
+			from++;
+		}
+		if (end - from > size) {
+			throw new IllegalArgumentException("ECDSA signature value is too long for the curve");
+		}
+		System.arraycopy(der, from, jose, start + size - (end - from), end - from);
+		return end;
+	}
+
+	/**
+	 * Convert a JWS ECDSA signature to the DER encoding expected by the JDK.
+	 *
+	 * @param jose R and S as unsigned big endian values of equal length
+	 * @return the DER encoded signature
+	 */
+	static byte[] toDer(byte[] jose) {
+		int size = jose.length / 2;
+		int r = significant(jose, 0, size);
+		int s = significant(jose, size, size);
+		int rLength = size - r + (jose[r] < 0 ? 1 : 0);
+		int sLength = size - (s - size) + (jose[s] < 0 ? 1 : 0);
+		int length = 4 + rLength + sLength;
+		byte[] der = new byte[length + (length > 127 ? 3 : 2)];
+		int offset = 0;
+		der[offset++] = 0x30;
+		if (length > 127) {
+			der[offset++] = (byte) 0x81;
+		}
+		der[offset++] = (byte) length;
+		der[offset++] = 0x02;
+		der[offset++] = (byte) rLength;
+		offset += rLength - (size - r);
+		System.arraycopy(jose, r, der, offset, size - r);
+		offset += size - r;
+		der[offset++] = 0x02;
+		der[offset++] = (byte) sLength;
+		offset += sLength - (2 * size - s);
+		System.arraycopy(jose, s, der, offset, 2 * size - s);
+		return der;
+	}
+
+	/**
+	 * @return the index of the first non-zero byte in the range (or the last byte if they are all zero)
+	 */
+	private static int significant(byte[] bytes, int start, int size) {
+		int end = start + size - 1;
+		while (start < end && bytes[start] == 0) {
+			start++;
+		}
+		return start;
+	}
+}
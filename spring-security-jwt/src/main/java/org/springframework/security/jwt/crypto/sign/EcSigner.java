@@ -0,0 +1,103 @@
+/*
+ * Copyright 2006-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.jwt.crypto.sign;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.Signature;
+import java.security.interfaces.ECPrivateKey;
+
+/**
+ * A signer for signing using an elliptic curve private key (ES256, ES384 or ES512 depending on the curve).
+ *
+ * The key can be supplied directly, or as a PEM encoded private key string (either the "EC PRIVATE KEY" format
+ * produced by <tt>openssl ecparam -genkey</tt> or PKCS#8). Signatures are in the fixed length format required by JWS,
+ * not the DER encoding produced by the JDK. Each thread gets its own {@link Signature}, initialized with the key the
+ * first time it is used, so instances are thread safe and cheap to call.
+ *
+ * @author Dave Syer
+ */
+public class EcSigner implements Signer {
+	private final ECPrivateKey key;
+	private final String algorithm;
+	private final int length;
+
+	private final ThreadLocal<Signature> signatures = new ThreadLocal<Signature>() {
+		@Override
+		protected Signature initialValue() {
+			try {
+				Signature signature = Signature.getInstance(algorithm);
+				signature.initSign(key);
+				return signature;
+			}
+			catch (GeneralSecurityException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	};
+
+	public EcSigner(ECPrivateKey key) {
+		this(key, EcKeyHelper.algorithm(key));
+	}
+
+	public EcSigner(ECPrivateKey key, String algorithm) {
+		this.key = key;
+		this.algorithm = algorithm;
+		this.length = EcKeyHelper.signatureLength(key);
+	}
+
+	public EcSigner(String pemKey) {
+		this(loadPrivateKey(pemKey));
+	}
+
+	/**
+	 * Check whether some PEM encoded key data is an EC private key, so that it can be used to create an
+	 * <code>EcSigner</code>. A PKCS#8 "PRIVATE KEY" is only an EC key if its algorithm says so (it might be RSA).
+	 * 
+	 * @param pemKey the key data
+	 * @return true if the data is an EC private key
+	 */
+	public static boolean isPrivateKey(String pemKey) {
+		return EcKeyHelper.isPrivateKey(pemKey);
+	}
+
+	public byte[] sign(byte[] bytes) {
+		byte[] der;
+		try {
+			// sign() resets the Signature so it is ready for the next call on this thread
+			Signature signature = signatures.get();
+			signature.update(bytes);
+			der = signature.sign();
+		}
+		catch (GeneralSecurityException e) {
+			// Don't reuse a Signature that might be in an inconsistent state
+			signatures.remove();
+			throw new RuntimeException(e);
+		}
+		return EcKeyHelper.toJose(der, length);
+	}
+
+	public String algorithm() {
+		return algorithm;
+	}
+
+	private static ECPrivateKey loadPrivateKey(String key) {
+		KeyPair kp = EcKeyHelper.parseKeyPair(key);
+
+		if (kp.getPrivate() == null) {
+			throw new IllegalArgumentException("Not a private key");
+		}
+
+		return (ECPrivateKey) kp.getPrivate();
+	}
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2006-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.jwt.crypto.sign;
+
+import java.security.GeneralSecurityException;
+import java.security.KeyPair;
+import java.security.Signature;
+import java.security.interfaces.ECPublicKey;
+
+/**
+ * Verifies signatures using an elliptic curve public key (ES256, ES384 or ES512 depending on the curve).
+ *
+ * The key can be supplied directly, or as a PEM encoded public key string, or as private key data that includes the
+ * public key (which <tt>openssl</tt> always adds). Signatures are expected in the fixed length JWS format. Each thread
+ * gets its own {@link Signature}, initialized with the key the first time it is used, so instances are thread safe and
+ * cheap to call.
+ *
+ * @author Dave Syer
+ */
+public class EcVerifier implements SignatureVerifier {
+	private final ECPublicKey key;
+	private final String algorithm;
+	private final int length;
+
+	private final ThreadLocal<Signature> signatures = new ThreadLocal<Signature>() {
+		@Override
+		protected Signature initialValue() {
+			try {
+				Signature signature = Signature.getInstance(algorithm);
+				signature.initVerify(key);
+				return signature;
+			}
+			catch (GeneralSecurityException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	};
+
+	public EcVerifier(ECPublicKey key) {
+		this(key, EcKeyHelper.algorithm(key));
+	}
+
+	public EcVerifier(ECPublicKey key, String algorithm) {
+		this.key = key;
+		this.algorithm = algorithm;
+		this.length = EcKeyHelper.signatureLength(key);
+	}
+
+	public EcVerifier(String pemKey) {
+		this(loadPublicKey(pemKey));
+	}
+
+	public void verify(byte[] content, byte[] sig) {
+		if (sig.length != length) {
+			throw new InvalidSignatureException("EC signature has the wrong length for the key");
+		}
+		boolean verified;
+		try {
+			// verify() resets the Signature so it is ready for the next call on this thread
+			Signature signature = signatures.get();
+			signature.update(content);
+			verified = signature.verify(EcKeyHelper.toDer(sig));
+		}
+		catch (GeneralSecurityException e) {
+			// Don't reuse a Signature that might be in an inconsistent state (e.g. after a malformed signature)
+			signatures.remove();
+			throw new RuntimeException(e);
+		}
+		if (!verified) {
+			throw new InvalidSignatureException("EC Signature did not match content");
+		}
+	}
+
+	public String algorithm() {
+		return algorithm;
+	}
+
+	private static ECPublicKey loadPublicKey(String key) {
+		KeyPair kp = EcKeyHelper.parseKeyPair(key);
+
+		if (kp.getPublic() == null) {
+			throw new IllegalArgumentException("Key data does not contain a public key");
+		}
+
+		return (ECPublicKey) kp.getPublic();
+	}
+}
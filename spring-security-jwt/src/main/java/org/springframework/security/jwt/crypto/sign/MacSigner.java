@@ -18,6 +18,10 @@ import javax.crypto.SecretKey;
 import javax.crypto.spec.SecretKeySpec;
 
 /**
+ * Signs and verifies content with a MAC (HMAC-SHA256 by default). Each thread gets its own {@link Mac}, initialized
+ * with the key the first time it is used, so instances are thread safe without paying for a provider lookup on every
+ * call.
+ *
  * @author Luke Taylor
  */
 public class MacSigner implements SignerVerifier {
@@ -26,6 +30,20 @@ public class MacSigner implements SignerVerifier {
 	private final String algorithm;
 	private final SecretKey key;
 
+	private final ThreadLocal<Mac> macs = new ThreadLocal<Mac>() {
+		@Override
+		protected Mac initialValue() {
+			try {
+				Mac mac = Mac.getInstance(algorithm);
+				mac.init(key);
+				return mac;
+			}
+			catch (GeneralSecurityException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	};
+
 	public MacSigner(byte[] key) {
 		this(new SecretKeySpec(key, DEFAULT_ALGORITHM));
 	}
@@ -46,14 +64,8 @@ public class MacSigner implements SignerVerifier {
 //	val keyLength = key.getEncoded.length * 8
 
 	public byte[] sign(byte[] bytes) {
-		try {
-			Mac mac = Mac.getInstance(algorithm);
-			mac.init(key);
-			return mac.doFinal(bytes);
-		}
-		catch (GeneralSecurityException e) {
-			throw new RuntimeException(e);
-		}
+		// doFinal() resets the Mac so it is ready for the next call on this thread
+		return macs.get().doFinal(bytes);
 	}
 
   public void verify(byte[] content, byte[] signature) {
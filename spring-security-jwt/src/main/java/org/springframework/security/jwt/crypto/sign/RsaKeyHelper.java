@@ -72,6 +72,9 @@ class RsaKeyHelper {
 				org.bouncycastle.asn1.pkcs.RSAPublicKey key = org.bouncycastle.asn1.pkcs.RSAPublicKey.getInstance(seq);
 				RSAPublicKeySpec pubSpec = new RSAPublicKeySpec(key.getModulus(), key.getPublicExponent());
 				publicKey = fact.generatePublic(pubSpec);
+			} else if (type.equals("PRIVATE KEY")) {
+				throw new IllegalArgumentException("Unsupported RSA key format: PKCS#8 \"PRIVATE KEY\" data is not "
+						+ "supported for RSA, convert it to \"RSA PRIVATE KEY\" (e.g. with openssl rsa)");
 			} else {
 				throw new IllegalArgumentException(type + " is not a supported format");
 			}
@@ -21,7 +21,8 @@ import java.security.spec.RSAPrivateKeySpec;
  * A signer for signing using an RSA private key.
  *
  * The key can be supplied directly, or as an SSH private key string (in
- * the standard format produced by <tt>ssh-keygen</tt>)
+ * the standard format produced by <tt>ssh-keygen</tt>). Each thread gets its own {@link Signature}, initialized
+ * with the key the first time it is used, so instances are thread safe and cheap to call.
  *
  * @author Luke Taylor
  */
@@ -31,6 +32,20 @@ public class RsaSigner implements Signer {
 	private final RSAPrivateKey key;
 	private final String algorithm;
 
+	private final ThreadLocal<Signature> signatures = new ThreadLocal<Signature>() {
+		@Override
+		protected Signature initialValue() {
+			try {
+				Signature signature = Signature.getInstance(algorithm);
+				signature.initSign(key);
+				return signature;
+			}
+			catch (GeneralSecurityException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	};
+
 	public RsaSigner(BigInteger n, BigInteger d) {
 		this(createPrivateKey(n,d));
 	}
@@ -50,12 +65,14 @@ public class RsaSigner implements Signer {
 
 	public byte[] sign(byte[] bytes) {
 		try {
-			Signature signature = Signature.getInstance(algorithm);
-			signature.initSign(key);
+			// sign() resets the Signature so it is ready for the next call on this thread
+			Signature signature = signatures.get();
 			signature.update(bytes);
 			return signature.sign();
 		}
 		catch (GeneralSecurityException e) {
+			// Don't reuse a Signature that might be in an inconsistent state
+			signatures.remove();
 			throw new RuntimeException(e);
 		}
 	}
@@ -20,7 +20,8 @@ import java.security.interfaces.RSAPublicKey;
  * Verifies signatures using an RSA public key.
  *
  * The key can be supplied directly, or as an SSH public or private key string (in
- * the standard format produced by <tt>ssh-keygen</tt>).
+ * the standard format produced by <tt>ssh-keygen</tt>). Each thread gets its own {@link Signature}, initialized
+ * with the key the first time it is used, so instances are thread safe and cheap to call.
  *
  * @author Luke Taylor
  */
@@ -28,6 +29,20 @@ public class RsaVerifier implements SignatureVerifier {
 	private final RSAPublicKey key;
 	private final String algorithm;
 
+	private final ThreadLocal<Signature> signatures = new ThreadLocal<Signature>() {
+		@Override
+		protected Signature initialValue() {
+			try {
+				Signature signature = Signature.getInstance(algorithm);
+				signature.initVerify(key);
+				return signature;
+			}
+			catch (GeneralSecurityException e) {
+				throw new RuntimeException(e);
+			}
+		}
+	};
+
 	public RsaVerifier(BigInteger n, BigInteger e) {
 		this(RsaKeyHelper.createPublicKey(n, e));
 	}
@@ -46,18 +61,21 @@ public class RsaVerifier implements SignatureVerifier {
 	}
 
 	public void verify(byte[] content, byte[] sig) {
+		boolean verified;
 		try {
-			Signature signature = Signature.getInstance(algorithm);
-			signature.initVerify(key);
+			// verify() resets the Signature so it is ready for the next call on this thread
+			Signature signature = signatures.get();
 			signature.update(content);
-
-			if (!signature.verify(sig)) {
-				throw new InvalidSignatureException("RSA Signature did not match content");
-			}
+			verified = signature.verify(sig);
 		}
 		catch (GeneralSecurityException e) {
+			// Don't reuse a Signature that might be in an inconsistent state (e.g. after a malformed signature)
+			signatures.remove();
 			throw new RuntimeException(e);
 		}
+		if (!verified) {
+			throw new InvalidSignatureException("RSA Signature did not match content");
+		}
 	}
 
 	public String algorithm() {
@@ -13,9 +13,21 @@
 package org.springframework.security.jwt;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 import static org.springframework.security.jwt.JwtSpecData.*;
 
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.Collections;
+import java.util.Map;
+
 import org.junit.Test;
+import org.springframework.security.jwt.codec.Codecs;
+import org.springframework.security.jwt.crypto.sign.EcSigner;
+import org.springframework.security.jwt.crypto.sign.EcVerifier;
 import org.springframework.security.jwt.crypto.sign.InvalidSignatureException;
 import org.springframework.security.jwt.crypto.sign.MacSigner;
 import org.springframework.security.jwt.crypto.sign.RsaSigner;
@@ -57,6 +69,29 @@ public class JwtTests {
 		JwtHelper.decode(JOE_HMAC_TOKEN).verifySignature(new MacSigner("differentkey".getBytes()));
 	}
 
+	@Test(expected = InvalidSignatureException.class)
+	public void tamperedClaimsAreRejected() {
+		String[] segments = JOE_HMAC_TOKEN.split("\\.");
+		String claims = new String(Codecs.b64UrlEncode("{\"iss\":\"joe\",\"exp\":1300819380}"));
+		JwtHelper.decodeAndVerify(segments[0] + "." + claims + "." + segments[2], hmac);
+	}
+
+	@Test
+	public void claimsAreOnlyDecodedWhenNeeded() {
+		int firstPeriod = JOE_HMAC_TOKEN.indexOf('.');
+		int lastPeriod = JOE_HMAC_TOKEN.lastIndexOf('.');
+		// Not valid base64, but decoding succeeds because the claims are not touched
+		Jwt jwt = JwtHelper.decode(JOE_HMAC_TOKEN.substring(0, firstPeriod + 1) + "\u00e9"
+				+ JOE_HMAC_TOKEN.substring(lastPeriod));
+		try {
+			jwt.getClaims();
+			fail("Expected IllegalArgumentException");
+		}
+		catch (IllegalArgumentException e) {
+			// expected
+		}
+	}
+
 	@Test(expected = IllegalArgumentException.class)
 	public void tokenMissingSignatureIsRejected() {
 		JwtHelper.decode(JOE_HMAC_TOKEN.substring(0, JOE_HMAC_TOKEN.lastIndexOf('.') + 1));
@@ -86,6 +121,34 @@ public class JwtTests {
 		Jwt jwt = JwtHelper.encode(JOE_CLAIM_SEGMENT, new RsaSigner(N, E));
 		jwt.verifySignature(new RsaVerifier(N, D));
 	}
-}
 
+	@Test
+	public void ecVerificationIsInverseOfSigning() throws Exception {
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+		generator.initialize(new ECGenParameterSpec("secp256r1"));
+		KeyPair pair = generator.generateKeyPair();
+		Jwt jwt = JwtHelper.encode(JOE_CLAIM_SEGMENT, new EcSigner((ECPrivateKey) pair.getPrivate()));
+		assertEquals("ES256", JwtHelper.headers(jwt.getEncoded()).get("alg"));
+		JwtHelper.decodeAndVerify(jwt.getEncoded(), new EcVerifier((ECPublicKey) pair.getPublic()));
+	}
 
+	@Test
+	public void keyIdIsAddedToHeader() {
+		Jwt jwt = JwtHelper.encode(JOE_CLAIM_SEGMENT, hmac, Collections.singletonMap("kid", "key1"));
+		Map<String, String> headers = JwtHelper.headers(jwt.getEncoded());
+		assertEquals("HS256", headers.get("alg"));
+		assertEquals("key1", headers.get("kid"));
+		JwtHelper.decodeAndVerify(jwt.getEncoded(), hmac);
+	}
+
+	@Test
+	public void headersOfSpecToken() {
+		Map<String, String> headers = JwtHelper.headers(JOE_HMAC_TOKEN);
+		assertEquals(Collections.singletonMap("alg", "HS256"), headers);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void algCannotBeOverridden() {
+		JwtHelper.encode(JOE_CLAIM_SEGMENT, hmac, Collections.singletonMap("alg", "none"));
+	}
+}
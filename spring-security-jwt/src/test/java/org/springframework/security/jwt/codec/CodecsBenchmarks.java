@@ -0,0 +1,151 @@
+/*
+ * Copyright 2006-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.jwt.codec;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.security.jwt.crypto.sign.MacSigner;
+
+/**
+ * Compares the URL-safe Base64 and UTF-8 codecs with the general purpose {@link Base64Codec} and a charset encoder
+ * (the way JWT segments used to be encoded and decoded), and assembling a signed token from its segments with
+ * {@link Codecs#concat(byte[]...)} or in one pass into a single buffer. The input is the size of a typical access
+ * token. Run the main method to see the results.
+ *
+ * @author Dave Syer
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecsBenchmarks {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final byte[] PERIOD = { '.' };
+
+	private String claims = "{\"exp\":1370000000,\"user_name\":\"marissa\",\"authorities\":[\"ROLE_USER\"],"
+			+ "\"client_id\":\"app\",\"scope\":[\"read\",\"write\"],\"aud\":[\"resource\"],"
+			+ "\"jti\":\"5b1c5a1f-4ac5-4f1e-9cf7-0a0c58bfa0a2\"}";
+
+	private byte[] header = Codecs.utf8Encode("{\"alg\":\"HS256\"}");
+
+	private MacSigner signer = new MacSigner("a-secret-key-that-is-long-enough-for-hs256");
+
+	private byte[] bytes;
+
+	private byte[] encoded;
+
+	@Setup
+	public void setUp() throws Exception {
+		bytes = claims.getBytes("UTF-8");
+		encoded = Codecs.b64UrlEncode(bytes);
+	}
+
+	@Benchmark
+	public byte[] urlEncodeWithGeneralCodec() {
+		byte[] padded = Base64Codec.encodeBytesToBytes(bytes, 0, bytes.length, Base64Codec.URL_SAFE);
+		int length = padded.length;
+		while (padded[length - 1] == '=') {
+			length--;
+		}
+		byte[] result = new byte[length];
+		System.arraycopy(padded, 0, result, 0, length);
+		return result;
+	}
+
+	@Benchmark
+	public byte[] urlEncode() {
+		return Codecs.b64UrlEncode(bytes);
+	}
+
+	@Benchmark
+	public byte[] urlDecodeWithGeneralCodec() {
+		int padding = (4 - encoded.length % 4) % 4;
+		byte[] padded = new byte[encoded.length + padding];
+		System.arraycopy(encoded, 0, padded, 0, encoded.length);
+		for (int i = encoded.length; i < padded.length; i++) {
+			padded[i] = '=';
+		}
+		return Base64Codec.decode(padded, 0, padded.length, Base64Codec.URL_SAFE);
+	}
+
+	@Benchmark
+	public byte[] urlDecode() {
+		return Codecs.b64UrlDecode(encoded);
+	}
+
+	@Benchmark
+	public byte[] utf8EncodeWithCharset() throws Exception {
+		ByteBuffer buffer = UTF8.newEncoder().encode(CharBuffer.wrap(claims));
+		byte[] result = new byte[buffer.limit()];
+		System.arraycopy(buffer.array(), 0, result, 0, buffer.limit());
+		return result;
+	}
+
+	@Benchmark
+	public byte[] utf8Encode() {
+		return Codecs.utf8Encode(claims);
+	}
+
+	@Benchmark
+	public String assembleWithConcat() throws Exception {
+		byte[] claimsBytes = utf8EncodeWithCharset();
+		byte[] crypto = signer.sign(Codecs.concat(Codecs.b64UrlEncode(header), PERIOD,
+				Codecs.b64UrlEncode(claimsBytes)));
+		byte[] token = Codecs.concat(Codecs.b64UrlEncode(header), PERIOD, Codecs.b64UrlEncode(claimsBytes), PERIOD,
+				Codecs.b64UrlEncode(crypto));
+		return UTF8.newDecoder().decode(ByteBuffer.wrap(token)).toString();
+	}
+
+	@Benchmark
+	public String assembleInOnePass() {
+		byte[] claimsBytes = Codecs.utf8Encode(claims);
+		int firstPeriod = Codecs.b64UrlEncodedLength(header.length);
+		int lastPeriod = firstPeriod + 1 + Codecs.b64UrlEncodedLength(claimsBytes.length);
+		byte[] signingInput = new byte[lastPeriod];
+		Codecs.b64UrlEncode(header, 0, header.length, signingInput, 0);
+		signingInput[firstPeriod] = '.';
+		Codecs.b64UrlEncode(claimsBytes, 0, claimsBytes.length, signingInput, firstPeriod + 1);
+		byte[] crypto = signer.sign(signingInput);
+		char[] token = new char[lastPeriod + 1 + Codecs.b64UrlEncodedLength(crypto.length)];
+		for (int i = 0; i < lastPeriod; i++) {
+			token[i] = (char) signingInput[i];
+		}
+		token[lastPeriod] = '.';
+		Codecs.b64UrlEncode(crypto, 0, crypto.length, token, lastPeriod + 1);
+		return new String(token);
+	}
+
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder().include(CodecsBenchmarks.class.getSimpleName()).build()).run();
+	}
+
+}
@@ -0,0 +1,119 @@
+/*
+ * Copyright 2006-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.jwt.codec;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author Dave Syer
+ */
+public class CodecsTests {
+
+	private Random random = new Random(0);
+
+	@Test
+	public void urlEncodingMatchesGeneralCodec() throws Exception {
+		for (int length = 0; length < 100; length++) {
+			byte[] bytes = new byte[length];
+			random.nextBytes(bytes);
+			String expected = new String(Base64Codec.encodeBytesToBytes(bytes, 0, length, Base64Codec.URL_SAFE),
+					"US-ASCII").replace("=", "");
+			byte[] encoded = Codecs.b64UrlEncode(bytes);
+			assertEquals(expected, new String(encoded, "US-ASCII"));
+			assertEquals(encoded.length, Codecs.b64UrlEncodedLength(length));
+			assertArrayEquals(bytes, Codecs.b64UrlDecode(encoded));
+			assertArrayEquals(bytes, Codecs.b64UrlDecode(expected));
+		}
+	}
+
+	@Test
+	public void paddingIsAccepted() throws Exception {
+		assertEquals("a", Codecs.utf8Decode(Codecs.b64UrlDecode("YQ==")));
+		assertEquals("a", Codecs.utf8Decode(Codecs.b64UrlDecode("YQ")));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void standardAlphabetIsRejected() throws Exception {
+		Codecs.b64UrlDecode("ab+/");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void nonAsciiIsRejected() throws Exception {
+		Codecs.b64UrlDecode("ab\u00e9d");
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void invalidLengthIsRejected() throws Exception {
+		Codecs.b64UrlDecode("abcde");
+	}
+
+	@Test
+	public void rangeOfCharactersIsDecoded() throws Exception {
+		assertEquals("hello", Codecs.utf8Decode(Codecs.b64UrlDecode("xx.aGVsbG8.yy", 3, 10)));
+	}
+
+	@Test
+	public void encodeIntoBuffers() throws Exception {
+		byte[] bytes = Codecs.utf8Encode("hello world");
+		char[] chars = new char[20];
+		assertEquals(16, Codecs.b64UrlEncode(bytes, 0, bytes.length, chars, 1));
+		assertEquals("aGVsbG8gd29ybGQ", new String(chars, 1, 15));
+		byte[] dst = new byte[20];
+		assertEquals(17, Codecs.b64UrlEncode(bytes, 0, bytes.length, dst, 2));
+		assertEquals("aGVsbG8gd29ybGQ", new String(dst, 2, 15, "US-ASCII"));
+	}
+
+	@Test
+	public void encodeAndDecodeByteBuffers() throws Exception {
+		byte[] bytes = new byte[50];
+		random.nextBytes(bytes);
+		for (boolean direct : new boolean[] { false, true }) {
+			ByteBuffer src = direct ? ByteBuffer.allocateDirect(50) : ByteBuffer.allocate(50);
+			src.put(bytes).flip();
+			ByteBuffer encoded = direct ? ByteBuffer.allocateDirect(100) : ByteBuffer.allocate(100);
+			Codecs.b64UrlEncode(src, encoded);
+			assertFalse(src.hasRemaining());
+			assertEquals(Codecs.b64UrlEncodedLength(50), encoded.position());
+			encoded.flip();
+			ByteBuffer decoded = ByteBuffer.allocate(60);
+			Codecs.b64UrlDecode(encoded, decoded);
+			assertFalse(encoded.hasRemaining());
+			assertEquals(50, decoded.position());
+			byte[] result = new byte[50];
+			decoded.flip();
+			decoded.get(result);
+			assertArrayEquals(bytes, result);
+		}
+	}
+
+	@Test
+	public void utf8RoundTrip() throws Exception {
+		for (String value : new String[] { "", "plain ascii", "caf\u00e9 \u20ac \ud83d\ude00" }) {
+			assertArrayEquals(value.getBytes("UTF-8"), Codecs.utf8Encode(value));
+			assertEquals(value, Codecs.utf8Decode(value.getBytes("UTF-8")));
+		}
+	}
+
+	@Test(expected = RuntimeException.class)
+	public void utf8EncodeRejectsMalformedInput() throws Exception {
+		Codecs.utf8Encode("bad \ud83d");
+	}
+
+}
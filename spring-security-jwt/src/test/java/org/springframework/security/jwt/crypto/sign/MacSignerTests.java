@@ -0,0 +1,73 @@
+/*
+ * Copyright 2006-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.jwt.crypto.sign;
+
+import static org.junit.Assert.assertArrayEquals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+import org.springframework.security.jwt.codec.Codecs;
+
+/**
+ * @author Dave Syer
+ */
+public class MacSignerTests {
+
+	private final MacSigner signer = new MacSigner("secret");
+
+	@Test
+	public void repeatedSignaturesAreEqual() {
+		byte[] content = Codecs.utf8Encode("Hi I'm the data");
+		byte[] first = signer.sign(content);
+		assertArrayEquals(first, signer.sign(content));
+		signer.verify(content, first);
+	}
+
+	@Test(expected = InvalidSignatureException.class)
+	public void wrongSignatureIsRejected() {
+		signer.verify(Codecs.utf8Encode("Hi I'm the data"), signer.sign(Codecs.utf8Encode("Other data")));
+	}
+
+	@Test
+	public void signerIsThreadSafe() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		try {
+			List<Future<Void>> results = new ArrayList<Future<Void>>();
+			for (int t = 0; t < 8; t++) {
+				final int thread = t;
+				results.add(executor.submit(new Callable<Void>() {
+					public Void call() throws Exception {
+						for (int i = 0; i < 100; i++) {
+							byte[] content = Codecs.utf8Encode("data-" + thread + "-" + i);
+							signer.verify(content, signer.sign(content));
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> result : results) {
+				result.get();
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+}
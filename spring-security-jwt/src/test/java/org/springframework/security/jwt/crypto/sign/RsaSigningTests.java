@@ -13,6 +13,15 @@
 package org.springframework.security.jwt.crypto.sign;
 
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Test;
 import org.springframework.security.jwt.codec.Codecs;
@@ -29,6 +38,17 @@ public class RsaSigningTests {
 		assertNotNull(signer);
 	}
 
+	@Test
+	public void rsaSignerRejectsPkcs8KeyWithClearMessage() throws Exception {
+		try {
+			new RsaSigner(EcSigningTests.RSA_PKCS8_PRIVATE_KEY);
+			fail("Expected IllegalArgumentException");
+		}
+		catch (IllegalArgumentException e) {
+			assertTrue(e.getMessage(), e.getMessage().startsWith("Unsupported RSA key format"));
+		}
+	}
+
 	@Test
 	public void rsaSignerValidKeyWithWhitespace() throws Exception {
 		RsaSigner signer = new RsaSigner(RsaTestKeyData.SSH_PRIVATE_KEY_STRING_WITH_WHITESPACE);
@@ -57,4 +77,48 @@ public class RsaSigningTests {
 		verifier = new RsaVerifier(RsaTestKeyData.SSH_PUBLIC_KEY_OPENSSL_PEM_STRING);
 		verifier.verify(content, signed);
 	}
+
+	@Test
+	public void signerAndVerifierAreThreadSafe() throws Exception {
+		final RsaSigner signer = new RsaSigner(RsaTestKeyData.SSH_PRIVATE_KEY_STRING);
+		final RsaVerifier verifier = new RsaVerifier(RsaTestKeyData.SSH_PUBLIC_KEY_STRING);
+		ExecutorService executor = Executors.newFixedThreadPool(4);
+		try {
+			List<Future<Void>> results = new ArrayList<Future<Void>>();
+			for (int t = 0; t < 4; t++) {
+				final int thread = t;
+				results.add(executor.submit(new Callable<Void>() {
+					public Void call() throws Exception {
+						for (int i = 0; i < 20; i++) {
+							byte[] content = Codecs.utf8Encode("data-" + thread + "-" + i);
+							verifier.verify(content, signer.sign(content));
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> result : results) {
+				result.get();
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+	}
+
+	@Test(expected = InvalidSignatureException.class)
+	public void verifierCanBeReusedAfterFailure() throws Exception {
+		RsaSigner signer = new RsaSigner(RsaTestKeyData.SSH_PRIVATE_KEY_STRING);
+		RsaVerifier verifier = new RsaVerifier(RsaTestKeyData.SSH_PUBLIC_KEY_STRING);
+		byte[] content = Codecs.utf8Encode("Hi I'm the data");
+		byte[] signed = signer.sign(content);
+		try {
+			verifier.verify(Codecs.utf8Encode("Other data"), signed);
+		}
+		catch (InvalidSignatureException e) {
+			// expected
+		}
+		verifier.verify(content, signed);
+		verifier.verify(Codecs.utf8Encode("Other data"), signed);
+	}
 }
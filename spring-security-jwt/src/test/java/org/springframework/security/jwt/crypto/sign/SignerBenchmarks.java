@@ -0,0 +1,117 @@
+/*
+ * Copyright 2006-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License"); you may not use this file except in compliance with
+ * the License. You may obtain a copy of the License at
+ *
+ * http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software distributed under the License is distributed on
+ * an "AS IS" BASIS, WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied. See the License for the
+ * specific language governing permissions and limitations under the License.
+ */
+package org.springframework.security.jwt.crypto.sign;
+
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.interfaces.ECPrivateKey;
+import java.security.interfaces.ECPublicKey;
+import java.security.interfaces.RSAPrivateKey;
+import java.security.interfaces.RSAPublicKey;
+import java.security.spec.ECGenParameterSpec;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.jwt.codec.Codecs;
+
+/**
+ * Sign and verify throughput for HS256 (HMAC-SHA256), RS256 (SHA256withRSA with a 2048 bit key) and ES256/ES384
+ * (ECDSA on P-256/P-384) with a typical JWT signing input. The signers are shared between threads, as they are in a
+ * resource server. Run the main method to see the results, after the size of a token signed with each algorithm.
+ *
+ * @author Dave Syer
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(4)
+public class SignerBenchmarks {
+
+	private static final String CLAIMS = "{\"exp\":1370000000,\"user_name\":\"marissa\",\"scope\":[\"read\"],"
+			+ "\"client_id\":\"app\"}";
+
+	@Param({ "HS256", "RS256", "ES256", "ES384" })
+	private String algorithm;
+
+	private Signer signer;
+
+	private SignatureVerifier verifier;
+
+	private byte[] content;
+
+	private byte[] signature;
+
+	@Setup
+	public void setUp() throws Exception {
+		if ("RS256".equals(algorithm)) {
+			KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+			generator.initialize(2048);
+			KeyPair pair = generator.generateKeyPair();
+			signer = new RsaSigner((RSAPrivateKey) pair.getPrivate());
+			verifier = new RsaVerifier((RSAPublicKey) pair.getPublic());
+		}
+		else if (algorithm.startsWith("ES")) {
+			KeyPairGenerator generator = KeyPairGenerator.getInstance("EC");
+			generator.initialize(new ECGenParameterSpec("ES256".equals(algorithm) ? "secp256r1" : "secp384r1"));
+			KeyPair pair = generator.generateKeyPair();
+			signer = new EcSigner((ECPrivateKey) pair.getPrivate());
+			verifier = new EcVerifier((ECPublicKey) pair.getPublic());
+		}
+		else {
+			MacSigner mac = new MacSigner("a-secret-key-that-is-long-enough-for-hs256");
+			signer = mac;
+			verifier = mac;
+		}
+		content = Codecs.utf8Encode("eyJhbGciOiJIUzI1NiJ9.eyJleHAiOjEzNzAwMDAwMDAsInVzZXJfbmFtZSI6Im1hcmlzc2EiLCJzY29wZSI6WyJyZWFkIl0sImNsaWVudF9pZCI6ImFwcCJ9");
+		signature = signer.sign(content);
+	}
+
+	@Benchmark
+	public byte[] sign() {
+		return signer.sign(content);
+	}
+
+	@Benchmark
+	public void verify() {
+		verifier.verify(content, signature);
+	}
+
+	public static void main(String[] args) throws Exception {
+		for (String algorithm : new String[] { "HS256", "RS256", "ES256", "ES384" }) {
+			SignerBenchmarks benchmarks = new SignerBenchmarks();
+			benchmarks.algorithm = algorithm;
+			benchmarks.setUp();
+			System.out.println(algorithm + ": signature " + benchmarks.signature.length + " bytes, token "
+					+ JwtHelper.encode(CLAIMS, benchmarks.signer).getEncoded().length() + " characters");
+		}
+		new Runner(new OptionsBuilder().include(SignerBenchmarks.class.getSimpleName()).build()).run();
+	}
+
+}
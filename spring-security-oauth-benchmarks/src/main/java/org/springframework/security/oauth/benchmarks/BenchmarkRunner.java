@@ -0,0 +1,53 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth.benchmarks;
+
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs benchmarks twice, once single-threaded and once multi-threaded, so that the effect of contention is visible
+ * next to the raw cost of each operation. The number of threads in the second run is the number of processors unless
+ * the "threads" system property is set.
+ * <p>
+ * Usage: <code>java -jar target/benchmarks.jar [regex]</code>, where the optional regular expression selects the
+ * benchmarks to run (the default is all of them).
+ *
+ * @author Dave Syer
+ *
+ */
+public class BenchmarkRunner {
+
+	private static final int THREADS = Integer.getInteger("threads", Runtime.getRuntime().availableProcessors());
+
+	/**
+	 * Run the benchmarks that match the pattern single-threaded and then multi-threaded.
+	 *
+	 * @param pattern a regular expression for the benchmarks to include
+	 * @throws Exception if the benchmarks cannot be run
+	 */
+	public static void run(String pattern) throws Exception {
+		for (int threads : new int[] { 1, Math.max(THREADS, 2) }) {
+			new Runner(new OptionsBuilder().include(pattern).threads(threads).build()).run();
+		}
+	}
+
+	public static void main(String[] args) throws Exception {
+		run(args.length > 0 ? args[0] : ".*Benchmarks.*");
+	}
+
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.jwt.codec.Codecs;
+
+/**
+ * The base64 URL and UTF-8 codecs that every JWT encode and decode goes through, applied to typical JWT claims.
+ *
+ * @author Dave Syer
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecsBenchmarks {
+
+	private final byte[] claims = Codecs.utf8Encode(JwtHelperBenchmarks.CLAIMS);
+
+	private final byte[] encoded = Codecs.b64UrlEncode(claims);
+
+	@Benchmark
+	public byte[] b64UrlEncode() {
+		return Codecs.b64UrlEncode(claims);
+	}
+
+	@Benchmark
+	public byte[] b64UrlDecode() {
+		return Codecs.b64UrlDecode(encoded);
+	}
+
+	@Benchmark
+	public byte[] utf8Encode() {
+		return Codecs.utf8Encode(JwtHelperBenchmarks.CLAIMS);
+	}
+
+	@Benchmark
+	public String utf8Decode() {
+		return Codecs.utf8Decode(claims);
+	}
+
+	public static void main(String[] args) throws Exception {
+		BenchmarkRunner.run(CodecsBenchmarks.class.getSimpleName());
+	}
+
+}
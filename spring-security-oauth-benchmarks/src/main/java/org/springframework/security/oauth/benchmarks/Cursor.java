@@ -0,0 +1,41 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth.benchmarks;
+
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Per-thread position in the fixed set of users, so that threads spread their calls over different users.
+ *
+ * @author Dave Syer
+ *
+ */
+@State(Scope.Thread)
+public class Cursor {
+
+	private int index = (int) (Thread.currentThread().getId() * 31);
+
+	/**
+	 * @return the next index (between 0 and {@link Fixtures#USERS})
+	 */
+	public int next() {
+		index = (index + 1) % Fixtures.USERS;
+		return index;
+	}
+
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth.benchmarks;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+
+/**
+ * Test data shared by the benchmarks.
+ *
+ * @author Dave Syer
+ *
+ */
+abstract class Fixtures {
+
+	/**
+	 * The number of distinct users in the benchmarks that cycle through a fixed set of tokens.
+	 */
+	static final int USERS = 1000;
+
+	/**
+	 * @param userName the user name
+	 * @return a typical user authentication for a password grant
+	 */
+	static OAuth2Authentication createAuthentication(String userName) {
+		Map<String, String> parameters = new HashMap<String, String>();
+		parameters.put("grant_type", "password");
+		parameters.put("client_id", "my-trusted-client");
+		parameters.put("username", userName);
+		OAuth2Request request = new OAuth2Request(parameters, "my-trusted-client",
+				AuthorityUtils.commaSeparatedStringToAuthorityList("ROLE_CLIENT,ROLE_TRUSTED_CLIENT"), true,
+				new LinkedHashSet<String>(Arrays.asList("read", "write")), Collections.singleton("sparklr"), null,
+				null, null);
+		return new OAuth2Authentication(request, new UsernamePasswordAuthenticationToken(userName, null,
+				AuthorityUtils.commaSeparatedStringToAuthorityList("ROLE_USER")));
+	}
+
+	/**
+	 * @return a fixed set of {@link #USERS} authentications
+	 */
+	static OAuth2Authentication[] createAuthentications() {
+		OAuth2Authentication[] authentications = new OAuth2Authentication[USERS];
+		for (int i = 0; i < USERS; i++) {
+			authentications[i] = createAuthentication("user" + i);
+		}
+		return authentications;
+	}
+
+}
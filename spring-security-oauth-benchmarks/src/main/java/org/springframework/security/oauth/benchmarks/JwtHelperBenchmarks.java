@@ -0,0 +1,76 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.jwt.Jwt;
+import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.jwt.crypto.sign.MacSigner;
+
+/**
+ * Encoding, decoding and verifying a JWT with typical access token claims using {@link JwtHelper} and a MAC key.
+ *
+ * @author Dave Syer
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtHelperBenchmarks {
+
+	static final String CLAIMS = "{\"exp\":1893456000,\"user_name\":\"marissa\",\"authorities\":[\"ROLE_USER\"],"
+			+ "\"client_id\":\"my-trusted-client\",\"aud\":[\"sparklr\"],\"scope\":[\"read\",\"write\"],"
+			+ "\"jti\":\"4cc3a4b2-3b0b-4a5b-9b3e-5e6c1b1a1e2f\"}";
+
+	private final MacSigner signer = new MacSigner("benchmarks");
+
+	private final String token = JwtHelper.encode(CLAIMS, signer).getEncoded();
+
+	@Benchmark
+	public String encode() {
+		return JwtHelper.encode(CLAIMS, signer).getEncoded();
+	}
+
+	@Benchmark
+	public String decode() {
+		return JwtHelper.decode(token).getClaims();
+	}
+
+	@Benchmark
+	public String decodeAndVerify() {
+		Jwt jwt = JwtHelper.decodeAndVerify(token, signer);
+		return jwt.getClaims();
+	}
+
+	public static void main(String[] args) throws Exception {
+		BenchmarkRunner.run(JwtHelperBenchmarks.class.getSimpleName());
+	}
+
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.JwtTokenServices;
+
+/**
+ * Encoding (issuing) and decoding (validating) JWT access tokens with {@link JwtTokenServices}, signed with a MAC key.
+ * The decode benchmark runs with and without the verified authentication cache.
+ *
+ * @author Dave Syer
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class JwtTokenServicesBenchmarks {
+
+	@Param({ "0", "10000" })
+	public int cacheSize;
+
+	private JwtTokenServices services;
+
+	private OAuth2Authentication[] authentications;
+
+	private String[] tokens;
+
+	@Setup
+	public void setUp() throws Exception {
+		services = new JwtTokenServices();
+		services.setSigningKey("benchmarks");
+		services.setAuthenticationCacheSize(cacheSize);
+		services.setSupportRefreshToken(true);
+		services.afterPropertiesSet();
+		authentications = Fixtures.createAuthentications();
+		tokens = new String[authentications.length];
+		for (int i = 0; i < authentications.length; i++) {
+			tokens[i] = services.createAccessToken(authentications[i]).getValue();
+		}
+	}
+
+	@Benchmark
+	public OAuth2AccessToken createAccessToken(Cursor cursor) {
+		return services.createAccessToken(authentications[cursor.next()]);
+	}
+
+	@Benchmark
+	public OAuth2Authentication loadAuthentication(Cursor cursor) {
+		return services.loadAuthentication(tokens[cursor.next()]);
+	}
+
+	@Benchmark
+	public OAuth2AccessToken readAccessToken(Cursor cursor) {
+		return services.readAccessToken(tokens[cursor.next()]);
+	}
+
+	public static void main(String[] args) throws Exception {
+		BenchmarkRunner.run(JwtTokenServicesBenchmarks.class.getSimpleName());
+	}
+
+}
@@ -0,0 +1,115 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth.benchmarks;
+
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.security.oauth.consumer.client.CoreOAuthConsumerSupport;
+import org.springframework.security.oauth.provider.filter.CoreOAuthProviderSupport;
+
+/**
+ * OAuth1 signature base string construction, on the provider side (from an incoming request with an OAuth
+ * Authorization header) and on the consumer side (from the parameters of an outgoing request).
+ *
+ * @author Dave Syer
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class SignatureBaseStringBenchmarks {
+
+	private final CoreOAuthProviderSupport providerSupport = new CoreOAuthProviderSupport();
+
+	private final ConsumerSupport consumerSupport = new ConsumerSupport();
+
+	private final Map<String, Set<CharSequence>> parameters = new LinkedHashMap<String, Set<CharSequence>>();
+
+	private MockHttpServletRequest request;
+
+	private URL url;
+
+	@Setup
+	public void setUp() throws Exception {
+		request = new MockHttpServletRequest("GET", "/sparklr/photos");
+		request.setServerName("localhost");
+		request.setServerPort(8080);
+		request.addParameter("size", "original");
+		request.addParameter("file", "vacation photo.jpg");
+		request.addHeader("Authorization", "OAuth realm=\"http://localhost:8080/sparklr\", "
+				+ "oauth_consumer_key=\"tonr-consumer-key\", oauth_token=\"nnch734d00sl2jdk\", "
+				+ "oauth_signature_method=\"HMAC-SHA1\", oauth_signature=\"tR3%2BTy81lMeYAr%2FFid0kMTYa%2FWM%3D\", "
+				+ "oauth_timestamp=\"1191242096\", oauth_nonce=\"kllo9940pd9333jh\", oauth_version=\"1.0\"");
+		url = new URL("http://localhost:8080/sparklr/photos");
+		put("oauth_consumer_key", "tonr-consumer-key");
+		put("oauth_token", "nnch734d00sl2jdk");
+		put("oauth_signature_method", "HMAC-SHA1");
+		put("oauth_timestamp", "1191242096");
+		put("oauth_nonce", "kllo9940pd9333jh");
+		put("oauth_version", "1.0");
+		put("size", "original");
+		put("file", "vacation photo.jpg");
+	}
+
+	@Benchmark
+	public String provider() {
+		return providerSupport.getSignatureBaseString(request);
+	}
+
+	@Benchmark
+	public String consumer() {
+		return consumerSupport.getSignatureBaseString(parameters, url, "GET");
+	}
+
+	private void put(String name, String value) {
+		parameters.put(name, Collections.<CharSequence> singleton(value));
+	}
+
+	public static void main(String[] args) throws Exception {
+		BenchmarkRunner.run(SignatureBaseStringBenchmarks.class.getSimpleName());
+	}
+
+	private static class ConsumerSupport extends CoreOAuthConsumerSupport {
+
+		@Override
+		public String getSignatureBaseString(Map<String, Set<CharSequence>> oauthParams, URL requestURL,
+				String httpMethod) {
+			return super.getSignatureBaseString(oauthParams, requestURL, httpMethod);
+		}
+
+	}
+
+}
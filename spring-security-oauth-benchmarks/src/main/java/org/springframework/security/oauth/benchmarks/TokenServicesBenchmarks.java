@@ -0,0 +1,120 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
+import org.springframework.security.oauth2.provider.token.InMemoryTokenStore;
+import org.springframework.security.oauth2.provider.token.JdbcTokenStore;
+
+/**
+ * Token issuance and validation with {@link DefaultTokenServices}, backed by an in-memory store or by a JDBC store on
+ * an embedded HSQL database. The "existing" benchmarks cycle through a fixed set of users that already have tokens
+ * (the common case for a busy server), and {@link #createAndRevokeAccessToken()} issues a brand new token each time
+ * (and revokes it so the store does not grow).
+ *
+ * @author Dave Syer
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenServicesBenchmarks {
+
+	@Param({ "inMemory", "jdbc" })
+	public String store;
+
+	private final AtomicLong counter = new AtomicLong();
+
+	private EmbeddedDatabase database;
+
+	private DefaultTokenServices services;
+
+	private OAuth2Authentication[] authentications;
+
+	private String[] tokens;
+
+	@Setup
+	public void setUp() throws Exception {
+		services = new DefaultTokenServices();
+		if ("jdbc".equals(store)) {
+			database = new EmbeddedDatabaseBuilder().setName("benchmarks" + System.nanoTime())
+					.addScript("classpath:/org/springframework/security/oauth/benchmarks/schema.sql").build();
+			services.setTokenStore(new JdbcTokenStore(database));
+		}
+		else {
+			services.setTokenStore(new InMemoryTokenStore());
+		}
+		services.setSupportRefreshToken(true);
+		services.afterPropertiesSet();
+		authentications = Fixtures.createAuthentications();
+		tokens = new String[authentications.length];
+		for (int i = 0; i < authentications.length; i++) {
+			tokens[i] = services.createAccessToken(authentications[i]).getValue();
+		}
+	}
+
+	@TearDown
+	public void tearDown() {
+		if (database != null) {
+			database.shutdown();
+		}
+	}
+
+	@Benchmark
+	public OAuth2AccessToken createExistingAccessToken(Cursor cursor) {
+		return services.createAccessToken(authentications[cursor.next()]);
+	}
+
+	@Benchmark
+	public boolean createAndRevokeAccessToken() {
+		OAuth2AccessToken token = services.createAccessToken(Fixtures.createAuthentication("new"
+				+ counter.incrementAndGet()));
+		return services.revokeToken(token.getValue());
+	}
+
+	@Benchmark
+	public OAuth2Authentication loadAuthentication(Cursor cursor) {
+		return services.loadAuthentication(tokens[cursor.next()]);
+	}
+
+	public static void main(String[] args) throws Exception {
+		BenchmarkRunner.run(TokenServicesBenchmarks.class.getSimpleName());
+	}
+
+}
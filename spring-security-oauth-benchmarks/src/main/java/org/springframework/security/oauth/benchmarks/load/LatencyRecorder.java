@@ -0,0 +1,93 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth.benchmarks.load;
+
+import java.util.Arrays;
+
+/**
+ * Records the latencies of one kind of request made by one thread. Recorders from different threads are merged (with
+ * {@link #add(LatencyRecorder)}) after the run to compute the percentiles, so recording needs no synchronization.
+ *
+ * @author Dave Syer
+ *
+ */
+class LatencyRecorder {
+
+	private long[] latencies = new long[1024];
+
+	private int count;
+
+	private int errors;
+
+	private boolean sorted = true;
+
+	/**
+	 * @param nanos the latency of a successful request
+	 */
+	public void record(long nanos) {
+		if (count == latencies.length) {
+			latencies = Arrays.copyOf(latencies, count * 2);
+		}
+		latencies[count++] = nanos;
+		sorted = false;
+	}
+
+	/**
+	 * Count a failed request (it is not included in the latencies).
+	 */
+	public void error() {
+		errors++;
+	}
+
+	/**
+	 * @param other the latencies recorded by another thread
+	 */
+	public void add(LatencyRecorder other) {
+		if (count + other.count > latencies.length) {
+			latencies = Arrays.copyOf(latencies, count + other.count);
+		}
+		System.arraycopy(other.latencies, 0, latencies, count, other.count);
+		count += other.count;
+		errors += other.errors;
+		sorted = false;
+	}
+
+	public int getCount() {
+		return count;
+	}
+
+	public int getErrors() {
+		return errors;
+	}
+
+	/**
+	 * @param percentile a percentile between 0 and 100
+	 * @return the latency in nanoseconds at that percentile (or 0 if there are no latencies)
+	 */
+	public long getPercentile(double percentile) {
+		if (count == 0) {
+			return 0;
+		}
+		if (!sorted) {
+			Arrays.sort(latencies, 0, count);
+			sorted = true;
+		}
+		int index = (int) Math.ceil(percentile / 100 * count) - 1;
+		return latencies[Math.max(0, Math.min(index, count - 1))];
+	}
+
+}
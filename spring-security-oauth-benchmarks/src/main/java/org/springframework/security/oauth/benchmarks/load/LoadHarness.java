@@ -0,0 +1,336 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth.benchmarks.load;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import javax.servlet.Filter;
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.mock.web.MockServletConfig;
+import org.springframework.mock.web.MockServletContext;
+import org.springframework.security.crypto.codec.Base64;
+import org.springframework.web.context.support.XmlWebApplicationContext;
+import org.springframework.web.servlet.DispatcherServlet;
+
+/**
+ * End-to-end load test for an authorization server and a resource server running in the same JVM (configured like the
+ * sparklr2 sample). Requests go through the real Spring Security filter chain and the dispatcher servlet, using mock
+ * servlet requests instead of a network connection, so the test runs offline and measures the cost of the OAuth2
+ * stack rather than the container.
+ * <p>
+ * Each worker thread is a separate user and sends requests back to back, in a random mix of client credentials
+ * grants, password grants, refresh token grants and calls to a protected resource with its bearer token. After a
+ * warmup period the latency of each request is recorded, and the throughput and the p50, p99 and p99.9 latencies of
+ * each kind of request are reported for each profile (i.e. each combination of token store and token services).
+ * <p>
+ * Configuration is through system properties:
+ * <ul>
+ * <li>profiles: comma separated profiles to test (default "inMemory,jdbc,jwt")</li>
+ * <li>concurrency: the number of worker threads (default 16)</li>
+ * <li>warmup: the warmup period in seconds (default 10)</li>
+ * <li>duration: the measurement period in seconds (default 30)</li>
+ * <li>mix: the relative weights of client_credentials, password, refresh_token and resource requests (default
+ * "20,20,10,50")</li>
+ * </ul>
+ *
+ * @author Dave Syer
+ *
+ */
+public class LoadHarness {
+
+	private static final String CONFIG_LOCATION = "classpath:/org/springframework/security/oauth/benchmarks/load/"
+			+ "load-servlet.xml";
+
+	private static final String CLIENT_CREDENTIALS_CLIENT = basic("my-client-with-secret", "secret");
+
+	private static final String PASSWORD_CLIENT = basic("my-trusted-client", "secret");
+
+	/**
+	 * The kinds of request in the load mix.
+	 */
+	enum Operation {
+		CLIENT_CREDENTIALS, PASSWORD, REFRESH_TOKEN, RESOURCE
+	}
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private final String profile;
+
+	private XmlWebApplicationContext context;
+
+	private DispatcherServlet servlet;
+
+	private Filter filter;
+
+	/**
+	 * @param profile the profile that selects the token store and token services
+	 */
+	public LoadHarness(String profile) {
+		this.profile = profile;
+	}
+
+	/**
+	 * Start the application in a mock servlet context.
+	 *
+	 * @throws ServletException if the dispatcher servlet cannot be started
+	 */
+	public void start() throws ServletException {
+		MockServletContext servletContext = new MockServletContext();
+		context = new XmlWebApplicationContext();
+		context.setConfigLocation(CONFIG_LOCATION);
+		context.getEnvironment().setActiveProfiles(profile);
+		servlet = new DispatcherServlet(context);
+		servlet.init(new MockServletConfig(servletContext, "load"));
+		filter = context.getBean("springSecurityFilterChain", Filter.class);
+	}
+
+	/**
+	 * Stop the application.
+	 */
+	public void stop() {
+		if (servlet != null) {
+			servlet.destroy();
+		}
+		if (context != null) {
+			context.close();
+		}
+	}
+
+	/**
+	 * Run the load test.
+	 *
+	 * @param concurrency the number of worker threads
+	 * @param warmupMillis the time to run before recording latencies
+	 * @param durationMillis the time to record latencies for
+	 * @param mix the relative weights of the operations (in the order they are declared)
+	 * @return the latencies of each operation
+	 * @throws Exception if a worker fails unexpectedly
+	 */
+	public Map<Operation, LatencyRecorder> run(int concurrency, long warmupMillis, long durationMillis, int[] mix)
+			throws Exception {
+		long start = System.currentTimeMillis();
+		long measureFrom = start + warmupMillis;
+		long measureTo = measureFrom + durationMillis;
+		ExecutorService executor = Executors.newFixedThreadPool(concurrency);
+		List<Future<Map<Operation, LatencyRecorder>>> futures;
+		futures = new ArrayList<Future<Map<Operation, LatencyRecorder>>>();
+		try {
+			for (int i = 0; i < concurrency; i++) {
+				futures.add(executor.submit(new Worker(i, measureFrom, measureTo, mix)));
+			}
+			Map<Operation, LatencyRecorder> results = createRecorders();
+			for (Future<Map<Operation, LatencyRecorder>> future : futures) {
+				for (Map.Entry<Operation, LatencyRecorder> entry : future.get().entrySet()) {
+					results.get(entry.getKey()).add(entry.getValue());
+				}
+			}
+			return results;
+		}
+		finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private static Map<Operation, LatencyRecorder> createRecorders() {
+		Map<Operation, LatencyRecorder> recorders = new EnumMap<Operation, LatencyRecorder>(Operation.class);
+		for (Operation operation : Operation.values()) {
+			recorders.put(operation, new LatencyRecorder());
+		}
+		return recorders;
+	}
+
+	private MockHttpServletResponse perform(String method, String path, String authorization, String... parameters)
+			throws Exception {
+		MockHttpServletRequest request = new MockHttpServletRequest(method, path);
+		request.setServletPath(path);
+		request.addHeader("Accept", "application/json");
+		request.addHeader("Authorization", authorization);
+		for (int i = 0; i < parameters.length; i += 2) {
+			request.addParameter(parameters[i], parameters[i + 1]);
+		}
+		MockHttpServletResponse response = new MockHttpServletResponse();
+		filter.doFilter(request, response, new FilterChain() {
+			public void doFilter(ServletRequest request, ServletResponse response) throws IOException,
+					ServletException {
+				servlet.service(request, response);
+			}
+		});
+		return response;
+	}
+
+	private static String basic(String clientId, String secret) {
+		return "Basic " + new String(Base64.encode((clientId + ":" + secret).getBytes()));
+	}
+
+	private class Worker implements Callable<Map<Operation, LatencyRecorder>> {
+
+		private final Map<Operation, LatencyRecorder> recorders = createRecorders();
+
+		private final String username;
+
+		private final Random random;
+
+		private final long measureFrom;
+
+		private final long measureTo;
+
+		private final int[] mix;
+
+		private final int total;
+
+		private String accessToken;
+
+		private String refreshToken;
+
+		public Worker(int index, long measureFrom, long measureTo, int[] mix) {
+			this.username = "user" + index;
+			this.random = new Random(index);
+			this.measureFrom = measureFrom;
+			this.measureTo = measureTo;
+			this.mix = mix;
+			int total = 0;
+			for (int weight : mix) {
+				total += weight;
+			}
+			this.total = total;
+		}
+
+		public Map<Operation, LatencyRecorder> call() throws Exception {
+			if (!execute(Operation.PASSWORD)) {
+				throw new IllegalStateException("Cannot obtain a token for " + username);
+			}
+			long now = System.currentTimeMillis();
+			while (now < measureTo) {
+				Operation operation = next();
+				long start = System.nanoTime();
+				boolean success = execute(operation);
+				long elapsed = System.nanoTime() - start;
+				now = System.currentTimeMillis();
+				if (now >= measureFrom && now < measureTo) {
+					if (success) {
+						recorders.get(operation).record(elapsed);
+					}
+					else {
+						recorders.get(operation).error();
+					}
+				}
+			}
+			return recorders;
+		}
+
+		private Operation next() {
+			int value = random.nextInt(total);
+			for (int i = 0; i < mix.length; i++) {
+				value -= mix[i];
+				if (value < 0) {
+					return Operation.values()[i];
+				}
+			}
+			return Operation.RESOURCE;
+		}
+
+		private boolean execute(Operation operation) throws Exception {
+			MockHttpServletResponse response;
+			switch (operation) {
+			case CLIENT_CREDENTIALS:
+				response = perform("POST", "/oauth/token", CLIENT_CREDENTIALS_CLIENT, "grant_type",
+						"client_credentials");
+				return response.getStatus() == 200;
+			case PASSWORD:
+				response = perform("POST", "/oauth/token", PASSWORD_CLIENT, "grant_type", "password", "username",
+						username, "password", LoadUserDetailsService.PASSWORD);
+				return readTokens(response);
+			case REFRESH_TOKEN:
+				response = perform("POST", "/oauth/token", PASSWORD_CLIENT, "grant_type", "refresh_token",
+						"refresh_token", refreshToken);
+				return readTokens(response);
+			default:
+				response = perform("GET", "/photos", "Bearer " + accessToken);
+				return response.getStatus() == 200;
+			}
+		}
+
+		private boolean readTokens(MockHttpServletResponse response) throws Exception {
+			if (response.getStatus() != 200) {
+				return false;
+			}
+			@SuppressWarnings("unchecked")
+			Map<String, Object> map = objectMapper.readValue(response.getContentAsString(), Map.class);
+			accessToken = (String) map.get("access_token");
+			if (map.containsKey("refresh_token")) {
+				refreshToken = (String) map.get("refresh_token");
+			}
+			return true;
+		}
+
+	}
+
+	public static void main(String[] args) throws Exception {
+		String[] profiles = System.getProperty("profiles", "inMemory,jdbc,jwt").split(",");
+		int concurrency = Integer.getInteger("concurrency", 16);
+		long warmup = Integer.getInteger("warmup", 10) * 1000L;
+		long duration = Integer.getInteger("duration", 30) * 1000L;
+		String[] weights = System.getProperty("mix", "20,20,10,50").split(",");
+		int[] mix = new int[Operation.values().length];
+		for (int i = 0; i < mix.length && i < weights.length; i++) {
+			mix[i] = Integer.parseInt(weights[i].trim());
+		}
+		for (String profile : profiles) {
+			LoadHarness harness = new LoadHarness(profile.trim());
+			try {
+				harness.start();
+				report(profile.trim(), concurrency, duration, harness.run(concurrency, warmup, duration, mix));
+			}
+			finally {
+				harness.stop();
+			}
+		}
+	}
+
+	private static void report(String profile, int concurrency, long duration,
+			Map<Operation, LatencyRecorder> results) {
+		System.out.println();
+		System.out.println(String.format("Profile: %s, concurrency: %d, duration: %ds", profile, concurrency,
+				duration / 1000));
+		System.out.println(String.format("%-20s %10s %8s %10s %10s %10s %10s", "operation", "count", "errors",
+				"ops/s", "p50 (ms)", "p99 (ms)", "p99.9 (ms)"));
+		for (Map.Entry<Operation, LatencyRecorder> entry : results.entrySet()) {
+			LatencyRecorder recorder = entry.getValue();
+			System.out.println(String.format("%-20s %10d %8d %10.1f %10.3f %10.3f %10.3f", entry.getKey().name()
+					.toLowerCase(), recorder.getCount(), recorder.getErrors(), recorder.getCount() * 1000.0
+					/ duration, recorder.getPercentile(50) / 1e6, recorder.getPercentile(99) / 1e6,
+					recorder.getPercentile(99.9) / 1e6));
+		}
+	}
+
+}
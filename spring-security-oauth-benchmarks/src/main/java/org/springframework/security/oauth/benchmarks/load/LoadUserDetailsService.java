@@ -0,0 +1,46 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth.benchmarks.load;
+
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.core.userdetails.UserDetails;
+import org.springframework.security.core.userdetails.UserDetailsService;
+import org.springframework.security.core.userdetails.UsernameNotFoundException;
+
+/**
+ * Users for the load test: any user name that starts with "user" exists, with password {@link #PASSWORD} and role
+ * ROLE_USER, so each load generator thread can have its own user without a long list of users in the configuration.
+ *
+ * @author Dave Syer
+ *
+ */
+public class LoadUserDetailsService implements UserDetailsService {
+
+	/**
+	 * The password of all the users.
+	 */
+	public static final String PASSWORD = "password";
+
+	public UserDetails loadUserByUsername(String username) throws UsernameNotFoundException {
+		if (username == null || !username.startsWith("user")) {
+			throw new UsernameNotFoundException("No such user: " + username);
+		}
+		return new User(username, PASSWORD, AuthorityUtils.createAuthorityList("ROLE_USER"));
+	}
+
+}
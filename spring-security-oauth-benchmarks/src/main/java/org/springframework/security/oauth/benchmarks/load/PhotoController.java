@@ -0,0 +1,41 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth.benchmarks.load;
+
+import java.security.Principal;
+
+import org.springframework.stereotype.Controller;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * A protected resource for the load test, like the photo list in sparklr, but with no backend so that the cost
+ * measured is all in the security layer.
+ *
+ * @author Dave Syer
+ *
+ */
+@Controller
+public class PhotoController {
+
+	@RequestMapping("/photos")
+	@ResponseBody
+	public String photos(Principal principal) {
+		return "{\"photos\":[{\"id\":\"1\",\"name\":\"photo1.jpg\",\"user\":\"" + principal.getName() + "\"}]}";
+	}
+
+}
@@ -0,0 +1,26 @@
+-- Token tables for the JdbcTokenStore benchmarks (HSQL)
+create table oauth_access_token (
+  token_id VARCHAR(256) PRIMARY KEY,
+  token LONGVARBINARY,
+  authentication_id VARCHAR(256),
+  user_name VARCHAR(256),
+  client_id VARCHAR(256),
+  authentication LONGVARBINARY,
+  refresh_token VARCHAR(256),
+  expires_at TIMESTAMP
+);
+
+create unique index oauth_access_token_authentication_id on oauth_access_token (authentication_id);
+create index oauth_access_token_user_name on oauth_access_token (user_name);
+create index oauth_access_token_client_id on oauth_access_token (client_id);
+create index oauth_access_token_refresh_token on oauth_access_token (refresh_token);
+create index oauth_access_token_expires_at on oauth_access_token (expires_at);
+
+create table oauth_refresh_token (
+  token_id VARCHAR(256) PRIMARY KEY,
+  token LONGVARBINARY,
+  authentication LONGVARBINARY,
+  expires_at TIMESTAMP
+);
+
+create index oauth_refresh_token_expires_at on oauth_refresh_token (expires_at);
@@ -0,0 +1,101 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth.provider.token;
+
+import java.security.SecureRandom;
+
+/**
+ * Default {@link TokenValueGenerator} that encodes random bytes from a {@link SecureRandom} as URL-safe base64 (without
+ * padding). The entropy is configurable (the default is 32 bytes, i.e. 43 characters). Each thread has its own random
+ * generator and a buffer of its output, so concurrent callers do not contend for a shared generator.
+ *
+ * @author Dave Syer
+ */
+public class RandomTokenValueGenerator implements TokenValueGenerator {
+
+  private static final char[] URL_SAFE = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+
+  private static final int BUFFER_SIZE = 1024;
+
+  private final ThreadLocal<RandomBuffer> buffers = new ThreadLocal<RandomBuffer>() {
+    @Override
+    protected RandomBuffer initialValue() {
+      return new RandomBuffer();
+    }
+  };
+
+  private final int entropyBytes;
+
+  /**
+   * Create a generator with the default entropy (32 bytes).
+   */
+  public RandomTokenValueGenerator() {
+    this(32);
+  }
+
+  /**
+   * @param entropyBytes the number of random bytes in each value
+   */
+  public RandomTokenValueGenerator(int entropyBytes) {
+    if (entropyBytes <= 0) {
+      throw new IllegalArgumentException("Entropy must be positive");
+    }
+    this.entropyBytes = entropyBytes;
+  }
+
+  public String generate() {
+    RandomBuffer buffer = buffers.get();
+    char[] chars = new char[(entropyBytes * 4 + 2) / 3];
+    int bits = 0;
+    int bitCount = 0;
+    int index = 0;
+    for (int i = 0; i < entropyBytes; i++) {
+      bits = (bits << 8) | buffer.next();
+      bitCount += 8;
+      while (bitCount >= 6) {
+        bitCount -= 6;
+        chars[index++] = URL_SAFE[(bits >>> bitCount) & 0x3f];
+      }
+    }
+    if (bitCount > 0) {
+      chars[index] = URL_SAFE[(bits << (6 - bitCount)) & 0x3f];
+    }
+    return new String(chars);
+  }
+
+  private static class RandomBuffer {
+
+    private final SecureRandom random = new SecureRandom();
+
+    private final byte[] bytes = new byte[BUFFER_SIZE];
+
+    private int position = BUFFER_SIZE;
+
+    public int next() {
+      if (position == BUFFER_SIZE) {
+        random.nextBytes(bytes);
+        position = 0;
+      }
+      int value = bytes[position] & 0xff;
+      // Each byte is only used once
+      bytes[position++] = 0;
+      return value;
+    }
+
+  }
+
+}
@@ -38,6 +38,7 @@ import java.security.SecureRandom;
 public abstract class RandomValueProviderTokenServices implements OAuthProviderTokenServices, InitializingBean, OAuthTokenLifecycleRegistry {
 
   private Random random;
+  private TokenValueGenerator tokenValueGenerator = new RandomTokenValueGenerator();
   private int requestTokenValiditySeconds = 60 * 10; //default 10 minutes.
   private int accessTokenValiditySeconds = 60 * 60 * 12; //default 12 hours.
   private int tokenSecretLengthBytes = 80;
@@ -115,7 +116,7 @@ public abstract class RandomValueProviderTokenServices implements OAuthProviderT
   }
 
   public OAuthProviderToken createUnauthorizedRequestToken(String consumerKey, String callbackUrl) throws AuthenticationException {
-    String tokenValue = UUID.randomUUID().toString();
+    String tokenValue = getTokenValueGenerator().generate();
     byte[] secretBytes = new byte[getTokenSecretLengthBytes()];
     getRandom().nextBytes(secretBytes);
     String secret = new String(Base64.encodeBase64(secretBytes));
@@ -176,7 +177,7 @@ public abstract class RandomValueProviderTokenServices implements OAuthProviderT
       onTokenRemoved(requestTokenImpl);
     }
 
-    String tokenValue = UUID.randomUUID().toString();
+    String tokenValue = getTokenValueGenerator().generate();
     byte[] secretBytes = new byte[getTokenSecretLengthBytes()];
     getRandom().nextBytes(secretBytes);
     String secret = new String(Base64.encodeBase64(secretBytes));
@@ -250,6 +251,24 @@ public abstract class RandomValueProviderTokenServices implements OAuthProviderT
     this.random = random;
   }
 
+  /**
+   * The generator used to create token values.
+   *
+   * @return The generator used to create token values.
+   */
+  public TokenValueGenerator getTokenValueGenerator() {
+    return tokenValueGenerator;
+  }
+
+  /**
+   * The generator used to create token values. Defaults to a {@link RandomTokenValueGenerator}.
+   *
+   * @param tokenValueGenerator The generator used to create token values.
+   */
+  public void setTokenValueGenerator(TokenValueGenerator tokenValueGenerator) {
+    this.tokenValueGenerator = tokenValueGenerator;
+  }
+
   /**
    * The validity (in seconds) of the unauthenticated request token.
    *
@@ -0,0 +1,515 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.common.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+
+/**
+ * {@link TokenSerializer} with a compact, versioned binary format for the token, request and authentication types
+ * provided by this library. Values of any other type (e.g. a custom user principal) are embedded using Java
+ * serialization, so anything that could be stored before can still be stored. Data that was written with plain Java
+ * serialization (e.g. by the {@link DefaultTokenSerializer}) is recognised and can still be read, so existing rows can
+ * be migrated lazily by switching a store to this serializer.
+ *
+ * @author Dave Syer
+ *
+ */
+public class CompactTokenSerializer implements TokenSerializer {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+
+	private static final byte MAGIC_0 = 'O';
+
+	private static final byte MAGIC_1 = '2';
+
+	private static final byte JAVA_MAGIC_0 = (byte) 0xAC;
+
+	private static final byte JAVA_MAGIC_1 = (byte) 0xED;
+
+	/**
+	 * The version of the binary format written by this serializer.
+	 */
+	public static final int VERSION = 1;
+
+	private static final int NULL = 0;
+
+	private static final int STRING = 1;
+
+	private static final int INTEGER = 2;
+
+	private static final int LONG = 3;
+
+	private static final int BOOLEAN = 4;
+
+	private static final int DOUBLE = 5;
+
+	private static final int DATE = 6;
+
+	private static final int ARRAY_LIST = 7;
+
+	private static final int HASH_SET = 8;
+
+	private static final int LINKED_HASH_SET = 9;
+
+	private static final int HASH_MAP = 10;
+
+	private static final int LINKED_HASH_MAP = 11;
+
+	private static final int AUTHORITY = 12;
+
+	private static final int ACCESS_TOKEN = 13;
+
+	private static final int REFRESH_TOKEN = 14;
+
+	private static final int EXPIRING_REFRESH_TOKEN = 15;
+
+	private static final int OAUTH2_REQUEST = 16;
+
+	private static final int OAUTH2_AUTHENTICATION = 17;
+
+	private static final int USERNAME_PASSWORD_AUTHENTICATION = 18;
+
+	private static final int SERIALIZED = 127;
+
+	public byte[] serialize(Object object) {
+		try {
+			ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+			DataOutputStream out = new DataOutputStream(bytes);
+			out.writeByte(MAGIC_0);
+			out.writeByte(MAGIC_1);
+			out.writeByte(VERSION);
+			writeValue(out, object);
+			out.flush();
+			return bytes.toByteArray();
+		}
+		catch (IOException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	public <T> T deserialize(byte[] bytes) {
+		if (bytes == null) {
+			return null;
+		}
+		if (bytes.length >= 2 && bytes[0] == JAVA_MAGIC_0 && bytes[1] == JAVA_MAGIC_1) {
+			// Legacy data written with plain Java serialization
+			return SerializationUtils.<T> deserialize(bytes);
+		}
+		if (bytes.length < 3 || bytes[0] != MAGIC_0 || bytes[1] != MAGIC_1) {
+			throw new IllegalArgumentException("Unrecognized serialized token format");
+		}
+		if (bytes[2] > VERSION) {
+			throw new IllegalArgumentException("Unsupported serialized token format version: " + bytes[2]);
+		}
+		try {
+			DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes, 3, bytes.length - 3));
+			@SuppressWarnings("unchecked")
+			T result = (T) readValue(in);
+			return result;
+		}
+		catch (IOException e) {
+			throw new IllegalArgumentException(e);
+		}
+		catch (ClassCastException e) {
+			throw new IllegalArgumentException(e);
+		}
+	}
+
+	private void writeValue(DataOutputStream out, Object value) throws IOException {
+		if (value == null) {
+			out.writeByte(NULL);
+			return;
+		}
+		Class<?> type = value.getClass();
+		if (type == String.class) {
+			out.writeByte(STRING);
+			writeString(out, (String) value);
+		}
+		else if (type == Integer.class) {
+			out.writeByte(INTEGER);
+			out.writeInt((Integer) value);
+		}
+		else if (type == Long.class) {
+			out.writeByte(LONG);
+			out.writeLong((Long) value);
+		}
+		else if (type == Boolean.class) {
+			out.writeByte(BOOLEAN);
+			out.writeBoolean((Boolean) value);
+		}
+		else if (type == Double.class) {
+			out.writeByte(DOUBLE);
+			out.writeDouble((Double) value);
+		}
+		else if (type == Date.class) {
+			out.writeByte(DATE);
+			out.writeLong(((Date) value).getTime());
+		}
+		else if (type == ArrayList.class) {
+			out.writeByte(ARRAY_LIST);
+			writeCollection(out, (Collection<?>) value);
+		}
+		else if (type == HashSet.class) {
+			out.writeByte(HASH_SET);
+			writeCollection(out, (Collection<?>) value);
+		}
+		else if (type == LinkedHashSet.class) {
+			out.writeByte(LINKED_HASH_SET);
+			writeCollection(out, (Collection<?>) value);
+		}
+		else if (type == HashMap.class) {
+			out.writeByte(HASH_MAP);
+			writeMap(out, (Map<?, ?>) value);
+		}
+		else if (type == LinkedHashMap.class) {
+			out.writeByte(LINKED_HASH_MAP);
+			writeMap(out, (Map<?, ?>) value);
+		}
+		else if (type == SimpleGrantedAuthority.class) {
+			out.writeByte(AUTHORITY);
+			writeString(out, ((GrantedAuthority) value).getAuthority());
+		}
+		else if (type == DefaultOAuth2AccessToken.class) {
+			out.writeByte(ACCESS_TOKEN);
+			writeAccessToken(out, (DefaultOAuth2AccessToken) value);
+		}
+		else if (type == DefaultOAuth2RefreshToken.class) {
+			out.writeByte(REFRESH_TOKEN);
+			writeString(out, ((DefaultOAuth2RefreshToken) value).getValue());
+		}
+		else if (type == DefaultExpiringOAuth2RefreshToken.class) {
+			DefaultExpiringOAuth2RefreshToken token = (DefaultExpiringOAuth2RefreshToken) value;
+			out.writeByte(EXPIRING_REFRESH_TOKEN);
+			writeString(out, token.getValue());
+			writeDate(out, token.getExpiration());
+		}
+		else if (type == OAuth2Request.class) {
+			out.writeByte(OAUTH2_REQUEST);
+			writeRequest(out, (OAuth2Request) value);
+		}
+		else if (type == OAuth2Authentication.class) {
+			OAuth2Authentication authentication = (OAuth2Authentication) value;
+			out.writeByte(OAUTH2_AUTHENTICATION);
+			writeValue(out, authentication.getOAuth2Request());
+			writeValue(out, authentication.getUserAuthentication());
+			writeValue(out, authentication.getDetails());
+		}
+		else if (type == UsernamePasswordAuthenticationToken.class) {
+			Authentication authentication = (Authentication) value;
+			out.writeByte(USERNAME_PASSWORD_AUTHENTICATION);
+			writeValue(out, authentication.getPrincipal());
+			writeValue(out, authentication.getCredentials());
+			writeCollection(out, authentication.getAuthorities());
+			out.writeBoolean(authentication.isAuthenticated());
+			writeValue(out, authentication.getDetails());
+		}
+		else if (value instanceof Serializable) {
+			byte[] bytes = SerializationUtils.serialize(value);
+			out.writeByte(SERIALIZED);
+			writeLength(out, bytes.length);
+			out.write(bytes);
+		}
+		else {
+			throw new IllegalArgumentException("Cannot serialize value of type " + type.getName());
+		}
+	}
+
+	private Object readValue(DataInputStream in) throws IOException {
+		int tag = in.readUnsignedByte();
+		switch (tag) {
+		case NULL:
+			return null;
+		case STRING:
+			return readString(in);
+		case INTEGER:
+			return in.readInt();
+		case LONG:
+			return in.readLong();
+		case BOOLEAN:
+			return in.readBoolean();
+		case DOUBLE:
+			return in.readDouble();
+		case DATE:
+			return new Date(in.readLong());
+		case ARRAY_LIST:
+			return readCollection(in, new ArrayList<Object>());
+		case HASH_SET:
+			return readCollection(in, new HashSet<Object>());
+		case LINKED_HASH_SET:
+			return readCollection(in, new LinkedHashSet<Object>());
+		case HASH_MAP:
+			return readMap(in, new HashMap<Object, Object>());
+		case LINKED_HASH_MAP:
+			return readMap(in, new LinkedHashMap<Object, Object>());
+		case AUTHORITY:
+			return new SimpleGrantedAuthority(readString(in));
+		case ACCESS_TOKEN:
+			return readAccessToken(in);
+		case REFRESH_TOKEN:
+			return new DefaultOAuth2RefreshToken(readString(in));
+		case EXPIRING_REFRESH_TOKEN:
+			return new DefaultExpiringOAuth2RefreshToken(readString(in), readDate(in));
+		case OAUTH2_REQUEST:
+			return readRequest(in);
+		case OAUTH2_AUTHENTICATION:
+			return readAuthentication(in);
+		case USERNAME_PASSWORD_AUTHENTICATION:
+			return readUsernamePasswordAuthentication(in);
+		case SERIALIZED:
+			byte[] bytes = new byte[readLength(in)];
+			in.readFully(bytes);
+			return SerializationUtils.deserialize(bytes);
+		default:
+			throw new IllegalArgumentException("Unrecognized type tag in serialized token: " + tag);
+		}
+	}
+
+	private void writeAccessToken(DataOutputStream out, DefaultOAuth2AccessToken token) throws IOException {
+		writeString(out, token.getValue());
+		writeDate(out, token.getExpiration());
+		writeString(out, token.getTokenType());
+		writeValue(out, token.getRefreshToken());
+		writeStrings(out, token.getScope());
+		writeMap(out, token.getAdditionalInformation());
+	}
+
+	private DefaultOAuth2AccessToken readAccessToken(DataInputStream in) throws IOException {
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(readString(in));
+		token.setExpiration(readDate(in));
+		token.setTokenType(readString(in));
+		token.setRefreshToken((OAuth2RefreshToken) readValue(in));
+		token.setScope(readStrings(in));
+		Map<String, Object> additionalInformation = readMap(in, new LinkedHashMap<String, Object>());
+		if (additionalInformation != null) {
+			token.setAdditionalInformation(additionalInformation);
+		}
+		return token;
+	}
+
+	private void writeRequest(DataOutputStream out, OAuth2Request request) throws IOException {
+		writeMap(out, request.getRequestParameters());
+		writeString(out, request.getClientId());
+		writeCollection(out, request.getAuthorities());
+		out.writeBoolean(request.isApproved());
+		writeStrings(out, request.getScope());
+		writeStrings(out, request.getResourceIds());
+		writeString(out, request.getRedirectUri());
+		writeStrings(out, request.getResponseTypes());
+		writeMap(out, request.getExtensions());
+	}
+
+	private OAuth2Request readRequest(DataInputStream in) throws IOException {
+		Map<String, String> requestParameters = readMap(in, new HashMap<String, String>());
+		String clientId = readString(in);
+		Collection<GrantedAuthority> authorities = readCollection(in, new ArrayList<GrantedAuthority>());
+		boolean approved = in.readBoolean();
+		Set<String> scope = readStrings(in);
+		Set<String> resourceIds = readStrings(in);
+		String redirectUri = readString(in);
+		Set<String> responseTypes = readStrings(in);
+		Map<String, Serializable> extensions = readMap(in, new HashMap<String, Serializable>());
+		return new OAuth2Request(requestParameters, clientId, authorities, approved, scope, resourceIds, redirectUri,
+				responseTypes, extensions);
+	}
+
+	private OAuth2Authentication readAuthentication(DataInputStream in) throws IOException {
+		OAuth2Request request = (OAuth2Request) readValue(in);
+		Authentication userAuthentication = (Authentication) readValue(in);
+		Object details = readValue(in);
+		OAuth2Authentication authentication = new OAuth2Authentication(request, userAuthentication);
+		if (details != null) {
+			authentication.setDetails(details);
+		}
+		return authentication;
+	}
+
+	private UsernamePasswordAuthenticationToken readUsernamePasswordAuthentication(DataInputStream in)
+			throws IOException {
+		Object principal = readValue(in);
+		Object credentials = readValue(in);
+		Collection<GrantedAuthority> authorities = readCollection(in, new ArrayList<GrantedAuthority>());
+		boolean authenticated = in.readBoolean();
+		Object details = readValue(in);
+		UsernamePasswordAuthenticationToken authentication;
+		if (authenticated || (authorities != null && !authorities.isEmpty())) {
+			authentication = new UsernamePasswordAuthenticationToken(principal, credentials, authorities);
+			if (!authenticated) {
+				authentication.setAuthenticated(false);
+			}
+		}
+		else {
+			authentication = new UsernamePasswordAuthenticationToken(principal, credentials);
+		}
+		if (details != null) {
+			authentication.setDetails(details);
+		}
+		return authentication;
+	}
+
+	private void writeCollection(DataOutputStream out, Collection<?> values) throws IOException {
+		if (values == null) {
+			writeLength(out, -1);
+			return;
+		}
+		writeLength(out, values.size());
+		for (Object value : values) {
+			writeValue(out, value);
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private <T> Collection<T> readCollection(DataInputStream in, Collection<T> values) throws IOException {
+		int size = readLength(in);
+		if (size < 0) {
+			return null;
+		}
+		for (int i = 0; i < size; i++) {
+			values.add((T) readValue(in));
+		}
+		return values;
+	}
+
+	private void writeMap(DataOutputStream out, Map<?, ?> values) throws IOException {
+		if (values == null) {
+			writeLength(out, -1);
+			return;
+		}
+		writeLength(out, values.size());
+		for (Map.Entry<?, ?> entry : values.entrySet()) {
+			writeValue(out, entry.getKey());
+			writeValue(out, entry.getValue());
+		}
+	}
+
+	@SuppressWarnings("unchecked")
+	private <K, V> Map<K, V> readMap(DataInputStream in, Map<K, V> values) throws IOException {
+		int size = readLength(in);
+		if (size < 0) {
+			return null;
+		}
+		for (int i = 0; i < size; i++) {
+			K key = (K) readValue(in);
+			values.put(key, (V) readValue(in));
+		}
+		return values;
+	}
+
+	private void writeStrings(DataOutputStream out, Collection<String> values) throws IOException {
+		if (values == null) {
+			writeLength(out, -1);
+			return;
+		}
+		writeLength(out, values.size());
+		for (String value : values) {
+			writeString(out, value);
+		}
+	}
+
+	private Set<String> readStrings(DataInputStream in) throws IOException {
+		int size = readLength(in);
+		if (size < 0) {
+			return null;
+		}
+		Set<String> values = new LinkedHashSet<String>(size * 2);
+		for (int i = 0; i < size; i++) {
+			values.add(readString(in));
+		}
+		return values;
+	}
+
+	private void writeDate(DataOutputStream out, Date value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeLong(value.getTime());
+		}
+	}
+
+	private Date readDate(DataInputStream in) throws IOException {
+		return in.readBoolean() ? new Date(in.readLong()) : null;
+	}
+
+	private void writeString(DataOutputStream out, String value) throws IOException {
+		if (value == null) {
+			writeLength(out, -1);
+			return;
+		}
+		byte[] bytes = value.getBytes(UTF8);
+		writeLength(out, bytes.length);
+		out.write(bytes);
+	}
+
+	private String readString(DataInputStream in) throws IOException {
+		int length = readLength(in);
+		if (length < 0) {
+			return null;
+		}
+		byte[] bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, UTF8);
+	}
+
+	/**
+	 * Lengths are written as variable length integers, offset by one so that -1 (null) fits in a single byte.
+	 */
+	private void writeLength(DataOutputStream out, int length) throws IOException {
+		int value = length + 1;
+		while ((value & ~0x7F) != 0) {
+			out.writeByte((value & 0x7F) | 0x80);
+			value >>>= 7;
+		}
+		out.writeByte(value);
+	}
+
+	private int readLength(DataInputStream in) throws IOException {
+		int value = 0;
+		for (int shift = 0; shift < 32; shift += 7) {
+			int b = in.readUnsignedByte();
+			value |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0) {
+				return value - 1;
+			}
+		}
+		throw new IllegalArgumentException("Malformed length in serialized token");
+	}
+
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.common.util;
+
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+
+import org.springframework.util.Assert;
+
+/**
+ * Default {@link TokenValueGenerator} that encodes random bytes from a {@link SecureRandom} as URL-safe base64 (without
+ * padding), so the values can be used in query parameters and headers without escaping. The entropy is configurable
+ * (the default is 32 bytes, i.e. 256 bits and 43 characters).
+ * <p>
+ * Each thread has its own random generator and a buffer of its output, so threads do not contend with each other for
+ * a shared generator, and the (possibly synchronized) source of randomness is only consulted once per buffer.
+ *
+ * @author Dave Syer
+ *
+ */
+public class DefaultTokenValueGenerator implements TokenValueGenerator {
+
+	private static final char[] URL_SAFE = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_"
+			.toCharArray();
+
+	private static final int DEFAULT_ENTROPY_BYTES = 32;
+
+	private static final int BUFFER_SIZE = 1024;
+
+	private final ThreadLocal<RandomBuffer> buffers = new ThreadLocal<RandomBuffer>() {
+		@Override
+		protected RandomBuffer initialValue() {
+			return new RandomBuffer(createRandom());
+		}
+	};
+
+	private final int entropyBytes;
+
+	private String algorithm;
+
+	/**
+	 * Create a generator with the default entropy (32 bytes).
+	 */
+	public DefaultTokenValueGenerator() {
+		this(DEFAULT_ENTROPY_BYTES);
+	}
+
+	/**
+	 * @param entropyBytes the number of random bytes in each value (16 or more is recommended)
+	 */
+	public DefaultTokenValueGenerator(int entropyBytes) {
+		Assert.isTrue(entropyBytes > 0, "Entropy must be positive");
+		this.entropyBytes = entropyBytes;
+	}
+
+	/**
+	 * The algorithm for the per-thread {@link SecureRandom} instances (e.g. "SHA1PRNG"). Defaults to the platform
+	 * default. Must be set before the first value is generated.
+	 *
+	 * @param algorithm the algorithm to set
+	 */
+	public void setAlgorithm(String algorithm) {
+		this.algorithm = algorithm;
+	}
+
+	public String generate() {
+		RandomBuffer buffer = buffers.get();
+		char[] chars = new char[(entropyBytes * 4 + 2) / 3];
+		int index = 0;
+		int remaining = entropyBytes;
+		while (remaining >= 3) {
+			int bits = (buffer.next() << 16) | (buffer.next() << 8) | buffer.next();
+			chars[index++] = URL_SAFE[(bits >>> 18) & 0x3f];
+			chars[index++] = URL_SAFE[(bits >>> 12) & 0x3f];
+			chars[index++] = URL_SAFE[(bits >>> 6) & 0x3f];
+			chars[index++] = URL_SAFE[bits & 0x3f];
+			remaining -= 3;
+		}
+		if (remaining == 2) {
+			int bits = (buffer.next() << 8) | buffer.next();
+			chars[index++] = URL_SAFE[(bits >>> 10) & 0x3f];
+			chars[index++] = URL_SAFE[(bits >>> 4) & 0x3f];
+			chars[index++] = URL_SAFE[(bits << 2) & 0x3f];
+		}
+		else if (remaining == 1) {
+			int bits = buffer.next();
+			chars[index++] = URL_SAFE[(bits >>> 2) & 0x3f];
+			chars[index++] = URL_SAFE[(bits << 4) & 0x3f];
+		}
+		return new String(chars);
+	}
+
+	private SecureRandom createRandom() {
+		if (algorithm == null) {
+			return new SecureRandom();
+		}
+		try {
+			return SecureRandom.getInstance(algorithm);
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("Cannot create secure random with algorithm: " + algorithm, e);
+		}
+	}
+
+	private static class RandomBuffer {
+
+		private final SecureRandom random;
+
+		private final byte[] bytes = new byte[BUFFER_SIZE];
+
+		private int position = BUFFER_SIZE;
+
+		public RandomBuffer(SecureRandom random) {
+			this.random = random;
+		}
+
+		public int next() {
+			if (position == BUFFER_SIZE) {
+				random.nextBytes(bytes);
+				position = 0;
+			}
+			int value = bytes[position] & 0xff;
+			// Each byte is only used once
+			bytes[position++] = 0;
+			return value;
+		}
+
+	}
+
+}
@@ -0,0 +1,279 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.common.util;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.util.Assert;
+
+/**
+ * A simple bounded cache where every entry has its own expiry time. The cache is split into segments (by key hash),
+ * each of which is a small LRU map with its own lock, so there is no global lock and the least recently used entries
+ * are evicted when a segment is full. Expired entries are evicted when they are next accessed, or in bulk by
+ * {@link #purgeExpired()}.
+ *
+ * @author Dave Syer
+ *
+ * @param <K> the key type
+ * @param <V> the value type
+ */
+public class ExpiringCache<K, V> {
+
+	private static final int DEFAULT_CONCURRENCY_LEVEL = 16;
+
+	private final Segment<K, V>[] segments;
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private final AtomicLong evictions = new AtomicLong();
+
+	/**
+	 * @param maximumSize the maximum number of entries in the cache
+	 */
+	public ExpiringCache(int maximumSize) {
+		this(maximumSize, DEFAULT_CONCURRENCY_LEVEL);
+	}
+
+	/**
+	 * @param maximumSize the maximum number of entries in the cache
+	 * @param concurrencyLevel the number of independently locked segments
+	 */
+	@SuppressWarnings("unchecked")
+	public ExpiringCache(int maximumSize, int concurrencyLevel) {
+		Assert.isTrue(maximumSize > 0, "Maximum size must be positive");
+		Assert.isTrue(concurrencyLevel > 0, "Concurrency level must be positive");
+		int count = Math.min(concurrencyLevel, maximumSize);
+		segments = new Segment[count];
+		for (int i = 0; i < count; i++) {
+			// Spread the remainder so the total capacity is exactly the maximum size
+			segments[i] = new Segment<K, V>(this, maximumSize / count + (i < maximumSize % count ? 1 : 0));
+		}
+	}
+
+	/**
+	 * @param key the key to look up
+	 * @return the value stored under the key or null if there is none or it has expired
+	 */
+	public V get(K key) {
+		Segment<K, V> segment = segmentFor(key);
+		Entry<V> entry;
+		synchronized (segment) {
+			entry = segment.get(key);
+			if (entry != null && entry.isExpired(System.currentTimeMillis())) {
+				segment.remove(key);
+			}
+			else if (entry != null) {
+				hits.incrementAndGet();
+				return entry.value;
+			}
+		}
+		if (entry != null) {
+			evicted(key, entry.value);
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Add an entry to the cache, replacing any existing value for the same key. Entries that have already expired are
+	 * not added.
+	 *
+	 * @param key the key
+	 * @param value the value
+	 * @param expiresAt the time (in milliseconds since the epoch) when the entry should expire
+	 * @return true if the entry was added (false if it had already expired)
+	 */
+	public boolean put(K key, V value, long expiresAt) {
+		if (expiresAt <= System.currentTimeMillis()) {
+			return false;
+		}
+		Segment<K, V> segment = segmentFor(key);
+		Entry<V> old;
+		synchronized (segment) {
+			old = segment.put(key, new Entry<V>(value, expiresAt));
+		}
+		if (old != null && old.value != value) {
+			onRemoval(key, old.value);
+		}
+		return true;
+	}
+
+	/**
+	 * @param key the key to remove
+	 * @return the value that was removed (or null if there was none)
+	 */
+	public V remove(K key) {
+		Segment<K, V> segment = segmentFor(key);
+		Entry<V> old;
+		synchronized (segment) {
+			old = segment.remove(key);
+		}
+		if (old == null) {
+			return null;
+		}
+		onRemoval(key, old.value);
+		return old.value;
+	}
+
+	/**
+	 * Remove all entries.
+	 */
+	public void clear() {
+		for (Segment<K, V> segment : segments) {
+			Map<K, Entry<V>> removed;
+			synchronized (segment) {
+				removed = new LinkedHashMap<K, Entry<V>>(segment);
+				segment.clear();
+			}
+			for (Map.Entry<K, Entry<V>> entry : removed.entrySet()) {
+				onRemoval(entry.getKey(), entry.getValue().value);
+			}
+		}
+	}
+
+	/**
+	 * Evict all the expired entries. Each segment is only locked while it is being purged.
+	 *
+	 * @return the number of entries evicted
+	 */
+	public int purgeExpired() {
+		int count = 0;
+		long now = System.currentTimeMillis();
+		for (Segment<K, V> segment : segments) {
+			Map<K, V> removed = new LinkedHashMap<K, V>();
+			synchronized (segment) {
+				for (Iterator<Map.Entry<K, Entry<V>>> iterator = segment.entrySet().iterator(); iterator.hasNext();) {
+					Map.Entry<K, Entry<V>> entry = iterator.next();
+					if (entry.getValue().isExpired(now)) {
+						removed.put(entry.getKey(), entry.getValue().value);
+						iterator.remove();
+					}
+				}
+			}
+			for (Map.Entry<K, V> entry : removed.entrySet()) {
+				evicted(entry.getKey(), entry.getValue());
+			}
+			count += removed.size();
+		}
+		return count;
+	}
+
+	/**
+	 * @return the number of entries in the cache (including any that have expired but not yet been evicted)
+	 */
+	public int size() {
+		int size = 0;
+		for (Segment<K, V> segment : segments) {
+			synchronized (segment) {
+				size += segment.size();
+			}
+		}
+		return size;
+	}
+
+	/**
+	 * @return the number of successful lookups
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of lookups that did not find a value
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * @return the number of entries evicted because they expired or the cache was full
+	 */
+	public long getEvictionCount() {
+		return evictions.get();
+	}
+
+	/**
+	 * Callback for subclasses that need to know when an entry leaves the cache (for whatever reason). Called outside
+	 * the segment lock except when an entry is evicted to make room for a new one.
+	 *
+	 * @param key the key that was removed
+	 * @param value the value that was removed
+	 */
+	protected void onRemoval(K key, V value) {
+	}
+
+	private void evicted(K key, V value) {
+		evictions.incrementAndGet();
+		onRemoval(key, value);
+	}
+
+	private Segment<K, V> segmentFor(Object key) {
+		int hash = key.hashCode();
+		// Spread the bits so that keys with similar hash codes land in different segments
+		hash ^= (hash >>> 20) ^ (hash >>> 12);
+		hash ^= (hash >>> 7) ^ (hash >>> 4);
+		return segments[(hash & 0x7fffffff) % segments.length];
+	}
+
+	private static class Entry<V> {
+
+		private final V value;
+
+		private final long expiresAt;
+
+		public Entry(V value, long expiresAt) {
+			this.value = value;
+			this.expiresAt = expiresAt;
+		}
+
+		public boolean isExpired(long now) {
+			return expiresAt <= now;
+		}
+
+	}
+
+	private static class Segment<K, V> extends LinkedHashMap<K, Entry<V>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final ExpiringCache<K, V> cache;
+
+		private final int capacity;
+
+		public Segment(ExpiringCache<K, V> cache, int capacity) {
+			super(16, 0.75f, true);
+			this.cache = cache;
+			this.capacity = capacity;
+		}
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+			if (size() > capacity) {
+				cache.evicted(eldest.getKey(), eldest.getValue().value);
+				return true;
+			}
+			return false;
+		}
+
+	}
+
+}
@@ -4,17 +4,31 @@ import java.security.SecureRandom;
 import java.util.Random;
 
 /**
- * Utility that generates a random-value ASCII string.
+ * Utility that generates a random-value ASCII string. Unless a {@link #setRandom(Random) random} is provided each
+ * thread uses its own {@link SecureRandom}, so concurrent callers do not contend for it.
  * 
  * @author Ryan Heaton
  * @author Dave Syer
  */
-public class RandomValueStringGenerator {
+public class RandomValueStringGenerator implements TokenValueGenerator {
 
 	private static final char[] DEFAULT_CODEC = "1234567890ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz"
 			.toCharArray();
 
-	private Random random = new SecureRandom();
+	/**
+	 * Random bytes at or above this value are discarded, so that the remaining ones are spread evenly over the codec
+	 * (it is the largest multiple of the codec length that fits in a byte).
+	 */
+	private static final int UNBIASED_LIMIT = 256 - 256 % DEFAULT_CODEC.length;
+
+	private static final ThreadLocal<Random> randoms = new ThreadLocal<Random>() {
+		@Override
+		protected Random initialValue() {
+			return new SecureRandom();
+		}
+	};
+
+	private Random random;
 
 	private int length;
 
@@ -35,15 +49,26 @@ public class RandomValueStringGenerator {
 	}
 
 	public String generate() {
+		Random random = this.random != null ? this.random : randoms.get();
 		byte[] verifierBytes = new byte[length];
-		random.nextBytes(verifierBytes);
+		byte[] randomBytes = new byte[length];
+		int count = 0;
+		while (count < length) {
+			random.nextBytes(randomBytes);
+			for (int i = 0; i < randomBytes.length && count < length; i++) {
+				if ((randomBytes[i] & 0xFF) < UNBIASED_LIMIT) {
+					verifierBytes[count++] = randomBytes[i];
+				}
+			}
+		}
 		return getAuthorizationCodeString(verifierBytes);
 	}
 
 	/**
 	 * Convert these random bytes to a verifier string. The length of the byte array can be
 	 * {@link #setLength(int) configured}. The default implementation mods the bytes to fit into the
-	 * ASCII letters 1-9, A-Z, a-z .
+	 * ASCII letters 1-9, A-Z, a-z (the bytes passed in by {@link #generate()} are chosen so that the result is
+	 * unbiased).
 	 * 
 	 * @param verifierBytes The bytes.
 	 * @return The string.
@@ -57,7 +82,8 @@ public class RandomValueStringGenerator {
 	}
 
 	/**
-	 * The random value generator used to create token secrets.
+	 * The random value generator used to create token secrets. Optional: if it is not set each thread uses its own
+	 * {@link SecureRandom}.
 	 * 
 	 * @param random The random value generator used to create token secrets.
 	 */
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.common.util;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+
+/**
+ * Coalesces concurrent calls with the same key, so that only one of them does the work and the others wait for it and
+ * share its result (or its exception). Only calls that are in flight are remembered: an entry is removed as soon as
+ * its call completes, so the memory used is bounded by the number of concurrent callers and there is no global lock.
+ * A call that starts after another with the same key has finished does the work again.
+ *
+ * @author Dave Syer
+ *
+ * @param <K> the key type
+ * @param <V> the result type
+ */
+public class RequestCoalescer<K, V> {
+
+	private final ConcurrentMap<K, FutureTask<V>> calls = new ConcurrentHashMap<K, FutureTask<V>>();
+
+	/**
+	 * Execute the callback, unless there is already a call in progress with the same key, in which case wait for that
+	 * one and return its result. Runtime exceptions and errors are re-thrown to every caller unchanged.
+	 *
+	 * @param key the key identifying equivalent calls
+	 * @param callback the work to do
+	 * @return the result of the callback (from this thread or another one)
+	 */
+	public V execute(K key, Callable<V> callback) {
+		FutureTask<V> task = new FutureTask<V>(callback);
+		FutureTask<V> existing = calls.putIfAbsent(key, task);
+		if (existing == null) {
+			try {
+				task.run();
+			}
+			finally {
+				calls.remove(key, task);
+			}
+		}
+		else {
+			task = existing;
+		}
+		return getResult(task);
+	}
+
+	/**
+	 * @return the number of calls in progress
+	 */
+	public int getSize() {
+		return calls.size();
+	}
+
+	private V getResult(FutureTask<V> task) {
+		boolean interrupted = false;
+		try {
+			while (true) {
+				try {
+					return task.get();
+				}
+				catch (InterruptedException e) {
+					// The result is on its way, so wait for it and restore the interrupt afterwards
+					interrupted = true;
+				}
+				catch (ExecutionException e) {
+					Throwable cause = e.getCause();
+					if (cause instanceof RuntimeException) {
+						throw (RuntimeException) cause;
+					}
+					if (cause instanceof Error) {
+						throw (Error) cause;
+					}
+					throw new IllegalStateException("Unexpected checked exception", cause);
+				}
+			}
+		}
+		finally {
+			if (interrupted) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+}
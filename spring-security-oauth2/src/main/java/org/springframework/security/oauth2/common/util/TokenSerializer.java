@@ -0,0 +1,42 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.common.util;
+
+/**
+ * Strategy for converting tokens and authentications to and from the binary form that is persisted by the JDBC backed
+ * token and code stores.
+ *
+ * @author Dave Syer
+ *
+ */
+public interface TokenSerializer {
+
+	/**
+	 * @param object the object to serialize (a token, an authentication or a request)
+	 * @return the serialized form of the object
+	 * @throws IllegalArgumentException if the object cannot be serialized
+	 */
+	byte[] serialize(Object object);
+
+	/**
+	 * @param bytes a serialized object as produced by {@link #serialize(Object)}
+	 * @return the deserialized object
+	 * @throws IllegalArgumentException if the bytes cannot be deserialized
+	 */
+	<T> T deserialize(byte[] bytes);
+
+}
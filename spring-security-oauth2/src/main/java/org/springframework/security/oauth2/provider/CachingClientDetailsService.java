@@ -0,0 +1,222 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.provider;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.security.oauth2.common.util.ExpiringCache;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link ClientDetailsService} that caches the clients loaded from another one (e.g. a
+ * {@link JdbcClientDetailsService}), so that the several lookups made for each token grant do not all go to the
+ * backend. The cache is bounded by a maximum number of entries and each entry is only kept for the
+ * {@link #setTimeToLiveSeconds(int) time to live}. Unknown clients are not cached.
+ * <p>
+ * If the delegate is also a {@link ClientRegistrationService}, then registration calls are passed through and the
+ * cached copy of the client they affect is removed immediately. Changes made directly to the backend (e.g. by another
+ * server in a cluster) are only seen when the time to live is over.
+ * <p>
+ * The cached {@link ClientDetails} instances are shared between callers, so they should not be modified.
+ * 
+ * @author Dave Syer
+ * 
+ */
+public class CachingClientDetailsService implements ClientDetailsService, ClientRegistrationService,
+		InitializingBean {
+
+	private static final int DEFAULT_MAXIMUM_SIZE = 1000;
+
+	private final ClientDetailsService delegate;
+
+	private final ExpiringCache<String, ClientDetails> cache;
+
+	/**
+	 * Incremented on every invalidation, so that a client read from the backend concurrently with a change is not
+	 * cached.
+	 */
+	private final AtomicLong invalidations = new AtomicLong();
+
+	private int timeToLiveSeconds = 60;
+
+	private boolean preload = false;
+
+	/**
+	 * @param delegate the client details service to read from
+	 */
+	public CachingClientDetailsService(ClientDetailsService delegate) {
+		this(delegate, DEFAULT_MAXIMUM_SIZE);
+	}
+
+	/**
+	 * @param delegate the client details service to read from
+	 * @param maximumSize the maximum number of clients to cache
+	 */
+	public CachingClientDetailsService(ClientDetailsService delegate, int maximumSize) {
+		Assert.notNull(delegate, "A delegate ClientDetailsService is required");
+		this.delegate = delegate;
+		this.cache = new ExpiringCache<String, ClientDetails>(maximumSize);
+	}
+
+	/**
+	 * The time in seconds that a client is cached for. Zero or negative to cache clients until they are changed
+	 * through this service (or evicted to make room for others). Default 60.
+	 * 
+	 * @param timeToLiveSeconds the time to live to set
+	 */
+	public void setTimeToLiveSeconds(int timeToLiveSeconds) {
+		this.timeToLiveSeconds = timeToLiveSeconds;
+	}
+
+	/**
+	 * Flag to say that all the clients should be loaded into the cache on startup (using
+	 * {@link ClientRegistrationService#listClientDetails()}, so the delegate has to implement that). Default false.
+	 * 
+	 * @param preload the flag value to set
+	 */
+	public void setPreload(boolean preload) {
+		this.preload = preload;
+	}
+
+	/**
+	 * @return the number of lookups served from the cache
+	 */
+	public long getHitCount() {
+		return cache.getHitCount();
+	}
+
+	/**
+	 * @return the number of lookups that went to the delegate
+	 */
+	public long getMissCount() {
+		return cache.getMissCount();
+	}
+
+	/**
+	 * @return the number of cached clients
+	 */
+	public int getCacheSize() {
+		return cache.size();
+	}
+
+	/**
+	 * Remove all cached clients (the delegate is not affected).
+	 */
+	public void clearCache() {
+		invalidations.incrementAndGet();
+		cache.clear();
+	}
+
+	public void afterPropertiesSet() throws Exception {
+		if (preload) {
+			preload();
+		}
+	}
+
+	/**
+	 * Load all the clients from the delegate into the cache.
+	 * 
+	 * @return the number of clients loaded
+	 */
+	public int preload() {
+		long generation = invalidations.get();
+		List<ClientDetails> clients = getRegistrationService().listClientDetails();
+		for (ClientDetails client : clients) {
+			cache(generation, client.getClientId(), client);
+		}
+		return clients.size();
+	}
+
+	public ClientDetails loadClientByClientId(String clientId) throws ClientRegistrationException {
+		ClientDetails client = cache.get(clientId);
+		if (client != null) {
+			return client;
+		}
+		long generation = invalidations.get();
+		client = delegate.loadClientByClientId(clientId);
+		if (client != null) {
+			cache(generation, clientId, client);
+		}
+		return client;
+	}
+
+	public void addClientDetails(ClientDetails clientDetails) throws ClientAlreadyExistsException {
+		getRegistrationService().addClientDetails(clientDetails);
+		invalidate(clientDetails.getClientId());
+	}
+
+	public void updateClientDetails(ClientDetails clientDetails) throws NoSuchClientException {
+		try {
+			getRegistrationService().updateClientDetails(clientDetails);
+		}
+		finally {
+			invalidate(clientDetails.getClientId());
+		}
+	}
+
+	public void updateClientSecret(String clientId, String secret) throws NoSuchClientException {
+		try {
+			getRegistrationService().updateClientSecret(clientId, secret);
+		}
+		finally {
+			invalidate(clientId);
+		}
+	}
+
+	public void removeClientDetails(String clientId) throws NoSuchClientException {
+		try {
+			getRegistrationService().removeClientDetails(clientId);
+		}
+		finally {
+			invalidate(clientId);
+		}
+	}
+
+	public List<ClientDetails> listClientDetails() {
+		return getRegistrationService().listClientDetails();
+	}
+
+	private ClientRegistrationService getRegistrationService() {
+		if (!(delegate instanceof ClientRegistrationService)) {
+			throw new UnsupportedOperationException("The delegate ClientDetailsService (" + delegate
+					+ ") is not a ClientRegistrationService");
+		}
+		return (ClientRegistrationService) delegate;
+	}
+
+	private void invalidate(String clientId) {
+		invalidations.incrementAndGet();
+		if (clientId != null) {
+			cache.remove(clientId);
+		}
+	}
+
+	private void cache(long generation, String clientId, ClientDetails client) {
+		if (clientId == null) {
+			return;
+		}
+		long expiry = timeToLiveSeconds > 0 ? System.currentTimeMillis() + timeToLiveSeconds * 1000L : Long.MAX_VALUE;
+		cache.put(clientId, client, expiry);
+		if (invalidations.get() != generation) {
+			// A client was changed while we were reading from the delegate, so this value might be stale
+			cache.remove(clientId);
+		}
+	}
+
+}
@@ -42,7 +42,7 @@ public class DefaultOAuth2RequestFactory implements OAuth2RequestFactory {
 		String redirectUri = authorizationParameters.get(OAuth2Utils.REDIRECT_URI);
 		Set<String> responseTypes = OAuth2Utils.parseParameterList(authorizationParameters.get(OAuth2Utils.RESPONSE_TYPE));
 				
-		ClientDetails clientDetails = clientDetailsService.loadClientByClientId(clientId);
+		ClientDetails clientDetails = GrantContextHolder.loadClientByClientId(clientDetailsService, clientId);
 
 		if ((scopes == null || scopes.isEmpty())) {
 			// If no scopes are specified in the incoming data, use the default values registered with the client
@@ -70,7 +70,7 @@ public class DefaultOAuth2RequestFactory implements OAuth2RequestFactory {
 		Set<String> scopes = OAuth2Utils.parseParameterList(requestParameters.get(OAuth2Utils.SCOPE));
 		String grantType = requestParameters.get(OAuth2Utils.GRANT_TYPE);
 		
-		ClientDetails clientDetails = clientDetailsService.loadClientByClientId(clientId);
+		ClientDetails clientDetails = GrantContextHolder.loadClientByClientId(clientDetailsService, clientId);
 
 		if ((scopes == null || scopes.isEmpty())) {
 			// If no scopes are specified in the incoming data, use the default values registered with the client
@@ -0,0 +1,73 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.provider;
+
+/**
+ * State shared by the components that take part in a single token grant. The client is loaded the first time it is
+ * needed and then handed to every other component that asks for it, so the {@link ClientDetailsService} is only
+ * consulted once per grant. The current context is available from {@link GrantContextHolder} while the grant is being
+ * processed (e.g. to a {@link TokenGranter}, to the token services or to a token enhancer).
+ * 
+ * @author Dave Syer
+ * 
+ */
+public class GrantContext {
+
+	private String clientId;
+
+	private ClientDetails clientDetails;
+
+	/**
+	 * @return the client that has been resolved in this grant (or null if there is none yet)
+	 */
+	public ClientDetails getClientDetails() {
+		return clientDetails;
+	}
+
+	/**
+	 * Set the client explicitly (e.g. if it was loaded some other way).
+	 * 
+	 * @param clientDetails the client details to set
+	 */
+	public void setClientDetails(ClientDetails clientDetails) {
+		this.clientId = clientDetails == null ? null : clientDetails.getClientId();
+		this.clientDetails = clientDetails;
+	}
+
+	/**
+	 * Load a client, re-using the one in this context if it has the same id.
+	 * 
+	 * @param clientDetailsService the service to use if the client is not in this context
+	 * @param clientId the client id
+	 * @return the client details
+	 * @throws ClientRegistrationException if the client cannot be loaded
+	 */
+	public ClientDetails loadClientByClientId(ClientDetailsService clientDetailsService, String clientId)
+			throws ClientRegistrationException {
+		if (clientDetails != null && clientId != null && clientId.equals(this.clientId)) {
+			return clientDetails;
+		}
+		ClientDetails client = clientDetailsService.loadClientByClientId(clientId);
+		if (this.clientDetails == null && client != null) {
+			// Only the first client is remembered (a grant normally only has one)
+			this.clientId = clientId;
+			this.clientDetails = client;
+		}
+		return client;
+	}
+
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.provider;
+
+/**
+ * Associates a {@link GrantContext} with the current thread while a token grant is being processed. The
+ * {@link org.springframework.security.oauth2.provider.endpoint.TokenEndpoint TokenEndpoint} opens a context for each
+ * request, and the standard granters, request factory and token services use
+ * {@link #loadClientByClientId(ClientDetailsService, String)} to look up clients through it. Outside a grant there is
+ * no context and clients are simply loaded from the service every time.
+ * 
+ * @author Dave Syer
+ * 
+ */
+public abstract class GrantContextHolder {
+
+	private static final ThreadLocal<GrantContext> contextHolder = new ThreadLocal<GrantContext>();
+
+	/**
+	 * @return the context for the current grant (or null if there is none)
+	 */
+	public static GrantContext getContext() {
+		return contextHolder.get();
+	}
+
+	/**
+	 * @param context the context to associate with the current thread (or null to remove the current one)
+	 */
+	public static void setContext(GrantContext context) {
+		if (context == null) {
+			contextHolder.remove();
+		}
+		else {
+			contextHolder.set(context);
+		}
+	}
+
+	/**
+	 * Remove the context from the current thread.
+	 */
+	public static void clearContext() {
+		contextHolder.remove();
+	}
+
+	/**
+	 * Load a client through the current context if there is one, or directly from the service if there is not.
+	 * 
+	 * @param clientDetailsService the client details service
+	 * @param clientId the client id
+	 * @return the client details
+	 * @throws ClientRegistrationException if the client cannot be loaded
+	 */
+	public static ClientDetails loadClientByClientId(ClientDetailsService clientDetailsService, String clientId)
+			throws ClientRegistrationException {
+		GrantContext context = contextHolder.get();
+		if (context == null) {
+			return clientDetailsService.loadClientByClientId(clientId);
+		}
+		return context.loadClientByClientId(clientDetailsService, clientId);
+	}
+
+}
@@ -22,6 +22,7 @@ import org.springframework.security.oauth2.client.resource.OAuth2AccessDeniedExc
 import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
 import org.springframework.security.oauth2.provider.AuthorizationRequest;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.RejectedTokenCache;
 import org.springframework.security.oauth2.provider.token.ResourceServerTokenServices;
 import org.springframework.util.Assert;
 
@@ -37,6 +38,8 @@ public class OAuth2AuthenticationManager implements AuthenticationManager, Initi
 
 	private String resourceId;
 
+	private RejectedTokenCache rejectedTokenCache;
+
 	public void setResourceId(String resourceId) {
 		this.resourceId = resourceId;
 	}
@@ -48,6 +51,17 @@ public class OAuth2AuthenticationManager implements AuthenticationManager, Initi
 		this.tokenServices = tokenServices;
 	}
 
+	/**
+	 * A cache of recently rejected tokens (optional). If set, a token that is presented again soon after it was found
+	 * to be invalid is rejected without asking the token services. Share it with the token services (if they are in
+	 * the same application) so that it is invalidated when a token is stored.
+	 * 
+	 * @param rejectedTokenCache the rejected token cache to set
+	 */
+	public void setRejectedTokenCache(RejectedTokenCache rejectedTokenCache) {
+		this.rejectedTokenCache = rejectedTokenCache;
+	}
+
 	public void afterPropertiesSet() {
 		Assert.state(tokenServices != null, "TokenServices are required");
 	}
@@ -67,10 +81,7 @@ public class OAuth2AuthenticationManager implements AuthenticationManager, Initi
 	public Authentication authenticate(Authentication authentication) throws AuthenticationException {
 
 		String token = (String) authentication.getPrincipal();
-		OAuth2Authentication auth = tokenServices.loadAuthentication(token);
-		if (auth == null) {
-			throw new InvalidTokenException("Invalid token: " + token);
-		}
+		OAuth2Authentication auth = loadAuthentication(token);
 
 		Collection<String> resourceIds = auth.getOAuth2Request().getResourceIds();
 		if (resourceId != null && resourceIds != null && !resourceIds.isEmpty() && !resourceIds.contains(resourceId)) {
@@ -82,4 +93,29 @@ public class OAuth2AuthenticationManager implements AuthenticationManager, Initi
 
 	}
 
+	private OAuth2Authentication loadAuthentication(String token) {
+		RejectedTokenCache cache = this.rejectedTokenCache;
+		if (cache == null) {
+			return checkAuthentication(token, tokenServices.loadAuthentication(token));
+		}
+		if (cache.isRejected(token)) {
+			throw new InvalidTokenException("Invalid token: " + token);
+		}
+		long generation = cache.getGeneration(token);
+		try {
+			return checkAuthentication(token, tokenServices.loadAuthentication(token));
+		}
+		catch (InvalidTokenException e) {
+			cache.reject(token, generation);
+			throw e;
+		}
+	}
+
+	private OAuth2Authentication checkAuthentication(String token, OAuth2Authentication auth) {
+		if (auth == null) {
+			throw new InvalidTokenException("Invalid token: " + token);
+		}
+		return auth;
+	}
+
 }
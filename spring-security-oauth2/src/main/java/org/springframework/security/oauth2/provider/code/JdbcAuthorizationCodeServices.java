@@ -10,7 +10,8 @@ import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.support.SqlLobValue;
-import org.springframework.security.oauth2.common.util.SerializationUtils;
+import org.springframework.security.oauth2.common.util.DefaultTokenSerializer;
+import org.springframework.security.oauth2.common.util.TokenSerializer;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.util.Assert;
 
@@ -30,6 +31,8 @@ public class JdbcAuthorizationCodeServices extends RandomValueAuthorizationCodeS
 	private String insertAuthenticationSql = DEFAULT_INSERT_STATEMENT;
 	private String deleteAuthenticationSql = DEFAULT_DELETE_STATEMENT;
 
+	private TokenSerializer tokenSerializer = new DefaultTokenSerializer();
+
 	private final JdbcTemplate jdbcTemplate;
 
 	public JdbcAuthorizationCodeServices(DataSource dataSource) {
@@ -40,7 +43,7 @@ public class JdbcAuthorizationCodeServices extends RandomValueAuthorizationCodeS
 	@Override
 	protected void store(String code, OAuth2Authentication authentication) {
 		jdbcTemplate.update(insertAuthenticationSql,
-				new Object[] { code, new SqlLobValue(SerializationUtils.serialize(authentication)) }, new int[] {
+				new Object[] { code, new SqlLobValue(tokenSerializer.serialize(authentication)) }, new int[] {
 						Types.VARCHAR, Types.BLOB });
 	}
 
@@ -52,7 +55,7 @@ public class JdbcAuthorizationCodeServices extends RandomValueAuthorizationCodeS
 					new RowMapper<OAuth2Authentication>() {
 						public OAuth2Authentication mapRow(ResultSet rs, int rowNum)
 								throws SQLException {
-							return SerializationUtils.deserialize(rs.getBytes("authentication"));
+							return tokenSerializer.deserialize(rs.getBytes("authentication"));
 						}
 					}, code);
 		} catch (EmptyResultDataAccessException e) {
@@ -66,6 +69,15 @@ public class JdbcAuthorizationCodeServices extends RandomValueAuthorizationCodeS
 		return authentication;
 	}
 
+	/**
+	 * The serializer used to convert authentications to and from the BLOB column. Defaults to plain Java serialization.
+	 * 
+	 * @param tokenSerializer the token serializer to set
+	 */
+	public void setTokenSerializer(TokenSerializer tokenSerializer) {
+		this.tokenSerializer = tokenSerializer;
+	}
+
 	public void setSelectAuthenticationSql(String selectAuthenticationSql) {
 		this.selectAuthenticationSql = selectAuthenticationSql;
 	}
@@ -2,6 +2,7 @@ package org.springframework.security.oauth2.provider.code;
 
 import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
 import org.springframework.security.oauth2.common.util.RandomValueStringGenerator;
+import org.springframework.security.oauth2.common.util.TokenValueGenerator;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 
 /**
@@ -12,7 +13,7 @@ import org.springframework.security.oauth2.provider.OAuth2Authentication;
  */
 public abstract class RandomValueAuthorizationCodeServices implements AuthorizationCodeServices {
 
-	private RandomValueStringGenerator generator = new RandomValueStringGenerator();
+	private TokenValueGenerator generator = new RandomValueStringGenerator();
 
 	protected abstract void store(String code, OAuth2Authentication authentication);
 
@@ -33,4 +34,14 @@ public abstract class RandomValueAuthorizationCodeServices implements Authorizat
 		return auth;
 	}
 
+	/**
+	 * The generator for authorization code values. Defaults to a {@link RandomValueStringGenerator} (6 alphanumeric
+	 * characters).
+	 * 
+	 * @param generator the generator to set
+	 */
+	public void setTokenValueGenerator(TokenValueGenerator generator) {
+		this.generator = generator;
+	}
+
 }
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.provider.endpoint;
+
+import java.security.Principal;
+import java.util.Map;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.InsufficientAuthenticationException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.error.DefaultWebResponseExceptionTranslator;
+import org.springframework.security.oauth2.provider.error.WebResponseExceptionTranslator;
+import org.springframework.security.oauth2.provider.token.AccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.DefaultAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.RemoteTokenServices;
+import org.springframework.security.oauth2.provider.token.ResourceServerTokenServices;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * Endpoint for resource servers in other processes to check an access token and get back its details (the claims
+ * produced by an {@link AccessTokenConverter}, by default a {@link DefaultAccessTokenConverter}). The token value is
+ * sent in a parameter called "token". This is the server side of a {@link RemoteTokenServices}.
+ * <p>
+ * The endpoint is not registered by the XML namespace: declare it as a bean and it will be picked up by the
+ * {@link FrameworkEndpointHandlerMapping}. Callers must be authenticated as clients (e.g. with HTTP basic
+ * authentication, like the token endpoint), otherwise anyone could use it to find out who a token belongs to, so
+ * requests without an authenticated principal are rejected.
+ *
+ * @author Dave Syer
+ *
+ */
+@FrameworkEndpoint
+public class CheckTokenEndpoint {
+
+	protected final Log logger = LogFactory.getLog(getClass());
+
+	private final ResourceServerTokenServices resourceServerTokenServices;
+
+	private AccessTokenConverter accessTokenConverter = new DefaultAccessTokenConverter();
+
+	private WebResponseExceptionTranslator exceptionTranslator = new DefaultWebResponseExceptionTranslator();
+
+	/**
+	 * @param resourceServerTokenServices the token services to check tokens with
+	 */
+	public CheckTokenEndpoint(ResourceServerTokenServices resourceServerTokenServices) {
+		this.resourceServerTokenServices = resourceServerTokenServices;
+	}
+
+	/**
+	 * @param accessTokenConverter the converter to use to render the token details
+	 */
+	public void setAccessTokenConverter(AccessTokenConverter accessTokenConverter) {
+		this.accessTokenConverter = accessTokenConverter;
+	}
+
+	/**
+	 * @param exceptionTranslator the exception translator to set
+	 */
+	public void setExceptionTranslator(WebResponseExceptionTranslator exceptionTranslator) {
+		this.exceptionTranslator = exceptionTranslator;
+	}
+
+	@RequestMapping(value = "/oauth/check_token")
+	@ResponseBody
+	public Map<String, ?> checkToken(Principal principal, @RequestParam("token") String value) {
+
+		if (!(principal instanceof Authentication) || !((Authentication) principal).isAuthenticated()) {
+			throw new InsufficientAuthenticationException(
+					"There is no client authentication. Try adding an appropriate authentication filter.");
+		}
+
+		OAuth2AccessToken token = resourceServerTokenServices.readAccessToken(value);
+		if (token == null) {
+			throw new InvalidTokenException("Token was not recognised");
+		}
+
+		if (token.isExpired()) {
+			throw new InvalidTokenException("Token has expired");
+		}
+
+		OAuth2Authentication authentication = resourceServerTokenServices.loadAuthentication(token.getValue());
+
+		return accessTokenConverter.convertAccessToken(token, authentication);
+
+	}
+
+	@ExceptionHandler(InvalidTokenException.class)
+	public ResponseEntity<OAuth2Exception> handleException(Exception e) throws Exception {
+		logger.info("Handling error: " + e.getClass().getSimpleName() + ", " + e.getMessage());
+		// The caller has already authenticated as a client, so it gets a bad request (not unauthorized) for a bad token
+		@SuppressWarnings("serial")
+		InvalidTokenException badRequest = new InvalidTokenException(e.getMessage()) {
+			@Override
+			public int getHttpErrorCode() {
+				return 400;
+			}
+		};
+		return exceptionTranslator.translate(badRequest);
+	}
+
+}
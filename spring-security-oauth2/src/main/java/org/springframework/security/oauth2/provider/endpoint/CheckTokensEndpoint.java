@@ -0,0 +1,160 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.provider.endpoint;
+
+import java.security.Principal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.InsufficientAuthenticationException;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidRequestException;
+import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.error.DefaultWebResponseExceptionTranslator;
+import org.springframework.security.oauth2.provider.error.WebResponseExceptionTranslator;
+import org.springframework.security.oauth2.provider.token.AccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.BatchStoredAccessTokenReader;
+import org.springframework.security.oauth2.provider.token.DefaultAccessTokenConverter;
+import org.springframework.security.oauth2.provider.token.StoredAccessToken;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+import org.springframework.web.bind.annotation.ExceptionHandler;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * Endpoint for checking many access tokens in one request (e.g. from a gateway that has several tokens to validate
+ * for one incoming request). The token values are sent as repeated "token" parameters, and the response is a JSON
+ * object with an entry per token value: the same claims as the {@link CheckTokenEndpoint} for a valid token, and
+ * <code>{"error":"invalid_token"}</code> for one that is unknown or expired.
+ * <p>
+ * If the {@link TokenStore} is a {@link BatchStoredAccessTokenReader} all the tokens are read in one operation (e.g.
+ * one query for a {@link org.springframework.security.oauth2.provider.token.JdbcTokenStore JdbcTokenStore}),
+ * otherwise they are read one by one. Callers must be authenticated as clients (the same way as for the
+ * {@link TokenEndpoint}). The endpoint is not registered by the XML namespace: declare it as a bean and it will be
+ * picked up by the {@link FrameworkEndpointHandlerMapping}.
+ * 
+ * @author Dave Syer
+ * 
+ */
+@FrameworkEndpoint
+public class CheckTokensEndpoint {
+
+	private static final Map<String, String> INVALID_TOKEN = Collections.singletonMap("error", "invalid_token");
+
+	protected final Log logger = LogFactory.getLog(getClass());
+
+	private final TokenStore tokenStore;
+
+	private AccessTokenConverter accessTokenConverter = new DefaultAccessTokenConverter();
+
+	private WebResponseExceptionTranslator exceptionTranslator = new DefaultWebResponseExceptionTranslator();
+
+	private int maxTokens = 100;
+
+	/**
+	 * @param tokenStore the token store to read tokens from
+	 */
+	public CheckTokensEndpoint(TokenStore tokenStore) {
+		this.tokenStore = tokenStore;
+	}
+
+	/**
+	 * @param accessTokenConverter the converter to use to render the token details
+	 */
+	public void setAccessTokenConverter(AccessTokenConverter accessTokenConverter) {
+		this.accessTokenConverter = accessTokenConverter;
+	}
+
+	/**
+	 * @param exceptionTranslator the exception translator to set
+	 */
+	public void setExceptionTranslator(WebResponseExceptionTranslator exceptionTranslator) {
+		this.exceptionTranslator = exceptionTranslator;
+	}
+
+	/**
+	 * The maximum number of distinct tokens that can be checked in one request. Default 100.
+	 * 
+	 * @param maxTokens the maximum number of tokens to set
+	 */
+	public void setMaxTokens(int maxTokens) {
+		this.maxTokens = maxTokens;
+	}
+
+	@RequestMapping(value = "/oauth/check_tokens")
+	@ResponseBody
+	public Map<String, ?> checkTokens(Principal principal, @RequestParam("token") List<String> values) {
+
+		if (!(principal instanceof Authentication) || !((Authentication) principal).isAuthenticated()) {
+			throw new InsufficientAuthenticationException(
+					"There is no client authentication. Try adding an appropriate authentication filter.");
+		}
+
+		Set<String> tokenValues = new LinkedHashSet<String>(values);
+		if (tokenValues.size() > maxTokens) {
+			throw new InvalidRequestException("Too many tokens (the maximum is " + maxTokens + ")");
+		}
+
+		Map<String, StoredAccessToken> stored = readStoredAccessTokens(tokenValues);
+		Map<String, Object> result = new LinkedHashMap<String, Object>();
+		for (String value : tokenValues) {
+			StoredAccessToken token = stored.get(value);
+			if (token == null || token.getAuthentication() == null || token.getAccessToken().isExpired()) {
+				result.put(value, INVALID_TOKEN);
+			}
+			else {
+				result.put(value, accessTokenConverter.convertAccessToken(token.getAccessToken(),
+						token.getAuthentication()));
+			}
+		}
+		return result;
+
+	}
+
+	@ExceptionHandler(OAuth2Exception.class)
+	public ResponseEntity<OAuth2Exception> handleException(Exception e) throws Exception {
+		logger.info("Handling error: " + e.getClass().getSimpleName() + ", " + e.getMessage());
+		return exceptionTranslator.translate(e);
+	}
+
+	private Map<String, StoredAccessToken> readStoredAccessTokens(Set<String> tokenValues) {
+		if (tokenStore instanceof BatchStoredAccessTokenReader) {
+			return ((BatchStoredAccessTokenReader) tokenStore).readStoredAccessTokens(tokenValues);
+		}
+		Map<String, StoredAccessToken> result = new HashMap<String, StoredAccessToken>();
+		for (String value : tokenValues) {
+			OAuth2AccessToken token = tokenStore.readAccessToken(value);
+			if (token != null) {
+				OAuth2Authentication authentication = tokenStore.readAuthentication(token);
+				result.put(value, new StoredAccessToken(token, authentication));
+			}
+		}
+		return result;
+	}
+
+}
@@ -35,6 +35,8 @@ import org.springframework.security.oauth2.common.util.OAuth2Utils;
 import org.springframework.security.oauth2.provider.ClientDetails;
 import org.springframework.security.oauth2.provider.ClientRegistrationException;
 import org.springframework.security.oauth2.provider.DefaultOAuth2RequestValidator;
+import org.springframework.security.oauth2.provider.GrantContext;
+import org.springframework.security.oauth2.provider.GrantContextHolder;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.OAuth2RequestValidator;
 import org.springframework.security.oauth2.provider.TokenRequest;
@@ -69,6 +71,18 @@ public class TokenEndpoint extends AbstractEndpoint {
 	@RequestMapping
 	public ResponseEntity<OAuth2AccessToken> getAccessToken(Principal principal,
 			@RequestParam Map<String, String> parameters) {
+		// The client is resolved once and shared by everything that takes part in the grant
+		GrantContext previous = GrantContextHolder.getContext();
+		GrantContextHolder.setContext(new GrantContext());
+		try {
+			return grant(principal, parameters);
+		}
+		finally {
+			GrantContextHolder.setContext(previous);
+		}
+	}
+
+	private ResponseEntity<OAuth2AccessToken> grant(Principal principal, Map<String, String> parameters) {
 
 		if (!(principal instanceof Authentication)) {
 			throw new InsufficientAuthenticationException(
@@ -81,7 +95,7 @@ public class TokenEndpoint extends AbstractEndpoint {
 			map.put(OAuth2Utils.CLIENT_ID, clientId);
 			// Only validate the client details if a client authenticated during this
 			// request.
-			ClientDetails client = getClientDetailsService().loadClientByClientId(clientId);
+			ClientDetails client = GrantContextHolder.loadClientByClientId(getClientDetailsService(), clientId);
 			if (client != null) {
 				oAuth2RequestValidator.validateScope(map, client.getScope());
 			}
@@ -0,0 +1,55 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.provider.endpoint;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.security.oauth2.provider.token.JwtKeyRegistry;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.ResponseBody;
+
+/**
+ * Endpoint that publishes the public keys in a {@link JwtKeyRegistry}, so that resource servers can verify JWT tokens
+ * signed with any of them, and pick up a new key when keys are rotated. The response is a JSON object with a "keys"
+ * array, and each key has its key id ("kid"), algorithm ("alg") and encoded value ("value"). Secret (MAC) keys are
+ * never published, and the keys are public so there is no need to protect the endpoint.
+ * 
+ * @author Dave Syer
+ * 
+ */
+@FrameworkEndpoint
+public class TokenKeyEndpoint {
+
+	private final JwtKeyRegistry keyRegistry;
+
+	/**
+	 * @param keyRegistry the registry of keys to publish
+	 */
+	public TokenKeyEndpoint(JwtKeyRegistry keyRegistry) {
+		this.keyRegistry = keyRegistry;
+	}
+
+	@RequestMapping(value = "/oauth/token_keys", method = RequestMethod.GET)
+	@ResponseBody
+	public Map<String, List<Map<String, String>>> getKeys() {
+		return Collections.singletonMap("keys", keyRegistry.getPublicKeys());
+	}
+
+}
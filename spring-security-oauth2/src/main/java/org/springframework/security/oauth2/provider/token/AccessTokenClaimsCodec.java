@@ -0,0 +1,238 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.provider.token;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.codehaus.jackson.JsonFactory;
+import org.codehaus.jackson.JsonGenerator;
+import org.codehaus.jackson.JsonParser;
+import org.codehaus.jackson.JsonToken;
+import org.codehaus.jackson.map.ObjectMapper;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+
+/**
+ * Streaming JSON codec for the claims of an access token. Produces and consumes the same JSON as a
+ * {@link DefaultAccessTokenConverter} serialized with an {@link ObjectMapper}, but it writes the token and
+ * authentication straight to the output and reads them straight back from the parser, without building a
+ * <code>Map</code> of the claims on the way.
+ * <p>
+ * Additional information values are written and read with the object mapper (so they can be any JSON), but the
+ * standard claims are handled directly. The expiry (<code>exp</code>) is read as a long, so tokens that expire after
+ * 2038 are supported.
+ *
+ * @author Dave Syer
+ *
+ */
+public class AccessTokenClaimsCodec {
+
+	private static final String AUD = "aud";
+
+	private static final String CLIENT_ID = "client_id";
+
+	private static final String EXP = "exp";
+
+	private static final String SCOPE = OAuth2AccessToken.SCOPE;
+
+	private static final String AUTHORITIES = "authorities";
+
+	private static final String USERNAME = "user_name";
+
+	private final JsonFactory factory;
+
+	public AccessTokenClaimsCodec() {
+		this(new ObjectMapper());
+	}
+
+	/**
+	 * @param objectMapper the object mapper used for the values of additional information
+	 */
+	public AccessTokenClaimsCodec(ObjectMapper objectMapper) {
+		this.factory = objectMapper.getJsonFactory();
+	}
+
+	/**
+	 * Write the claims for this token and authentication as a JSON object.
+	 *
+	 * @param token an access token
+	 * @param authentication the authentication the token was granted for
+	 * @param writer the output
+	 * @throws IOException if the claims cannot be written
+	 */
+	public void write(OAuth2AccessToken token, OAuth2Authentication authentication, Writer writer)
+			throws IOException {
+		Map<String, Object> info = token.getAdditionalInformation();
+		OAuth2Request clientToken = authentication.getOAuth2Request();
+		JsonGenerator generator = factory.createJsonGenerator(writer);
+		generator.writeStartObject();
+
+		// Additional information can override anything except the client id and audience
+		if (!authentication.isClientOnly()) {
+			Authentication user = authentication.getUserAuthentication();
+			if (!info.containsKey(USERNAME)) {
+				generator.writeStringField(USERNAME, user.getName());
+			}
+			Collection<? extends GrantedAuthority> authorities = user.getAuthorities();
+			if (authorities != null && !authorities.isEmpty() && !info.containsKey(AUTHORITIES)) {
+				writeArray(generator, AUTHORITIES, AuthorityUtils.authorityListToSet(authorities));
+			}
+		}
+		if (token.getScope() != null && !info.containsKey(SCOPE)) {
+			writeArray(generator, SCOPE, token.getScope());
+		}
+		if (token.getExpiration() != null && !info.containsKey(EXP)) {
+			generator.writeNumberField(EXP, token.getExpiration().getTime() / 1000);
+		}
+		for (Map.Entry<String, Object> entry : info.entrySet()) {
+			String key = entry.getKey();
+			if (!CLIENT_ID.equals(key) && !AUD.equals(key)) {
+				generator.writeObjectField(key, entry.getValue());
+			}
+		}
+		generator.writeStringField(CLIENT_ID, clientToken.getClientId());
+		if (clientToken.getResourceIds() != null && !clientToken.getResourceIds().isEmpty()) {
+			writeArray(generator, AUD, clientToken.getResourceIds());
+		}
+
+		generator.writeEndObject();
+		generator.close();
+	}
+
+	/**
+	 * Read the token and authentication back from claims that were written by this class (or by a
+	 * {@link DefaultAccessTokenConverter}).
+	 *
+	 * @param value the token value
+	 * @param claims the JSON claims
+	 * @return the access token and its authentication
+	 * @throws IOException if the claims cannot be parsed
+	 */
+	public StoredAccessToken read(String value, String claims) throws IOException {
+
+		JsonParser parser = factory.createJsonParser(claims);
+		if (parser.nextToken() != JsonToken.START_OBJECT) {
+			throw new IllegalArgumentException("Claims must be a JSON object");
+		}
+
+		Map<String, Object> info = new LinkedHashMap<String, Object>();
+		String userName = null;
+		List<String> authorities = null;
+		Set<String> scope = null;
+		Long exp = null;
+		String clientId = null;
+		Set<String> resourceIds = null;
+
+		while (parser.nextToken() == JsonToken.FIELD_NAME) {
+			String name = parser.getCurrentName();
+			JsonToken token = parser.nextToken();
+			if (token == JsonToken.VALUE_NULL) {
+				if (!EXP.equals(name) && !AUD.equals(name) && !CLIENT_ID.equals(name) && !SCOPE.equals(name)) {
+					info.put(name, null);
+				}
+			}
+			else if (EXP.equals(name)) {
+				exp = parser.getLongValue();
+			}
+			else if (AUD.equals(name)) {
+				resourceIds = readStrings(parser, new LinkedHashSet<String>());
+			}
+			else if (CLIENT_ID.equals(name)) {
+				clientId = parser.getText();
+			}
+			else if (SCOPE.equals(name)) {
+				scope = readStrings(parser, new LinkedHashSet<String>());
+			}
+			else if (USERNAME.equals(name)) {
+				userName = parser.getText();
+				info.put(name, userName);
+			}
+			else if (AUTHORITIES.equals(name) && token == JsonToken.START_ARRAY) {
+				authorities = readStrings(parser, new ArrayList<String>());
+				info.put(name, authorities);
+			}
+			else {
+				info.put(name, parser.readValueAs(Object.class));
+			}
+		}
+		parser.close();
+
+		DefaultOAuth2AccessToken accessToken = new DefaultOAuth2AccessToken(value);
+		if (exp != null) {
+			accessToken.setExpiration(new Date(exp * 1000L));
+		}
+		if (scope != null) {
+			accessToken.setScope(new HashSet<String>(scope));
+		}
+		accessToken.setAdditionalInformation(info);
+
+		Authentication user = null;
+		if (userName != null) {
+			user = new UsernamePasswordAuthenticationToken(userName, "N/A", authorities == null ? null
+					: AuthorityUtils.createAuthorityList(authorities.toArray(new String[authorities.size()])));
+		}
+		Map<String, String> parameters = new HashMap<String, String>();
+		parameters.put(CLIENT_ID, clientId);
+		if (scope == null) {
+			scope = new LinkedHashSet<String>();
+		}
+		if (resourceIds == null) {
+			resourceIds = new LinkedHashSet<String>();
+		}
+		OAuth2Request request = new OAuth2Request(parameters, clientId, null, true, scope, resourceIds, null, null,
+				null);
+
+		return new StoredAccessToken(accessToken, new OAuth2Authentication(request, user));
+
+	}
+
+	private void writeArray(JsonGenerator generator, String name, Collection<String> values) throws IOException {
+		generator.writeArrayFieldStart(name);
+		for (String value : values) {
+			generator.writeString(value);
+		}
+		generator.writeEndArray();
+	}
+
+	private <T extends Collection<String>> T readStrings(JsonParser parser, T values) throws IOException {
+		if (parser.getCurrentToken() != JsonToken.START_ARRAY) {
+			throw new IllegalArgumentException("Expected an array of strings for " + parser.getCurrentName());
+		}
+		while (parser.nextToken() != JsonToken.END_ARRAY) {
+			values.add(parser.getText());
+		}
+		return values;
+	}
+
+}
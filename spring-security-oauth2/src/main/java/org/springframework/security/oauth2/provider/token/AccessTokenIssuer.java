@@ -0,0 +1,43 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.provider.token;
+
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+/**
+ * Optional interface for a {@link TokenStore} that can find or create the access token for an authentication in one
+ * atomic operation, so that concurrent requests for the same authentication always end up with the same token. Used by
+ * {@link DefaultTokenServices} when its token store implements it.
+ * 
+ * @author Dave Syer
+ * 
+ */
+public interface AccessTokenIssuer {
+
+	/**
+	 * Return the access token stored for this authentication if there is one and it has not expired. Otherwise remove
+	 * the expired token (and its refresh token), create a new one with the factory and store it (and its refresh token
+	 * if it has one).
+	 * 
+	 * @param authentication the authentication to issue a token for
+	 * @param factory a factory for new access tokens
+	 * @return the existing or new access token
+	 */
+	OAuth2AccessToken issueAccessToken(OAuth2Authentication authentication, AccessTokenFactory factory);
+
+}
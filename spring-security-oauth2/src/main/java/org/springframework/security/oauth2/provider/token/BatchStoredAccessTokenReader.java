@@ -0,0 +1,42 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.provider.token;
+
+import java.util.Collection;
+import java.util.Map;
+
+/**
+ * Optional interface for a {@link TokenStore} that can read many access tokens and their authentications in one
+ * operation (e.g. a single query), instead of one {@link #readStoredAccessToken(String)} per token. Used by the
+ * {@link org.springframework.security.oauth2.provider.endpoint.CheckTokensEndpoint batch check token endpoint} when the
+ * store supports it.
+ * 
+ * @author Dave Syer
+ * 
+ */
+public interface BatchStoredAccessTokenReader extends StoredAccessTokenReader {
+
+	/**
+	 * Read some access tokens together with their authentications.
+	 * 
+	 * @param tokenValues the token values
+	 * @return the tokens and authentications that were found, keyed by token value (tokens that are not in the store
+	 * are left out)
+	 */
+	Map<String, StoredAccessToken> readStoredAccessTokens(Collection<String> tokenValues);
+
+}
@@ -0,0 +1,405 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.provider.token;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.common.util.ExpiringCache;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.util.Assert;
+
+/**
+ * A {@link TokenStore} that caches access tokens and their authentications read from another store (e.g. a
+ * {@link JdbcTokenStore}), so that a resource server does not need to hit the backend for every request. The cache is
+ * bounded by a maximum number of entries, and entries are evicted when the token expires or when the
+ * {@link #setTimeToLiveSeconds(int) time to live} is over, whichever comes first.
+ * <p>
+ * If the delegate is a {@link StoredAccessTokenReader} then a token and its authentication are loaded together with
+ * {@link #readStoredAccessToken(String)} when neither is cached, and if it is a {@link BatchStoredAccessTokenReader}
+ * then the tokens missing from the cache in a {@link #readStoredAccessTokens(Collection) batch read} are loaded in one
+ * go.
+ * <p>
+ * If the delegate is an {@link AccessTokenIssuer} (like a {@link JdbcTokenStore}) then new tokens are still issued
+ * atomically by the delegate, and if it is an {@link ExpiredTokenPurger} then an {@link ExpiredTokenSweeper} can be
+ * given this store instead of the delegate.
+ * <p>
+ * Removing or storing tokens through this store invalidates the cache immediately. Refresh tokens are not cached
+ * (they are only read when a token is refreshed). Changes made directly to the backend (e.g. by another server in a
+ * cluster) will only be seen when the time to live is over, so keep it short if tokens are revoked that way.
+ *
+ * @author Dave Syer
+ *
+ */
+public class CachingTokenStore implements TokenStore, BatchStoredAccessTokenReader, AccessTokenIssuer,
+		ExpiredTokenPurger {
+
+	private static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+	private final TokenStore delegate;
+
+	private final ExpiringCache<String, CachedToken> cache;
+
+	private final ConcurrentMap<String, String> refreshTokenToAccessToken = new ConcurrentHashMap<String, String>();
+
+	/**
+	 * Incremented on every invalidation, so that a value read from the backend concurrently with an invalidation is not
+	 * cached.
+	 */
+	private final AtomicLong invalidations = new AtomicLong();
+
+	private final AtomicLong hits = new AtomicLong();
+
+	private final AtomicLong misses = new AtomicLong();
+
+	private int timeToLiveSeconds = 60;
+
+	/**
+	 * @param delegate the token store to read from
+	 */
+	public CachingTokenStore(TokenStore delegate) {
+		this(delegate, DEFAULT_MAXIMUM_SIZE);
+	}
+
+	/**
+	 * @param delegate the token store to read from
+	 * @param maximumSize the maximum number of tokens to cache
+	 */
+	public CachingTokenStore(TokenStore delegate, int maximumSize) {
+		Assert.notNull(delegate, "A delegate TokenStore is required");
+		this.delegate = delegate;
+		this.cache = new ExpiringCache<String, CachedToken>(maximumSize) {
+			@Override
+			protected void onRemoval(String key, CachedToken value) {
+				OAuth2RefreshToken refreshToken = value.token == null ? null : value.token.getRefreshToken();
+				if (refreshToken != null && refreshToken.getValue() != null) {
+					refreshTokenToAccessToken.remove(refreshToken.getValue(), key);
+				}
+			}
+		};
+	}
+
+	/**
+	 * The maximum time in seconds that a token is cached for (it is evicted earlier if it expires first). Zero or
+	 * negative to cache tokens until they expire. Default 60.
+	 *
+	 * @param timeToLiveSeconds the time to live to set
+	 */
+	public void setTimeToLiveSeconds(int timeToLiveSeconds) {
+		this.timeToLiveSeconds = timeToLiveSeconds;
+	}
+
+	/**
+	 * @return the number of reads served from the cache
+	 */
+	public long getHitCount() {
+		return hits.get();
+	}
+
+	/**
+	 * @return the number of reads that went to the delegate store
+	 */
+	public long getMissCount() {
+		return misses.get();
+	}
+
+	/**
+	 * @return the number of cached tokens evicted because they expired or the cache was full
+	 */
+	public long getEvictionCount() {
+		return cache.getEvictionCount();
+	}
+
+	/**
+	 * @return the number of cached tokens
+	 */
+	public int getCacheSize() {
+		return cache.size();
+	}
+
+	/**
+	 * Remove all cached tokens (the delegate is not affected).
+	 */
+	public void clearCache() {
+		invalidations.incrementAndGet();
+		cache.clear();
+	}
+
+	public OAuth2AccessToken readAccessToken(String tokenValue) {
+		CachedToken cached = cache.get(tokenValue);
+		if (cached != null && cached.token != null) {
+			hits.incrementAndGet();
+			return cached.token;
+		}
+		misses.incrementAndGet();
+		long generation = invalidations.get();
+		OAuth2AccessToken token = delegate.readAccessToken(tokenValue);
+		if (token != null) {
+			cache(generation, token, cached == null ? null : cached.authentication);
+		}
+		return token;
+	}
+
+	public StoredAccessToken readStoredAccessToken(String tokenValue) {
+		CachedToken cached = cache.get(tokenValue);
+		if (cached != null && cached.authentication != null) {
+			hits.incrementAndGet();
+			return new StoredAccessToken(cached.token, copy(cached.authentication));
+		}
+		misses.incrementAndGet();
+		long generation = invalidations.get();
+		OAuth2AccessToken token;
+		OAuth2Authentication authentication;
+		if (delegate instanceof StoredAccessTokenReader) {
+			StoredAccessToken stored = ((StoredAccessTokenReader) delegate).readStoredAccessToken(tokenValue);
+			if (stored == null) {
+				return null;
+			}
+			token = stored.getAccessToken();
+			authentication = stored.getAuthentication();
+		}
+		else {
+			token = cached != null ? cached.token : delegate.readAccessToken(tokenValue);
+			if (token == null) {
+				return null;
+			}
+			authentication = delegate.readAuthentication(token);
+		}
+		if (authentication != null) {
+			cache(generation, token, authentication);
+		}
+		return new StoredAccessToken(token, authentication);
+	}
+
+	public Map<String, StoredAccessToken> readStoredAccessTokens(Collection<String> tokenValues) {
+		Map<String, StoredAccessToken> result = new HashMap<String, StoredAccessToken>();
+		List<String> missing = new ArrayList<String>();
+		for (String tokenValue : tokenValues) {
+			CachedToken cached = cache.get(tokenValue);
+			if (cached != null && cached.authentication != null) {
+				hits.incrementAndGet();
+				result.put(tokenValue, new StoredAccessToken(cached.token, copy(cached.authentication)));
+			}
+			else {
+				missing.add(tokenValue);
+			}
+		}
+		if (missing.isEmpty()) {
+			return result;
+		}
+		if (!(delegate instanceof BatchStoredAccessTokenReader)) {
+			for (String tokenValue : missing) {
+				StoredAccessToken stored = readStoredAccessToken(tokenValue);
+				if (stored != null) {
+					result.put(tokenValue, stored);
+				}
+			}
+			return result;
+		}
+		misses.addAndGet(missing.size());
+		long generation = invalidations.get();
+		Map<String, StoredAccessToken> stored = ((BatchStoredAccessTokenReader) delegate)
+				.readStoredAccessTokens(missing);
+		for (StoredAccessToken value : stored.values()) {
+			if (value.getAuthentication() != null) {
+				cache(generation, value.getAccessToken(), value.getAuthentication());
+			}
+		}
+		result.putAll(stored);
+		return result;
+	}
+
+	public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
+		CachedToken cached = cache.get(token.getValue());
+		if (cached != null && cached.authentication != null) {
+			hits.incrementAndGet();
+			return copy(cached.authentication);
+		}
+		misses.incrementAndGet();
+		long generation = invalidations.get();
+		OAuth2Authentication authentication = delegate.readAuthentication(token);
+		if (authentication != null) {
+			cache(generation, token, authentication);
+		}
+		return authentication;
+	}
+
+	public OAuth2Authentication readAuthentication(String token) {
+		CachedToken cached = cache.get(token);
+		if (cached != null && cached.authentication != null) {
+			hits.incrementAndGet();
+			return copy(cached.authentication);
+		}
+		misses.incrementAndGet();
+		long generation = invalidations.get();
+		OAuth2Authentication authentication = delegate.readAuthentication(token);
+		// Only cache the authentication if the token is known, so it can be invalidated via its refresh token
+		if (authentication != null && cached != null) {
+			cache(generation, cached.token, authentication);
+		}
+		return authentication;
+	}
+
+	public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
+		OAuth2AccessToken token = delegate.getAccessToken(authentication);
+		if (token != null) {
+			// The delegate might have re-stored the token with a new authentication
+			invalidate(token.getValue());
+		}
+		return token;
+	}
+
+	public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+		invalidate(token.getValue());
+		long generation = invalidations.get();
+		delegate.storeAccessToken(token, authentication);
+		cache(generation, token, authentication);
+	}
+
+	/**
+	 * Issue the token with the delegate if it is an {@link AccessTokenIssuer}, and otherwise through this store (not
+	 * atomically).
+	 */
+	public OAuth2AccessToken issueAccessToken(OAuth2Authentication authentication, AccessTokenFactory factory) {
+		if (!(delegate instanceof AccessTokenIssuer)) {
+			return new TokenStoreAccessTokenIssuer(this).issueAccessToken(authentication, factory);
+		}
+		OAuth2AccessToken token = ((AccessTokenIssuer) delegate).issueAccessToken(authentication, factory);
+		if (token != null) {
+			// The delegate might have stored the token again with a new authentication
+			invalidate(token.getValue());
+		}
+		return token;
+	}
+
+	/**
+	 * Purge expired tokens from the delegate if it is an {@link ExpiredTokenPurger} (cached tokens are evicted anyway
+	 * when they expire).
+	 * 
+	 * @return the number of tokens removed (always 0 if the delegate cannot purge expired tokens)
+	 */
+	public int purgeExpiredTokens(int batchSize) {
+		if (!(delegate instanceof ExpiredTokenPurger)) {
+			return 0;
+		}
+		return ((ExpiredTokenPurger) delegate).purgeExpiredTokens(batchSize);
+	}
+
+	public void removeAccessToken(OAuth2AccessToken token) {
+		delegate.removeAccessToken(token);
+		invalidate(token.getValue());
+	}
+
+	public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
+		delegate.storeRefreshToken(refreshToken, authentication);
+	}
+
+	public OAuth2RefreshToken readRefreshToken(String tokenValue) {
+		return delegate.readRefreshToken(tokenValue);
+	}
+
+	public OAuth2Authentication readAuthenticationForRefreshToken(OAuth2RefreshToken token) {
+		return delegate.readAuthenticationForRefreshToken(token);
+	}
+
+	public void removeRefreshToken(OAuth2RefreshToken token) {
+		// Refresh tokens are not cached, and the access tokens granted with them are removed explicitly
+		delegate.removeRefreshToken(token);
+	}
+
+	public void removeAccessTokenUsingRefreshToken(OAuth2RefreshToken refreshToken) {
+		delegate.removeAccessTokenUsingRefreshToken(refreshToken);
+		String accessToken = refreshTokenToAccessToken.remove(refreshToken.getValue());
+		if (accessToken != null) {
+			invalidate(accessToken);
+		}
+	}
+
+	public Collection<OAuth2AccessToken> findTokensByUserName(String userName) {
+		return delegate.findTokensByUserName(userName);
+	}
+
+	public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
+		return delegate.findTokensByClientId(clientId);
+	}
+
+	private void invalidate(String tokenValue) {
+		invalidations.incrementAndGet();
+		cache.remove(tokenValue);
+	}
+
+	private void cache(long generation, OAuth2AccessToken token, OAuth2Authentication authentication) {
+		if (token == null) {
+			return;
+		}
+		long expiry = timeToLiveSeconds > 0 ? System.currentTimeMillis() + timeToLiveSeconds * 1000L : Long.MAX_VALUE;
+		if (token.getExpiration() != null) {
+			expiry = Math.min(expiry, token.getExpiration().getTime());
+		}
+		if (!cache.put(token.getValue(), new CachedToken(token, copy(authentication)), expiry)) {
+			// The token has already expired, so it is not cached and there is nothing to invalidate later
+			return;
+		}
+		OAuth2RefreshToken refreshToken = token.getRefreshToken();
+		String refreshTokenValue = refreshToken == null ? null : refreshToken.getValue();
+		if (refreshTokenValue != null) {
+			refreshTokenToAccessToken.put(refreshTokenValue, token.getValue());
+		}
+		if (invalidations.get() != generation) {
+			// Something was removed while we were reading from the delegate, so this value might be stale
+			cache.remove(token.getValue());
+			if (refreshTokenValue != null) {
+				refreshTokenToAccessToken.remove(refreshTokenValue, token.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Callers set details on the authentications they get back, so the cached instance is never handed out.
+	 */
+	private static OAuth2Authentication copy(OAuth2Authentication authentication) {
+		if (authentication == null) {
+			return null;
+		}
+		OAuth2Authentication result = new OAuth2Authentication(authentication.getOAuth2Request(),
+				authentication.getUserAuthentication());
+		result.setDetails(authentication.getDetails());
+		return result;
+	}
+
+	private static class CachedToken {
+
+		private final OAuth2AccessToken token;
+
+		private final OAuth2Authentication authentication;
+
+		public CachedToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+			this.token = token;
+			this.authentication = authentication;
+		}
+
+	}
+
+}
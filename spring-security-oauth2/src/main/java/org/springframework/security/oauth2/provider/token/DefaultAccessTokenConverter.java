@@ -81,7 +81,7 @@ public class DefaultAccessTokenConverter implements AccessTokenConverter {
 		info.remove(CLIENT_ID);
 		info.remove(SCOPE);
 		if (map.containsKey(EXP)) {
-			token.setExpiration(new Date((Integer) map.get(EXP) * 1000L));
+			token.setExpiration(new Date(((Number) map.get(EXP)).longValue() * 1000L));
 		}
 		if (map.containsKey(JTI)) {
 			info.put(JTI, map.get(JTI));
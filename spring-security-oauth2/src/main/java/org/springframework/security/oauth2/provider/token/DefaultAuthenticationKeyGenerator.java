@@ -12,20 +12,15 @@
  */
 package org.springframework.security.oauth2.provider.token;
 
-import java.io.UnsupportedEncodingException;
-import java.math.BigInteger;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
-import java.util.LinkedHashMap;
-import java.util.Map;
+import java.util.Iterator;
+import java.util.Set;
 
-import org.springframework.security.oauth2.common.util.OAuth2Utils;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.OAuth2Request;
 
 /**
  * Basic key generator taking into account the client id, scope, reource ids and username (principal name) if they
- * exist.
+ * exist. The key is the MD5 digest of the values, computed with a digest that is reused per thread.
  * 
  * @author Dave Syer
  * 
@@ -39,30 +34,24 @@ public class DefaultAuthenticationKeyGenerator implements AuthenticationKeyGener
 	private static final String USERNAME = "username";
 
 	public String extractKey(OAuth2Authentication authentication) {
-		Map<String, String> values = new LinkedHashMap<String, String>();
+		// Same format as the toString() of a map of the values, so that existing keys are unchanged
+		Md5KeyBuilder key = Md5KeyBuilder.start().append("{");
 		OAuth2Request authorizationRequest = authentication.getOAuth2Request();
 		if (!authentication.isClientOnly()) {
-			values.put(USERNAME, authentication.getName());
+			key.append(USERNAME).append("=").append(authentication.getName()).append(", ");
 		}
-		values.put(CLIENT_ID, authorizationRequest.getClientId());
-		if (authorizationRequest.getScope() != null) {
-			values.put(SCOPE, OAuth2Utils.formatParameterList(authorizationRequest.getScope()));
-		}
-		MessageDigest digest;
-		try {
-			digest = MessageDigest.getInstance("MD5");
-		}
-		catch (NoSuchAlgorithmException e) {
-			throw new IllegalStateException("MD5 algorithm not available.  Fatal (should be in the JDK).");
-		}
-
-		try {
-			byte[] bytes = digest.digest(values.toString().getBytes("UTF-8"));
-			return String.format("%032x", new BigInteger(1, bytes));
-		}
-		catch (UnsupportedEncodingException e) {
-			throw new IllegalStateException("UTF-8 encoding not available.  Fatal (should be in the JDK).");
+		key.append(CLIENT_ID).append("=").append(authorizationRequest.getClientId());
+		Set<String> scope = authorizationRequest.getScope();
+		if (scope != null) {
+			key.append(", ").append(SCOPE).append("=");
+			for (Iterator<String> iterator = scope.iterator(); iterator.hasNext();) {
+				key.append(iterator.next());
+				if (iterator.hasNext()) {
+					key.append(" ");
+				}
+			}
 		}
+		return key.append("}").toKey();
 	}
 
 }
@@ -0,0 +1,35 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.provider.token;
+
+/**
+ * Default {@link TokenKeyGenerator}: the MD5 digest of the UTF-8 bytes of the value as 32 hex characters. The digest is
+ * reused per thread and nothing is allocated apart from the key itself.
+ * 
+ * @author Dave Syer
+ * 
+ */
+public class DefaultTokenKeyGenerator implements TokenKeyGenerator {
+
+	public String extractKey(String value) {
+		if (value == null) {
+			return null;
+		}
+		return Md5KeyBuilder.key(value);
+	}
+
+}
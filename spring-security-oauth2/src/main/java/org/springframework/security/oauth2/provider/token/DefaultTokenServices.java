@@ -13,10 +13,12 @@
 
 package org.springframework.security.oauth2.provider.token;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 import java.util.Set;
-import java.util.UUID;
+import java.util.concurrent.Callable;
 
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.security.core.AuthenticationException;
@@ -28,20 +30,28 @@ import org.springframework.security.oauth2.common.OAuth2RefreshToken;
 import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
 import org.springframework.security.oauth2.common.exceptions.InvalidScopeException;
 import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.common.util.DefaultTokenValueGenerator;
+import org.springframework.security.oauth2.common.util.RequestCoalescer;
+import org.springframework.security.oauth2.common.util.TokenValueGenerator;
 import org.springframework.security.oauth2.provider.ClientDetails;
 import org.springframework.security.oauth2.provider.ClientDetailsService;
+import org.springframework.security.oauth2.provider.GrantContextHolder;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.OAuth2Request;
 import org.springframework.security.oauth2.provider.TokenRequest;
 import org.springframework.util.Assert;
 
 /**
- * Base implementation for token services using random UUID values for the access token and refresh token values. The
+ * Base implementation for token services using random values for the access token and refresh token values. The
  * main extension point for customizations is the {@link TokenEnhancer} which will be called after the access and
  * refresh tokens have been generated but before they are stored.
  * <p>
  * Persistence is delegated to a {@code TokenStore} implementation and customization of the access token to a
  * {@link TokenEnhancer}.
+ * <p>
+ * Concurrent requests for the same token (the same authentication, or the same refresh token) can optionally be
+ * coalesced, so that only one of them reads and writes the token store and the others share its result. See
+ * {@link #setCoalesceRequests(boolean)}.
  * 
  * @author Ryan Heaton
  * @author Luke Taylor
@@ -64,6 +74,16 @@ public class DefaultTokenServices implements AuthorizationServerTokenServices, R
 
 	private TokenEnhancer accessTokenEnhancer;
 
+	private TokenValueGenerator tokenValueGenerator = new DefaultTokenValueGenerator();
+
+	private RejectedTokenCache rejectedTokenCache;
+
+	private AuthenticationKeyGenerator authenticationKeyGenerator = new DefaultAuthenticationKeyGenerator();
+
+	private RequestCoalescer<String, OAuth2AccessToken> createRequests;
+
+	private RequestCoalescer<List<Object>, OAuth2AccessToken> refreshRequests;
+
 	/**
 	 * Initialize these token services. If no random generator is set, one will be created.
 	 */
@@ -71,25 +91,41 @@ public class DefaultTokenServices implements AuthorizationServerTokenServices, R
 		Assert.notNull(tokenStore, "tokenStore must be set");
 	}
 
-	public OAuth2AccessToken createAccessToken(OAuth2Authentication authentication) throws AuthenticationException {
+	public OAuth2AccessToken createAccessToken(final OAuth2Authentication authentication)
+			throws AuthenticationException {
+		if (createRequests == null) {
+			return issued(doCreateAccessToken(authentication));
+		}
+		return issued(createRequests.execute(authenticationKeyGenerator.extractKey(authentication),
+				new Callable<OAuth2AccessToken>() {
+					public OAuth2AccessToken call() {
+						return doCreateAccessToken(authentication);
+					}
+				}));
+	}
 
-		OAuth2AccessToken existingAccessToken = tokenStore.getAccessToken(authentication);
-		OAuth2RefreshToken refreshToken = null;
-		if (existingAccessToken != null) {
-			if (existingAccessToken.isExpired()) {
-				if (existingAccessToken.getRefreshToken() != null) {
-					refreshToken = existingAccessToken.getRefreshToken();
-					// The token store could remove the refresh token when the access token is removed, but we want to
-					// be sure...
-					tokenStore.removeRefreshToken(refreshToken);
-				}
-				tokenStore.removeAccessToken(existingAccessToken);
-			}
-			else {
-				return existingAccessToken;
+	private OAuth2AccessToken doCreateAccessToken(OAuth2Authentication authentication) {
+
+		// The store might be able to find or create the token atomically
+		AccessTokenIssuer issuer = tokenStore instanceof AccessTokenIssuer ? (AccessTokenIssuer) tokenStore
+				: new TokenStoreAccessTokenIssuer(tokenStore);
+		return issuer.issueAccessToken(authentication, new AccessTokenFactory() {
+			public OAuth2AccessToken createAccessToken(OAuth2Authentication authentication,
+					OAuth2RefreshToken refreshToken) {
+				return createNewAccessToken(authentication, refreshToken);
 			}
-		}
+		});
+
+	}
 
+	/**
+	 * Create a new access token, re-using the refresh token from an expired one if there was one.
+	 * 
+	 * @param authentication the current authentication
+	 * @param refreshToken the refresh token of an expired access token for the same authentication (or null)
+	 * @return a new access token
+	 */
+	private OAuth2AccessToken createNewAccessToken(OAuth2Authentication authentication, OAuth2RefreshToken refreshToken) {
 		// Only create a new refresh token if there wasn't an existing one associated with an expired access token.
 		// Clients might be holding existing refresh tokens, so we re-use it in the case that the old access token
 		// expired.
@@ -103,18 +139,36 @@ public class DefaultTokenServices implements AuthorizationServerTokenServices, R
 				refreshToken = createRefreshToken(authentication);
 			}
 		}
+		return createAccessToken(authentication, refreshToken);
+	}
 
-		OAuth2AccessToken accessToken = createAccessToken(authentication, refreshToken);
-		tokenStore.storeAccessToken(accessToken, authentication);
-		if (refreshToken != null) {
-			tokenStore.storeRefreshToken(refreshToken, authentication);
+	public OAuth2AccessToken refreshAccessToken(final String refreshTokenValue, final TokenRequest tokenRequest)
+			throws AuthenticationException {
+		if (refreshRequests == null) {
+			return issued(doRefreshAccessToken(refreshTokenValue, tokenRequest));
 		}
-		return accessToken;
+		// Only share the result with callers that would pass the same client and scope checks
+		List<Object> key = Arrays.<Object> asList(refreshTokenValue, tokenRequest.getClientId(),
+				tokenRequest.getScope());
+		return issued(refreshRequests.execute(key, new Callable<OAuth2AccessToken>() {
+			public OAuth2AccessToken call() {
+				return doRefreshAccessToken(refreshTokenValue, tokenRequest);
+			}
+		}));
+	}
 
+	/**
+	 * Make sure a token that has just been issued is not remembered as rejected.
+	 */
+	private OAuth2AccessToken issued(OAuth2AccessToken token) {
+		RejectedTokenCache cache = this.rejectedTokenCache;
+		if (cache != null && token != null) {
+			cache.invalidate(token.getValue());
+		}
+		return token;
 	}
 
-	public OAuth2AccessToken refreshAccessToken(String refreshTokenValue, TokenRequest tokenRequest)
-			throws AuthenticationException {
+	private OAuth2AccessToken doRefreshAccessToken(String refreshTokenValue, TokenRequest tokenRequest) {
 
 		if (!supportRefreshToken) {
 			throw new InvalidGrantException("Invalid refresh token: " + refreshTokenValue);
@@ -196,7 +250,19 @@ public class DefaultTokenServices implements AuthorizationServerTokenServices, R
 	}
 
 	public OAuth2Authentication loadAuthentication(String accessTokenValue) throws AuthenticationException {
+		if (tokenStore instanceof StoredAccessTokenReader) {
+			// Read the token and the authentication in one go if the store supports it
+			StoredAccessToken storedToken = ((StoredAccessTokenReader) tokenStore).readStoredAccessToken(accessTokenValue);
+			validateAccessToken(accessTokenValue, storedToken == null ? null : storedToken.getAccessToken());
+			return storedToken.getAuthentication();
+		}
 		OAuth2AccessToken accessToken = tokenStore.readAccessToken(accessTokenValue);
+		validateAccessToken(accessTokenValue, accessToken);
+		OAuth2Authentication result = tokenStore.readAuthentication(accessToken);
+		return result;
+	}
+
+	private void validateAccessToken(String accessTokenValue, OAuth2AccessToken accessToken) {
 		if (accessToken == null) {
 			throw new InvalidTokenException("Invalid access token: " + accessTokenValue);
 		}
@@ -204,9 +270,6 @@ public class DefaultTokenServices implements AuthorizationServerTokenServices, R
 			tokenStore.removeAccessToken(accessToken);
 			throw new InvalidTokenException("Access token expired: " + accessTokenValue);
 		}
-
-		OAuth2Authentication result = tokenStore.readAuthentication(accessToken);
-		return result;
 	}
 
 	public String getClientId(String tokenValue) {
@@ -246,13 +309,13 @@ public class DefaultTokenServices implements AuthorizationServerTokenServices, R
 			return null;
 		}
 		int validitySeconds = getRefreshTokenValiditySeconds(authentication.getOAuth2Request());
-		ExpiringOAuth2RefreshToken refreshToken = new DefaultExpiringOAuth2RefreshToken(UUID.randomUUID().toString(),
+		ExpiringOAuth2RefreshToken refreshToken = new DefaultExpiringOAuth2RefreshToken(tokenValueGenerator.generate(),
 				new Date(System.currentTimeMillis() + (validitySeconds * 1000L)));
 		return refreshToken;
 	}
 
 	private OAuth2AccessToken createAccessToken(OAuth2Authentication authentication, OAuth2RefreshToken refreshToken) {
-		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(tokenValueGenerator.generate());
 		int validitySeconds = getAccessTokenValiditySeconds(authentication.getOAuth2Request());
 		if (validitySeconds > 0) {
 			token.setExpiration(new Date(System.currentTimeMillis() + (validitySeconds * 1000L)));
@@ -270,7 +333,8 @@ public class DefaultTokenServices implements AuthorizationServerTokenServices, R
 	 */
 	protected int getAccessTokenValiditySeconds(OAuth2Request clientAuth) {
 		if (clientDetailsService != null) {
-			ClientDetails client = clientDetailsService.loadClientByClientId(clientAuth.getClientId());
+			ClientDetails client = GrantContextHolder.loadClientByClientId(clientDetailsService,
+					clientAuth.getClientId());
 			Integer validity = client.getAccessTokenValiditySeconds();
 			if (validity != null) {
 				return validity;
@@ -286,7 +350,8 @@ public class DefaultTokenServices implements AuthorizationServerTokenServices, R
 	 */
 	protected int getRefreshTokenValiditySeconds(OAuth2Request clientAuth) {
 		if (clientDetailsService != null) {
-			ClientDetails client = clientDetailsService.loadClientByClientId(clientAuth.getClientId());
+			ClientDetails client = GrantContextHolder.loadClientByClientId(clientDetailsService,
+					clientAuth.getClientId());
 			Integer validity = client.getRefreshTokenValiditySeconds();
 			if (validity != null) {
 				return validity;
@@ -303,7 +368,8 @@ public class DefaultTokenServices implements AuthorizationServerTokenServices, R
 	 */
 	protected boolean isSupportRefreshToken(OAuth2Request clientAuth) {
 		if (clientDetailsService != null) {
-			ClientDetails client = clientDetailsService.loadClientByClientId(clientAuth.getClientId());
+			ClientDetails client = GrantContextHolder.loadClientByClientId(clientDetailsService,
+					clientAuth.getClientId());
 			return client.getAuthorizedGrantTypes().contains("refresh_token");
 		}
 		return this.supportRefreshToken;
@@ -318,6 +384,26 @@ public class DefaultTokenServices implements AuthorizationServerTokenServices, R
 		this.accessTokenEnhancer = accessTokenEnhancer;
 	}
 
+	/**
+	 * The generator for access and refresh token values. Defaults to a {@link DefaultTokenValueGenerator} (256 bits of
+	 * entropy, URL-safe).
+	 * 
+	 * @param tokenValueGenerator the token value generator to set
+	 */
+	public void setTokenValueGenerator(TokenValueGenerator tokenValueGenerator) {
+		this.tokenValueGenerator = tokenValueGenerator;
+	}
+
+	/**
+	 * A cache of recently rejected tokens shared with the resource server (optional). Tokens are invalidated in the
+	 * cache when they are issued, in case they were presented (and rejected) before they were stored.
+	 * 
+	 * @param rejectedTokenCache the rejected token cache to set
+	 */
+	public void setRejectedTokenCache(RejectedTokenCache rejectedTokenCache) {
+		this.rejectedTokenCache = rejectedTokenCache;
+	}
+
 	/**
 	 * The validity (in seconds) of the refresh token.
 	 * 
@@ -365,6 +451,31 @@ public class DefaultTokenServices implements AuthorizationServerTokenServices, R
 		this.tokenStore = tokenStore;
 	}
 
+	/**
+	 * Flag to coalesce concurrent requests for the same token (default false). If true then concurrent calls to
+	 * {@link #createAccessToken(OAuth2Authentication)} with the same authentication key, or to
+	 * {@link #refreshAccessToken(String, TokenRequest)} with the same refresh token (and client and scope), are
+	 * coalesced: only one of them does the work and the others wait and get the same result. Only requests in
+	 * progress are tracked, so there is no extra memory used once the burst is over. This only applies to callers in
+	 * the same process: the token store still has to cope with concurrent requests across a cluster.
+	 * 
+	 * @param coalesceRequests the flag value to set
+	 */
+	public void setCoalesceRequests(boolean coalesceRequests) {
+		this.createRequests = coalesceRequests ? new RequestCoalescer<String, OAuth2AccessToken>() : null;
+		this.refreshRequests = coalesceRequests ? new RequestCoalescer<List<Object>, OAuth2AccessToken>() : null;
+	}
+
+	/**
+	 * The key generator used to identify concurrent requests for the same authentication when
+	 * {@link #setCoalesceRequests(boolean) coalescing requests}. Should be consistent with the token store.
+	 * 
+	 * @param authenticationKeyGenerator the key generator to set
+	 */
+	public void setAuthenticationKeyGenerator(AuthenticationKeyGenerator authenticationKeyGenerator) {
+		this.authenticationKeyGenerator = authenticationKeyGenerator;
+	}
+
 	/**
 	 * The client details service to use for looking up clients (if necessary). Optional if the access token expiry is
 	 * set globally via {@link #setAccessTokenValiditySeconds(int)}.
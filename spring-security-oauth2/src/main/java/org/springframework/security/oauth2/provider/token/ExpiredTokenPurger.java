@@ -0,0 +1,38 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.provider.token;
+
+/**
+ * Optional interface for a {@link TokenStore} that can remove its expired tokens in bulk. Used by an
+ * {@link ExpiredTokenSweeper} to reclaim expired tokens in the background.
+ * 
+ * @author Dave Syer
+ * 
+ */
+public interface ExpiredTokenPurger {
+
+	/**
+	 * Remove up to <code>batchSize</code> expired tokens (access and refresh tokens, together with anything that
+	 * refers to them). Implementations should keep the work done in one call roughly proportional to the batch size, so
+	 * that callers can bound the time spent purging by calling this method repeatedly.
+	 * 
+	 * @param batchSize the maximum number of tokens to remove
+	 * @return the number of tokens removed (if it is less than the batch size there are no more expired tokens)
+	 */
+	int purgeExpiredTokens(int batchSize);
+
+}
@@ -0,0 +1,187 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.provider.token;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+/**
+ * Background sweeper that removes expired tokens from an {@link ExpiredTokenPurger} (e.g. an
+ * {@link InMemoryTokenStore} or a {@link JdbcTokenStore}) on a dedicated scheduler thread, so that the threads issuing
+ * tokens never pay for the cleanup. Each sweep removes tokens in small batches and stops when there are no more
+ * expired tokens or the {@link #setMaxSweepMillis(long) time limit} is reached, whichever comes first (anything left
+ * over is picked up by the next sweep). The scheduler is started when the bean is initialized and shut down when it
+ * is destroyed.
+ * 
+ * @author Dave Syer
+ * 
+ */
+public class ExpiredTokenSweeper implements InitializingBean, DisposableBean {
+
+	private static final Log LOG = LogFactory.getLog(ExpiredTokenSweeper.class);
+
+	private static final AtomicInteger threadCount = new AtomicInteger();
+
+	private final ExpiredTokenPurger purger;
+
+	private ScheduledExecutorService scheduler;
+
+	private long sweepIntervalMillis = 60000;
+
+	private long maxSweepMillis = 50;
+
+	private int batchSize = 100;
+
+	private final AtomicLong sweepCount = new AtomicLong();
+
+	private final AtomicLong reclaimedCount = new AtomicLong();
+
+	private volatile int lastSweepCount;
+
+	private volatile long lastSweepMillis;
+
+	/**
+	 * @param purger the token store to sweep
+	 */
+	public ExpiredTokenSweeper(ExpiredTokenPurger purger) {
+		Assert.notNull(purger, "An ExpiredTokenPurger is required");
+		this.purger = purger;
+	}
+
+	/**
+	 * The interval between the end of one sweep and the start of the next. Default 60000 (one minute).
+	 * 
+	 * @param sweepIntervalMillis the sweep interval to set in milliseconds
+	 */
+	public void setSweepIntervalMillis(long sweepIntervalMillis) {
+		this.sweepIntervalMillis = sweepIntervalMillis;
+	}
+
+	/**
+	 * The maximum time that a single sweep should take. A batch that has started is always finished, so the limit can
+	 * be exceeded by the time it takes to purge one batch. Default 50.
+	 * 
+	 * @param maxSweepMillis the time limit to set in milliseconds
+	 */
+	public void setMaxSweepMillis(long maxSweepMillis) {
+		this.maxSweepMillis = maxSweepMillis;
+	}
+
+	/**
+	 * The maximum number of tokens to remove in one batch. Default 100.
+	 * 
+	 * @param batchSize the batch size to set
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+
+	/**
+	 * @return the number of sweeps that have run
+	 */
+	public long getSweepCount() {
+		return sweepCount.get();
+	}
+
+	/**
+	 * @return the total number of tokens removed by all sweeps
+	 */
+	public long getReclaimedCount() {
+		return reclaimedCount.get();
+	}
+
+	/**
+	 * @return the number of tokens removed by the last sweep
+	 */
+	public int getLastSweepCount() {
+		return lastSweepCount;
+	}
+
+	/**
+	 * @return the duration of the last sweep in milliseconds
+	 */
+	public long getLastSweepMillis() {
+		return lastSweepMillis;
+	}
+
+	public void afterPropertiesSet() throws Exception {
+		Assert.state(sweepIntervalMillis > 0, "Sweep interval must be positive");
+		Assert.state(batchSize > 0, "Batch size must be positive");
+		scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+			public Thread newThread(Runnable runnable) {
+				Thread thread = new Thread(runnable, "expired-token-sweeper-" + threadCount.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		});
+		scheduler.scheduleWithFixedDelay(new Runnable() {
+			public void run() {
+				try {
+					sweep();
+				}
+				catch (RuntimeException e) {
+					// Don't let one failure cancel all future sweeps
+					LOG.warn("Failed to remove expired tokens", e);
+				}
+			}
+		}, sweepIntervalMillis, sweepIntervalMillis, TimeUnit.MILLISECONDS);
+	}
+
+	public void destroy() throws Exception {
+		if (scheduler != null) {
+			scheduler.shutdownNow();
+			scheduler = null;
+		}
+	}
+
+	/**
+	 * Remove expired tokens in batches until there are none left or the time limit is reached. Normally called by the
+	 * scheduler, but can be called directly (e.g. in tests or from a management endpoint).
+	 * 
+	 * @return the number of tokens removed
+	 */
+	public int sweep() {
+		long start = System.currentTimeMillis();
+		long deadline = start + maxSweepMillis;
+		int count = 0;
+		int removed;
+		do {
+			removed = purger.purgeExpiredTokens(batchSize);
+			count += removed;
+		} while (removed >= batchSize && System.currentTimeMillis() < deadline && !Thread.currentThread().isInterrupted());
+		long duration = System.currentTimeMillis() - start;
+		lastSweepCount = count;
+		lastSweepMillis = duration;
+		sweepCount.incrementAndGet();
+		reclaimedCount.addAndGet(count);
+		if (LOG.isDebugEnabled()) {
+			LOG.debug("Removed " + count + " expired tokens in " + duration + "ms");
+		}
+		return count;
+	}
+
+}
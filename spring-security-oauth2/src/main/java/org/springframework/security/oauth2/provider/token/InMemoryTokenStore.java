@@ -1,52 +1,59 @@
 package org.springframework.security.oauth2.provider.token;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Date;
-import java.util.HashSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.DelayQueue;
-import java.util.concurrent.Delayed;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.common.OAuth2RefreshToken;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
-import org.springframework.util.Assert;
 
 /**
  * Implementation of token services that stores tokens in memory.
- * 
+ * <p>
+ * Each access token is held in a single record (with its authentication and the keys it is indexed under), and the
+ * lookups by authentication, user name, client id and refresh token are secondary indexes of token values. There are
+ * no global locks: the indexes are concurrent maps and sets (only changes to the set for a single user or client are
+ * synchronized, so that it can be removed when it is empty), and every entry found through an index is checked against
+ * the primary record, so a lookup never returns a token that has been removed or re-stored under a different key.
+ * Expired tokens are flushed periodically (see {@link #setFlushInterval(int)}) from a queue ordered by expiry time.
+ * The flush runs on the thread that stores a token, so for a busy server it is better to disable it and remove expired
+ * tokens in the background with an {@link ExpiredTokenSweeper} instead.
+ *
  * @author Ryan Heaton
  * @author Luke Taylor
  * @author Dave Syer
  */
-public class InMemoryTokenStore implements TokenStore {
+public class InMemoryTokenStore implements TokenStore, BatchStoredAccessTokenReader, ExpiredTokenPurger {
 
 	private static final int DEFAULT_FLUSH_INTERVAL = 1000;
 
-	private final ConcurrentHashMap<String, OAuth2AccessToken> accessTokenStore = new ConcurrentHashMap<String, OAuth2AccessToken>();
+	private final ConcurrentMap<String, AccessTokenRecord> accessTokenStore = new ConcurrentHashMap<String, AccessTokenRecord>();
 
-	private final ConcurrentHashMap<String, OAuth2AccessToken> authenticationToAccessTokenStore = new ConcurrentHashMap<String, OAuth2AccessToken>();
+	private final ConcurrentMap<String, String> authenticationToAccessTokenStore = new ConcurrentHashMap<String, String>();
 
-	private final ConcurrentHashMap<String, Collection<OAuth2AccessToken>> userNameToAccessTokenStore = new ConcurrentHashMap<String, Collection<OAuth2AccessToken>>();
+	private final ConcurrentMap<String, Set<String>> userNameToAccessTokenStore = new ConcurrentHashMap<String, Set<String>>();
 
-	private final ConcurrentHashMap<String, Collection<OAuth2AccessToken>> clientIdToAccessTokenStore = new ConcurrentHashMap<String, Collection<OAuth2AccessToken>>();
+	private final ConcurrentMap<String, Set<String>> clientIdToAccessTokenStore = new ConcurrentHashMap<String, Set<String>>();
 
-	private final ConcurrentHashMap<String, OAuth2RefreshToken> refreshTokenStore = new ConcurrentHashMap<String, OAuth2RefreshToken>();
+	private final ConcurrentMap<String, RefreshTokenRecord> refreshTokenStore = new ConcurrentHashMap<String, RefreshTokenRecord>();
 
-	private final ConcurrentHashMap<String, String> accessTokenToRefreshTokenStore = new ConcurrentHashMap<String, String>();
+	private final ConcurrentMap<String, String> refreshTokenToAccessTokenStore = new ConcurrentHashMap<String, String>();
 
-	private final ConcurrentHashMap<String, OAuth2Authentication> authenticationStore = new ConcurrentHashMap<String, OAuth2Authentication>();
+	private final ConcurrentSkipListSet<TokenExpiry> expiryQueue = new ConcurrentSkipListSet<TokenExpiry>();
 
-	private final ConcurrentHashMap<String, OAuth2Authentication> refreshTokenAuthenticationStore = new ConcurrentHashMap<String, OAuth2Authentication>();
+	private final ConcurrentSkipListSet<TokenExpiry> refreshTokenExpiryQueue = new ConcurrentSkipListSet<TokenExpiry>();
 
-	private final ConcurrentHashMap<String, String> refreshTokenToAcessTokenStore = new ConcurrentHashMap<String, String>();
-
-	private final DelayQueue<TokenExpiry> expiryQueue = new DelayQueue<TokenExpiry>();
-
-	private final ConcurrentHashMap<String, TokenExpiry> expiryMap = new ConcurrentHashMap<String, TokenExpiry>();
+	private final AtomicLong expirySequence = new AtomicLong();
 
 	private int flushInterval = DEFAULT_FLUSH_INTERVAL;
 
@@ -55,8 +62,9 @@ public class InMemoryTokenStore implements TokenStore {
 	private AtomicInteger flushCounter = new AtomicInteger(0);
 
 	/**
-	 * The number of tokens to store before flushing expired tokens. Defaults to 1000.
-	 * 
+	 * The number of tokens to store before flushing expired tokens. Defaults to 1000. Set it to zero (or negative) to
+	 * switch off the flush on store, e.g. if expired tokens are removed by an {@link ExpiredTokenSweeper}.
+	 *
 	 * @param flushInterval the interval to set
 	 */
 	public void setFlushInterval(int flushInterval) {
@@ -65,7 +73,7 @@ public class InMemoryTokenStore implements TokenStore {
 
 	/**
 	 * The interval (count of token inserts) between flushing expired tokens.
-	 * 
+	 *
 	 * @return the flushInterval the flush interval
 	 */
 	public int getFlushInterval() {
@@ -81,11 +89,9 @@ public class InMemoryTokenStore implements TokenStore {
 		userNameToAccessTokenStore.clear();
 		clientIdToAccessTokenStore.clear();
 		refreshTokenStore.clear();
-		accessTokenToRefreshTokenStore.clear();
-		authenticationStore.clear();
-		refreshTokenAuthenticationStore.clear();
-		refreshTokenToAcessTokenStore.clear();
+		refreshTokenToAccessTokenStore.clear();
 		expiryQueue.clear();
+		refreshTokenExpiryQueue.clear();
 	}
 
 	public void setAuthenticationKeyGenerator(AuthenticationKeyGenerator authenticationKeyGenerator) {
@@ -93,18 +99,11 @@ public class InMemoryTokenStore implements TokenStore {
 	}
 
 	public int getAccessTokenCount() {
-		Assert.state(accessTokenStore.isEmpty() || accessTokenStore.size() >= accessTokenToRefreshTokenStore.size(),
-				"Too many refresh tokens");
-		Assert.state(accessTokenStore.size() == authenticationToAccessTokenStore.size(),
-				"Inconsistent token store state");
-		Assert.state(accessTokenStore.size() <= authenticationStore.size(), "Inconsistent authentication store state");
 		return accessTokenStore.size();
 	}
 
 	public int getRefreshTokenCount() {
-		Assert.state(refreshTokenStore.size() == refreshTokenToAcessTokenStore.size(),
-				"Inconsistent refresh token store state");
-		return accessTokenStore.size();
+		return refreshTokenStore.size();
 	}
 
 	public int getExpiryTokenCount() {
@@ -113,14 +112,22 @@ public class InMemoryTokenStore implements TokenStore {
 
 	public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
 		String key = authenticationKeyGenerator.extractKey(authentication);
-		OAuth2AccessToken accessToken = authenticationToAccessTokenStore.get(key);
-		if (accessToken != null
-				&& !key.equals(authenticationKeyGenerator.extractKey(readAuthentication(accessToken.getValue())))) {
+		String value = authenticationToAccessTokenStore.get(key);
+		if (value == null) {
+			return null;
+		}
+		AccessTokenRecord record = accessTokenStore.get(value);
+		if (record == null) {
+			// Stale index entry left behind by a concurrent removal
+			authenticationToAccessTokenStore.remove(key, value);
+			return null;
+		}
+		if (!key.equals(record.authenticationKey)) {
 			// Keep the stores consistent (maybe the same user is represented by this authentication but the details
 			// have changed)
-			storeAccessToken(accessToken, authentication);
+			storeAccessToken(record.token, authentication);
 		}
-		return accessToken;
+		return record.token;
 	}
 
 	public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
@@ -128,7 +135,8 @@ public class InMemoryTokenStore implements TokenStore {
 	}
 
 	public OAuth2Authentication readAuthentication(String token) {
-		return this.authenticationStore.get(token);
+		AccessTokenRecord record = this.accessTokenStore.get(token);
+		return record == null ? null : record.authentication;
 	}
 
 	public OAuth2Authentication readAuthenticationForRefreshToken(OAuth2RefreshToken token) {
@@ -136,43 +144,34 @@ public class InMemoryTokenStore implements TokenStore {
 	}
 
 	public OAuth2Authentication readAuthenticationForRefreshToken(String token) {
-		return this.refreshTokenAuthenticationStore.get(token);
+		RefreshTokenRecord record = this.refreshTokenStore.get(token);
+		return record == null ? null : record.authentication;
 	}
 
 	public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
-		if (this.flushCounter.incrementAndGet() >= this.flushInterval) {
+		if (this.flushInterval > 0 && this.flushCounter.incrementAndGet() >= this.flushInterval) {
 			flush();
 			this.flushCounter.set(0);
 		}
-		this.accessTokenStore.put(token.getValue(), token);
-		this.authenticationStore.put(token.getValue(), authentication);
-		this.authenticationToAccessTokenStore.put(authenticationKeyGenerator.extractKey(authentication), token);
-		if (!authentication.isClientOnly()) {
-			addToCollection(this.userNameToAccessTokenStore, authentication.getName(), token);
-		}
-		addToCollection(this.clientIdToAccessTokenStore, authentication.getOAuth2Request().getClientId(), token);
+		String value = token.getValue();
+		TokenExpiry expiry = null;
 		if (token.getExpiration() != null) {
-			TokenExpiry expiry = new TokenExpiry(token.getValue(), token.getExpiration());
-			// Remove existing expiry for this token if present
-			expiryQueue.remove(expiryMap.put(token.getValue(), expiry));
-			this.expiryQueue.put(expiry);
+			expiry = new TokenExpiry(value, token.getExpiration().getTime(), expirySequence.incrementAndGet());
 		}
-		if (token.getRefreshToken() != null && token.getRefreshToken().getValue() != null) {
-			this.refreshTokenToAcessTokenStore.put(token.getRefreshToken().getValue(), token.getValue());
-			this.accessTokenToRefreshTokenStore.put(token.getValue(), token.getRefreshToken().getValue());
+		String refreshToken = null;
+		if (token.getRefreshToken() != null) {
+			refreshToken = token.getRefreshToken().getValue();
 		}
-	}
-
-	private void addToCollection(ConcurrentHashMap<String, Collection<OAuth2AccessToken>> store, String key,
-			OAuth2AccessToken token) {
-		if (!store.containsKey(key)) {
-			synchronized (store) {
-				if (!store.containsKey(key)) {
-					store.put(key, new HashSet<OAuth2AccessToken>());
-				}
-			}
+		AccessTokenRecord record = new AccessTokenRecord(token, authentication,
+				authenticationKeyGenerator.extractKey(authentication), authentication.isClientOnly() ? null
+						: authentication.getName(), authentication.getOAuth2Request().getClientId(), refreshToken,
+				expiry);
+		AccessTokenRecord old = this.accessTokenStore.put(value, record);
+		// Add the new index entries before removing the old ones so the token never disappears from a lookup
+		index(record);
+		if (old != null) {
+			unindex(old, record);
 		}
-		store.get(key).add(token);
 	}
 
 	public void removeAccessToken(OAuth2AccessToken accessToken) {
@@ -180,40 +179,59 @@ public class InMemoryTokenStore implements TokenStore {
 	}
 
 	public OAuth2AccessToken readAccessToken(String tokenValue) {
-		return this.accessTokenStore.get(tokenValue);
+		AccessTokenRecord record = this.accessTokenStore.get(tokenValue);
+		return record == null ? null : record.token;
+	}
+
+	public StoredAccessToken readStoredAccessToken(String tokenValue) {
+		AccessTokenRecord record = this.accessTokenStore.get(tokenValue);
+		if (record == null) {
+			return null;
+		}
+		return new StoredAccessToken(record.token, record.authentication);
+	}
+
+	public Map<String, StoredAccessToken> readStoredAccessTokens(Collection<String> tokenValues) {
+		Map<String, StoredAccessToken> result = new HashMap<String, StoredAccessToken>();
+		for (String tokenValue : tokenValues) {
+			AccessTokenRecord record = this.accessTokenStore.get(tokenValue);
+			if (record != null) {
+				result.put(tokenValue, new StoredAccessToken(record.token, record.authentication));
+			}
+		}
+		return result;
 	}
 
 	public void removeAccessToken(String tokenValue) {
-		OAuth2AccessToken removed = this.accessTokenStore.remove(tokenValue);
-		String refresh = this.accessTokenToRefreshTokenStore.remove(tokenValue);
-		if (refresh != null) {
+		AccessTokenRecord removed = this.accessTokenStore.remove(tokenValue);
+		if (removed != null) {
 			// Don't remove the refresh token itself - it's up to the caller to do that
-			this.refreshTokenToAcessTokenStore.remove(tokenValue);
-		}
-		OAuth2Authentication authentication = this.authenticationStore.remove(tokenValue);
-		if (authentication != null) {
-			this.authenticationToAccessTokenStore.remove(authenticationKeyGenerator.extractKey(authentication));
-			Collection<OAuth2AccessToken> tokens;
-			tokens = this.userNameToAccessTokenStore.get(authentication.getName());
-			if (tokens != null) {
-				tokens.remove(removed);
-			}
-			String clientId = authentication.getOAuth2Request().getClientId();
-			tokens = this.clientIdToAccessTokenStore.get(clientId);
-			if (tokens != null) {
-				tokens.remove(removed);
-			}
-			this.authenticationToAccessTokenStore.remove(authenticationKeyGenerator.extractKey(authentication));
+			unindex(removed, null);
 		}
 	}
 
 	public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
-		this.refreshTokenStore.put(refreshToken.getValue(), refreshToken);
-		this.refreshTokenAuthenticationStore.put(refreshToken.getValue(), authentication);
+		String value = refreshToken.getValue();
+		TokenExpiry expiry = null;
+		if (refreshToken instanceof ExpiringOAuth2RefreshToken) {
+			ExpiringOAuth2RefreshToken expiring = (ExpiringOAuth2RefreshToken) refreshToken;
+			if (expiring.getExpiration() != null) {
+				expiry = new TokenExpiry(value, expiring.getExpiration().getTime(), expirySequence.incrementAndGet());
+			}
+		}
+		RefreshTokenRecord old = this.refreshTokenStore.put(value, new RefreshTokenRecord(refreshToken,
+				authentication, expiry));
+		if (expiry != null) {
+			this.refreshTokenExpiryQueue.add(expiry);
+		}
+		if (old != null && old.expiry != null) {
+			this.refreshTokenExpiryQueue.remove(old.expiry);
+		}
 	}
 
 	public OAuth2RefreshToken readRefreshToken(String tokenValue) {
-		return this.refreshTokenStore.get(tokenValue);
+		RefreshTokenRecord record = this.refreshTokenStore.get(tokenValue);
+		return record == null ? null : record.token;
 	}
 
 	public void removeRefreshToken(OAuth2RefreshToken refreshToken) {
@@ -221,9 +239,11 @@ public class InMemoryTokenStore implements TokenStore {
 	}
 
 	public void removeRefreshToken(String tokenValue) {
-		this.refreshTokenStore.remove(tokenValue);
-		this.refreshTokenAuthenticationStore.remove(tokenValue);
-		this.refreshTokenToAcessTokenStore.remove(tokenValue);
+		RefreshTokenRecord removed = this.refreshTokenStore.remove(tokenValue);
+		if (removed != null && removed.expiry != null) {
+			this.refreshTokenExpiryQueue.remove(removed.expiry);
+		}
+		this.refreshTokenToAccessTokenStore.remove(tokenValue);
 	}
 
 	public void removeAccessTokenUsingRefreshToken(OAuth2RefreshToken refreshToken) {
@@ -231,53 +251,229 @@ public class InMemoryTokenStore implements TokenStore {
 	}
 
 	private void removeAccessTokenUsingRefreshToken(String refreshToken) {
-		String accessToken = this.refreshTokenToAcessTokenStore.remove(refreshToken);
+		String accessToken = this.refreshTokenToAccessTokenStore.remove(refreshToken);
 		if (accessToken != null) {
-			removeAccessToken(accessToken);
+			AccessTokenRecord record = this.accessTokenStore.get(accessToken);
+			// Only remove it if it was not re-stored in the meantime with a different refresh token
+			if (record != null && refreshToken.equals(record.refreshToken)
+					&& this.accessTokenStore.remove(accessToken, record)) {
+				unindex(record, null);
+			}
 		}
 	}
 
 	public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
-		Collection<OAuth2AccessToken> result = clientIdToAccessTokenStore.get(clientId);
-		return result != null ? Collections.<OAuth2AccessToken> unmodifiableCollection(result) : Collections
-				.<OAuth2AccessToken> emptySet();
+		Collection<OAuth2AccessToken> result = new ArrayList<OAuth2AccessToken>();
+		Set<String> values = clientIdToAccessTokenStore.get(clientId);
+		if (values != null) {
+			for (String value : values) {
+				AccessTokenRecord record = accessTokenStore.get(value);
+				if (record != null && clientId.equals(record.clientId)) {
+					result.add(record.token);
+				}
+			}
+		}
+		return Collections.<OAuth2AccessToken> unmodifiableCollection(result);
 	}
 
 	public Collection<OAuth2AccessToken> findTokensByUserName(String userName) {
-		Collection<OAuth2AccessToken> result = userNameToAccessTokenStore.get(userName);
-		return result != null ? Collections.<OAuth2AccessToken> unmodifiableCollection(result) : Collections
-				.<OAuth2AccessToken> emptySet();
+		Collection<OAuth2AccessToken> result = new ArrayList<OAuth2AccessToken>();
+		Set<String> values = userNameToAccessTokenStore.get(userName);
+		if (values != null) {
+			for (String value : values) {
+				AccessTokenRecord record = accessTokenStore.get(value);
+				if (record != null && userName.equals(record.userName)) {
+					result.add(record.token);
+				}
+			}
+		}
+		return Collections.<OAuth2AccessToken> unmodifiableCollection(result);
+	}
+
+	private void index(AccessTokenRecord record) {
+		String value = record.token.getValue();
+		this.authenticationToAccessTokenStore.put(record.authenticationKey, value);
+		if (record.userName != null) {
+			addToIndex(this.userNameToAccessTokenStore, record.userName, value);
+		}
+		addToIndex(this.clientIdToAccessTokenStore, record.clientId, value);
+		if (record.refreshToken != null) {
+			this.refreshTokenToAccessTokenStore.put(record.refreshToken, value);
+		}
+		if (record.expiry != null) {
+			this.expiryQueue.add(record.expiry);
+		}
+	}
+
+	/**
+	 * Remove the index entries of a record that has been removed or replaced, keeping any that are shared with its
+	 * replacement (if there is one).
+	 */
+	private void unindex(AccessTokenRecord old, AccessTokenRecord replacement) {
+		String value = old.token.getValue();
+		if (replacement == null || !old.authenticationKey.equals(replacement.authenticationKey)) {
+			this.authenticationToAccessTokenStore.remove(old.authenticationKey, value);
+		}
+		if (old.userName != null && (replacement == null || !old.userName.equals(replacement.userName))) {
+			removeFromIndex(this.userNameToAccessTokenStore, old.userName, value);
+		}
+		if (old.clientId != null && (replacement == null || !old.clientId.equals(replacement.clientId))) {
+			removeFromIndex(this.clientIdToAccessTokenStore, old.clientId, value);
+		}
+		if (old.refreshToken != null && (replacement == null || !old.refreshToken.equals(replacement.refreshToken))) {
+			this.refreshTokenToAccessTokenStore.remove(old.refreshToken, value);
+		}
+		if (old.expiry != null) {
+			this.expiryQueue.remove(old.expiry);
+		}
+	}
+
+	private void addToIndex(ConcurrentMap<String, Set<String>> store, String key, String value) {
+		while (true) {
+			Set<String> values = store.get(key);
+			if (values == null) {
+				Set<String> created = Collections.newSetFromMap(new ConcurrentHashMap<String, Boolean>());
+				values = store.putIfAbsent(key, created);
+				if (values == null) {
+					values = created;
+				}
+			}
+			synchronized (values) {
+				// The set might have been emptied and removed from the index since we looked it up
+				if (store.get(key) == values) {
+					values.add(value);
+					return;
+				}
+			}
+		}
+	}
+
+	private void removeFromIndex(ConcurrentMap<String, Set<String>> store, String key, String value) {
+		Set<String> values = store.get(key);
+		if (values != null) {
+			synchronized (values) {
+				// Don't keep empty sets for users and clients that have no tokens left
+				if (values.remove(value) && values.isEmpty()) {
+					store.remove(key, values);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Remove expired access tokens (with their index entries) and then expired refresh tokens, up to the batch size in
+	 * total. Both are taken from queues sorted by expiry time, so the cost is proportional to the number removed, not
+	 * the number of tokens in the store.
+	 * 
+	 * @see ExpiredTokenPurger#purgeExpiredTokens(int)
+	 */
+	public int purgeExpiredTokens(int batchSize) {
+		long now = System.currentTimeMillis();
+		int count = 0;
+		// The queues are sorted by expiry time so we can stop at the first token that has not expired
+		for (TokenExpiry expiry : expiryQueue) {
+			if (count >= batchSize || expiry.getExpiry() > now) {
+				break;
+			}
+			if (expiryQueue.remove(expiry)) {
+				AccessTokenRecord record = accessTokenStore.get(expiry.getValue());
+				// The token might have been re-stored with a different expiry in the meantime
+				if (record != null && record.expiry == expiry && accessTokenStore.remove(expiry.getValue(), record)) {
+					unindex(record, null);
+					count++;
+				}
+			}
+		}
+		for (TokenExpiry expiry : refreshTokenExpiryQueue) {
+			if (count >= batchSize || expiry.getExpiry() > now) {
+				break;
+			}
+			if (refreshTokenExpiryQueue.remove(expiry)) {
+				RefreshTokenRecord record = refreshTokenStore.get(expiry.getValue());
+				if (record != null && record.expiry == expiry && refreshTokenStore.remove(expiry.getValue(), record)) {
+					refreshTokenToAccessTokenStore.remove(expiry.getValue());
+					count++;
+				}
+			}
+		}
+		return count;
 	}
 
 	private void flush() {
-		TokenExpiry expiry = expiryQueue.poll();
-		while (expiry != null) {
-			removeAccessToken(expiry.getValue());
-			expiry = expiryQueue.poll();
+		purgeExpiredTokens(Integer.MAX_VALUE);
+	}
+
+	private static class AccessTokenRecord {
+
+		private final OAuth2AccessToken token;
+
+		private final OAuth2Authentication authentication;
+
+		private final String authenticationKey;
+
+		private final String userName;
+
+		private final String clientId;
+
+		private final String refreshToken;
+
+		private final TokenExpiry expiry;
+
+		public AccessTokenRecord(OAuth2AccessToken token, OAuth2Authentication authentication,
+				String authenticationKey, String userName, String clientId, String refreshToken, TokenExpiry expiry) {
+			this.token = token;
+			this.authentication = authentication;
+			this.authenticationKey = authenticationKey;
+			this.userName = userName;
+			this.clientId = clientId;
+			this.refreshToken = refreshToken;
+			this.expiry = expiry;
 		}
+
 	}
 
-	private static class TokenExpiry implements Delayed {
+	private static class RefreshTokenRecord {
+
+		private final OAuth2RefreshToken token;
+
+		private final OAuth2Authentication authentication;
+
+		private final TokenExpiry expiry;
+
+		public RefreshTokenRecord(OAuth2RefreshToken token, OAuth2Authentication authentication, TokenExpiry expiry) {
+			this.token = token;
+			this.authentication = authentication;
+			this.expiry = expiry;
+		}
+
+	}
+
+	private static class TokenExpiry implements Comparable<TokenExpiry> {
 
 		private final long expiry;
 
 		private final String value;
 
-		public TokenExpiry(String value, Date date) {
+		/**
+		 * Breaks ties between tokens that expire at the same time (and between two expiries of the same token).
+		 */
+		private final long sequence;
+
+		public TokenExpiry(String value, long expiry, long sequence) {
 			this.value = value;
-			this.expiry = date.getTime();
+			this.expiry = expiry;
+			this.sequence = sequence;
 		}
 
-		public int compareTo(Delayed other) {
-			if (this == other) {
-				return 0;
+		public int compareTo(TokenExpiry other) {
+			if (expiry != other.expiry) {
+				return expiry < other.expiry ? -1 : 1;
 			}
-			long diff = getDelay(TimeUnit.MILLISECONDS) - other.getDelay(TimeUnit.MILLISECONDS);
-			return (diff == 0 ? 0 : ((diff < 0) ? -1 : 1));
+			return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
 		}
 
-		public long getDelay(TimeUnit unit) {
-			return expiry - System.currentTimeMillis();
+		public long getExpiry() {
+			return expiry;
 		}
 
 		public String getValue() {
@@ -1,49 +1,86 @@
 package org.springframework.security.oauth2.provider.token;
 
-import java.io.UnsupportedEncodingException;
-import java.math.BigInteger;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
 import java.sql.ResultSet;
+import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.sql.Types;
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.sql.DataSource;
 
 import org.apache.commons.logging.Log;
 import org.apache.commons.logging.LogFactory;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.RowCallbackHandler;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.support.SqlLobValue;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.jdbc.support.MetaDataAccessException;
+import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.common.OAuth2RefreshToken;
-import org.springframework.security.oauth2.common.util.SerializationUtils;
+import org.springframework.security.oauth2.common.util.DefaultTokenSerializer;
+import org.springframework.security.oauth2.common.util.TokenSerializer;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionCallback;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.Assert;
 
 /**
  * Implementation of token services that stores tokens in a database.
+ * <p>
+ * The expiry time of each token is stored in its own column (<code>expires_at</code>), so that expired tokens can be
+ * removed with {@link #purgeExpiredTokens(int)} (e.g. by an {@link ExpiredTokenSweeper}) without deserializing them.
+ * The default schema is in <code>schema.sql</code> in this package, and databases created with an older version can
+ * be brought up to date with <code>schema-upgrade.sql</code>.
+ * <p>
+ * There can only be one access token per authentication (<code>authentication_id</code> has a unique index). New
+ * tokens are issued with {@link #issueAccessToken(OAuth2Authentication, AccessTokenFactory)}, which finds or creates
+ * the token in a single transaction. On PostgreSQL the insert is an upsert that leaves an existing row alone, and on
+ * other databases a concurrent insert fails on the unique index. Either way the loser of a race rolls back and
+ * returns the token that the winner stored.
  *
  * @author Ken Dombeck
  * @author Luke Taylor
  * @author Dave Syer
  */
-public class JdbcTokenStore implements TokenStore {
+public class JdbcTokenStore implements TokenStore, BatchStoredAccessTokenReader, ExpiredTokenPurger, AccessTokenIssuer {
 
 	private static final Log LOG = LogFactory.getLog(JdbcTokenStore.class);
 
-	private static final String DEFAULT_ACCESS_TOKEN_INSERT_STATEMENT = "insert into oauth_access_token (token_id, token, authentication_id, user_name, client_id, authentication, refresh_token) values (?, ?, ?, ?, ?, ?, ?)";
+	private static final String DEFAULT_ACCESS_TOKEN_INSERT_STATEMENT = "insert into oauth_access_token (token_id, token, authentication_id, user_name, client_id, authentication, refresh_token, expires_at) values (?, ?, ?, ?, ?, ?, ?, ?)";
 
 	private static final String DEFAULT_ACCESS_TOKEN_SELECT_STATEMENT = "select token_id, token from oauth_access_token where token_id = ?";
 
 	private static final String DEFAULT_ACCESS_TOKEN_AUTHENTICATION_SELECT_STATEMENT = "select token_id, authentication from oauth_access_token where token_id = ?";
 
+	private static final String DEFAULT_ACCESS_TOKEN_AND_AUTHENTICATION_SELECT_STATEMENT = "select token_id, token, authentication from oauth_access_token where token_id = ?";
+
+	private static final String DEFAULT_ACCESS_TOKENS_AND_AUTHENTICATIONS_SELECT_STATEMENT = "select token_id, token, authentication from oauth_access_token where token_id in (:tokenIds)";
+
 	private static final String DEFAULT_ACCESS_TOKEN_FROM_AUTHENTICATION_SELECT_STATEMENT = "select token_id, token from oauth_access_token where authentication_id = ?";
 
+	private static final String DEFAULT_ACCESS_TOKEN_AND_AUTHENTICATION_FROM_AUTHENTICATION_SELECT_STATEMENT = "select token_id, token, authentication from oauth_access_token where authentication_id = ?";
+
+	private static final String DEFAULT_ACCESS_TOKEN_DELETE_FROM_AUTHENTICATION_STATEMENT = "delete from oauth_access_token where authentication_id = ?";
+
+	private static final String POSTGRESQL_ACCESS_TOKEN_INSERT_IF_ABSENT_STATEMENT = DEFAULT_ACCESS_TOKEN_INSERT_STATEMENT
+			+ " on conflict (authentication_id) do nothing";
+
 	private static final String DEFAULT_ACCESS_TOKENS_FROM_USERNAME_SELECT_STATEMENT = "select token_id, token from oauth_access_token where user_name = ?";
 
 	private static final String DEFAULT_ACCESS_TOKENS_FROM_CLIENTID_SELECT_STATEMENT = "select token_id, token from oauth_access_token where client_id = ?";
@@ -52,7 +89,7 @@ public class JdbcTokenStore implements TokenStore {
 
 	private static final String DEFAULT_ACCESS_TOKEN_DELETE_FROM_REFRESH_TOKEN_STATEMENT = "delete from oauth_access_token where refresh_token = ?";
 
-	private static final String DEFAULT_REFRESH_TOKEN_INSERT_STATEMENT = "insert into oauth_refresh_token (token_id, token, authentication) values (?, ?, ?)";
+	private static final String DEFAULT_REFRESH_TOKEN_INSERT_STATEMENT = "insert into oauth_refresh_token (token_id, token, authentication, expires_at) values (?, ?, ?, ?)";
 
 	private static final String DEFAULT_REFRESH_TOKEN_SELECT_STATEMENT = "select token_id, token from oauth_refresh_token where token_id = ?";
 
@@ -60,14 +97,34 @@ public class JdbcTokenStore implements TokenStore {
 
 	private static final String DEFAULT_REFRESH_TOKEN_DELETE_STATEMENT = "delete from oauth_refresh_token where token_id = ?";
 
+	private static final String DEFAULT_EXPIRED_ACCESS_TOKENS_SELECT_STATEMENT = "select token_id from oauth_access_token where expires_at < ?";
+
+	private static final String DEFAULT_EXPIRED_ACCESS_TOKEN_DELETE_STATEMENT = "delete from oauth_access_token where token_id = ? and expires_at < ?";
+
+	private static final String DEFAULT_EXPIRED_REFRESH_TOKENS_SELECT_STATEMENT = "select token_id from oauth_refresh_token where expires_at < ?";
+
+	private static final String DEFAULT_EXPIRED_REFRESH_TOKEN_DELETE_STATEMENT = "delete from oauth_refresh_token where token_id = ? and expires_at < ?";
+
 	private String insertAccessTokenSql = DEFAULT_ACCESS_TOKEN_INSERT_STATEMENT;
 
 	private String selectAccessTokenSql = DEFAULT_ACCESS_TOKEN_SELECT_STATEMENT;
 
 	private String selectAccessTokenAuthenticationSql = DEFAULT_ACCESS_TOKEN_AUTHENTICATION_SELECT_STATEMENT;
 
+	private String selectAccessTokenAndAuthenticationSql = DEFAULT_ACCESS_TOKEN_AND_AUTHENTICATION_SELECT_STATEMENT;
+
+	private String selectAccessTokensAndAuthenticationsSql = DEFAULT_ACCESS_TOKENS_AND_AUTHENTICATIONS_SELECT_STATEMENT;
+
+	private int batchSize = 100;
+
 	private String selectAccessTokenFromAuthenticationSql = DEFAULT_ACCESS_TOKEN_FROM_AUTHENTICATION_SELECT_STATEMENT;
 
+	private String selectAccessTokenAndAuthenticationFromAuthenticationSql = DEFAULT_ACCESS_TOKEN_AND_AUTHENTICATION_FROM_AUTHENTICATION_SELECT_STATEMENT;
+
+	private String deleteAccessTokenFromAuthenticationSql = DEFAULT_ACCESS_TOKEN_DELETE_FROM_AUTHENTICATION_STATEMENT;
+
+	private volatile String insertAccessTokenIfAbsentSql;
+
 	private String selectAccessTokensFromUserNameSql = DEFAULT_ACCESS_TOKENS_FROM_USERNAME_SELECT_STATEMENT;
 
 	private String selectAccessTokensFromClientIdSql = DEFAULT_ACCESS_TOKENS_FROM_CLIENTID_SELECT_STATEMENT;
@@ -84,19 +141,82 @@ public class JdbcTokenStore implements TokenStore {
 
 	private String deleteAccessTokenFromRefreshTokenSql = DEFAULT_ACCESS_TOKEN_DELETE_FROM_REFRESH_TOKEN_STATEMENT;
 
+	private String selectExpiredAccessTokensSql = DEFAULT_EXPIRED_ACCESS_TOKENS_SELECT_STATEMENT;
+
+	private String deleteExpiredAccessTokenSql = DEFAULT_EXPIRED_ACCESS_TOKEN_DELETE_STATEMENT;
+
+	private String selectExpiredRefreshTokensSql = DEFAULT_EXPIRED_REFRESH_TOKENS_SELECT_STATEMENT;
+
+	private String deleteExpiredRefreshTokenSql = DEFAULT_EXPIRED_REFRESH_TOKEN_DELETE_STATEMENT;
+
 	private AuthenticationKeyGenerator authenticationKeyGenerator = new DefaultAuthenticationKeyGenerator();
 
+	private TokenKeyGenerator tokenKeyGenerator = new DefaultTokenKeyGenerator();
+
+	private TokenSerializer tokenSerializer = new DefaultTokenSerializer();
+
 	private final JdbcTemplate jdbcTemplate;
 
+	private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+	private final DataSource dataSource;
+
+	private TransactionTemplate transactionTemplate;
+
 	public JdbcTokenStore(DataSource dataSource) {
 		Assert.notNull(dataSource, "DataSource required");
+		this.dataSource = dataSource;
 		this.jdbcTemplate = new JdbcTemplate(dataSource);
+		this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+		this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+	}
+
+	/**
+	 * The transaction manager used by {@link #issueAccessToken(OAuth2Authentication, AccessTokenFactory)}. Defaults to
+	 * a <code>DataSourceTransactionManager</code> for the data source, so set this if the data source takes part in
+	 * transactions managed some other way (e.g. JTA).
+	 * 
+	 * @param transactionManager the transaction manager to set
+	 */
+	public void setTransactionManager(PlatformTransactionManager transactionManager) {
+		this.transactionTemplate = new TransactionTemplate(transactionManager);
+	}
+
+	/**
+	 * The maximum number of tokens read in one query by {@link #readStoredAccessTokens(Collection)} (larger batches are
+	 * split up, so that the <code>IN</code> clause stays within the limits of the database). Default 100.
+	 * 
+	 * @param batchSize the batch size to set
+	 */
+	public void setBatchSize(int batchSize) {
+		Assert.isTrue(batchSize > 0, "Batch size must be positive");
+		this.batchSize = batchSize;
 	}
 
 	public void setAuthenticationKeyGenerator(AuthenticationKeyGenerator authenticationKeyGenerator) {
 		this.authenticationKeyGenerator = authenticationKeyGenerator;
 	}
 
+	/**
+	 * The strategy for converting token values into the keys (the <code>token_id</code> columns) they are stored
+	 * under. If you change this, existing tokens will no longer be found. Defaults to an MD5 hash in hex.
+	 * 
+	 * @param tokenKeyGenerator the token key generator to set
+	 */
+	public void setTokenKeyGenerator(TokenKeyGenerator tokenKeyGenerator) {
+		this.tokenKeyGenerator = tokenKeyGenerator;
+	}
+
+	/**
+	 * The serializer used to convert tokens and authentications to and from the BLOB columns. Defaults to plain Java
+	 * serialization.
+	 * 
+	 * @param tokenSerializer the token serializer to set
+	 */
+	public void setTokenSerializer(TokenSerializer tokenSerializer) {
+		this.tokenSerializer = tokenSerializer;
+	}
+
 	public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
 		OAuth2AccessToken accessToken = null;
 
@@ -110,7 +230,7 @@ public class JdbcTokenStore implements TokenStore {
 					}, key);
 		}
 		catch (EmptyResultDataAccessException e) {
-			if (LOG.isInfoEnabled()) {
+			if (LOG.isDebugEnabled()) {
 				LOG.debug("Failed to find access token for authentication " + authentication);
 			}
 		}
@@ -128,18 +248,132 @@ public class JdbcTokenStore implements TokenStore {
 		return accessToken;
 	}
 
-	public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+	public void storeAccessToken(final OAuth2AccessToken token, final OAuth2Authentication authentication) {
+		final String key = authenticationKeyGenerator.extractKey(authentication);
+		TransactionCallback<Object> callback = new TransactionCallback<Object>() {
+			public Object doInTransaction(TransactionStatus status) {
+				// There can only be one token per authentication, so the new one replaces the old one
+				jdbcTemplate.update(deleteAccessTokenFromAuthenticationSql, key);
+				insertAccessToken(insertAccessTokenSql, token, authentication, key);
+				return null;
+			}
+		};
+		try {
+			transactionTemplate.execute(callback);
+		}
+		catch (DuplicateKeyException e) {
+			// Another request stored a token for the same authentication between the delete and the insert, and it is
+			// committed now, so replace it (the same as if it had been stored first)
+			LOG.debug("Concurrent token store for authentication " + key + ", replacing the existing token");
+			transactionTemplate.execute(callback);
+		}
+	}
+
+	public OAuth2AccessToken issueAccessToken(final OAuth2Authentication authentication,
+			final AccessTokenFactory factory) {
+		final String key = authenticationKeyGenerator.extractKey(authentication);
+		final String insertSql = getInsertAccessTokenIfAbsentSql();
+		TransactionCallback<OAuth2AccessToken> callback = new TransactionCallback<OAuth2AccessToken>() {
+			public OAuth2AccessToken doInTransaction(TransactionStatus status) {
+				return issueAccessToken(authentication, key, factory, insertSql);
+			}
+		};
+		try {
+			return transactionTemplate.execute(callback);
+		}
+		catch (DuplicateKeyException e) {
+			// Another request (or server) stored a token for the same authentication first, and it is committed now
+			LOG.debug("Concurrent token issue for authentication " + key + ", using the existing token");
+			return transactionTemplate.execute(callback);
+		}
+	}
+
+	private OAuth2AccessToken issueAccessToken(OAuth2Authentication authentication, String key,
+			AccessTokenFactory factory, String insertSql) {
+
+		OAuth2RefreshToken refreshToken = null;
+		StoredAccessToken existing = null;
+		try {
+			existing = jdbcTemplate.queryForObject(selectAccessTokenAndAuthenticationFromAuthenticationSql,
+					new RowMapper<StoredAccessToken>() {
+						public StoredAccessToken mapRow(ResultSet rs, int rowNum) throws SQLException {
+							return new StoredAccessToken(deserializeAccessToken(rs.getBytes(2)),
+									deserializeAuthentication(rs.getBytes(3)));
+						}
+					}, key);
+		}
+		catch (EmptyResultDataAccessException e) {
+			// Normal: there is no token yet
+		}
+		catch (IllegalArgumentException e) {
+			LOG.error("Could not extract access token for authentication " + authentication, e);
+			jdbcTemplate.update(deleteAccessTokenFromAuthenticationSql, key);
+		}
+
+		if (existing != null) {
+			OAuth2AccessToken token = existing.getAccessToken();
+			if (!token.isExpired()) {
+				if (!key.equals(authenticationKeyGenerator.extractKey(existing.getAuthentication()))) {
+					// The same user might be represented by this authentication but the details have changed
+					removeAccessToken(token.getValue());
+					insertAccessToken(insertAccessTokenSql, token, authentication, key);
+				}
+				return token;
+			}
+			refreshToken = token.getRefreshToken();
+			if (refreshToken != null) {
+				// It will be stored again if it is re-used
+				removeRefreshToken(refreshToken);
+			}
+			removeAccessToken(token.getValue());
+		}
+
+		OAuth2AccessToken token = factory.createAccessToken(authentication, refreshToken);
+		if (insertAccessToken(insertSql, token, authentication, key) == 0) {
+			// The upsert found a concurrently stored token for the same authentication
+			throw new DuplicateKeyException("Access token already exists for authentication " + key);
+		}
+		if (token.getRefreshToken() != null) {
+			storeRefreshToken(token.getRefreshToken(), authentication);
+		}
+		return token;
+
+	}
+
+	private int insertAccessToken(String sql, OAuth2AccessToken token, OAuth2Authentication authentication, String key) {
 		String refreshToken = null;
 		if (token.getRefreshToken() != null) {
 			refreshToken = token.getRefreshToken().getValue();
 		}
 
-		jdbcTemplate.update(insertAccessTokenSql, new Object[] { extractTokenKey(token.getValue()),
-				new SqlLobValue(serializeAccessToken(token)), authenticationKeyGenerator.extractKey(authentication),
+		return jdbcTemplate.update(sql, new Object[] { extractTokenKey(token.getValue()),
+				new SqlLobValue(serializeAccessToken(token)), key,
 				authentication.isClientOnly() ? null : authentication.getName(),
 				authentication.getOAuth2Request().getClientId(),
-				new SqlLobValue(serializeAuthentication(authentication)), extractTokenKey(refreshToken) }, new int[] {
-				Types.VARCHAR, Types.BLOB, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.BLOB, Types.VARCHAR });
+				new SqlLobValue(serializeAuthentication(authentication)), extractTokenKey(refreshToken),
+				toTimestamp(token.getExpiration()) }, new int[] { Types.VARCHAR, Types.BLOB, Types.VARCHAR,
+				Types.VARCHAR, Types.VARCHAR, Types.BLOB, Types.VARCHAR, Types.TIMESTAMP });
+	}
+
+	private String getInsertAccessTokenIfAbsentSql() {
+		String sql = insertAccessTokenIfAbsentSql;
+		if (sql == null) {
+			sql = insertAccessTokenSql;
+			if (insertAccessTokenSql.equals(DEFAULT_ACCESS_TOKEN_INSERT_STATEMENT)) {
+				try {
+					String name = JdbcUtils.commonDatabaseName((String) JdbcUtils.extractDatabaseMetaData(dataSource,
+							"getDatabaseProductName"));
+					if ("PostgreSQL".equals(name)) {
+						sql = POSTGRESQL_ACCESS_TOKEN_INSERT_IF_ABSENT_STATEMENT;
+					}
+				}
+				catch (MetaDataAccessException e) {
+					LOG.warn("Could not determine the database type, so using a plain insert for new tokens", e);
+				}
+			}
+			insertAccessTokenIfAbsentSql = sql;
+		}
+		return sql;
 	}
 
 	public OAuth2AccessToken readAccessToken(String tokenValue) {
@@ -153,8 +387,8 @@ public class JdbcTokenStore implements TokenStore {
 			}, extractTokenKey(tokenValue));
 		}
 		catch (EmptyResultDataAccessException e) {
-			if (LOG.isInfoEnabled()) {
-				LOG.info("Failed to find access token for token " + tokenValue);
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Failed to find access token for token " + tokenValue);
 			}
 		}
 		catch (IllegalArgumentException e) {
@@ -165,6 +399,68 @@ public class JdbcTokenStore implements TokenStore {
 		return accessToken;
 	}
 
+	public StoredAccessToken readStoredAccessToken(String tokenValue) {
+		StoredAccessToken storedToken = null;
+
+		try {
+			storedToken = jdbcTemplate.queryForObject(selectAccessTokenAndAuthenticationSql,
+					new RowMapper<StoredAccessToken>() {
+						public StoredAccessToken mapRow(ResultSet rs, int rowNum) throws SQLException {
+							return new StoredAccessToken(deserializeAccessToken(rs.getBytes(2)),
+									deserializeAuthentication(rs.getBytes(3)));
+						}
+					}, extractTokenKey(tokenValue));
+		}
+		catch (EmptyResultDataAccessException e) {
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Failed to find access token for token " + tokenValue);
+			}
+		}
+		catch (IllegalArgumentException e) {
+			LOG.warn("Failed to deserialize access token for " + tokenValue, e);
+			removeAccessToken(tokenValue);
+		}
+
+		return storedToken;
+	}
+
+	public Map<String, StoredAccessToken> readStoredAccessTokens(Collection<String> tokenValues) {
+		final Map<String, StoredAccessToken> result = new HashMap<String, StoredAccessToken>();
+		final Map<String, String> keys = new HashMap<String, String>();
+		for (String tokenValue : tokenValues) {
+			keys.put(extractTokenKey(tokenValue), tokenValue);
+			if (keys.size() == batchSize) {
+				readStoredAccessTokens(keys, result);
+				keys.clear();
+			}
+		}
+		if (!keys.isEmpty()) {
+			readStoredAccessTokens(keys, result);
+		}
+		return result;
+	}
+
+	private void readStoredAccessTokens(final Map<String, String> keys, final Map<String, StoredAccessToken> result) {
+		final List<String> invalid = new ArrayList<String>();
+		namedParameterJdbcTemplate.query(selectAccessTokensAndAuthenticationsSql,
+				Collections.singletonMap("tokenIds", keys.keySet()), new RowCallbackHandler() {
+					public void processRow(ResultSet rs) throws SQLException {
+						String tokenValue = keys.get(rs.getString(1));
+						try {
+							result.put(tokenValue, new StoredAccessToken(deserializeAccessToken(rs.getBytes(2)),
+									deserializeAuthentication(rs.getBytes(3))));
+						}
+						catch (IllegalArgumentException e) {
+							LOG.warn("Failed to deserialize access token for " + tokenValue, e);
+							invalid.add(tokenValue);
+						}
+					}
+				});
+		for (String tokenValue : invalid) {
+			removeAccessToken(tokenValue);
+		}
+	}
+
 	public void removeAccessToken(OAuth2AccessToken token) {
 		removeAccessToken(token.getValue());
 	}
@@ -189,8 +485,8 @@ public class JdbcTokenStore implements TokenStore {
 					}, extractTokenKey(token));
 		}
 		catch (EmptyResultDataAccessException e) {
-			if (LOG.isInfoEnabled()) {
-				LOG.info("Failed to find access token for token " + token);
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Failed to find access token for token " + token);
 			}
 		}
 		catch (IllegalArgumentException e) {
@@ -202,10 +498,14 @@ public class JdbcTokenStore implements TokenStore {
 	}
 
 	public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
+		Date expiration = null;
+		if (refreshToken instanceof ExpiringOAuth2RefreshToken) {
+			expiration = ((ExpiringOAuth2RefreshToken) refreshToken).getExpiration();
+		}
 		jdbcTemplate.update(insertRefreshTokenSql, new Object[] { extractTokenKey(refreshToken.getValue()),
 				new SqlLobValue(serializeRefreshToken(refreshToken)),
-				new SqlLobValue(serializeAuthentication(authentication)) }, new int[] { Types.VARCHAR, Types.BLOB,
-				Types.BLOB });
+				new SqlLobValue(serializeAuthentication(authentication)), toTimestamp(expiration) }, new int[] {
+				Types.VARCHAR, Types.BLOB, Types.BLOB, Types.TIMESTAMP });
 	}
 
 	public OAuth2RefreshToken readRefreshToken(String token) {
@@ -255,8 +555,8 @@ public class JdbcTokenStore implements TokenStore {
 					}, extractTokenKey(value));
 		}
 		catch (EmptyResultDataAccessException e) {
-			if (LOG.isInfoEnabled()) {
-				LOG.info("Failed to find access token for token " + value);
+			if (LOG.isDebugEnabled()) {
+				LOG.debug("Failed to find access token for token " + value);
 			}
 		}
 		catch (IllegalArgumentException e) {
@@ -310,6 +610,54 @@ public class JdbcTokenStore implements TokenStore {
 		return accessTokens;
 	}
 
+	/**
+	 * Remove up to <code>batchSize</code> expired tokens, access tokens first and then refresh tokens. The expired rows
+	 * are selected by their <code>expires_at</code> column (so the query should be cheap with an index on that column)
+	 * and then deleted in a single batch, so every call is a bounded chunk of work that does not lock the whole table.
+	 * Rows without an expiry time (e.g. from before the column was added) are never purged.
+	 * 
+	 * @see ExpiredTokenPurger#purgeExpiredTokens(int)
+	 */
+	public int purgeExpiredTokens(int batchSize) {
+		Timestamp now = new Timestamp(System.currentTimeMillis());
+		int count = purgeExpired(selectExpiredAccessTokensSql, deleteExpiredAccessTokenSql, now, batchSize);
+		if (count < batchSize) {
+			count += purgeExpired(selectExpiredRefreshTokensSql, deleteExpiredRefreshTokenSql, now, batchSize - count);
+		}
+		return count;
+	}
+
+	private int purgeExpired(String selectSql, String deleteSql, final Timestamp now, final int batchSize) {
+		List<String> keys = jdbcTemplate.query(selectSql, new PreparedStatementSetter() {
+			public void setValues(PreparedStatement ps) throws SQLException {
+				ps.setMaxRows(batchSize);
+				ps.setTimestamp(1, now);
+			}
+		}, new RowMapper<String>() {
+			public String mapRow(ResultSet rs, int rowNum) throws SQLException {
+				return rs.getString(1);
+			}
+		});
+		if (keys.isEmpty()) {
+			return 0;
+		}
+		List<Object[]> args = new ArrayList<Object[]>(keys.size());
+		// Some drivers ignore the max rows hint, so make sure the batch is not too big
+		for (String key : keys.size() > batchSize ? keys.subList(0, batchSize) : keys) {
+			args.add(new Object[] { key, now });
+		}
+		int count = 0;
+		for (int updated : jdbcTemplate.batchUpdate(deleteSql, args, new int[] { Types.VARCHAR, Types.TIMESTAMP })) {
+			// Drivers that cannot report the row count return SUCCESS_NO_INFO (-2)
+			count += updated < 0 ? 1 : updated;
+		}
+		return count;
+	}
+
+	private Timestamp toTimestamp(Date date) {
+		return date == null ? null : new Timestamp(date.getTime());
+	}
+
 	private List<OAuth2AccessToken> removeNulls(List<OAuth2AccessToken> accessTokens) {
 		List<OAuth2AccessToken> tokens = new ArrayList<OAuth2AccessToken>();
 		for (OAuth2AccessToken token : accessTokens) {
@@ -324,21 +672,7 @@ public class JdbcTokenStore implements TokenStore {
 		if (value == null) {
 			return null;
 		}
-		MessageDigest digest;
-		try {
-			digest = MessageDigest.getInstance("MD5");
-		}
-		catch (NoSuchAlgorithmException e) {
-			throw new IllegalStateException("MD5 algorithm not available.  Fatal (should be in the JDK).");
-		}
-
-		try {
-			byte[] bytes = digest.digest(value.getBytes("UTF-8"));
-			return String.format("%032x", new BigInteger(1, bytes));
-		}
-		catch (UnsupportedEncodingException e) {
-			throw new IllegalStateException("UTF-8 encoding not available.  Fatal (should be in the JDK).");
-		}
+		return tokenKeyGenerator.extractKey(value);
 	}
 
 	private final class SafeAccessTokenRowMapper implements RowMapper<OAuth2AccessToken> {
@@ -355,29 +689,38 @@ public class JdbcTokenStore implements TokenStore {
 	}
 
 	protected byte[] serializeAccessToken(OAuth2AccessToken token) {
-		return SerializationUtils.serialize(token);
+		return tokenSerializer.serialize(token);
 	}
 
 	protected byte[] serializeRefreshToken(OAuth2RefreshToken token) {
-		return SerializationUtils.serialize(token);
+		return tokenSerializer.serialize(token);
 	}
 
 	protected byte[] serializeAuthentication(OAuth2Authentication authentication) {
-		return SerializationUtils.serialize(authentication);
+		return tokenSerializer.serialize(authentication);
 	}
 
 	protected OAuth2AccessToken deserializeAccessToken(byte[] token) {
-		return SerializationUtils.deserialize(token);
+		return tokenSerializer.deserialize(token);
 	}
 
 	protected OAuth2RefreshToken deserializeRefreshToken(byte[] token) {
-		return SerializationUtils.deserialize(token);
+		return tokenSerializer.deserialize(token);
 	}
 
 	protected OAuth2Authentication deserializeAuthentication(byte[] authentication) {
-		return SerializationUtils.deserialize(authentication);
-	}
-
+		return tokenSerializer.deserialize(authentication);
+	}
+
+	/**
+	 * The statement used to insert access tokens. It has 8 parameters, in this order: the token key, the serialized
+	 * token, the authentication key, the user name (null for client-only authentications), the client id, the
+	 * serialized authentication, the refresh token key and the token expiry (a timestamp, null if the token does not
+	 * expire). Statements written for older versions only had the first 7, so they need an <code>expires_at</code>
+	 * column and parameter adding.
+	 * 
+	 * @param insertAccessTokenSql the insert statement to set
+	 */
 	public void setInsertAccessTokenSql(String insertAccessTokenSql) {
 		this.insertAccessTokenSql = insertAccessTokenSql;
 	}
@@ -390,6 +733,14 @@ public class JdbcTokenStore implements TokenStore {
 		this.deleteAccessTokenSql = deleteAccessTokenSql;
 	}
 
+	/**
+	 * The statement used to insert refresh tokens. It has 4 parameters, in this order: the token key, the serialized
+	 * token, the serialized authentication and the token expiry (a timestamp, null if the token does not expire).
+	 * Statements written for older versions only had the first 3, so they need an <code>expires_at</code> column and
+	 * parameter adding.
+	 * 
+	 * @param insertRefreshTokenSql the insert statement to set
+	 */
 	public void setInsertRefreshTokenSql(String insertRefreshTokenSql) {
 		this.insertRefreshTokenSql = insertRefreshTokenSql;
 	}
@@ -410,6 +761,21 @@ public class JdbcTokenStore implements TokenStore {
 		this.selectRefreshTokenAuthenticationSql = selectRefreshTokenAuthenticationSql;
 	}
 
+	public void setSelectAccessTokenAndAuthenticationSql(String selectAccessTokenAndAuthenticationSql) {
+		this.selectAccessTokenAndAuthenticationSql = selectAccessTokenAndAuthenticationSql;
+	}
+
+	/**
+	 * The query used by {@link #readStoredAccessTokens(Collection)}. It has a single named parameter "tokenIds" (the
+	 * token keys, expanded into an <code>IN</code> list), and the columns selected are the token key, the token and the
+	 * authentication.
+	 * 
+	 * @param selectAccessTokensAndAuthenticationsSql the query to set
+	 */
+	public void setSelectAccessTokensAndAuthenticationsSql(String selectAccessTokensAndAuthenticationsSql) {
+		this.selectAccessTokensAndAuthenticationsSql = selectAccessTokensAndAuthenticationsSql;
+	}
+
 	public void setSelectAccessTokenFromAuthenticationSql(String selectAccessTokenFromAuthenticationSql) {
 		this.selectAccessTokenFromAuthenticationSql = selectAccessTokenFromAuthenticationSql;
 	}
@@ -418,4 +784,45 @@ public class JdbcTokenStore implements TokenStore {
 		this.deleteAccessTokenFromRefreshTokenSql = deleteAccessTokenFromRefreshTokenSql;
 	}
 
+	public void setSelectAccessTokenAndAuthenticationFromAuthenticationSql(
+			String selectAccessTokenAndAuthenticationFromAuthenticationSql) {
+		this.selectAccessTokenAndAuthenticationFromAuthenticationSql = selectAccessTokenAndAuthenticationFromAuthenticationSql;
+	}
+
+	public void setDeleteAccessTokenFromAuthenticationSql(String deleteAccessTokenFromAuthenticationSql) {
+		this.deleteAccessTokenFromAuthenticationSql = deleteAccessTokenFromAuthenticationSql;
+	}
+
+	/**
+	 * The statement used to insert new tokens in
+	 * {@link #issueAccessToken(OAuth2Authentication, AccessTokenFactory)}. It has the same parameters as the
+	 * {@link #setInsertAccessTokenSql(String) insert statement}, and it should not fail if there is already a row with
+	 * the same <code>authentication_id</code>, but update 0 rows instead (an upsert in the database's own dialect). If
+	 * it is not set then a suitable upsert is used on PostgreSQL (9.5 and above), and otherwise the normal insert
+	 * statement (so a concurrent insert fails, is rolled back and retried). The statement must report 0 rows updated
+	 * for an existing row, so <code>on duplicate key update</code> is not suitable for MySQL unless the driver counts
+	 * affected rather than found rows (<code>useAffectedRows=true</code>).
+	 * 
+	 * @param insertAccessTokenIfAbsentSql the insert statement to set
+	 */
+	public void setInsertAccessTokenIfAbsentSql(String insertAccessTokenIfAbsentSql) {
+		this.insertAccessTokenIfAbsentSql = insertAccessTokenIfAbsentSql;
+	}
+
+	public void setSelectExpiredAccessTokensSql(String selectExpiredAccessTokensSql) {
+		this.selectExpiredAccessTokensSql = selectExpiredAccessTokensSql;
+	}
+
+	public void setDeleteExpiredAccessTokenSql(String deleteExpiredAccessTokenSql) {
+		this.deleteExpiredAccessTokenSql = deleteExpiredAccessTokenSql;
+	}
+
+	public void setSelectExpiredRefreshTokensSql(String selectExpiredRefreshTokensSql) {
+		this.selectExpiredRefreshTokensSql = selectExpiredRefreshTokensSql;
+	}
+
+	public void setDeleteExpiredRefreshTokenSql(String deleteExpiredRefreshTokenSql) {
+		this.deleteExpiredRefreshTokenSql = deleteExpiredRefreshTokenSql;
+	}
+
 }
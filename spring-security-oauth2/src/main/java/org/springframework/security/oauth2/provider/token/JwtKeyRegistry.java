@@ -0,0 +1,202 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.provider.token;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.security.jwt.crypto.sign.EcSigner;
+import org.springframework.security.jwt.crypto.sign.EcVerifier;
+import org.springframework.security.jwt.crypto.sign.MacSigner;
+import org.springframework.security.jwt.crypto.sign.RsaSigner;
+import org.springframework.security.jwt.crypto.sign.RsaVerifier;
+import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
+import org.springframework.util.Assert;
+
+/**
+ * A registry of the keys that JWT tokens can be verified with, indexed by key id (the "kid" header of a token). The
+ * verifiers are created when the keys are added, so looking one up for a token is just a map lookup.
+ * <p>
+ * To rotate a signing key without invalidating the tokens that are already out there, add the new key to the registry
+ * (on the authorization server and on the resource servers), start signing with it (see
+ * {@link JwtTokenEnhancer#setKeyId(String)}), and only remove the old key when the last token signed with it has
+ * expired. The public keys in the registry can be published with a
+ * {@link org.springframework.security.oauth2.provider.endpoint.TokenKeyEndpoint TokenKeyEndpoint}, so that resource
+ * servers can pick up new keys.
+ * 
+ * @author Dave Syer
+ * 
+ */
+public class JwtKeyRegistry {
+
+	private final ConcurrentMap<String, VerifierKey> keys = new ConcurrentHashMap<String, VerifierKey>();
+
+	private final AtomicLong version = new AtomicLong();
+
+	/**
+	 * Add (or replace) a key. An RSA or EC public key (in PEM or, for RSA, OpenSSH format) is published by
+	 * {@link #getPublicKeys()}; anything else is assumed to be a MAC key, which is secret so it is not published.
+	 * Private keys are rejected.
+	 * 
+	 * @param keyId the key id
+	 * @param verifierKey the key that tokens signed with this key id can be verified with
+	 */
+	public void addKey(String keyId, String verifierKey) {
+		Assert.hasText(keyId, "A key id is required");
+		Assert.hasText(verifierKey, "A verifier key is required");
+		String key = verifierKey.trim();
+		Assert.isTrue(!isPrivateKey(key), "Private key cannot be used as a verifier key");
+		SignatureVerifier verifier = createPublicKeyVerifier(key);
+		if (verifier == null) {
+			addKey(keyId, new MacSigner(key), null);
+			return;
+		}
+		addKey(keyId, verifier, key);
+	}
+
+	/**
+	 * Add (or replace) a key with a verifier that has already been created.
+	 * 
+	 * @param keyId the key id
+	 * @param verifier the verifier for tokens signed with this key id
+	 * @param publicKey the encoded public key to publish (null if the key is secret)
+	 */
+	public void addKey(String keyId, SignatureVerifier verifier, String publicKey) {
+		Assert.hasText(keyId, "A key id is required");
+		Assert.notNull(verifier, "A verifier is required");
+		keys.put(keyId, new VerifierKey(verifier, publicKey));
+		version.incrementAndGet();
+	}
+
+	/**
+	 * Remove a key, so that tokens signed with it are no longer accepted.
+	 * 
+	 * @param keyId the key id
+	 * @return true if there was such a key
+	 */
+	public boolean removeKey(String keyId) {
+		if (keys.remove(keyId) == null) {
+			return false;
+		}
+		version.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * A number that changes whenever a key is added, replaced or removed, so that anything that caches the result of
+	 * verifying a token (e.g. {@link JwtTokenServices}) knows when to throw it away.
+	 * 
+	 * @return the current version of the keys
+	 */
+	public long getVersion() {
+		return version.get();
+	}
+
+	/**
+	 * @param keyId the key id from the header of a token
+	 * @return the verifier for the key, or null if there is no such key
+	 */
+	public SignatureVerifier getVerifier(String keyId) {
+		VerifierKey key = keys.get(keyId);
+		return key == null ? null : key.verifier;
+	}
+
+	/**
+	 * @return the ids of all the keys
+	 */
+	public Set<String> getKeyIds() {
+		return keys.keySet();
+	}
+
+	/**
+	 * @return the public keys, each one with its key id ("kid"), algorithm ("alg") and encoded value ("value")
+	 */
+	public List<Map<String, String>> getPublicKeys() {
+		List<Map<String, String>> result = new ArrayList<Map<String, String>>();
+		for (Map.Entry<String, VerifierKey> entry : keys.entrySet()) {
+			VerifierKey key = entry.getValue();
+			if (key.publicKey != null) {
+				Map<String, String> map = new LinkedHashMap<String, String>();
+				map.put("kid", entry.getKey());
+				map.put("alg", key.verifier.algorithm());
+				map.put("value", key.publicKey);
+				result.add(map);
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @param key some encoded key data
+	 * @return true if the key is an RSA or EC private key
+	 */
+	static boolean isPrivateKey(String key) {
+		try {
+			new RsaSigner(key);
+			return true;
+		}
+		catch (Exception expected) {
+			// Not an RSA private key
+		}
+		try {
+			new EcSigner(key);
+			return true;
+		}
+		catch (Exception expected) {
+			return false;
+		}
+	}
+
+	/**
+	 * @param key some encoded key data (a private key is accepted if it includes the public key)
+	 * @return a verifier for an RSA or EC public key, or null if the key is neither
+	 */
+	static SignatureVerifier createPublicKeyVerifier(String key) {
+		try {
+			return new RsaVerifier(key);
+		}
+		catch (Exception expected) {
+			// Not an RSA key
+		}
+		try {
+			return new EcVerifier(key);
+		}
+		catch (Exception expected) {
+			return null;
+		}
+	}
+
+	private static class VerifierKey {
+
+		private final SignatureVerifier verifier;
+
+		private final String publicKey;
+
+		public VerifierKey(SignatureVerifier verifier, String publicKey) {
+			this.verifier = verifier;
+			this.publicKey = publicKey;
+		}
+
+	}
+
+}
@@ -12,7 +12,9 @@
  */
 package org.springframework.security.oauth2.provider.token;
 
+import java.io.StringWriter;
 import java.security.Principal;
+import java.util.Collections;
 import java.util.LinkedHashMap;
 import java.util.Map;
 
@@ -22,10 +24,10 @@ import org.codehaus.jackson.map.ObjectMapper;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.security.jwt.Jwt;
 import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.jwt.crypto.sign.EcSigner;
 import org.springframework.security.jwt.crypto.sign.InvalidSignatureException;
 import org.springframework.security.jwt.crypto.sign.MacSigner;
 import org.springframework.security.jwt.crypto.sign.RsaSigner;
-import org.springframework.security.jwt.crypto.sign.RsaVerifier;
 import org.springframework.security.jwt.crypto.sign.SignatureVerifier;
 import org.springframework.security.jwt.crypto.sign.Signer;
 import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
@@ -50,10 +52,10 @@ public class JwtTokenEnhancer implements TokenEnhancer, InitializingBean {
 
 	private static final Log logger = LogFactory.getLog(JwtTokenEnhancer.class);
 
-	private AccessTokenConverter tokenConverter = new DefaultAccessTokenConverter();
-
 	private ObjectMapper objectMapper = new ObjectMapper();
 
+	private AccessTokenClaimsCodec claimsCodec = new AccessTokenClaimsCodec(objectMapper);
+
 	private String verifierKey = new RandomValueStringGenerator().generate();
 
 	private Signer signer = new MacSigner(verifierKey);
@@ -62,6 +64,12 @@ public class JwtTokenEnhancer implements TokenEnhancer, InitializingBean {
 
 	private SignatureVerifier verifier;
 
+	private String keyId;
+
+	private Map<String, String> headers = Collections.emptyMap();
+
+	private JwtKeyRegistry keyRegistry;
+
 	/**
 	 * Get the verification key for the token signatures.
 	 * 
@@ -75,8 +83,32 @@ public class JwtTokenEnhancer implements TokenEnhancer, InitializingBean {
 	}
 
 	/**
-	 * Sets the JWT signing key. It can be either a simple MAC key or an RSA key. RSA keys should be in OpenSSH format,
-	 * as produced by <tt>ssh-keygen</tt>.
+	 * The id of the signing key. If it is set it is added to the header of every token ("kid"), so that tokens can be
+	 * verified with the right key when there is more than one (e.g. while keys are being rotated).
+	 * 
+	 * @param keyId the key id to set
+	 */
+	public void setKeyId(String keyId) {
+		this.keyId = keyId;
+		this.headers = keyId == null ? Collections.<String, String> emptyMap() : Collections.singletonMap("kid", keyId);
+	}
+
+	/**
+	 * A registry of keys to verify tokens with, by key id. Tokens with a key id are verified with the matching key from
+	 * the registry (and rejected if there is none), and tokens without one with the verifier key of this enhancer. If
+	 * there is a {@link #setKeyId(String) key id} the verifier key of this enhancer is added to the registry with it.
+	 * 
+	 * @param keyRegistry the key registry to set
+	 */
+	public void setKeyRegistry(JwtKeyRegistry keyRegistry) {
+		this.keyRegistry = keyRegistry;
+	}
+
+	/**
+	 * Sets the JWT signing key. It can be either a simple MAC key, an RSA key or an EC key. RSA keys should be in
+	 * OpenSSH format, as produced by <tt>ssh-keygen</tt> (PKCS#8 RSA keys are not supported). EC keys (which sign with
+	 * ES256, ES384 or ES512 for the P-256, P-384 and P-521 curves) can be in the "EC PRIVATE KEY" format produced by
+	 * <tt>openssl ecparam -genkey</tt> or in PKCS#8 format.
 	 * 
 	 * @param key the key to be used for signing JWTs.
 	 */
@@ -86,7 +118,11 @@ public class JwtTokenEnhancer implements TokenEnhancer, InitializingBean {
 
 		this.signingKey = key;
 
-		if (isPublic(key)) {
+		if (isEc(key)) {
+			signer = new EcSigner(key);
+			logger.info("Configured with EC signing key");
+		}
+		else if (isPublic(key)) {
 			signer = new RsaSigner(key);
 			logger.info("Configured with RSA signing key");
 		}
@@ -104,24 +140,27 @@ public class JwtTokenEnhancer implements TokenEnhancer, InitializingBean {
 		return key.startsWith("-----BEGIN");
 	}
 
+	/**
+	 * @return true if the key is an EC private key (a PKCS#8 key is only EC if its algorithm is)
+	 */
+	private boolean isEc(String key) {
+		return isPublic(key) && EcSigner.isPrivateKey(key);
+	}
+
 	/**
 	 * The key used for verifying signatures produced by this class. This is not used but is returned from the endpoint
 	 * to allow resource servers to obtain the key.
 	 * 
-	 * For an HMAC key it will be the same value as the signing key and does not need to be set. For and RSA key, it
-	 * should be set to the String representation of the public key, in a standard format (e.g. OpenSSH keys)
+	 * For an HMAC key it will be the same value as the signing key and does not need to be set. For an RSA or EC key,
+	 * it should be set to the String representation of the public key, in a standard format (e.g. OpenSSH or PEM keys).
+	 * Private keys (including the EC keys written by <tt>openssl ecparam -genkey</tt>) are rejected.
 	 * 
-	 * @param key the signature verification key (typically an RSA public key)
+	 * @param key the signature verification key (typically an RSA or EC public key)
 	 */
 	public void setVerifierKey(String key) {
+		// The verifier key is published, so it must never be a private key
+		Assert.isTrue(!JwtKeyRegistry.isPrivateKey(key.trim()), "Private key cannot be set as verifierKey property");
 		this.verifierKey = key;
-		try {
-			new RsaSigner(verifierKey);
-			throw new IllegalArgumentException("Private key cannot be set as verifierKey property");
-		}
-		catch (Exception expected) {
-			// Expected
-		}
 	}
 
 	public OAuth2AccessToken enhance(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
@@ -136,19 +175,20 @@ public class JwtTokenEnhancer implements TokenEnhancer, InitializingBean {
 	}
 
 	protected String encode(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
-		String content;
+		StringWriter content = new StringWriter(256);
 		try {
-			content = objectMapper.writeValueAsString(tokenConverter.convertAccessToken(accessToken, authentication));
+			claimsCodec.write(accessToken, authentication, content);
 		}
 		catch (Exception e) {
 			throw new IllegalStateException("Cannot convert access token to JSON", e);
 		}
-		String token = JwtHelper.encode(content, signer).getEncoded();
+		// The buffer is a CharSequence so there is no need to copy it into a String
+		String token = JwtHelper.encode(content.getBuffer(), signer, headers).getEncoded();
 		return token;
 	}
 
 	protected Map<String, Object> decode(String token) {
-		Jwt jwt = JwtHelper.decodeAndVerify(token, verifier);
+		Jwt jwt = JwtHelper.decodeAndVerify(token, getVerifier(token));
 		String content = jwt.getClaims();
 		try {
 			@SuppressWarnings("unchecked")
@@ -160,25 +200,60 @@ public class JwtTokenEnhancer implements TokenEnhancer, InitializingBean {
 		}
 	}
 
+	/**
+	 * Verify the token and read the access token and authentication directly from its claims.
+	 * 
+	 * @param token an encoded token value
+	 * @return the access token (with the same value as the input) and its authentication
+	 */
+	protected StoredAccessToken decodeAccessToken(String token) {
+		Jwt jwt = JwtHelper.decodeAndVerify(token, getVerifier(token));
+		try {
+			return claimsCodec.read(token, jwt.getClaims());
+		}
+		catch (Exception e) {
+			throw new InvalidTokenException("Cannot convert access token to JSON", e);
+		}
+	}
+
+	private SignatureVerifier getVerifier(String token) {
+		if (keyRegistry == null) {
+			return verifier;
+		}
+		String kid;
+		try {
+			kid = JwtHelper.headers(token).get("kid");
+		}
+		catch (RuntimeException e) {
+			throw new InvalidTokenException("Cannot read token header", e);
+		}
+		if (kid == null) {
+			// Tokens that were signed before there were key ids
+			return verifier;
+		}
+		SignatureVerifier result = keyRegistry.getVerifier(kid);
+		if (result == null) {
+			throw new InvalidTokenException("Unknown signing key: " + kid);
+		}
+		return result;
+	}
+
 	public void afterPropertiesSet() throws Exception {
 		// Check the signing and verification keys match
-		if (signer instanceof RsaSigner) {
-			RsaVerifier verifier;
-			try {
-				verifier = new RsaVerifier(verifierKey);
-			}
-			catch (Exception e) {
-				logger.warn("Unable to create an RSA verifier from verifierKey");
+		if (signer instanceof RsaSigner || signer instanceof EcSigner) {
+			SignatureVerifier verifier = JwtKeyRegistry.createPublicKeyVerifier(verifierKey);
+			if (verifier == null) {
+				logger.warn("Unable to create an RSA or EC verifier from verifierKey");
 				return;
 			}
 
 			byte[] test = "test".getBytes();
 			try {
 				verifier.verify(test, signer.sign(test));
-				logger.info("Signing and verification RSA keys match");
+				logger.info("Signing and verification keys match");
 			}
 			catch (InvalidSignatureException e) {
-				logger.error("Signing and verification RSA keys do not match");
+				logger.error("Signing and verification keys do not match");
 			}
 		}
 		else {
@@ -186,13 +261,14 @@ public class JwtTokenEnhancer implements TokenEnhancer, InitializingBean {
 			Assert.state(this.signingKey == this.verifierKey,
 					"For MAC signing you do not need to specify the verifier key separately, and if you do it must match the signing key");
 		}
-		SignatureVerifier verifier = new MacSigner(verifierKey);
-		try {
-			verifier = new RsaVerifier(verifierKey);
-		}
-		catch (Exception e) {
-			logger.warn("Unable to create an RSA verifier from verifierKey");
+		SignatureVerifier verifier = JwtKeyRegistry.createPublicKeyVerifier(verifierKey);
+		if (verifier == null) {
+			logger.warn("Unable to create an RSA or EC verifier from verifierKey");
+			verifier = new MacSigner(verifierKey);
 		}
 		this.verifier = verifier;
+		if (keyRegistry != null && keyId != null) {
+			keyRegistry.addKey(keyId, verifier, verifier instanceof MacSigner ? null : verifierKey);
+		}
 	}
 }
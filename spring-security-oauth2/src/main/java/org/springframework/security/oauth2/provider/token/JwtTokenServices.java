@@ -13,23 +13,30 @@
 
 package org.springframework.security.oauth2.provider.token;
 
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
 import java.util.Date;
 import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.security.core.AuthenticationException;
 import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
 import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
-import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.common.OAuth2RefreshToken;
 import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
 import org.springframework.security.oauth2.common.exceptions.InvalidScopeException;
 import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.common.util.ExpiringCache;
 import org.springframework.security.oauth2.provider.ClientDetails;
 import org.springframework.security.oauth2.provider.ClientDetailsService;
+import org.springframework.security.oauth2.provider.GrantContext;
+import org.springframework.security.oauth2.provider.GrantContextHolder;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.OAuth2Request;
 import org.springframework.security.oauth2.provider.TokenRequest;
@@ -37,6 +44,9 @@ import org.springframework.security.oauth2.provider.TokenRequest;
 /**
  * Token services for authorization server and resource server based on JWT encoded token values. There is no need for
  * shared storage because all of the state is carried in the token values.
+ * <p>
+ * A resource server that sees the same tokens many times can {@link #setAuthenticationCacheSize(int) cache} the
+ * authentications it loads, so that a token is only verified and parsed the first time it is presented.
  * 
  * @author Dave Syer
  * 
@@ -49,8 +59,6 @@ public class JwtTokenServices implements AuthorizationServerTokenServices, Resou
 	 */
 	public static final String TOKEN_ID = "jti";
 
-	private AccessTokenConverter tokenConverter = new DefaultAccessTokenConverter();
-
 	private ClientDetailsService clientDetailsService;
 
 	private TokenEnhancer accessTokenEnhancer;
@@ -67,6 +75,32 @@ public class JwtTokenServices implements AuthorizationServerTokenServices, Resou
 
 	private AuthenticationKeyGenerator authenticationKeyGenerator = new DefaultAuthenticationKeyGenerator();
 
+	private volatile ExpiringCache<TokenDigest, OAuth2Authentication> authenticationCache;
+
+	/**
+	 * Incremented when the cache is cleared, so that a token verified with an old key concurrently is not cached.
+	 */
+	private final AtomicLong cacheGeneration = new AtomicLong();
+
+	private volatile JwtKeyRegistry keyRegistry;
+
+	/**
+	 * The version of the key registry when the cache was last cleared.
+	 */
+	private volatile long keyRegistryVersion;
+
+	private final ThreadLocal<MessageDigest> digests = new ThreadLocal<MessageDigest>() {
+		@Override
+		protected MessageDigest initialValue() {
+			try {
+				return MessageDigest.getInstance("SHA-256");
+			}
+			catch (NoSuchAlgorithmException e) {
+				throw new IllegalStateException("SHA-256 algorithm not available.  Fatal (should be in the JDK).");
+			}
+		}
+	};
+
 	/**
 	 * Whether to support the refresh token.
 	 * 
@@ -133,42 +167,148 @@ public class JwtTokenServices implements AuthorizationServerTokenServices, Resou
 		this.authenticationKeyGenerator = authenticationKeyGenerator;
 	}
 
+	/**
+	 * The maximum number of authentications to cache in {@link #loadAuthentication(String)}. Entries are keyed by a
+	 * digest of the whole token value and kept until the token expires (or until they are evicted to make room for
+	 * others), so a token that is presented again skips the signature verification and the JSON parsing. The cache is
+	 * cleared when the keys change. Default 0 (no cache).
+	 * 
+	 * @param authenticationCacheSize the maximum number of cached authentications
+	 */
+	public void setAuthenticationCacheSize(int authenticationCacheSize) {
+		this.authenticationCache = authenticationCacheSize > 0 ? new ExpiringCache<TokenDigest, OAuth2Authentication>(
+				authenticationCacheSize) : null;
+	}
+
+	/**
+	 * Remove all cached authentications (e.g. if the keys are rotated without going through this class).
+	 */
+	public void clearAuthenticationCache() {
+		ExpiringCache<TokenDigest, OAuth2Authentication> cache = this.authenticationCache;
+		cacheGeneration.incrementAndGet();
+		if (cache != null) {
+			cache.clear();
+		}
+	}
+
 	/**
 	 * The key used for verifying signatures produced by this class. This is not used but is returned from the endpoint
 	 * to allow resource servers to obtain the key.
 	 * 
-	 * @param key the signature verification key (typically an RSA public key)
+	 * @param key the signature verification key (typically an RSA or EC public key)
 	 */
 	public void setVerifierKey(String key) {
 		jwtTokenEnhancer.setVerifierKey(key);
+		clearAuthenticationCache();
 	}
 
 	/**
-	 * Sets the JWT signing key. It can be either a simple MAC key or an RSA key. RSA keys should be in OpenSSH format,
-	 * as produced by <tt>ssh-keygen</tt>.
+	 * Sets the JWT signing key. It can be either a simple MAC key, an RSA key or an EC key. RSA keys should be in
+	 * OpenSSH format, as produced by <tt>ssh-keygen</tt>, and EC keys in PEM format (SEC1 or PKCS#8). See
+	 * {@link JwtTokenEnhancer#setSigningKey(String)}.
 	 * 
 	 * @param key the key to be used for signing JWTs.
 	 */
 	public void setSigningKey(String key) {
 		jwtTokenEnhancer.setSigningKey(key);
+		clearAuthenticationCache();
+	}
+
+	/**
+	 * The id of the signing key, added to the header of every token ("kid").
+	 * 
+	 * @param keyId the key id to set
+	 * @see JwtTokenEnhancer#setKeyId(String)
+	 */
+	public void setKeyId(String keyId) {
+		jwtTokenEnhancer.setKeyId(keyId);
+	}
+
+	/**
+	 * A registry of keys to verify tokens with, by key id. The authentication cache is cleared whenever a key is added,
+	 * replaced or removed, so tokens signed with a key that has been removed are not accepted from the cache.
+	 * 
+	 * @param keyRegistry the key registry to set
+	 * @see JwtTokenEnhancer#setKeyRegistry(JwtKeyRegistry)
+	 */
+	public void setKeyRegistry(JwtKeyRegistry keyRegistry) {
+		jwtTokenEnhancer.setKeyRegistry(keyRegistry);
+		this.keyRegistry = keyRegistry;
+		clearAuthenticationCache();
 	}
 
 	public void afterPropertiesSet() throws Exception {
 		jwtTokenEnhancer.afterPropertiesSet();
+		// The verifier might have changed
+		clearAuthenticationCache();
 	}
 
 	public OAuth2Authentication loadAuthentication(String token) throws AuthenticationException {
-		return tokenConverter.extractAuthentication(decode(token));
+		ExpiringCache<TokenDigest, OAuth2Authentication> cache = this.authenticationCache;
+		if (cache == null) {
+			return decode(token).getAuthentication();
+		}
+		JwtKeyRegistry registry = this.keyRegistry;
+		long version = registry == null ? 0 : registry.getVersion();
+		if (version != keyRegistryVersion) {
+			// Keys were added, replaced or removed since the cached tokens were verified
+			clearAuthenticationCache();
+			keyRegistryVersion = version;
+		}
+		TokenDigest key = digest(token);
+		OAuth2Authentication authentication = cache.get(key);
+		if (authentication != null) {
+			// Callers set details on the authentication, so they each need their own instance
+			return new OAuth2Authentication(authentication.getOAuth2Request(), authentication.getUserAuthentication());
+		}
+		long generation = cacheGeneration.get();
+		StoredAccessToken decoded = decode(token);
+		authentication = decoded.getAuthentication();
+		Date expiration = decoded.getAccessToken().getExpiration();
+		cache.put(key, authentication, expiration != null ? expiration.getTime() : Long.MAX_VALUE);
+		if (cacheGeneration.get() != generation || registry != null && registry.getVersion() != version) {
+			// The keys changed while we were verifying the token
+			cache.remove(key);
+		}
+		return new OAuth2Authentication(authentication.getOAuth2Request(), authentication.getUserAuthentication());
 	}
 
 	public OAuth2AccessToken readAccessToken(String token) {
-		return tokenConverter.extractAccessToken(token, decode(token));
+		return decode(token).getAccessToken();
 	}
 
+	/**
+	 * Create an access token and (if supported) a refresh token for the authentication. The claims are built (and
+	 * enhanced) once, the refresh token claims are the same with a different expiry, and each token is signed exactly
+	 * once. If there is no grant in progress the client is still only loaded once, through a {@link GrantContext} that
+	 * lasts as long as this call.
+	 */
 	public OAuth2AccessToken createAccessToken(OAuth2Authentication authentication) throws AuthenticationException {
-		DefaultOAuth2AccessToken result = new DefaultOAuth2AccessToken(getAccessToken(authentication));
-		result.setRefreshToken(createRefreshToken(authentication));
-		return result;
+		GrantContext previous = GrantContextHolder.getContext();
+		if (previous == null) {
+			GrantContextHolder.setContext(new GrantContext());
+		}
+		try {
+			OAuth2Request request = authentication.getOAuth2Request();
+			DefaultOAuth2AccessToken claims = createClaims(authentication);
+			DefaultOAuth2AccessToken result = new DefaultOAuth2AccessToken(claims);
+			result.setValue(encode(claims, authentication));
+			OAuth2RefreshToken refreshToken = null;
+			if (isSupportRefreshToken(request)) {
+				int validitySeconds = getRefreshTokenValiditySeconds(request);
+				Date expiration = new Date(System.currentTimeMillis() + (validitySeconds * 1000L));
+				DefaultOAuth2AccessToken refreshClaims = new DefaultOAuth2AccessToken(claims);
+				refreshClaims.setExpiration(expiration);
+				refreshToken = new DefaultExpiringOAuth2RefreshToken(encode(refreshClaims, authentication), expiration);
+			}
+			result.setRefreshToken(refreshToken);
+			return result;
+		}
+		finally {
+			if (previous == null) {
+				GrantContextHolder.clearContext();
+			}
+		}
 	}
 	
 	public OAuth2AccessToken refreshAccessToken(String refreshTokenValue, TokenRequest request)
@@ -178,30 +318,34 @@ public class JwtTokenServices implements AuthorizationServerTokenServices, Resou
 			throw new InvalidGrantException("Invalid refresh token: " + refreshTokenValue);
 		}
 
-		OAuth2Authentication authentication = loadAuthentication(refreshTokenValue);
+		// Verify and parse the refresh token once for both the authentication and the expiry
+		StoredAccessToken refreshTokenData = decode(refreshTokenValue);
+		OAuth2Authentication authentication = refreshTokenData.getAuthentication();
 		String clientId = authentication.getOAuth2Request().getClientId();
 		if (clientId == null || !clientId.equals(request.getClientId())) {
 			throw new InvalidGrantException("Wrong client for this refresh token: " + refreshTokenValue);
 		}
 
-		OAuth2AccessToken refreshTokenData = readAccessToken(refreshTokenValue);
-		if (isExpired(refreshTokenData)) {
+		if (isExpired(refreshTokenData.getAccessToken())) {
 			throw new InvalidTokenException("Invalid refresh token (expired): " + refreshTokenValue);
 		}
 
 		authentication = createRefreshedAuthentication(authentication, request.getScope());
 
-		OAuth2AccessToken accessToken = createAccessToken(authentication);
-		if (!reuseRefreshToken) {
-			OAuth2RefreshToken refreshToken = createRefreshToken(authentication);
-			DefaultOAuth2AccessToken result = new DefaultOAuth2AccessToken(accessToken);
-			result.setRefreshToken(refreshToken);
-		}
-
-		return accessToken;
+		// The new access token comes with a new refresh token (if they are supported)
+		return createAccessToken(authentication);
 	}
 
 	public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
+		DefaultOAuth2AccessToken token = createClaims(authentication);
+		return token.setValue(encode(token, authentication));
+	}
+
+	/**
+	 * @param authentication the current authentication
+	 * @return an access token with everything that goes in the claims (after enhancement) but not yet a value
+	 */
+	private DefaultOAuth2AccessToken createClaims(OAuth2Authentication authentication) {
 
 		String tokenId = authenticationKeyGenerator.extractKey(authentication);
 		DefaultOAuth2AccessToken result = new DefaultOAuth2AccessToken(tokenId);
@@ -221,9 +365,7 @@ public class JwtTokenServices implements AuthorizationServerTokenServices, Resou
 			result = new DefaultOAuth2AccessToken(accessTokenEnhancer.enhance(result, authentication));
 		}
 
-		DefaultOAuth2AccessToken token = result.setValue(encode(result, authentication));
-
-		return token;
+		return result;
 
 	}
 
@@ -246,7 +388,8 @@ public class JwtTokenServices implements AuthorizationServerTokenServices, Resou
 	 */
 	protected boolean isSupportRefreshToken(OAuth2Request authorizationRequest) {
 		if (clientDetailsService != null) {
-			ClientDetails client = clientDetailsService.loadClientByClientId(authorizationRequest.getClientId());
+			ClientDetails client = GrantContextHolder.loadClientByClientId(clientDetailsService,
+					authorizationRequest.getClientId());
 			return client.getAuthorizedGrantTypes().contains("refresh_token");
 		}
 		return this.supportRefreshToken;
@@ -259,7 +402,8 @@ public class JwtTokenServices implements AuthorizationServerTokenServices, Resou
 	 */
 	protected int getAccessTokenValiditySeconds(OAuth2Request authorizationRequest) {
 		if (clientDetailsService != null) {
-			ClientDetails client = clientDetailsService.loadClientByClientId(authorizationRequest.getClientId());
+			ClientDetails client = GrantContextHolder.loadClientByClientId(clientDetailsService,
+					authorizationRequest.getClientId());
 			Integer validity = client.getAccessTokenValiditySeconds();
 			if (validity != null) {
 				return validity;
@@ -275,7 +419,8 @@ public class JwtTokenServices implements AuthorizationServerTokenServices, Resou
 	 */
 	protected int getRefreshTokenValiditySeconds(OAuth2Request authorizationRequest) {
 		if (clientDetailsService != null) {
-			ClientDetails client = clientDetailsService.loadClientByClientId(authorizationRequest.getClientId());
+			ClientDetails client = GrantContextHolder.loadClientByClientId(clientDetailsService,
+					authorizationRequest.getClientId());
 			Integer validity = client.getRefreshTokenValiditySeconds();
 			if (validity != null) {
 				return validity;
@@ -293,8 +438,17 @@ public class JwtTokenServices implements AuthorizationServerTokenServices, Resou
 		return jwtTokenEnhancer.encode(accessToken, authentication);
 	}
 
-	private Map<String, Object> decode(String token) {
-		return jwtTokenEnhancer.decode(token);
+	private StoredAccessToken decode(String token) {
+		return jwtTokenEnhancer.decodeAccessToken(token);
+	}
+
+	private TokenDigest digest(String token) {
+		try {
+			return new TokenDigest(digests.get().digest(token.getBytes("UTF-8")));
+		}
+		catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("UTF-8 encoding not available.  Fatal (should be in the JDK).");
+		}
 	}
 
 	/**
@@ -323,24 +477,30 @@ public class JwtTokenServices implements AuthorizationServerTokenServices, Resou
 	}
 
 	/**
-	 * Create a refresh token (if supported) by encoding an authentication, so it can be recovered when needed without
-	 * any need for shared storage.
-	 * 
-	 * @param authentication the current authentication
-	 * @return a refresh token with a JWT encoded value
+	 * Cache key for a token: a SHA-256 digest of the whole value, so that a token with a valid signature but altered
+	 * claims can never match the entry for the original.
 	 */
-	private ExpiringOAuth2RefreshToken createRefreshToken(OAuth2Authentication authentication) {
-		if (!isSupportRefreshToken(authentication.getOAuth2Request())) {
-			return null;
+	private static class TokenDigest {
+
+		private final byte[] digest;
+
+		private final int hash;
+
+		public TokenDigest(byte[] digest) {
+			this.digest = digest;
+			this.hash = Arrays.hashCode(digest);
+		}
+
+		@Override
+		public int hashCode() {
+			return hash;
+		}
+
+		@Override
+		public boolean equals(Object obj) {
+			return obj instanceof TokenDigest && Arrays.equals(digest, ((TokenDigest) obj).digest);
 		}
-		DefaultOAuth2AccessToken accessToken = new DefaultOAuth2AccessToken(getAccessToken(authentication));
-		int validitySeconds = getRefreshTokenValiditySeconds(authentication.getOAuth2Request());
-		Date expiration = new Date(System.currentTimeMillis() + (validitySeconds * 1000L));
-		accessToken.setExpiration(expiration);
-		accessToken.setValue(encode(accessToken, authentication));
-		ExpiringOAuth2RefreshToken refreshToken = new DefaultExpiringOAuth2RefreshToken(accessToken.getValue(),
-				expiration);
-		return refreshToken;
+
 	}
 
 }
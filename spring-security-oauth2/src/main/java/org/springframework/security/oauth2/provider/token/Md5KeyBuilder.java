@@ -0,0 +1,140 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.provider.token;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Computes the MD5 digest of some text as 32 lower case hex characters (the same as
+ * <code>String.format("%032x", new BigInteger(1, digest))</code> of the UTF-8 bytes) without allocating anything but
+ * the result. There is one builder per thread: the text is encoded into a small fixed buffer that is flushed into the
+ * digest when it is full.
+ *
+ * @author Dave Syer
+ *
+ */
+final class Md5KeyBuilder {
+
+	private static final char[] HEX = "0123456789abcdef".toCharArray();
+
+	private static final int BUFFER_SIZE = 256;
+
+	private static final ThreadLocal<Md5KeyBuilder> builders = new ThreadLocal<Md5KeyBuilder>() {
+		@Override
+		protected Md5KeyBuilder initialValue() {
+			return new Md5KeyBuilder();
+		}
+	};
+
+	private final MessageDigest digest;
+
+	private final byte[] buffer = new byte[BUFFER_SIZE];
+
+	private int position;
+
+	private Md5KeyBuilder() {
+		try {
+			digest = MessageDigest.getInstance("MD5");
+		}
+		catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException("MD5 algorithm not available.  Fatal (should be in the JDK).");
+		}
+	}
+
+	/**
+	 * @return an empty builder for the current thread (it must not be used after calling {@link #toKey()})
+	 */
+	public static Md5KeyBuilder start() {
+		Md5KeyBuilder builder = builders.get();
+		builder.position = 0;
+		builder.digest.reset();
+		return builder;
+	}
+
+	/**
+	 * @param value the text to hash
+	 * @return the hex encoded MD5 digest of the text
+	 */
+	public static String key(String value) {
+		return start().append(value).toKey();
+	}
+
+	/**
+	 * Append some text, encoded as UTF-8. A null value is appended as "null" (like a {@link StringBuilder}).
+	 *
+	 * @param value the text to append
+	 * @return this builder
+	 */
+	public Md5KeyBuilder append(String value) {
+		if (value == null) {
+			value = "null";
+		}
+		int length = value.length();
+		for (int i = 0; i < length; i++) {
+			char c = value.charAt(i);
+			if (c < 0x80) {
+				put(c);
+			}
+			else if (c < 0x800) {
+				put(0xc0 | (c >> 6));
+				put(0x80 | (c & 0x3f));
+			}
+			else if (Character.isHighSurrogate(c) && i + 1 < length && Character.isLowSurrogate(value.charAt(i + 1))) {
+				int codePoint = Character.toCodePoint(c, value.charAt(++i));
+				put(0xf0 | (codePoint >> 18));
+				put(0x80 | ((codePoint >> 12) & 0x3f));
+				put(0x80 | ((codePoint >> 6) & 0x3f));
+				put(0x80 | (codePoint & 0x3f));
+			}
+			else if (Character.isHighSurrogate(c) || Character.isLowSurrogate(c)) {
+				// Malformed input is replaced, the same as String.getBytes("UTF-8")
+				put('?');
+			}
+			else {
+				put(0xe0 | (c >> 12));
+				put(0x80 | ((c >> 6) & 0x3f));
+				put(0x80 | (c & 0x3f));
+			}
+		}
+		return this;
+	}
+
+	/**
+	 * @return the hex encoded digest of everything appended so far
+	 */
+	public String toKey() {
+		digest.update(buffer, 0, position);
+		position = 0;
+		byte[] bytes = digest.digest();
+		char[] chars = new char[bytes.length * 2];
+		for (int i = 0; i < bytes.length; i++) {
+			chars[2 * i] = HEX[(bytes[i] >> 4) & 0xf];
+			chars[2 * i + 1] = HEX[bytes[i] & 0xf];
+		}
+		return new String(chars);
+	}
+
+	private void put(int b) {
+		if (position == BUFFER_SIZE) {
+			digest.update(buffer, 0, BUFFER_SIZE);
+			position = 0;
+		}
+		buffer[position++] = (byte) b;
+	}
+
+}
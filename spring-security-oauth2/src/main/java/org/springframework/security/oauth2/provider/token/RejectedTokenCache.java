@@ -0,0 +1,148 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.provider.token;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.springframework.security.oauth2.common.util.ExpiringCache;
+
+/**
+ * A bounded negative cache of access token values that were recently rejected by a resource server (because they are
+ * unknown, revoked or expired), so that clients retrying with a bad token, or a flood of made up tokens, do not cost a
+ * read from the token store every time. Entries are kept for a short time (default 10 seconds) and the least recently
+ * used are evicted when the cache is full. Only a digest of each token value is kept, so a long token does not use
+ * more memory than a short one.
+ * <p>
+ * A token that is issued after it was rejected (e.g. if a resource server sees it before the authorization server has
+ * finished storing it) has to be {@link #invalidate(String) invalidated}, which {@link DefaultTokenServices} does if it
+ * shares the cache with the
+ * {@link org.springframework.security.oauth2.provider.authentication.OAuth2AuthenticationManager authentication
+ * manager}. When the token services are in a different process the time to live is the upper limit on how long a new
+ * token can be rejected.
+ *
+ * @author Dave Syer
+ *
+ */
+public class RejectedTokenCache {
+
+	private static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+	private static final int GENERATIONS = 256;
+
+	private final ExpiringCache<String, Boolean> cache;
+
+	/**
+	 * Incremented on every invalidation (striped by key, so that issuing tokens does not stop other tokens from being
+	 * cached), so that a token that was rejected concurrently with an invalidation is not cached.
+	 */
+	private final AtomicLongArray generations = new AtomicLongArray(GENERATIONS);
+
+	private int timeToLiveSeconds = 10;
+
+	public RejectedTokenCache() {
+		this(DEFAULT_MAXIMUM_SIZE);
+	}
+
+	/**
+	 * @param maximumSize the maximum number of rejected tokens to remember
+	 */
+	public RejectedTokenCache(int maximumSize) {
+		this.cache = new ExpiringCache<String, Boolean>(maximumSize);
+	}
+
+	/**
+	 * The time in seconds that a rejected token is remembered for. Default 10.
+	 *
+	 * @param timeToLiveSeconds the time to live to set
+	 */
+	public void setTimeToLiveSeconds(int timeToLiveSeconds) {
+		this.timeToLiveSeconds = timeToLiveSeconds;
+	}
+
+	/**
+	 * @param tokenValue a token value
+	 * @return true if the token was rejected recently
+	 */
+	public boolean isRejected(String tokenValue) {
+		return cache.get(Md5KeyBuilder.key(tokenValue)) != null;
+	}
+
+	/**
+	 * The current generation of a token, to be passed to {@link #reject(String, long)} after looking it up.
+	 *
+	 * @param tokenValue a token value
+	 * @return a value that changes when the token is invalidated
+	 */
+	public long getGeneration(String tokenValue) {
+		return generations.get(stripe(Md5KeyBuilder.key(tokenValue)));
+	}
+
+	/**
+	 * Remember that a token was rejected, unless there has been an invalidation since the token was looked up.
+	 *
+	 * @param tokenValue the token value
+	 * @param generation the {@link #getGeneration(String) generation} before the token was looked up
+	 */
+	public void reject(String tokenValue, long generation) {
+		String key = Md5KeyBuilder.key(tokenValue);
+		cache.put(key, Boolean.TRUE, System.currentTimeMillis() + timeToLiveSeconds * 1000L);
+		if (generations.get(stripe(key)) != generation) {
+			// The token might have been stored while we were looking it up
+			cache.remove(key);
+		}
+	}
+
+	/**
+	 * Forget that a token was rejected (e.g. because it has just been stored).
+	 *
+	 * @param tokenValue the token value
+	 */
+	public void invalidate(String tokenValue) {
+		String key = Md5KeyBuilder.key(tokenValue);
+		generations.incrementAndGet(stripe(key));
+		cache.remove(key);
+	}
+
+	/**
+	 * Forget all rejected tokens.
+	 */
+	public void clear() {
+		for (int i = 0; i < GENERATIONS; i++) {
+			generations.incrementAndGet(i);
+		}
+		cache.clear();
+	}
+
+	/**
+	 * @return the number of requests for tokens that were rejected from the cache
+	 */
+	public long getHitCount() {
+		return cache.getHitCount();
+	}
+
+	/**
+	 * @return the number of rejected tokens in the cache
+	 */
+	public int getSize() {
+		return cache.size();
+	}
+
+	private int stripe(String key) {
+		return key.hashCode() & (GENERATIONS - 1);
+	}
+
+}
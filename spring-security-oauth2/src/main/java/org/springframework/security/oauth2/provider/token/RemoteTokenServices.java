@@ -0,0 +1,315 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.provider.token;
+
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import org.apache.commons.logging.Log;
+import org.apache.commons.logging.LogFactory;
+import org.apache.http.client.HttpClient;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.apache.http.impl.conn.PoolingClientConnectionManager;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.client.ClientHttpRequestFactory;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.http.client.SimpleClientHttpRequestFactory;
+import org.springframework.security.authentication.AuthenticationServiceException;
+import org.springframework.security.core.AuthenticationException;
+import org.springframework.security.crypto.codec.Base64;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.common.util.ExpiringCache;
+import org.springframework.security.oauth2.common.util.RequestCoalescer;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.util.Assert;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.LinkedMultiValueMap;
+import org.springframework.util.MultiValueMap;
+import org.springframework.web.client.DefaultResponseErrorHandler;
+import org.springframework.web.client.RestClientException;
+import org.springframework.web.client.RestOperations;
+import org.springframework.web.client.RestTemplate;
+
+/**
+ * {@link ResourceServerTokenServices} for a resource server that does not share a token store with the authorization
+ * server: tokens are checked by sending them to a
+ * {@link org.springframework.security.oauth2.provider.endpoint.CheckTokenEndpoint check token endpoint},
+ * authenticating as a client with HTTP basic authentication. The response is converted back
+ * into a token and an authentication with an {@link AccessTokenConverter} (by default a
+ * {@link DefaultAccessTokenConverter}, the same as the endpoint uses).
+ * <p>
+ * Valid tokens are cached, so a resource server only checks each token once per {@link #setTimeToLiveSeconds(int)
+ * time to live} (default 60 seconds), and never after it has expired. The flip side is that a token revoked on the
+ * authorization server is accepted here until the time to live is over. Concurrent requests with the same token that
+ * is not yet cached share a single call to the authorization server. Invalid tokens are not cached (use a
+ * {@link RejectedTokenCache} in the authentication manager for that).
+ * <p>
+ * If Apache HttpComponents is on the classpath, connections to the authorization server are pooled (default up to 20
+ * of them, see {@link #setMaxConnections(int)}) and kept alive between requests; otherwise the JDK
+ * <code>HttpURLConnection</code> is used. A custom {@link #setRestTemplate(RestOperations) RestTemplate} can be used
+ * instead, but it must not throw an exception for a 400 (bad request) response, which is what the endpoint sends for
+ * an invalid token.
+ *
+ * @author Dave Syer
+ *
+ */
+public class RemoteTokenServices implements ResourceServerTokenServices, DisposableBean {
+
+	private static final boolean httpComponentsPresent = ClassUtils.isPresent(
+			"org.apache.http.impl.conn.PoolingClientConnectionManager", RemoteTokenServices.class.getClassLoader());
+
+	private static final int DEFAULT_MAXIMUM_SIZE = 10000;
+
+	protected final Log logger = LogFactory.getLog(getClass());
+
+	private final ExpiringCache<String, StoredAccessToken> cache;
+
+	private final RequestCoalescer<String, StoredAccessToken> calls = new RequestCoalescer<String, StoredAccessToken>();
+
+	private volatile RestOperations restTemplate;
+
+	private volatile ClientHttpRequestFactory requestFactory;
+
+	private String checkTokenEndpointUrl;
+
+	private String clientId;
+
+	private String clientSecret;
+
+	private AccessTokenConverter tokenConverter = new DefaultAccessTokenConverter();
+
+	private int timeToLiveSeconds = 60;
+
+	private int maxConnections = 20;
+
+	public RemoteTokenServices() {
+		this(DEFAULT_MAXIMUM_SIZE);
+	}
+
+	/**
+	 * @param maximumSize the maximum number of tokens to cache
+	 */
+	public RemoteTokenServices(int maximumSize) {
+		this.cache = new ExpiringCache<String, StoredAccessToken>(maximumSize);
+	}
+
+	/**
+	 * @param checkTokenEndpointUrl the URL of the check token endpoint on the authorization server
+	 */
+	public void setCheckTokenEndpointUrl(String checkTokenEndpointUrl) {
+		this.checkTokenEndpointUrl = checkTokenEndpointUrl;
+	}
+
+	/**
+	 * @param clientId the client id to authenticate with at the check token endpoint
+	 */
+	public void setClientId(String clientId) {
+		this.clientId = clientId;
+	}
+
+	/**
+	 * @param clientSecret the client secret to authenticate with at the check token endpoint
+	 */
+	public void setClientSecret(String clientSecret) {
+		this.clientSecret = clientSecret;
+	}
+
+	/**
+	 * @param tokenConverter the converter for the response of the check token endpoint
+	 */
+	public void setAccessTokenConverter(AccessTokenConverter tokenConverter) {
+		this.tokenConverter = tokenConverter;
+	}
+
+	/**
+	 * The time in seconds that a valid token is cached for (it is never cached after it expires). Zero or less means
+	 * tokens are cached until they expire. Default 60.
+	 *
+	 * @param timeToLiveSeconds the time to live to set
+	 */
+	public void setTimeToLiveSeconds(int timeToLiveSeconds) {
+		this.timeToLiveSeconds = timeToLiveSeconds;
+	}
+
+	/**
+	 * The maximum number of pooled connections to the authorization server (only used if Apache HttpComponents is on
+	 * the classpath and no rest template is provided). Default 20.
+	 *
+	 * @param maxConnections the maximum number of connections to set
+	 */
+	public void setMaxConnections(int maxConnections) {
+		this.maxConnections = maxConnections;
+	}
+
+	/**
+	 * @param restTemplate the rest template to use to call the check token endpoint
+	 */
+	public void setRestTemplate(RestOperations restTemplate) {
+		this.restTemplate = restTemplate;
+	}
+
+	public OAuth2Authentication loadAuthentication(String accessToken) throws AuthenticationException {
+		StoredAccessToken stored = getStoredAccessToken(accessToken);
+		if (stored == null) {
+			throw new InvalidTokenException("Invalid access token: " + accessToken);
+		}
+		// The stored value is cached (and shared by coalesced callers), but callers set details on the authentication
+		OAuth2Authentication authentication = stored.getAuthentication();
+		return new OAuth2Authentication(authentication.getOAuth2Request(), authentication.getUserAuthentication());
+	}
+
+	public OAuth2AccessToken readAccessToken(String accessToken) {
+		StoredAccessToken stored = getStoredAccessToken(accessToken);
+		return stored == null ? null : stored.getAccessToken();
+	}
+
+	/**
+	 * @return the number of tokens in the cache
+	 */
+	public int getCacheSize() {
+		return cache.size();
+	}
+
+	public void destroy() throws Exception {
+		if (requestFactory instanceof DisposableBean) {
+			((DisposableBean) requestFactory).destroy();
+		}
+	}
+
+	private StoredAccessToken getStoredAccessToken(final String accessToken) {
+		StoredAccessToken stored = cache.get(accessToken);
+		if (stored != null) {
+			return stored;
+		}
+		return calls.execute(accessToken, new Callable<StoredAccessToken>() {
+			public StoredAccessToken call() throws Exception {
+				StoredAccessToken stored = checkToken(accessToken);
+				if (stored != null) {
+					cache.put(accessToken, stored, getExpiry(stored.getAccessToken()));
+				}
+				return stored;
+			}
+		});
+	}
+
+	private StoredAccessToken checkToken(String accessToken) {
+
+		MultiValueMap<String, String> form = new LinkedMultiValueMap<String, String>();
+		form.add("token", accessToken);
+		HttpHeaders headers = new HttpHeaders();
+		headers.setContentType(MediaType.APPLICATION_FORM_URLENCODED);
+		headers.set("Authorization", getAuthorizationHeader());
+
+		Map<String, Object> map;
+		try {
+			map = postForMap(new HttpEntity<MultiValueMap<String, String>>(form, headers));
+		}
+		catch (RestClientException e) {
+			throw new AuthenticationServiceException("Cannot check token at " + checkTokenEndpointUrl, e);
+		}
+
+		if (map == null || map.containsKey("error")) {
+			if (logger.isDebugEnabled()) {
+				logger.debug("Token check failed: " + map);
+			}
+			return null;
+		}
+
+		OAuth2AccessToken token = tokenConverter.extractAccessToken(accessToken, map);
+		if (token.isExpired()) {
+			return null;
+		}
+		return new StoredAccessToken(token, tokenConverter.extractAuthentication(map));
+
+	}
+
+	@SuppressWarnings("unchecked")
+	private Map<String, Object> postForMap(HttpEntity<MultiValueMap<String, String>> request) {
+		return getRestTemplate().exchange(checkTokenEndpointUrl, HttpMethod.POST, request, Map.class).getBody();
+	}
+
+	private long getExpiry(OAuth2AccessToken token) {
+		long expiry = timeToLiveSeconds > 0 ? System.currentTimeMillis() + timeToLiveSeconds * 1000L : Long.MAX_VALUE;
+		if (token.getExpiration() != null) {
+			expiry = Math.min(expiry, token.getExpiration().getTime());
+		}
+		return expiry;
+	}
+
+	private String getAuthorizationHeader() {
+		String credentials = String.format("%s:%s", clientId, clientSecret == null ? "" : clientSecret);
+		try {
+			return "Basic " + new String(Base64.encode(credentials.getBytes("UTF-8")), "UTF-8");
+		}
+		catch (UnsupportedEncodingException e) {
+			throw new IllegalStateException("Could not convert String");
+		}
+	}
+
+	private RestOperations getRestTemplate() {
+		RestOperations result = restTemplate;
+		if (result != null) {
+			// Only the first call takes the lock
+			return result;
+		}
+		synchronized (this) {
+			if (restTemplate == null) {
+				Assert.state(checkTokenEndpointUrl != null, "A check token endpoint URL is required");
+				requestFactory = httpComponentsPresent ? PooledRequestFactory.create(maxConnections)
+						: new SimpleClientHttpRequestFactory();
+				RestTemplate template = new RestTemplate(requestFactory);
+				template.setErrorHandler(new DefaultResponseErrorHandler() {
+					@Override
+					public void handleError(ClientHttpResponse response) throws IOException {
+						// An invalid token is a bad request, with the error in the body
+						if (response.getStatusCode() != HttpStatus.BAD_REQUEST) {
+							super.handleError(response);
+						}
+					}
+				});
+				restTemplate = template;
+			}
+			return restTemplate;
+		}
+	}
+
+	/**
+	 * Keeps the HttpComponents classes out of the way unless they are on the classpath.
+	 */
+	private static class PooledRequestFactory {
+
+		public static ClientHttpRequestFactory create(int maxConnections) {
+			PoolingClientConnectionManager connectionManager = new PoolingClientConnectionManager();
+			connectionManager.setMaxTotal(maxConnections);
+			// There is only one route (to the authorization server)
+			connectionManager.setDefaultMaxPerRoute(maxConnections);
+			HttpClient client = new DefaultHttpClient(connectionManager);
+			return new HttpComponentsClientHttpRequestFactory(client);
+		}
+
+	}
+
+}
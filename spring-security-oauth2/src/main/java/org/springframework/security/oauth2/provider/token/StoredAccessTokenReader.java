@@ -0,0 +1,38 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.provider.token;
+
+/**
+ * Optional interface for a {@link TokenStore} that can read an access token and its authentication in one operation
+ * (e.g. a single query), instead of the two separate calls to {@link TokenStore#readAccessToken(String)} and
+ * {@link TokenStore#readAuthentication(String)}. Used by {@link DefaultTokenServices} to load an authentication when
+ * the store supports it.
+ * 
+ * @author Dave Syer
+ * 
+ */
+public interface StoredAccessTokenReader {
+
+	/**
+	 * Read an access token together with its authentication.
+	 * 
+	 * @param tokenValue the token value
+	 * @return the token and authentication, or null if there is no such token
+	 */
+	StoredAccessToken readStoredAccessToken(String tokenValue);
+
+}
@@ -0,0 +1,34 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.provider.token;
+
+/**
+ * Strategy interface for extracting the key that a token value is stored under (e.g. a hash, so that the value
+ * itself is not kept in the database).
+ * 
+ * @author Dave Syer
+ * 
+ */
+public interface TokenKeyGenerator {
+
+	/**
+	 * @param value a token value
+	 * @return a unique key identifying the value (or null if the value is null)
+	 */
+	String extractKey(String value);
+
+}
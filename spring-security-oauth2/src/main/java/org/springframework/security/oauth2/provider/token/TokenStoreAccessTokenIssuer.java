@@ -0,0 +1,71 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.provider.token;
+
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+
+/**
+ * The find-or-create sequence of an {@link AccessTokenIssuer} for a {@link TokenStore} that cannot do it atomically:
+ * read the existing token, remove it (and its refresh token) if it has expired, then store a new one. Concurrent
+ * requests for the same authentication can each create a token, and the last one stored wins.
+ * 
+ * @author Dave Syer
+ * 
+ */
+class TokenStoreAccessTokenIssuer implements AccessTokenIssuer {
+
+	private final TokenStore tokenStore;
+
+	/**
+	 * @param tokenStore the token store to read and store tokens with
+	 */
+	public TokenStoreAccessTokenIssuer(TokenStore tokenStore) {
+		this.tokenStore = tokenStore;
+	}
+
+	public OAuth2AccessToken issueAccessToken(OAuth2Authentication authentication, AccessTokenFactory factory) {
+
+		OAuth2AccessToken existingAccessToken = tokenStore.getAccessToken(authentication);
+		OAuth2RefreshToken refreshToken = null;
+		if (existingAccessToken != null) {
+			if (existingAccessToken.isExpired()) {
+				if (existingAccessToken.getRefreshToken() != null) {
+					refreshToken = existingAccessToken.getRefreshToken();
+					// The token store could remove the refresh token when the access token is removed, but we want to
+					// be sure...
+					tokenStore.removeRefreshToken(refreshToken);
+				}
+				tokenStore.removeAccessToken(existingAccessToken);
+			}
+			else {
+				return existingAccessToken;
+			}
+		}
+
+		OAuth2AccessToken accessToken = factory.createAccessToken(authentication, refreshToken);
+		tokenStore.storeAccessToken(accessToken, authentication);
+		refreshToken = accessToken.getRefreshToken();
+		if (refreshToken != null) {
+			tokenStore.storeRefreshToken(refreshToken, authentication);
+		}
+		return accessToken;
+
+	}
+
+}
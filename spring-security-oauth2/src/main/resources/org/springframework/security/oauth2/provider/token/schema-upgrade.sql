@@ -0,0 +1,42 @@
+-- Upgrades the JdbcTokenStore tables from the original schema (no keys, indexes or expiry column) to the one in
+-- schema.sql. Existing tokens have no expires_at, so they are never purged by JdbcTokenStore.purgeExpiredTokens().
+-- They cannot be told apart from tokens that do not expire (which are also stored without an expires_at), so they
+-- are left in place, and each one is replaced when its client gets a new token for the same authentication.
+
+-- Adding the primary keys fails if a token was stored twice. The copies have the same token_id and contents, so
+-- keep one of each. These statements compare the BLOB columns, so on databases that cannot do that (e.g. Oracle) use
+-- "delete from oauth_access_token where rowid not in (select min(rowid) from oauth_access_token group by token_id)"
+-- instead (and the same for oauth_refresh_token).
+create table oauth_access_token_copy as
+  select distinct * from oauth_access_token where token_id in
+    (select token_id from oauth_access_token group by token_id having count(*) > 1);
+delete from oauth_access_token where token_id in (select token_id from oauth_access_token_copy);
+insert into oauth_access_token select * from oauth_access_token_copy;
+drop table oauth_access_token_copy;
+
+create table oauth_refresh_token_copy as
+  select distinct * from oauth_refresh_token where token_id in
+    (select token_id from oauth_refresh_token group by token_id having count(*) > 1);
+delete from oauth_refresh_token where token_id in (select token_id from oauth_refresh_token_copy);
+insert into oauth_refresh_token select * from oauth_refresh_token_copy;
+drop table oauth_refresh_token_copy;
+
+-- The unique index on authentication_id fails if there is more than one token for the same authentication, so keep
+-- only one of them (the others stop working, and their clients have to get a new token). MySQL does not allow the
+-- table being deleted from in the subquery, so select from "(select * from oauth_access_token) t" there.
+delete from oauth_access_token where token_id > (select min(t.token_id) from oauth_access_token t
+  where t.authentication_id = oauth_access_token.authentication_id);
+
+alter table oauth_access_token add column expires_at TIMESTAMP;
+alter table oauth_access_token add primary key (token_id);
+
+create unique index oauth_access_token_authentication_id on oauth_access_token (authentication_id);
+create index oauth_access_token_user_name on oauth_access_token (user_name);
+create index oauth_access_token_client_id on oauth_access_token (client_id);
+create index oauth_access_token_refresh_token on oauth_access_token (refresh_token);
+create index oauth_access_token_expires_at on oauth_access_token (expires_at);
+
+alter table oauth_refresh_token add column expires_at TIMESTAMP;
+alter table oauth_refresh_token add primary key (token_id);
+
+create index oauth_refresh_token_expires_at on oauth_refresh_token (expires_at);
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.Serializable;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.core.userdetails.User;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.RequestTokenFactory;
+
+/**
+ * @author Dave Syer
+ * 
+ */
+public class TestCompactTokenSerializer {
+
+	private CompactTokenSerializer serializer = new CompactTokenSerializer();
+
+	@Test
+	public void testAccessTokenRoundTrip() {
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("FOO");
+		token.setExpiration(new Date(System.currentTimeMillis() + 100000));
+		token.setRefreshToken(new DefaultExpiringOAuth2RefreshToken("BAR", new Date()));
+		token.setScope(Collections.singleton("read"));
+		Map<String, Object> info = new LinkedHashMap<String, Object>();
+		info.put("foo", "bar");
+		info.put("count", 3);
+		token.setAdditionalInformation(info);
+		OAuth2AccessToken result = serializer.deserialize(serializer.serialize(token));
+		assertEquals(token, result);
+		assertEquals(token.getExpiration(), result.getExpiration());
+		assertEquals(token.getRefreshToken(), result.getRefreshToken());
+		assertEquals(token.getScope(), result.getScope());
+		assertEquals(token.getTokenType(), result.getTokenType());
+		assertEquals(info, result.getAdditionalInformation());
+	}
+
+	@Test
+	public void testAuthenticationRoundTrip() {
+		OAuth2Authentication authentication = createAuthentication();
+		OAuth2Authentication result = serializer.deserialize(serializer.serialize(authentication));
+		assertEquals(authentication, result);
+		assertEquals(authentication.getOAuth2Request(), result.getOAuth2Request());
+		assertEquals(authentication.getUserAuthentication(), result.getUserAuthentication());
+	}
+
+	@Test
+	public void testClientOnlyAuthenticationRoundTrip() {
+		OAuth2Request request = RequestTokenFactory.createOAuth2Request(null, "id", null, false, null, null, null, null,
+				null);
+		OAuth2Authentication authentication = new OAuth2Authentication(request, null);
+		OAuth2Authentication result = serializer.deserialize(serializer.serialize(authentication));
+		assertEquals(authentication, result);
+		assertTrue(result.isClientOnly());
+	}
+
+	@Test
+	public void testCompactFormIsSmaller() {
+		OAuth2Authentication authentication = createAuthentication();
+		assertTrue(serializer.serialize(authentication).length < SerializationUtils.serialize(authentication).length);
+	}
+
+	@Test
+	public void testReadLegacySerializedData() {
+		OAuth2Authentication authentication = createAuthentication();
+		OAuth2Authentication result = serializer.deserialize(new DefaultTokenSerializer().serialize(authentication));
+		assertEquals(authentication, result);
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnrecognizedFormat() {
+		serializer.deserialize("FOO".getBytes());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testUnsupportedVersion() {
+		byte[] bytes = serializer.serialize("FOO");
+		bytes[2] = (byte) (CompactTokenSerializer.VERSION + 1);
+		serializer.deserialize(bytes);
+	}
+
+	private OAuth2Authentication createAuthentication() {
+		Map<String, String> parameters = new HashMap<String, String>();
+		parameters.put("grant_type", "password");
+		parameters.put("username", "marissa");
+		Map<String, Serializable> extensions = new HashMap<String, Serializable>();
+		extensions.put("foo", "bar");
+		OAuth2Request request = RequestTokenFactory.createOAuth2Request(parameters, "id",
+				AuthorityUtils.commaSeparatedStringToAuthorityList("ROLE_CLIENT"), true,
+				Collections.singleton("read"), Collections.singleton("resource"), "http://anywhere",
+				Collections.singleton("code"), extensions);
+		User user = new User("marissa", "N/A", AuthorityUtils.commaSeparatedStringToAuthorityList("ROLE_USER"));
+		UsernamePasswordAuthenticationToken userAuthentication = new UsernamePasswordAuthenticationToken(user, null,
+				user.getAuthorities());
+		return new OAuth2Authentication(request, userAuthentication);
+	}
+
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.commons.codec.binary.Base64;
+import org.junit.Test;
+
+/**
+ * @author Dave Syer
+ * 
+ */
+public class TestDefaultTokenValueGenerator {
+
+	@Test
+	public void testDefaultEntropy() {
+		String value = new DefaultTokenValueGenerator().generate();
+		assertEquals(43, value.length());
+		assertTrue("Not URL safe: " + value, value.matches("[A-Za-z0-9_-]+"));
+	}
+
+	@Test
+	public void testValuesAreBase64OfEntropy() {
+		for (int entropy = 1; entropy < 10; entropy++) {
+			String value = new DefaultTokenValueGenerator(entropy).generate();
+			String encoded = value.replace('-', '+').replace('_', '/');
+			while (encoded.length() % 4 != 0) {
+				encoded += "=";
+			}
+			byte[] bytes = Base64.decodeBase64(encoded.getBytes());
+			assertEquals(entropy, bytes.length);
+			assertEquals(encoded, new String(Base64.encodeBase64(bytes)));
+		}
+	}
+
+	@Test
+	public void testValuesAreUnique() {
+		DefaultTokenValueGenerator generator = new DefaultTokenValueGenerator(16);
+		Set<String> values = new HashSet<String>();
+		for (int i = 0; i < 1000; i++) {
+			assertTrue(values.add(generator.generate()));
+		}
+	}
+
+	@Test
+	public void testCustomAlgorithm() {
+		DefaultTokenValueGenerator generator = new DefaultTokenValueGenerator();
+		generator.setAlgorithm("SHA1PRNG");
+		assertEquals(43, generator.generate().length());
+	}
+
+	@Test(expected = IllegalStateException.class)
+	public void testUnknownAlgorithm() {
+		DefaultTokenValueGenerator generator = new DefaultTokenValueGenerator();
+		generator.setAlgorithm("FOO");
+		generator.generate();
+	}
+
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author Dave Syer
+ * 
+ */
+public class TestExpiringCache {
+
+	private ExpiringCache<String, String> cache = new ExpiringCache<String, String>(4, 1);
+
+	@Test
+	public void testPutAndGet() {
+		assertTrue(cache.put("foo", "bar", System.currentTimeMillis() + 10000));
+		assertEquals("bar", cache.get("foo"));
+		assertNull(cache.get("spam"));
+		assertEquals(1, cache.getHitCount());
+		assertEquals(1, cache.getMissCount());
+	}
+
+	@Test
+	public void testExpiredEntryNotAdded() {
+		assertFalse(cache.put("foo", "bar", System.currentTimeMillis() - 1));
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testExpiredEntryEvicted() throws Exception {
+		cache.put("foo", "bar", System.currentTimeMillis() + 50);
+		Thread.sleep(100);
+		assertNull(cache.get("foo"));
+		assertEquals(1, cache.getEvictionCount());
+	}
+
+	@Test
+	public void testPurgeExpired() throws Exception {
+		cache.put("foo", "bar", System.currentTimeMillis() + 50);
+		cache.put("spam", "bucket", System.currentTimeMillis() + 10000);
+		Thread.sleep(100);
+		assertEquals(1, cache.purgeExpired());
+		assertEquals(1, cache.size());
+	}
+
+	@Test
+	public void testLeastRecentlyUsedEvicted() {
+		long expiry = System.currentTimeMillis() + 10000;
+		for (int i = 0; i < 4; i++) {
+			cache.put("foo" + i, "bar", expiry);
+		}
+		cache.get("foo0");
+		cache.put("foo4", "bar", expiry);
+		assertEquals(4, cache.size());
+		assertEquals("bar", cache.get("foo0"));
+		assertNull(cache.get("foo1"));
+		assertEquals(1, cache.getEvictionCount());
+	}
+
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+/**
+ * @author Dave Syer
+ * 
+ */
+public class TestRandomValueStringGenerator {
+
+	@Test
+	public void testDefaultLength() {
+		String value = new RandomValueStringGenerator().generate();
+		assertEquals(6, value.length());
+		assertTrue(value.matches("[A-Za-z0-9]+"));
+	}
+
+	@Test
+	public void testNoModuloBias() {
+		RandomValueStringGenerator generator = new RandomValueStringGenerator(1000);
+		generator.setRandom(new Random(0) {
+			@Override
+			public void nextBytes(byte[] bytes) {
+				// Every byte value in turn, so without rejection the first 8 characters would come up more often
+				for (int i = 0; i < bytes.length; i++) {
+					bytes[i] = (byte) ((position++) % 256);
+				}
+			}
+
+			private int position;
+		});
+		int[] counts = new int[128];
+		for (int i = 0; i < 62; i++) {
+			for (char c : generator.generate().toCharArray()) {
+				counts[c]++;
+			}
+		}
+		assertEquals(counts['1'], counts['z']);
+		assertEquals(counts['1'], counts['A']);
+	}
+
+}
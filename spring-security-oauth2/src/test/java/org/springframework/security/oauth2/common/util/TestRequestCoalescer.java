@@ -0,0 +1,159 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.common.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @author Dave Syer
+ * 
+ */
+public class TestRequestCoalescer {
+
+	private RequestCoalescer<String, String> coalescer = new RequestCoalescer<String, String>();
+
+	private ExecutorService executor = Executors.newFixedThreadPool(2);
+
+	private AtomicInteger count = new AtomicInteger();
+
+	@After
+	public void close() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	public void testSequentialCallsAreNotCoalesced() {
+		assertEquals("1", coalescer.execute("foo", new Counter(null)));
+		assertEquals("2", coalescer.execute("foo", new Counter(null)));
+		assertEquals(0, coalescer.getSize());
+	}
+
+	@Test
+	public void testConcurrentCallsAreCoalesced() throws Exception {
+		CountDownLatch latch = new CountDownLatch(1);
+		Future<String> first = executor.submit(new Caller("foo", new Counter(latch)));
+		waitForCalls(1);
+		Future<String> second = executor.submit(new Caller("foo", new Counter(null)));
+		waitForWaitingThreads(executor, 2);
+		latch.countDown();
+		assertEquals("1", first.get());
+		assertEquals("1", second.get());
+		assertEquals(1, count.get());
+		assertEquals(0, coalescer.getSize());
+	}
+
+	@Test
+	public void testDifferentKeysAreNotCoalesced() throws Exception {
+		CountDownLatch latch = new CountDownLatch(1);
+		Future<String> first = executor.submit(new Caller("foo", new Counter(latch)));
+		waitForCalls(1);
+		assertEquals("2", coalescer.execute("bar", new Counter(null)));
+		latch.countDown();
+		assertEquals("1", first.get());
+	}
+
+	@Test
+	public void testExceptionIsSharedAndNotRemembered() throws Exception {
+		final IllegalStateException error = new IllegalStateException("Planned");
+		try {
+			coalescer.execute("foo", new Callable<String>() {
+				public String call() throws Exception {
+					throw error;
+				}
+			});
+		}
+		catch (IllegalStateException e) {
+			assertSame(error, e);
+		}
+		assertEquals("1", coalescer.execute("foo", new Counter(null)));
+	}
+
+	private void waitForCalls(int size) throws InterruptedException {
+		while (coalescer.getSize() < size) {
+			Thread.sleep(10);
+		}
+	}
+
+	private void waitForWaitingThreads(ExecutorService executor, int expected) throws InterruptedException {
+		// Both pool threads are parked: one in the latch and one waiting for its result
+		long timeout = System.currentTimeMillis() + 5000;
+		while (System.currentTimeMillis() < timeout) {
+			int waiting = 0;
+			for (Thread thread : Thread.getAllStackTraces().keySet()) {
+				if (thread.getName().startsWith("pool-") && thread.getState() == Thread.State.WAITING) {
+					for (StackTraceElement element : thread.getStackTrace()) {
+						if (element.getClassName().equals(RequestCoalescer.class.getName())) {
+							waiting++;
+							break;
+						}
+					}
+				}
+			}
+			if (waiting >= expected) {
+				return;
+			}
+			Thread.sleep(10);
+		}
+	}
+
+	private class Caller implements Callable<String> {
+
+		private final String key;
+
+		private final Callable<String> callback;
+
+		public Caller(String key, Callable<String> callback) {
+			this.key = key;
+			this.callback = callback;
+		}
+
+		public String call() throws Exception {
+			return coalescer.execute(key, callback);
+		}
+
+	}
+
+	private class Counter implements Callable<String> {
+
+		private final CountDownLatch latch;
+
+		public Counter(CountDownLatch latch) {
+			this.latch = latch;
+		}
+
+		public String call() throws Exception {
+			String result = "" + count.incrementAndGet();
+			if (latch != null) {
+				latch.await();
+			}
+			return result;
+		}
+
+	}
+
+}
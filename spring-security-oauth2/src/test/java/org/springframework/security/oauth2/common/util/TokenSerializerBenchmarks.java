@@ -0,0 +1,116 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.common.util;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.RequestTokenFactory;
+
+/**
+ * Compares the compact token format with plain Java serialization (the format used by the JDBC stores by default).
+ * Run the main method to see the results.
+ * 
+ * @author Dave Syer
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class TokenSerializerBenchmarks {
+
+	@Param({ "java", "compact" })
+	private String format;
+
+	private TokenSerializer serializer;
+
+	private DefaultOAuth2AccessToken token;
+
+	private OAuth2Authentication authentication;
+
+	private byte[] serializedToken;
+
+	private byte[] serializedAuthentication;
+
+	@Setup
+	public void setUp() {
+		serializer = "compact".equals(format) ? new CompactTokenSerializer() : new DefaultTokenSerializer();
+		token = new DefaultOAuth2AccessToken("FOO");
+		token.setExpiration(new Date(System.currentTimeMillis() + 100000));
+		token.setRefreshToken(new DefaultExpiringOAuth2RefreshToken("BAR", new Date()));
+		token.setScope(Collections.singleton("read"));
+		Map<String, String> parameters = new HashMap<String, String>();
+		parameters.put("grant_type", "password");
+		parameters.put("username", "marissa");
+		authentication = new OAuth2Authentication(RequestTokenFactory.createOAuth2Request(parameters, "id",
+				AuthorityUtils.commaSeparatedStringToAuthorityList("ROLE_CLIENT"), true,
+				Collections.singleton("read"), Collections.singleton("resource"), null, null, null),
+				new UsernamePasswordAuthenticationToken("marissa", null,
+						AuthorityUtils.commaSeparatedStringToAuthorityList("ROLE_USER")));
+		serializedToken = serializer.serialize(token);
+		serializedAuthentication = serializer.serialize(authentication);
+	}
+
+	@Benchmark
+	public byte[] serializeAccessToken() {
+		return serializer.serialize(token);
+	}
+
+	@Benchmark
+	public Object deserializeAccessToken() {
+		return serializer.deserialize(serializedToken);
+	}
+
+	@Benchmark
+	public byte[] serializeAuthentication() {
+		return serializer.serialize(authentication);
+	}
+
+	@Benchmark
+	public Object deserializeAuthentication() {
+		return serializer.deserialize(serializedAuthentication);
+	}
+
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder().include(TokenSerializerBenchmarks.class.getSimpleName()).build()).run();
+	}
+
+}
@@ -0,0 +1,88 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.common.util;
+
+import java.security.SecureRandom;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Compares token value generators under contention (64 threads): <code>UUID.randomUUID()</code> and a
+ * {@link RandomValueStringGenerator} with one shared <code>SecureRandom</code> (the way token values and
+ * authorization codes used to be generated) against the per-thread generators. Run the main method to see the
+ * results.
+ *
+ * @author Dave Syer
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@Threads(64)
+public class TokenValueGeneratorBenchmarks {
+
+	private RandomValueStringGenerator shared = new RandomValueStringGenerator();
+
+	private RandomValueStringGenerator perThread = new RandomValueStringGenerator();
+
+	private DefaultTokenValueGenerator generator = new DefaultTokenValueGenerator(16);
+
+	public TokenValueGeneratorBenchmarks() {
+		shared.setRandom(new SecureRandom());
+	}
+
+	@Benchmark
+	public String randomUuid() {
+		return UUID.randomUUID().toString();
+	}
+
+	@Benchmark
+	public String defaultGenerator() {
+		return generator.generate();
+	}
+
+	@Benchmark
+	public String sharedCodeGenerator() {
+		return shared.generate();
+	}
+
+	@Benchmark
+	public String perThreadCodeGenerator() {
+		return perThread.generate();
+	}
+
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder().include(TokenValueGeneratorBenchmarks.class.getSimpleName()).build()).run();
+	}
+
+}
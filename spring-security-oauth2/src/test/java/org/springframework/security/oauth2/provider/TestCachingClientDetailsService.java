@@ -0,0 +1,146 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.provider;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
+import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class TestCachingClientDetailsService {
+
+	private JdbcClientDetailsService delegate;
+
+	private CachingClientDetailsService service;
+
+	private EmbeddedDatabase db;
+
+	@Before
+	public void setUp() throws Exception {
+		db = new EmbeddedDatabaseBuilder().addDefaultScripts().build();
+		delegate = new JdbcClientDetailsService(db);
+		delegate.addClientDetails(new BaseClientDetails("foo", "", "read", "password", "ROLE_CLIENT"));
+		service = new CachingClientDetailsService(delegate);
+	}
+
+	@After
+	public void tearDown() throws Exception {
+		db.shutdown();
+	}
+
+	@Test
+	public void testLoadClientIsCached() {
+		ClientDetails client = service.loadClientByClientId("foo");
+		assertSame(client, service.loadClientByClientId("foo"));
+		assertEquals(1, service.getHitCount());
+		assertEquals(1, service.getMissCount());
+	}
+
+	@Test
+	public void testUnknownClientNotCached() {
+		try {
+			service.loadClientByClientId("bar");
+		}
+		catch (NoSuchClientException e) {
+			// expected
+		}
+		delegate.addClientDetails(new BaseClientDetails("bar", "", "read", "password", "ROLE_CLIENT"));
+		assertEquals("bar", service.loadClientByClientId("bar").getClientId());
+	}
+
+	@Test
+	public void testUpdateClientDetailsInvalidates() {
+		service.loadClientByClientId("foo");
+		service.updateClientDetails(new BaseClientDetails("foo", "", "read,write", "password", "ROLE_CLIENT"));
+		assertEquals(2, service.loadClientByClientId("foo").getScope().size());
+	}
+
+	@Test
+	public void testUpdateClientSecretInvalidates() {
+		ClientDetails client = service.loadClientByClientId("foo");
+		service.updateClientSecret("foo", "secret");
+		assertNotSame(client, service.loadClientByClientId("foo"));
+	}
+
+	@Test(expected = NoSuchClientException.class)
+	public void testRemoveClientDetailsInvalidates() {
+		service.loadClientByClientId("foo");
+		service.removeClientDetails("foo");
+		service.loadClientByClientId("foo");
+	}
+
+	@Test
+	public void testTimeToLive() throws Exception {
+		service.setTimeToLiveSeconds(1);
+		ClientDetails client = service.loadClientByClientId("foo");
+		Thread.sleep(1100);
+		assertNotSame(client, service.loadClientByClientId("foo"));
+	}
+
+	@Test
+	public void testMaximumSize() {
+		service = new CachingClientDetailsService(delegate, 1);
+		delegate.addClientDetails(new BaseClientDetails("bar", "", "read", "password", "ROLE_CLIENT"));
+		service.loadClientByClientId("foo");
+		service.loadClientByClientId("bar");
+		assertEquals(1, service.getCacheSize());
+	}
+
+	@Test
+	public void testPreload() throws Exception {
+		delegate.addClientDetails(new BaseClientDetails("bar", "", "read", "password", "ROLE_CLIENT"));
+		service.setPreload(true);
+		service.afterPropertiesSet();
+		assertEquals(2, service.getCacheSize());
+		service.loadClientByClientId("foo");
+		service.loadClientByClientId("bar");
+		assertEquals(2, service.getHitCount());
+	}
+
+	@Test
+	public void testPreloadWithMock() throws Exception {
+		JdbcClientDetailsService mock = mock(JdbcClientDetailsService.class);
+		BaseClientDetails client = new BaseClientDetails("foo", "", "read", "password", "ROLE_CLIENT");
+		when(mock.listClientDetails()).thenReturn(Arrays.<ClientDetails> asList(client));
+		service = new CachingClientDetailsService(mock);
+		assertEquals(1, service.preload());
+		assertSame(client, service.loadClientByClientId("foo"));
+		verify(mock, times(0)).loadClientByClientId("foo");
+	}
+
+	@Test(expected = UnsupportedOperationException.class)
+	public void testRegistrationNotSupported() {
+		service = new CachingClientDetailsService(new InMemoryClientDetailsService());
+		service.removeClientDetails("foo");
+	}
+
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.provider;
+
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class TestGrantContext {
+
+	private ClientDetailsService clientDetailsService = mock(ClientDetailsService.class);
+
+	private BaseClientDetails foo = new BaseClientDetails("foo", "", "read", "password", "ROLE_CLIENT");
+
+	private BaseClientDetails bar = new BaseClientDetails("bar", "", "read", "password", "ROLE_CLIENT");
+
+	@After
+	public void clear() {
+		GrantContextHolder.clearContext();
+	}
+
+	@Test
+	public void testNoContextLoadsEveryTime() {
+		when(clientDetailsService.loadClientByClientId("foo")).thenReturn(foo);
+		GrantContextHolder.loadClientByClientId(clientDetailsService, "foo");
+		GrantContextHolder.loadClientByClientId(clientDetailsService, "foo");
+		verify(clientDetailsService, times(2)).loadClientByClientId("foo");
+	}
+
+	@Test
+	public void testContextLoadsOnce() {
+		when(clientDetailsService.loadClientByClientId("foo")).thenReturn(foo);
+		GrantContextHolder.setContext(new GrantContext());
+		assertSame(foo, GrantContextHolder.loadClientByClientId(clientDetailsService, "foo"));
+		assertSame(foo, GrantContextHolder.loadClientByClientId(clientDetailsService, "foo"));
+		assertSame(foo, GrantContextHolder.getContext().getClientDetails());
+		verify(clientDetailsService, times(1)).loadClientByClientId("foo");
+	}
+
+	@Test
+	public void testContextDoesNotConfuseClients() {
+		when(clientDetailsService.loadClientByClientId("foo")).thenReturn(foo);
+		when(clientDetailsService.loadClientByClientId("bar")).thenReturn(bar);
+		GrantContextHolder.setContext(new GrantContext());
+		assertSame(foo, GrantContextHolder.loadClientByClientId(clientDetailsService, "foo"));
+		assertSame(bar, GrantContextHolder.loadClientByClientId(clientDetailsService, "bar"));
+		assertSame(foo, GrantContextHolder.getContext().getClientDetails());
+	}
+
+	@Test
+	public void testClearContext() {
+		GrantContextHolder.setContext(new GrantContext());
+		GrantContextHolder.setContext(null);
+		assertNull(GrantContextHolder.getContext());
+	}
+
+}
@@ -15,13 +15,16 @@
 package org.springframework.security.oauth2.provider.authentication;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
 
 import org.junit.Test;
 import org.mockito.Mockito;
 import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
 import org.springframework.security.core.Authentication;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.RequestTokenFactory;
+import org.springframework.security.oauth2.provider.token.RejectedTokenCache;
 import org.springframework.security.oauth2.provider.token.ResourceServerTokenServices;
 import org.springframework.security.web.authentication.preauth.PreAuthenticatedAuthenticationToken;
 
@@ -53,4 +56,39 @@ public class TestOAuth2AuthenticationManager {
 		assertEquals("BAR", result.getDetails());
 	}
 
+	@Test
+	public void testRejectedTokenCached() throws Exception {
+		RejectedTokenCache cache = new RejectedTokenCache();
+		manager.setRejectedTokenCache(cache);
+		Mockito.when(tokenServices.loadAuthentication("FOO")).thenThrow(new InvalidTokenException("Invalid token"));
+		for (int i = 0; i < 3; i++) {
+			try {
+				manager.authenticate(new PreAuthenticatedAuthenticationToken("FOO", ""));
+				fail("Expected InvalidTokenException");
+			}
+			catch (InvalidTokenException e) {
+				// expected
+			}
+		}
+		Mockito.verify(tokenServices, Mockito.times(1)).loadAuthentication("FOO");
+		assertEquals(2, cache.getHitCount());
+	}
+
+	@Test
+	public void testRejectedTokenAcceptedAfterInvalidation() throws Exception {
+		RejectedTokenCache cache = new RejectedTokenCache();
+		manager.setRejectedTokenCache(cache);
+		Mockito.when(tokenServices.loadAuthentication("FOO")).thenReturn(null).thenReturn(authentication);
+		try {
+			manager.authenticate(new PreAuthenticatedAuthenticationToken("FOO", ""));
+			fail("Expected InvalidTokenException");
+		}
+		catch (InvalidTokenException e) {
+			// expected
+		}
+		assertEquals(1, cache.getSize());
+		cache.invalidate("FOO");
+		assertEquals(authentication, manager.authenticate(new PreAuthenticatedAuthenticationToken("FOO", "")));
+	}
+
 }
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.provider.endpoint;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.http.ResponseEntity;
+import org.springframework.security.authentication.InsufficientAuthenticationException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.RequestTokenFactory;
+import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
+import org.springframework.security.oauth2.provider.token.InMemoryTokenStore;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class TestCheckTokenEndpoint {
+
+	private InMemoryTokenStore tokenStore = new InMemoryTokenStore();
+
+	private CheckTokenEndpoint endpoint;
+
+	private OAuth2Authentication authentication = new OAuth2Authentication(RequestTokenFactory.createOAuth2Request(
+			null, "client", null, true, Collections.singleton("read"), Collections.singleton("resource"), null, null,
+			null), null);
+
+	private Authentication client = new UsernamePasswordAuthenticationToken("client", null,
+			AuthorityUtils.commaSeparatedStringToAuthorityList("ROLE_CLIENT"));
+
+	@Before
+	public void init() {
+		DefaultTokenServices tokenServices = new DefaultTokenServices();
+		tokenServices.setTokenStore(tokenStore);
+		endpoint = new CheckTokenEndpoint(tokenServices);
+	}
+
+	@Test
+	public void testCheckToken() {
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("FOO");
+		token.setScope(Collections.singleton("read"));
+		token.setExpiration(new Date(System.currentTimeMillis() + 100000));
+		tokenStore.storeAccessToken(token, authentication);
+		Map<String, ?> result = endpoint.checkToken(client, "FOO");
+		assertEquals("client", result.get("client_id"));
+		assertEquals(Collections.singleton("read"), result.get("scope"));
+		assertEquals(Collections.singleton("resource"), result.get("aud"));
+		assertEquals(token.getExpiration().getTime() / 1000, result.get("exp"));
+	}
+
+	@Test(expected = InvalidTokenException.class)
+	public void testUnknownToken() {
+		endpoint.checkToken(client, "FOO");
+	}
+
+	@Test(expected = InvalidTokenException.class)
+	public void testExpiredToken() {
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("FOO");
+		token.setExpiration(new Date(System.currentTimeMillis() - 1000));
+		tokenStore.storeAccessToken(token, authentication);
+		endpoint.checkToken(client, "FOO");
+	}
+
+	@Test(expected = InsufficientAuthenticationException.class)
+	public void testClientAuthenticationRequired() {
+		endpoint.checkToken(new UsernamePasswordAuthenticationToken("client", null), "FOO");
+	}
+
+	@Test
+	public void testInvalidTokenIsBadRequest() throws Exception {
+		ResponseEntity<OAuth2Exception> response = endpoint.handleException(new InvalidTokenException("FOO"));
+		assertEquals(400, response.getStatusCode().value());
+		assertEquals("invalid_token", response.getBody().getOAuth2ErrorCode());
+	}
+
+}
@@ -0,0 +1,95 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.provider.endpoint;
+
+import static org.junit.Assert.assertEquals;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.Map;
+
+import org.junit.Test;
+import org.springframework.security.authentication.InsufficientAuthenticationException;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidRequestException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.RequestTokenFactory;
+import org.springframework.security.oauth2.provider.token.InMemoryTokenStore;
+import org.springframework.security.oauth2.provider.token.TokenStore;
+
+/**
+ * @author Dave Syer
+ * 
+ */
+public class TestCheckTokensEndpoint {
+
+	private InMemoryTokenStore tokenStore = new InMemoryTokenStore();
+
+	private CheckTokensEndpoint endpoint = new CheckTokensEndpoint(tokenStore);
+
+	private Authentication client = new UsernamePasswordAuthenticationToken("client", null,
+			AuthorityUtils.commaSeparatedStringToAuthorityList("ROLE_CLIENT"));
+
+	@Test
+	public void testCheckTokens() {
+		storeAccessToken("FOO", 100000);
+		storeAccessToken("BAR", -1000);
+		Map<String, ?> result = endpoint.checkTokens(client, Arrays.asList("FOO", "BAR", "SPAM", "FOO"));
+		assertEquals(Arrays.asList("FOO", "BAR", "SPAM"), Arrays.asList(result.keySet().toArray()));
+		assertEquals("client", ((Map<?, ?>) result.get("FOO")).get("client_id"));
+		assertEquals(Collections.singleton("read"), ((Map<?, ?>) result.get("FOO")).get("scope"));
+		assertEquals(Collections.singletonMap("error", "invalid_token"), result.get("BAR"));
+		assertEquals(Collections.singletonMap("error", "invalid_token"), result.get("SPAM"));
+	}
+
+	@Test
+	public void testCheckTokensWithoutBatchReader() {
+		TokenStore store = mock(TokenStore.class);
+		endpoint = new CheckTokensEndpoint(store);
+		Map<String, ?> result = endpoint.checkTokens(client, Arrays.asList("FOO"));
+		assertEquals(Collections.singletonMap("error", "invalid_token"), result.get("FOO"));
+		verify(store).readAccessToken("FOO");
+	}
+
+	@Test(expected = InvalidRequestException.class)
+	public void testTooManyTokens() {
+		endpoint.setMaxTokens(1);
+		endpoint.checkTokens(client, Arrays.asList("FOO", "BAR"));
+	}
+
+	@Test(expected = InsufficientAuthenticationException.class)
+	public void testClientAuthenticationRequired() {
+		endpoint.checkTokens(new UsernamePasswordAuthenticationToken("client", null), Arrays.asList("FOO"));
+	}
+
+	private void storeAccessToken(String value, long expiresInMillis) {
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(value);
+		token.setScope(Collections.singleton("read"));
+		token.setExpiration(new Date(System.currentTimeMillis() + expiresInMillis));
+		// A different user for each token, so that they don't replace each other
+		tokenStore.storeAccessToken(token, new OAuth2Authentication(RequestTokenFactory.createOAuth2Request(null,
+				"client", null, true, Collections.singleton("read"), null, null, null, null),
+				new UsernamePasswordAuthenticationToken(value, null, AuthorityUtils.NO_AUTHORITIES)));
+	}
+
+}
@@ -18,7 +18,11 @@ package org.springframework.security.oauth2.provider.endpoint;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import java.util.Collections;
@@ -40,9 +44,16 @@ import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.common.util.OAuth2Utils;
 import org.springframework.security.oauth2.provider.BaseClientDetails;
 import org.springframework.security.oauth2.provider.ClientDetailsService;
+import org.springframework.security.oauth2.provider.DefaultOAuth2RequestFactory;
+import org.springframework.security.oauth2.provider.GrantContextHolder;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.OAuth2RequestFactory;
 import org.springframework.security.oauth2.provider.TokenGranter;
 import org.springframework.security.oauth2.provider.TokenRequest;
+import org.springframework.security.oauth2.provider.client.ClientCredentialsTokenGranter;
+import org.springframework.security.oauth2.provider.token.DefaultTokenServices;
+import org.springframework.security.oauth2.provider.token.InMemoryTokenStore;
+import org.springframework.security.oauth2.provider.token.TokenEnhancer;
 
 /**
  * @author Dave Syer
@@ -133,4 +144,43 @@ public class TestTokenEndpoint {
 		assertTrue("Scope of token request not cleared", captor2.getValue().getScope().isEmpty());
 	}
 
+	@Test
+	public void testClientResolvedOncePerGrant() {
+
+		String clientId = "client";
+		final BaseClientDetails clientDetails = new BaseClientDetails(clientId, "", "read", "client_credentials",
+				"ROLE_CLIENT");
+		clientDetails.setAccessTokenValiditySeconds(100);
+		when(clientDetailsService.loadClientByClientId(clientId)).thenReturn(clientDetails);
+
+		DefaultTokenServices tokenServices = new DefaultTokenServices();
+		tokenServices.setTokenStore(new InMemoryTokenStore());
+		tokenServices.setSupportRefreshToken(true);
+		tokenServices.setClientDetailsService(clientDetailsService);
+		tokenServices.setTokenEnhancer(new TokenEnhancer() {
+			public OAuth2AccessToken enhance(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+				// The client is available to enhancers as well
+				assertSame(clientDetails, GrantContextHolder.getContext().getClientDetails());
+				return accessToken;
+			}
+		});
+		DefaultOAuth2RequestFactory requestFactory = new DefaultOAuth2RequestFactory(clientDetailsService);
+
+		TokenEndpoint endpoint = new TokenEndpoint();
+		endpoint.setTokenGranter(new ClientCredentialsTokenGranter(tokenServices, clientDetailsService, requestFactory));
+		endpoint.setOAuth2RequestFactory(requestFactory);
+		endpoint.setClientDetailsService(clientDetailsService);
+
+		HashMap<String, String> parameters = new HashMap<String, String>();
+		parameters.put("grant_type", "client_credentials");
+
+		ResponseEntity<OAuth2AccessToken> response = endpoint.getAccessToken(new UsernamePasswordAuthenticationToken(
+				clientId, null, Collections.singleton(new SimpleGrantedAuthority("ROLE_CLIENT"))), parameters);
+
+		assertEquals(HttpStatus.OK, response.getStatusCode());
+		assertNotNull(response.getBody().getExpiration());
+		verify(clientDetailsService, times(1)).loadClientByClientId(clientId);
+		assertNull(GrantContextHolder.getContext());
+	}
+
 }
@@ -0,0 +1,49 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.provider.endpoint;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+import org.springframework.security.oauth2.provider.token.JwtKeyRegistry;
+
+/**
+ * @author Dave Syer
+ * 
+ */
+public class TestTokenKeyEndpoint {
+
+	private JwtKeyRegistry registry = new JwtKeyRegistry();
+
+	private TokenKeyEndpoint endpoint = new TokenKeyEndpoint(registry);
+
+	@Test
+	public void testOnlyPublicKeysArePublished() {
+		registry.addKey("mac", "secret");
+		registry.addKey("rsa", "-----BEGIN RSA PUBLIC KEY-----\n"
+				+ "MGgCYQDk3m+AGfjcDrT4fspyIBqmulFjVXuiciYvpaD5j2XaR7c6Krm5wsBLOiUo\n"
+				+ "kmd6wbrRAMPMpoC1eogWNNoXY7Jd4eWdDVmscfHczGX13uBKXwdOCEqKqoWQsXIb\n" + "7kgz+HkCAwEAAQ==\n"
+				+ "-----END RSA PUBLIC KEY-----");
+		List<Map<String, String>> keys = endpoint.getKeys().get("keys");
+		assertEquals(1, keys.size());
+		assertEquals("rsa", keys.get(0).get("kid"));
+	}
+
+}
@@ -4,9 +4,16 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Before;
 import org.junit.Test;
@@ -168,6 +175,36 @@ public abstract class AbstractTestDefaultTokenServices {
 		assertEquals(1, getRefreshTokenCount()); 
 	}
 
+	@Test
+	public void testConcurrentRequestsCoalesced() throws Exception {
+		getTokenServices().setCoalesceRequests(true);
+		final OAuth2Authentication authentication = createAuthentication();
+		final CountDownLatch latch = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<OAuth2AccessToken>> results = new ArrayList<Future<OAuth2AccessToken>>();
+		for (int i = 0; i < 8; i++) {
+			results.add(executor.submit(new Callable<OAuth2AccessToken>() {
+				public OAuth2AccessToken call() throws Exception {
+					latch.await();
+					return getTokenServices().createAccessToken(authentication);
+				}
+			}));
+		}
+		latch.countDown();
+		OAuth2AccessToken first = results.get(0).get();
+		for (Future<OAuth2AccessToken> result : results) {
+			assertEquals(first, result.get());
+		}
+		executor.shutdown();
+		assertEquals(1, getAccessTokenCount());
+		assertEquals(1, getRefreshTokenCount());
+		TokenRequest tokenRequest = new TokenRequest(Collections.singletonMap("client_id", "id"), "id", null, null);
+		OAuth2AccessToken refreshed = getTokenServices().refreshAccessToken(first.getRefreshToken().getValue(),
+				tokenRequest);
+		assertEquals(first.getRefreshToken(), refreshed.getRefreshToken());
+		assertEquals(1, getAccessTokenCount());
+	}
+
 	@Test
 	public void testOneAccessTokenPerUniqueAuthentication() throws Exception {
 		getTokenServices().createAccessToken(
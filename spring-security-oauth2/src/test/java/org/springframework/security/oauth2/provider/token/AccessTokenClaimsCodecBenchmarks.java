@@ -0,0 +1,127 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.provider.token;
+
+import java.io.StringWriter;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.RequestTokenFactory;
+
+/**
+ * Compares the streaming claims codec with the map based {@link DefaultAccessTokenConverter} plus an
+ * {@link ObjectMapper} (the way JWT claims used to be written and read), and measures a complete JWT mint. Run the
+ * main method to see the results.
+ *
+ * @author Dave Syer
+ *
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class AccessTokenClaimsCodecBenchmarks {
+
+	private AccessTokenClaimsCodec codec = new AccessTokenClaimsCodec();
+
+	private DefaultAccessTokenConverter converter = new DefaultAccessTokenConverter();
+
+	private ObjectMapper objectMapper = new ObjectMapper();
+
+	private JwtTokenEnhancer enhancer = new JwtTokenEnhancer();
+
+	private DefaultOAuth2AccessToken token;
+
+	private OAuth2Authentication authentication;
+
+	private String claims;
+
+	@Setup
+	public void setUp() throws Exception {
+		enhancer.afterPropertiesSet();
+		token = new DefaultOAuth2AccessToken("FOO");
+		token.setExpiration(new Date(System.currentTimeMillis() + 100000));
+		token.setScope(Collections.singleton("read"));
+		token.setAdditionalInformation(Collections.<String, Object> singletonMap(JwtTokenEnhancer.TOKEN_ID, "FOO"));
+		Map<String, String> parameters = new HashMap<String, String>();
+		parameters.put("grant_type", "password");
+		parameters.put("username", "marissa");
+		authentication = new OAuth2Authentication(RequestTokenFactory.createOAuth2Request(parameters, "id",
+				AuthorityUtils.commaSeparatedStringToAuthorityList("ROLE_CLIENT"), true,
+				Collections.singleton("read"), Collections.singleton("resource"), null, null, null),
+				new UsernamePasswordAuthenticationToken("marissa", null,
+						AuthorityUtils.commaSeparatedStringToAuthorityList("ROLE_USER")));
+		claims = objectMapper.writeValueAsString(converter.convertAccessToken(token, authentication));
+	}
+
+	@Benchmark
+	public Object writeWithConverter() throws Exception {
+		return objectMapper.writeValueAsString(converter.convertAccessToken(token, authentication));
+	}
+
+	@Benchmark
+	public Object writeWithCodec() throws Exception {
+		StringWriter writer = new StringWriter(256);
+		codec.write(token, authentication, writer);
+		return writer.getBuffer();
+	}
+
+	@Benchmark
+	public Object readWithConverter() throws Exception {
+		@SuppressWarnings("unchecked")
+		Map<String, Object> map = objectMapper.readValue(claims, Map.class);
+		return new StoredAccessToken(converter.extractAccessToken("FOO", map), converter.extractAuthentication(map));
+	}
+
+	@Benchmark
+	public Object readWithCodec() throws Exception {
+		return codec.read("FOO", claims);
+	}
+
+	@Benchmark
+	public OAuth2AccessToken enhance() {
+		return enhancer.enhance(token, authentication);
+	}
+
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder().include(AccessTokenClaimsCodecBenchmarks.class.getSimpleName()).build()).run();
+	}
+
+}
@@ -0,0 +1,143 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.provider.token;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.oauth2.common.util.OAuth2Utils;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+
+/**
+ * Compares the default authentication and token key generators with the way the keys used to be computed (a new
+ * digest, a map and a <code>BigInteger</code> every time). Run the main method with <code>-prof gc</code> to see the
+ * allocation rates as well as the throughput.
+ * 
+ * @author Dave Syer
+ * 
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Threads(4)
+@Fork(1)
+public class KeyGeneratorBenchmarks {
+
+	@Param({ "legacy", "default" })
+	private String generator;
+
+	private AuthenticationKeyGenerator authenticationKeyGenerator;
+
+	private TokenKeyGenerator tokenKeyGenerator;
+
+	private OAuth2Authentication authentication;
+
+	private String tokenValue;
+
+	@Setup
+	public void setUp() {
+		if ("legacy".equals(generator)) {
+			authenticationKeyGenerator = new LegacyAuthenticationKeyGenerator();
+			tokenKeyGenerator = new LegacyTokenKeyGenerator();
+		}
+		else {
+			authenticationKeyGenerator = new DefaultAuthenticationKeyGenerator();
+			tokenKeyGenerator = new DefaultTokenKeyGenerator();
+		}
+		OAuth2Request request = new OAuth2Request(new HashMap<String, String>(), "id", null, true,
+				new LinkedHashSet<String>(Arrays.asList("read", "write")), Collections.singleton("resource"), null,
+				null, null);
+		authentication = new OAuth2Authentication(request, new UsernamePasswordAuthenticationToken("marissa", "N/A"));
+		tokenValue = UUID.randomUUID().toString();
+	}
+
+	@Benchmark
+	public String authenticationKey() {
+		return authenticationKeyGenerator.extractKey(authentication);
+	}
+
+	@Benchmark
+	public String tokenKey() {
+		return tokenKeyGenerator.extractKey(tokenValue);
+	}
+
+	public static void main(String[] args) throws Exception {
+		new Runner(new OptionsBuilder().include(KeyGeneratorBenchmarks.class.getSimpleName()).build()).run();
+	}
+
+	private static String legacyKey(String value) {
+		try {
+			byte[] bytes = MessageDigest.getInstance("MD5").digest(value.getBytes("UTF-8"));
+			return String.format("%032x", new BigInteger(1, bytes));
+		}
+		catch (Exception e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	private static class LegacyTokenKeyGenerator implements TokenKeyGenerator {
+
+		public String extractKey(String value) {
+			return legacyKey(value);
+		}
+
+	}
+
+	private static class LegacyAuthenticationKeyGenerator implements AuthenticationKeyGenerator {
+
+		public String extractKey(OAuth2Authentication authentication) {
+			Map<String, String> values = new LinkedHashMap<String, String>();
+			OAuth2Request authorizationRequest = authentication.getOAuth2Request();
+			if (!authentication.isClientOnly()) {
+				values.put("username", authentication.getName());
+			}
+			values.put("client_id", authorizationRequest.getClientId());
+			if (authorizationRequest.getScope() != null) {
+				values.put("scope", OAuth2Utils.formatParameterList(authorizationRequest.getScope()));
+			}
+			return legacyKey(values.toString());
+		}
+
+	}
+
+}
@@ -0,0 +1,153 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.provider.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.io.StringWriter;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class TestAccessTokenClaimsCodec {
+
+	private AccessTokenClaimsCodec codec = new AccessTokenClaimsCodec();
+
+	private DefaultAccessTokenConverter converter = new DefaultAccessTokenConverter();
+
+	private ObjectMapper objectMapper = new ObjectMapper();
+
+	@Test
+	public void testClaimsMatchConverter() throws Exception {
+		DefaultOAuth2AccessToken token = createAccessToken();
+		OAuth2Authentication authentication = createAuthentication(true);
+		Map<?, ?> claims = objectMapper.readValue(write(token, authentication), Map.class);
+		Map<?, ?> expected = objectMapper.readValue(
+				objectMapper.writeValueAsString(converter.convertAccessToken(token, authentication)), Map.class);
+		assertEquals(expected, claims);
+	}
+
+	@Test
+	public void testClientOnlyClaimsMatchConverter() throws Exception {
+		DefaultOAuth2AccessToken token = createAccessToken();
+		OAuth2Authentication authentication = createAuthentication(false);
+		Map<?, ?> claims = objectMapper.readValue(write(token, authentication), Map.class);
+		Map<?, ?> expected = objectMapper.readValue(
+				objectMapper.writeValueAsString(converter.convertAccessToken(token, authentication)), Map.class);
+		assertEquals(expected, claims);
+	}
+
+	@Test
+	public void testReadMatchesConverter() throws Exception {
+		DefaultOAuth2AccessToken token = createAccessToken();
+		OAuth2Authentication authentication = createAuthentication(true);
+		String content = write(token, authentication);
+		@SuppressWarnings("unchecked")
+		Map<String, Object> map = objectMapper.readValue(content, Map.class);
+		StoredAccessToken result = codec.read("FOO", content);
+		OAuth2AccessToken expectedToken = converter.extractAccessToken("FOO", map);
+		OAuth2Authentication expectedAuthentication = converter.extractAuthentication(map);
+		assertEquals(expectedToken, result.getAccessToken());
+		assertEquals(expectedToken.getExpiration(), result.getAccessToken().getExpiration());
+		assertEquals(expectedToken.getScope(), result.getAccessToken().getScope());
+		assertEquals(expectedToken.getAdditionalInformation(), result.getAccessToken().getAdditionalInformation());
+		assertEquals(expectedAuthentication, result.getAuthentication());
+		assertEquals(expectedAuthentication.getAuthorities(), result.getAuthentication().getAuthorities());
+		assertEquals(expectedAuthentication.getOAuth2Request().getResourceIds(), result.getAuthentication()
+				.getOAuth2Request().getResourceIds());
+	}
+
+	@Test
+	public void testReadClientOnly() throws Exception {
+		StoredAccessToken result = codec.read("FOO", write(createAccessToken(), createAuthentication(false)));
+		assertNull(result.getAuthentication().getUserAuthentication());
+		assertEquals("id", result.getAuthentication().getOAuth2Request().getClientId());
+		assertEquals(Collections.singleton("read"), result.getAuthentication().getOAuth2Request().getScope());
+	}
+
+	@Test
+	public void testExpiryAfter2038() throws Exception {
+		DefaultOAuth2AccessToken token = createAccessToken();
+		Date expiration = new Date(4102444800000L); // 2100-01-01
+		token.setExpiration(expiration);
+		String content = write(token, createAuthentication(true));
+		assertEquals(expiration, codec.read("FOO", content).getAccessToken().getExpiration());
+		@SuppressWarnings("unchecked")
+		Map<String, Object> map = objectMapper.readValue(content, Map.class);
+		assertEquals(expiration, converter.extractAccessToken("FOO", map).getExpiration());
+	}
+
+	@Test
+	public void testAdditionalInformationCannotOverrideClientId() throws Exception {
+		DefaultOAuth2AccessToken token = createAccessToken();
+		Map<String, Object> info = new LinkedHashMap<String, Object>(token.getAdditionalInformation());
+		info.put("client_id", "other");
+		info.put("nested", Collections.singletonMap("foo", Arrays.asList("bar")));
+		token.setAdditionalInformation(info);
+		StoredAccessToken result = codec.read("FOO", write(token, createAuthentication(true)));
+		assertEquals("id", result.getAuthentication().getOAuth2Request().getClientId());
+		assertEquals(Collections.singletonMap("foo", Arrays.asList("bar")), result.getAccessToken()
+				.getAdditionalInformation().get("nested"));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void testReadNotAnObject() throws Exception {
+		codec.read("FOO", "[]");
+	}
+
+	private String write(OAuth2AccessToken token, OAuth2Authentication authentication) throws Exception {
+		StringWriter writer = new StringWriter();
+		codec.write(token, authentication, writer);
+		return writer.toString();
+	}
+
+	private DefaultOAuth2AccessToken createAccessToken() {
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("FOO");
+		token.setExpiration(new Date(System.currentTimeMillis() + 100000));
+		token.setScope(Collections.singleton("read"));
+		token.setAdditionalInformation(Collections.<String, Object> singletonMap(JwtTokenEnhancer.TOKEN_ID, "FOO"));
+		return token;
+	}
+
+	private OAuth2Authentication createAuthentication(boolean user) {
+		Map<String, String> parameters = new HashMap<String, String>();
+		parameters.put("client_id", "id");
+		OAuth2Request request = new OAuth2Request(parameters, "id", null, true, Collections.singleton("read"),
+				new LinkedHashSet<String>(Arrays.asList("resource", "other")), null, null, null);
+		return new OAuth2Authentication(request, user ? new UsernamePasswordAuthenticationToken("marissa", "N/A",
+				AuthorityUtils.commaSeparatedStringToAuthorityList("ROLE_USER,ROLE_ADMIN")) : null);
+	}
+
+}
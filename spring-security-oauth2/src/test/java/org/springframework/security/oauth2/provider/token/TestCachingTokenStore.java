@@ -0,0 +1,193 @@
+package org.springframework.security.oauth2.provider.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.RequestTokenFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+/**
+ * @author Dave Syer
+ * 
+ */
+public class TestCachingTokenStore extends TestTokenStoreBase {
+
+	private CachingTokenStore tokenStore;
+
+	private OAuth2Authentication authentication = new OAuth2Authentication(RequestTokenFactory.createOAuth2Request(
+			null, "id", null, false, null, null, null, null, null), new TestAuthentication("test2", false));
+
+	@Override
+	public CachingTokenStore getTokenStore() {
+		return tokenStore;
+	}
+
+	@Before
+	public void createStore() {
+		tokenStore = new CachingTokenStore(new InMemoryTokenStore());
+	}
+
+	@Test
+	public void testReadsAreCached() throws Exception {
+		TokenStore delegate = mock(TokenStore.class);
+		tokenStore = new CachingTokenStore(delegate);
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("FOO");
+		when(delegate.readAccessToken("FOO")).thenReturn(token);
+		when(delegate.readAuthentication(token)).thenReturn(authentication);
+		for (int i = 0; i < 3; i++) {
+			assertEquals(token, tokenStore.readAccessToken("FOO"));
+			assertEquals(authentication, tokenStore.readAuthentication(token));
+		}
+		verify(delegate, times(1)).readAccessToken("FOO");
+		verify(delegate, times(1)).readAuthentication(token);
+		assertEquals(4, tokenStore.getHitCount());
+		assertEquals(2, tokenStore.getMissCount());
+	}
+
+	@Test
+	public void testCachedAuthenticationIsNotShared() throws Exception {
+		TokenStore delegate = mock(TokenStore.class);
+		tokenStore = new CachingTokenStore(delegate);
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("FOO");
+		when(delegate.readAccessToken("FOO")).thenReturn(token);
+		when(delegate.readAuthentication(token)).thenReturn(authentication);
+		assertEquals(authentication, tokenStore.readStoredAccessToken("FOO").getAuthentication());
+		OAuth2Authentication first = tokenStore.readAuthentication(token);
+		first.setDetails("details");
+		OAuth2Authentication second = tokenStore.readAuthentication(token);
+		assertNotSame(first, second);
+		assertNull(second.getDetails());
+		assertEquals(authentication, second);
+		verify(delegate, times(1)).readAuthentication(token);
+	}
+
+	@Test
+	public void testIssueAccessTokenDelegatesToIssuer() throws Exception {
+		JdbcTokenStore delegate = mock(JdbcTokenStore.class);
+		tokenStore = new CachingTokenStore(delegate);
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("FOO");
+		when(delegate.readAccessToken("FOO")).thenReturn(token);
+		tokenStore.readAccessToken("FOO");
+		AccessTokenFactory factory = mock(AccessTokenFactory.class);
+		when(delegate.issueAccessToken(authentication, factory)).thenReturn(token);
+		assertEquals(token, tokenStore.issueAccessToken(authentication, factory));
+		// The token was invalidated, so it is read again
+		tokenStore.readAccessToken("FOO");
+		verify(delegate, times(2)).readAccessToken("FOO");
+		verify(delegate, never()).storeAccessToken(token, authentication);
+	}
+
+	@Test
+	public void testIssueAccessTokenWithoutIssuer() throws Exception {
+		InMemoryTokenStore delegate = new InMemoryTokenStore();
+		tokenStore = new CachingTokenStore(delegate);
+		final DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("FOO");
+		AccessTokenFactory factory = mock(AccessTokenFactory.class);
+		when(factory.createAccessToken(authentication, null)).thenReturn(token);
+		assertEquals(token, tokenStore.issueAccessToken(authentication, factory));
+		assertEquals(token, tokenStore.issueAccessToken(authentication, factory));
+		verify(factory, times(1)).createAccessToken(authentication, null);
+		assertEquals(token, delegate.readAccessToken("FOO"));
+	}
+
+	@Test
+	public void testBatchReadsAreCached() throws Exception {
+		InMemoryTokenStore delegate = mock(InMemoryTokenStore.class);
+		tokenStore = new CachingTokenStore(delegate);
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("FOO");
+		List<String> values = Arrays.asList("FOO", "BAR");
+		when(delegate.readStoredAccessTokens(values)).thenReturn(
+				Collections.singletonMap("FOO", new StoredAccessToken(token, authentication)));
+		when(delegate.readStoredAccessTokens(Arrays.asList("BAR"))).thenReturn(
+				Collections.<String, StoredAccessToken> emptyMap());
+		assertEquals(token, tokenStore.readStoredAccessTokens(values).get("FOO").getAccessToken());
+		Map<String, StoredAccessToken> result = tokenStore.readStoredAccessTokens(values);
+		assertEquals(authentication, result.get("FOO").getAuthentication());
+		assertEquals(1, result.size());
+		verify(delegate, times(1)).readStoredAccessTokens(values);
+		verify(delegate, times(1)).readStoredAccessTokens(Arrays.asList("BAR"));
+		assertEquals(1, tokenStore.getHitCount());
+	}
+
+	@Test
+	public void testRemoveAccessTokenInvalidatesCache() throws Exception {
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("FOO");
+		tokenStore.storeAccessToken(token, authentication);
+		assertEquals(token, tokenStore.readAccessToken("FOO"));
+		tokenStore.removeAccessToken(token);
+		assertNull(tokenStore.readAccessToken("FOO"));
+		assertNull(tokenStore.readAuthentication("FOO"));
+		assertEquals(0, tokenStore.getCacheSize());
+	}
+
+	@Test
+	public void testRemoveAccessTokenUsingRefreshTokenInvalidatesCache() throws Exception {
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("FOO");
+		DefaultOAuth2RefreshToken refreshToken = new DefaultOAuth2RefreshToken("BAR");
+		token.setRefreshToken(refreshToken);
+		tokenStore.storeAccessToken(token, authentication);
+		tokenStore.storeRefreshToken(refreshToken, authentication);
+		assertEquals(token, tokenStore.readAccessToken("FOO"));
+		tokenStore.removeAccessTokenUsingRefreshToken(refreshToken);
+		assertNull(tokenStore.readAccessToken("FOO"));
+	}
+
+	@Test
+	public void testExpiredTokenIsEvicted() throws Exception {
+		TokenStore delegate = mock(TokenStore.class);
+		tokenStore = new CachingTokenStore(delegate);
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("FOO");
+		token.setExpiration(new Date(System.currentTimeMillis() + 100));
+		when(delegate.readAccessToken("FOO")).thenReturn(token);
+		tokenStore.readAccessToken("FOO");
+		Thread.sleep(200);
+		tokenStore.readAccessToken("FOO");
+		verify(delegate, times(2)).readAccessToken("FOO");
+		assertEquals(1, tokenStore.getEvictionCount());
+	}
+
+	@Test
+	public void testExpiredTokenWithRefreshTokenIsNotTracked() throws Exception {
+		TokenStore delegate = mock(TokenStore.class);
+		tokenStore = new CachingTokenStore(delegate);
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("FOO");
+		token.setExpiration(new Date(System.currentTimeMillis() - 1000));
+		token.setRefreshToken(new DefaultOAuth2RefreshToken("BAR"));
+		when(delegate.readAccessToken("FOO")).thenReturn(token);
+		when(delegate.readAuthentication(token)).thenReturn(authentication);
+		assertEquals(token, tokenStore.readAccessToken("FOO"));
+		assertEquals(authentication, tokenStore.readAuthentication(token));
+		assertEquals(0, tokenStore.getCacheSize());
+		// Nothing was cached, so there must be no refresh token mapping left behind
+		Map<?, ?> refreshTokens = (Map<?, ?>) ReflectionTestUtils.getField(tokenStore, "refreshTokenToAccessToken");
+		assertEquals(0, refreshTokens.size());
+	}
+
+	@Test
+	public void testCacheIsBounded() throws Exception {
+		tokenStore = new CachingTokenStore(new InMemoryTokenStore(), 2);
+		for (int i = 0; i < 5; i++) {
+			tokenStore.storeAccessToken(new DefaultOAuth2AccessToken("FOO" + i), authentication);
+		}
+		assertEquals(2, tokenStore.getCacheSize());
+		assertEquals(3, tokenStore.getEvictionCount());
+	}
+
+}
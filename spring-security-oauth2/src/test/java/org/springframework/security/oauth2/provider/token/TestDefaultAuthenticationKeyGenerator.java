@@ -0,0 +1,112 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.provider.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.oauth2.common.util.OAuth2Utils;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class TestDefaultAuthenticationKeyGenerator {
+
+	private DefaultAuthenticationKeyGenerator generator = new DefaultAuthenticationKeyGenerator();
+
+	@Test
+	public void testUserKeyUnchanged() throws Exception {
+		OAuth2Authentication authentication = createAuthentication("id", scope("read", "write"), "marissa");
+		assertEquals(legacyKey(authentication), generator.extractKey(authentication));
+	}
+
+	@Test
+	public void testClientOnlyKeyUnchanged() throws Exception {
+		OAuth2Authentication authentication = createAuthentication("id", scope("read"), null);
+		assertEquals(legacyKey(authentication), generator.extractKey(authentication));
+	}
+
+	@Test
+	public void testEmptyScopeKeyUnchanged() throws Exception {
+		OAuth2Authentication authentication = createAuthentication("id", Collections.<String> emptySet(), "marissa");
+		assertEquals(legacyKey(authentication), generator.extractKey(authentication));
+	}
+
+	@Test
+	public void testNonAsciiKeyUnchanged() throws Exception {
+		OAuth2Authentication authentication = createAuthentication("cl\u00efent", scope("\u8bfb", "\ud83d\ude00"),
+				"m\u00e4rissa\ud800");
+		assertEquals(legacyKey(authentication), generator.extractKey(authentication));
+	}
+
+	@Test
+	public void testLongValuesKeyUnchanged() throws Exception {
+		char[] chars = new char[1000];
+		Arrays.fill(chars, '\u00e9');
+		OAuth2Authentication authentication = createAuthentication("id", scope("read"), new String(chars));
+		assertEquals(legacyKey(authentication), generator.extractKey(authentication));
+	}
+
+	@Test
+	public void testDifferentScopesHaveDifferentKeys() throws Exception {
+		assertFalse(generator.extractKey(createAuthentication("id", scope("read"), "marissa")).equals(
+				generator.extractKey(createAuthentication("id", scope("write"), "marissa"))));
+	}
+
+	private Set<String> scope(String... values) {
+		return new LinkedHashSet<String>(Arrays.asList(values));
+	}
+
+	private OAuth2Authentication createAuthentication(String clientId, Set<String> scope, String userName) {
+		OAuth2Request request = new OAuth2Request(Collections.<String, String> emptyMap(), clientId, null, true,
+				scope, null, null, null, null);
+		return new OAuth2Authentication(request, userName == null ? null : new UsernamePasswordAuthenticationToken(
+				userName, "N/A"));
+	}
+
+	/**
+	 * The key as it was computed before the digests were reused, to check that the format has not changed.
+	 */
+	private String legacyKey(OAuth2Authentication authentication) throws Exception {
+		Map<String, String> values = new LinkedHashMap<String, String>();
+		OAuth2Request authorizationRequest = authentication.getOAuth2Request();
+		if (!authentication.isClientOnly()) {
+			values.put("username", authentication.getName());
+		}
+		values.put("client_id", authorizationRequest.getClientId());
+		if (authorizationRequest.getScope() != null) {
+			values.put("scope", OAuth2Utils.formatParameterList(authorizationRequest.getScope()));
+		}
+		byte[] bytes = MessageDigest.getInstance("MD5").digest(values.toString().getBytes("UTF-8"));
+		return String.format("%032x", new BigInteger(1, bytes));
+	}
+
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.provider.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class TestDefaultTokenKeyGenerator {
+
+	private DefaultTokenKeyGenerator generator = new DefaultTokenKeyGenerator();
+
+	@Test
+	public void testNullValue() throws Exception {
+		assertNull(generator.extractKey(null));
+	}
+
+	@Test
+	public void testKeyFormatUnchanged() throws Exception {
+		for (String value : new String[] { "", "FOO", UUID.randomUUID().toString(), "caf\u00e9 \u20ac \ud83d\ude00",
+				"unpaired \udc00 surrogate \ud800" }) {
+			assertEquals(legacyKey(value), generator.extractKey(value));
+		}
+	}
+
+	@Test
+	public void testLongValue() throws Exception {
+		StringBuilder builder = new StringBuilder();
+		for (int i = 0; i < 100; i++) {
+			builder.append(UUID.randomUUID()).append('\u00e9');
+		}
+		String value = builder.toString();
+		assertEquals(legacyKey(value), generator.extractKey(value));
+	}
+
+	@Test
+	public void testLeadingZerosArePreserved() throws Exception {
+		int count = 0;
+		for (int i = 0; count < 3; i++) {
+			String value = "token" + i;
+			String key = legacyKey(value);
+			if (key.startsWith("0")) {
+				assertEquals(key, generator.extractKey(value));
+				count++;
+			}
+		}
+	}
+
+	@Test
+	public void testConcurrentKeys() throws Exception {
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<Boolean>> results = new ArrayList<Future<Boolean>>();
+		for (int i = 0; i < 8; i++) {
+			results.add(executor.submit(new Callable<Boolean>() {
+				public Boolean call() throws Exception {
+					for (int j = 0; j < 500; j++) {
+						String value = UUID.randomUUID().toString();
+						assertEquals(legacyKey(value), generator.extractKey(value));
+					}
+					return true;
+				}
+			}));
+		}
+		for (Future<Boolean> result : results) {
+			result.get();
+		}
+		executor.shutdown();
+	}
+
+	private static String legacyKey(String value) throws Exception {
+		byte[] bytes = MessageDigest.getInstance("MD5").digest(value.getBytes("UTF-8"));
+		return String.format("%032x", new BigInteger(1, bytes));
+	}
+
+}
@@ -0,0 +1,80 @@
+package org.springframework.security.oauth2.provider.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+import java.util.Date;
+
+import org.junit.After;
+import org.junit.Test;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.RequestTokenFactory;
+
+/**
+ * @author Dave Syer
+ * 
+ */
+public class TestExpiredTokenSweeper {
+
+	private ExpiredTokenPurger purger = mock(ExpiredTokenPurger.class);
+
+	private ExpiredTokenSweeper sweeper = new ExpiredTokenSweeper(purger);
+
+	@After
+	public void close() throws Exception {
+		sweeper.destroy();
+	}
+
+	@Test
+	public void testSweepInBatchesUntilExhausted() throws Exception {
+		sweeper.setBatchSize(10);
+		sweeper.setMaxSweepMillis(10000);
+		when(purger.purgeExpiredTokens(10)).thenReturn(10, 10, 3);
+		assertEquals(23, sweeper.sweep());
+		verify(purger, times(3)).purgeExpiredTokens(10);
+		assertEquals(23, sweeper.getLastSweepCount());
+		assertEquals(23, sweeper.getReclaimedCount());
+		assertEquals(1, sweeper.getSweepCount());
+	}
+
+	@Test
+	public void testSweepStopsAtTimeLimit() throws Exception {
+		sweeper.setBatchSize(10);
+		sweeper.setMaxSweepMillis(0);
+		when(purger.purgeExpiredTokens(10)).thenReturn(10);
+		assertEquals(10, sweeper.sweep());
+		verify(purger, times(1)).purgeExpiredTokens(10);
+	}
+
+	@Test
+	public void testScheduledSweepsInMemoryTokenStore() throws Exception {
+		InMemoryTokenStore store = new InMemoryTokenStore();
+		store.setFlushInterval(0);
+		OAuth2Authentication authentication = new OAuth2Authentication(RequestTokenFactory.createOAuth2Request(null,
+				"id", null, false, null, null, null, null, null), new TestAuthentication("test", false));
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("FOO");
+		token.setExpiration(new Date(System.currentTimeMillis() - 1000));
+		DefaultExpiringOAuth2RefreshToken refreshToken = new DefaultExpiringOAuth2RefreshToken("BAR", new Date(
+				System.currentTimeMillis() - 1000));
+		token.setRefreshToken(refreshToken);
+		store.storeAccessToken(token, authentication);
+		store.storeRefreshToken(refreshToken, authentication);
+		sweeper = new ExpiredTokenSweeper(store);
+		sweeper.setSweepIntervalMillis(10);
+		sweeper.afterPropertiesSet();
+		for (int i = 0; i < 200 && sweeper.getReclaimedCount() < 2; i++) {
+			Thread.sleep(10);
+		}
+		assertEquals(2, sweeper.getReclaimedCount());
+		assertTrue(sweeper.getSweepCount() > 0);
+		assertEquals(0, store.getAccessTokenCount());
+		assertEquals(0, store.getRefreshTokenCount());
+	}
+
+}
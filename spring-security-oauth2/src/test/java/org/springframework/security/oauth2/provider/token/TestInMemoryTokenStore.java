@@ -1,14 +1,26 @@
 package org.springframework.security.oauth2.provider.token;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
 import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.RequestTokenFactory;
+import org.springframework.test.util.ReflectionTestUtils;
 
 /**
  * @author Dave Syer
@@ -65,4 +77,129 @@ public class TestInMemoryTokenStore extends TestTokenStoreBase {
 			getTokenStore().storeAccessToken(expectedOAuth2AccessToken, expectedAuthentication);
 		}
 	}
+
+	@Test
+	public void testPurgeExpiredTokensInBatches() throws Exception {
+		getTokenStore().setFlushInterval(0);
+		for (int i = 0; i < 5; i++) {
+			OAuth2Authentication authentication = new OAuth2Authentication(RequestTokenFactory.createOAuth2Request(
+					null, "id", null, false, null, null, null, null, null), new TestAuthentication("test" + i, false));
+			DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("testToken" + i);
+			token.setExpiration(new Date(System.currentTimeMillis() + (i < 3 ? -1000 : 100000)));
+			DefaultExpiringOAuth2RefreshToken refreshToken = new DefaultExpiringOAuth2RefreshToken("refreshToken" + i,
+					new Date(System.currentTimeMillis() + (i < 1 ? -1000 : 100000)));
+			token.setRefreshToken(refreshToken);
+			getTokenStore().storeAccessToken(token, authentication);
+			getTokenStore().storeRefreshToken(refreshToken, authentication);
+		}
+		assertEquals(5, getTokenStore().getAccessTokenCount());
+		assertEquals(2, getTokenStore().purgeExpiredTokens(2));
+		assertEquals(2, getTokenStore().purgeExpiredTokens(2));
+		assertEquals(0, getTokenStore().purgeExpiredTokens(2));
+		assertEquals(2, getTokenStore().getAccessTokenCount());
+		assertEquals(4, getTokenStore().getRefreshTokenCount());
+		assertEquals(2, getTokenStore().findTokensByClientId("id").size());
+		assertNull(getTokenStore().readRefreshToken("refreshToken0"));
+	}
+
+	@Test
+	public void testRestoreWithDifferentUserUpdatesIndexes() throws Exception {
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("testToken");
+		token.setRefreshToken(new DefaultOAuth2RefreshToken("refreshToken"));
+		getTokenStore().storeAccessToken(token, new OAuth2Authentication(RequestTokenFactory.createOAuth2Request(null,
+				"id", null, false, null, null, null, null, null), new TestAuthentication("foo", false)));
+		getTokenStore().storeAccessToken(token, new OAuth2Authentication(RequestTokenFactory.createOAuth2Request(null,
+				"other", null, false, null, null, null, null, null), new TestAuthentication("bar", false)));
+		assertEquals(0, getTokenStore().findTokensByUserName("foo").size());
+		assertEquals(0, getTokenStore().findTokensByClientId("id").size());
+		assertEquals(1, getTokenStore().findTokensByUserName("bar").size());
+		assertEquals(1, getTokenStore().findTokensByClientId("other").size());
+		getTokenStore().removeAccessTokenUsingRefreshToken(new DefaultOAuth2RefreshToken("refreshToken"));
+		assertNull(getTokenStore().readAccessToken("testToken"));
+		assertEquals(0, getTokenStore().findTokensByUserName("bar").size());
+	}
+
+	@Test
+	public void testConcurrentStoreAndRemove() throws Exception {
+		final int threads = 8;
+		final int tokens = 500;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Void>> results = new ArrayList<Future<Void>>();
+			for (int t = 0; t < threads; t++) {
+				final int thread = t;
+				results.add(executor.submit(new Callable<Void>() {
+					public Void call() throws Exception {
+						for (int i = 0; i < tokens; i++) {
+							OAuth2Authentication authentication = new OAuth2Authentication(RequestTokenFactory
+									.createOAuth2Request(null, "id", null, false, null, null, null, null, null),
+									new TestAuthentication("user" + thread + "-" + i, false));
+							DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("token" + thread + "-" + i);
+							token.setExpiration(new Date(System.currentTimeMillis() + 100000));
+							getTokenStore().storeAccessToken(token, authentication);
+							if (i % 2 == 0) {
+								getTokenStore().removeAccessToken(token);
+							}
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> result : results) {
+				result.get();
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+		int expected = threads * tokens / 2;
+		assertEquals(expected, getTokenStore().getAccessTokenCount());
+		assertEquals(expected, getTokenStore().getExpiryTokenCount());
+		assertEquals(expected, getTokenStore().findTokensByClientId("id").size());
+		assertTrue(getTokenStore().findTokensByUserName("user0-0").isEmpty());
+		assertEquals(1, getTokenStore().findTokensByUserName("user0-1").size());
+	}
+
+	@Test
+	public void testEmptyIndexesAreRemovedConcurrently() throws Exception {
+		final int threads = 8;
+		final int tokens = 500;
+		ExecutorService executor = Executors.newFixedThreadPool(threads);
+		try {
+			List<Future<Void>> results = new ArrayList<Future<Void>>();
+			for (int t = 0; t < threads; t++) {
+				final int thread = t;
+				results.add(executor.submit(new Callable<Void>() {
+					public Void call() throws Exception {
+						// The same user with different clients, so the user's index keeps going empty
+						for (int i = 0; i < tokens; i++) {
+							OAuth2Authentication authentication = new OAuth2Authentication(RequestTokenFactory
+									.createOAuth2Request(null, "id" + thread + "-" + i, null, false, null, null, null,
+											null, null), new TestAuthentication("marissa", false));
+							DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("token" + thread + "-" + i);
+							getTokenStore().storeAccessToken(token, authentication);
+							if (i < tokens - 1) {
+								getTokenStore().removeAccessToken(token);
+							}
+						}
+						return null;
+					}
+				}));
+			}
+			for (Future<Void> result : results) {
+				result.get();
+			}
+		}
+		finally {
+			executor.shutdown();
+		}
+		// No token that is still stored was lost from the index
+		assertEquals(threads, getTokenStore().findTokensByUserName("marissa").size());
+		for (int t = 0; t < threads; t++) {
+			getTokenStore().removeAccessToken(new DefaultOAuth2AccessToken("token" + t + "-" + (tokens - 1)));
+		}
+		assertTrue(((Map<?, ?>) ReflectionTestUtils.getField(getTokenStore(), "userNameToAccessTokenStore")).isEmpty());
+		assertTrue(((Map<?, ?>) ReflectionTestUtils.getField(getTokenStore(), "clientIdToAccessTokenStore")).isEmpty());
+	}
+
 }
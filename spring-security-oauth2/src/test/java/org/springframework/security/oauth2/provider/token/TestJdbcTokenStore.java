@@ -1,9 +1,39 @@
 package org.springframework.security.oauth2.provider.token;
 
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
 import org.junit.After;
 import org.junit.Before;
+import org.junit.Test;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabase;
 import org.springframework.jdbc.datasource.embedded.EmbeddedDatabaseBuilder;
+import org.springframework.jdbc.datasource.init.DatabasePopulatorUtils;
+import org.springframework.jdbc.datasource.init.ResourceDatabasePopulator;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.RequestTokenFactory;
 
 /**
  * @author Dave Syer
@@ -32,4 +62,204 @@ public class TestJdbcTokenStore extends TestTokenStoreBase {
 		db.shutdown();
 	}
 
+	@Test
+	public void testStoreExpiryTime() {
+		OAuth2Authentication authentication = new OAuth2Authentication(RequestTokenFactory.createOAuth2Request(null,
+				"id", null, false, null, null, null, null, null), new TestAuthentication("test", false));
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("testToken");
+		Date expiration = new Date(System.currentTimeMillis() + 100000);
+		token.setExpiration(expiration);
+		tokenStore.storeAccessToken(token, authentication);
+		tokenStore.storeRefreshToken(new DefaultOAuth2RefreshToken("refreshToken"), authentication);
+		JdbcTemplate template = new JdbcTemplate(db);
+		assertEquals(expiration.getTime(), template.queryForObject("select expires_at from oauth_access_token", Date.class)
+				.getTime());
+		assertNull(template.queryForObject("select expires_at from oauth_refresh_token", Date.class));
+	}
+
+	@Test
+	public void testCustomTokenKeyGenerator() {
+		tokenStore.setTokenKeyGenerator(new TokenKeyGenerator() {
+			public String extractKey(String value) {
+				return value == null ? null : "key-" + value;
+			}
+		});
+		OAuth2Authentication authentication = new OAuth2Authentication(RequestTokenFactory.createOAuth2Request(null,
+				"id", null, false, null, null, null, null, null), new TestAuthentication("test", false));
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("testToken");
+		tokenStore.storeAccessToken(token, authentication);
+		assertEquals(token, tokenStore.readAccessToken("testToken"));
+		JdbcTemplate template = new JdbcTemplate(db);
+		assertEquals("key-testToken", template.queryForObject("select token_id from oauth_access_token", String.class));
+	}
+
+	@Test
+	public void testPurgeExpiredTokens() {
+		for (int i = 0; i < 5; i++) {
+			OAuth2Authentication authentication = new OAuth2Authentication(RequestTokenFactory.createOAuth2Request(
+					null, "id", null, false, null, null, null, null, null), new TestAuthentication("test" + i, false));
+			DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken("testToken" + i);
+			token.setExpiration(new Date(System.currentTimeMillis() + (i < 3 ? -1000 : 100000)));
+			DefaultExpiringOAuth2RefreshToken refreshToken = new DefaultExpiringOAuth2RefreshToken("refreshToken" + i,
+					new Date(System.currentTimeMillis() + (i < 1 ? -1000 : 100000)));
+			token.setRefreshToken(refreshToken);
+			tokenStore.storeAccessToken(token, authentication);
+			tokenStore.storeRefreshToken(refreshToken, authentication);
+		}
+		assertEquals(2, tokenStore.purgeExpiredTokens(2));
+		assertEquals(2, tokenStore.purgeExpiredTokens(2));
+		assertEquals(0, tokenStore.purgeExpiredTokens(2));
+		JdbcTemplate template = new JdbcTemplate(db);
+		assertEquals(2, template.queryForInt("select count(*) from oauth_access_token"));
+		assertEquals(4, template.queryForInt("select count(*) from oauth_refresh_token"));
+		assertNull(tokenStore.readRefreshToken("refreshToken0"));
+		assertNotNull(tokenStore.readAccessToken("testToken4"));
+	}
+
+	@Test
+	public void testStoreAccessTokenReplacesTokenForSameAuthentication() {
+		OAuth2Authentication authentication = createAuthentication("test");
+		tokenStore.storeAccessToken(new DefaultOAuth2AccessToken("testToken"), authentication);
+		tokenStore.storeAccessToken(new DefaultOAuth2AccessToken("anotherToken"), authentication);
+		assertEquals("anotherToken", tokenStore.getAccessToken(authentication).getValue());
+		assertNull(tokenStore.readAccessToken("testToken"));
+	}
+
+	@Test
+	public void testIssueAccessTokenReturnsExisting() {
+		OAuth2Authentication authentication = createAuthentication("test");
+		CountingFactory factory = new CountingFactory();
+		OAuth2AccessToken token = tokenStore.issueAccessToken(authentication, factory);
+		assertEquals(token, tokenStore.issueAccessToken(authentication, factory));
+		assertEquals(1, factory.count.get());
+		assertEquals("refresh", tokenStore.readRefreshToken("refresh").getValue());
+	}
+
+	@Test
+	public void testIssueAccessTokenReplacesExpired() {
+		OAuth2Authentication authentication = createAuthentication("test");
+		DefaultOAuth2AccessToken expired = new DefaultOAuth2AccessToken("expired");
+		expired.setExpiration(new Date(System.currentTimeMillis() - 1000));
+		DefaultOAuth2RefreshToken refreshToken = new DefaultOAuth2RefreshToken("refresh");
+		expired.setRefreshToken(refreshToken);
+		tokenStore.storeAccessToken(expired, authentication);
+		tokenStore.storeRefreshToken(refreshToken, authentication);
+		CountingFactory factory = new CountingFactory();
+		OAuth2AccessToken token = tokenStore.issueAccessToken(authentication, factory);
+		assertEquals(refreshToken, factory.refreshToken);
+		assertNull(tokenStore.readAccessToken("expired"));
+		assertEquals(token, tokenStore.getAccessToken(authentication));
+		assertEquals(refreshToken, tokenStore.readRefreshToken("refresh"));
+	}
+
+	@Test
+	public void testConcurrentIssueAccessToken() throws Exception {
+		final OAuth2Authentication authentication = createAuthentication("test");
+		final CountingFactory factory = new CountingFactory();
+		final CountDownLatch latch = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<OAuth2AccessToken>> results = new ArrayList<Future<OAuth2AccessToken>>();
+		for (int i = 0; i < 8; i++) {
+			results.add(executor.submit(new Callable<OAuth2AccessToken>() {
+				public OAuth2AccessToken call() throws Exception {
+					latch.await();
+					return tokenStore.issueAccessToken(authentication, factory);
+				}
+			}));
+		}
+		latch.countDown();
+		OAuth2AccessToken token = results.get(0).get();
+		for (Future<OAuth2AccessToken> result : results) {
+			assertEquals(token, result.get());
+		}
+		executor.shutdown();
+		JdbcTemplate template = new JdbcTemplate(db);
+		assertEquals(1, template.queryForInt("select count(*) from oauth_access_token"));
+	}
+
+	@Test
+	public void testIssueAccessTokenLosesRaceInMySqlMode() throws Exception {
+		DriverManagerDataSource dataSource = new DriverManagerDataSource(
+				"jdbc:hsqldb:mem:mysqlTokens;sql.syntax_mys=true", "sa", "");
+		dataSource.setDriverClassName("org.hsqldb.jdbcDriver");
+		JdbcTemplate template = new JdbcTemplate(dataSource);
+		// Row level locking, so that the winner can commit while the loser's transaction is open
+		template.execute("SET DATABASE TRANSACTION CONTROL MVCC");
+		ResourceDatabasePopulator populator = new ResourceDatabasePopulator();
+		populator.addScript(new ClassPathResource("schema.sql"));
+		DatabasePopulatorUtils.execute(populator, dataSource);
+		final OAuth2Authentication authentication = createAuthentication("test");
+		final JdbcTokenStore winnerStore = new JdbcTokenStore(dataSource);
+		final DefaultOAuth2AccessToken winner = new DefaultOAuth2AccessToken("winner");
+		winner.setExpiration(new Date(System.currentTimeMillis() + 100000));
+		final ExecutorService executor = Executors.newSingleThreadExecutor();
+		try {
+			OAuth2AccessToken token = new JdbcTokenStore(dataSource).issueAccessToken(authentication,
+					new AccessTokenFactory() {
+						public OAuth2AccessToken createAccessToken(OAuth2Authentication authentication,
+								OAuth2RefreshToken refreshToken) {
+							try {
+								// Another server stores a token for the same authentication in the meantime
+								executor.submit(new Callable<Object>() {
+									public Object call() throws Exception {
+										winnerStore.storeAccessToken(winner, authentication);
+										return null;
+									}
+								}).get(10, TimeUnit.SECONDS);
+							}
+							catch (Exception e) {
+								throw new IllegalStateException(e);
+							}
+							return new DefaultOAuth2AccessToken("loser");
+						}
+					});
+			assertEquals(winner, token);
+			assertNotNull(winnerStore.readAccessToken("winner"));
+			assertNull(winnerStore.readAccessToken("loser"));
+			assertEquals(1, template.queryForInt("select count(*) from oauth_access_token"));
+		}
+		finally {
+			executor.shutdown();
+			template.execute("SHUTDOWN");
+		}
+	}
+
+	@Test
+	public void testReadStoredAccessTokensInBatches() {
+		tokenStore.setBatchSize(2);
+		List<String> values = new ArrayList<String>();
+		for (int i = 0; i < 5; i++) {
+			OAuth2Authentication authentication = createAuthentication("test" + i);
+			tokenStore.storeAccessToken(new DefaultOAuth2AccessToken("testToken" + i), authentication);
+			values.add("testToken" + i);
+		}
+		values.add("missing");
+		Map<String, StoredAccessToken> storedTokens = tokenStore.readStoredAccessTokens(values);
+		assertEquals(5, storedTokens.size());
+		assertEquals("test4", storedTokens.get("testToken4").getAuthentication().getName());
+	}
+
+	private OAuth2Authentication createAuthentication(String userName) {
+		return new OAuth2Authentication(RequestTokenFactory.createOAuth2Request(null, "id", null, false, null, null,
+				null, null, null), new TestAuthentication(userName, false));
+	}
+
+	private static class CountingFactory implements AccessTokenFactory {
+
+		private final AtomicInteger count = new AtomicInteger();
+
+		private volatile OAuth2RefreshToken refreshToken;
+
+		public OAuth2AccessToken createAccessToken(OAuth2Authentication authentication,
+				OAuth2RefreshToken refreshToken) {
+			count.incrementAndGet();
+			this.refreshToken = refreshToken;
+			DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(UUID.randomUUID().toString());
+			token.setExpiration(new Date(System.currentTimeMillis() + 100000));
+			token.setRefreshToken(refreshToken != null ? refreshToken : new DefaultOAuth2RefreshToken("refresh"));
+			return token;
+		}
+
+	}
+
 }
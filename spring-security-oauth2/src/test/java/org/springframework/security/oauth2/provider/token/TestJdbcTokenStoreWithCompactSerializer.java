@@ -0,0 +1,17 @@
+package org.springframework.security.oauth2.provider.token;
+
+import org.junit.Before;
+import org.springframework.security.oauth2.common.util.CompactTokenSerializer;
+
+/**
+ * @author Dave Syer
+ *
+ */
+public class TestJdbcTokenStoreWithCompactSerializer extends TestJdbcTokenStore {
+
+	@Before
+	public void setUpSerializer() throws Exception {
+		getTokenStore().setTokenSerializer(new CompactTokenSerializer());
+	}
+
+}
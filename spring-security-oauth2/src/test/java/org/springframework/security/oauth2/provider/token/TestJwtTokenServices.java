@@ -15,17 +15,24 @@ package org.springframework.security.oauth2.provider.token;
 
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
 import static org.junit.Assert.assertTrue;
 
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.Date;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import org.junit.Before;
 import org.junit.Test;
+import org.mockito.Mockito;
 import org.springframework.security.authentication.AbstractAuthenticationToken;
 import org.springframework.security.jwt.JwtHelper;
+import org.springframework.security.jwt.crypto.sign.InvalidSignatureException;
 import org.springframework.security.jwt.crypto.sign.MacSigner;
 import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
 import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
@@ -33,10 +40,12 @@ import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.common.OAuth2RefreshToken;
 import org.springframework.security.oauth2.common.exceptions.InvalidGrantException;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
 import org.springframework.security.oauth2.common.exceptions.OAuth2Exception;
 import org.springframework.security.oauth2.provider.BaseClientDetails;
 import org.springframework.security.oauth2.provider.ClientDetails;
 import org.springframework.security.oauth2.provider.ClientDetailsService;
+import org.springframework.security.oauth2.provider.GrantContextHolder;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
 import org.springframework.security.oauth2.provider.OAuth2Request;
 import org.springframework.security.oauth2.provider.TokenRequest;
@@ -76,6 +85,54 @@ public class TestJwtTokenServices {
 		assertEquals("client", authentication.getOAuth2Request().getClientId());
 	}
 
+	@Test
+	public void testLoadAuthenticationFromCache() throws Exception {
+		services.setAuthenticationCacheSize(10);
+		String token = JwtHelper.encode("{\"client_id\":\"client\",\"exp\":" + (System.currentTimeMillis() / 1000 + 100)
+				+ "}", new MacSigner("FOO")).getEncoded();
+		OAuth2Authentication authentication = services.loadAuthentication(token);
+		authentication.setDetails("details");
+		OAuth2Authentication cached = services.loadAuthentication(token);
+		// The decoded request is cached, but each caller gets its own authentication to set details on
+		assertSame(authentication.getOAuth2Request(), cached.getOAuth2Request());
+		assertNotSame(authentication, cached);
+		assertNull(cached.getDetails());
+		assertEquals("client", authentication.getOAuth2Request().getClientId());
+	}
+
+	@Test
+	public void testExpiredTokenNotCached() throws Exception {
+		services.setAuthenticationCacheSize(10);
+		String token = JwtHelper.encode("{\"client_id\":\"client\",\"exp\":" + (System.currentTimeMillis() / 1000 - 100)
+				+ "}", new MacSigner("FOO")).getEncoded();
+		assertNotSame(services.loadAuthentication(token).getOAuth2Request(), services.loadAuthentication(token)
+				.getOAuth2Request());
+	}
+
+	@Test(expected = InvalidTokenException.class)
+	public void testRemovingKeyFromRegistryClearsCache() throws Exception {
+		JwtKeyRegistry registry = new JwtKeyRegistry();
+		services.setAuthenticationCacheSize(10);
+		services.setKeyId("key1");
+		services.setKeyRegistry(registry);
+		services.afterPropertiesSet();
+		String token = services.createAccessToken(createAuthentication()).getValue();
+		services.loadAuthentication(token);
+		registry.removeKey("key1");
+		services.loadAuthentication(token);
+	}
+
+	@Test(expected = InvalidSignatureException.class)
+	public void testKeyRotationClearsCache() throws Exception {
+		services.setAuthenticationCacheSize(10);
+		String token = JwtHelper.encode("{\"client_id\":\"client\"}", new MacSigner("FOO")).getEncoded();
+		services.loadAuthentication(token);
+		services.setVerifierKey("BAR");
+		services.setSigningKey("BAR");
+		services.afterPropertiesSet();
+		services.loadAuthentication(token);
+	}
+
 	@Test
 	public void testTokenEnhancerUpdatesTokens() throws Exception {
 		services.setTokenEnhancer(new TokenEnhancer() {
@@ -222,6 +279,40 @@ public class TestJwtTokenServices {
 		assertNotNull(refreshedAccessToken);
 	}
 
+	@Test
+	public void testEachTokenSignedOnce() throws Exception {
+		final AtomicInteger count = new AtomicInteger();
+		JwtTokenEnhancer counting = new JwtTokenEnhancer() {
+			@Override
+			protected String encode(OAuth2AccessToken accessToken, OAuth2Authentication authentication) {
+				count.incrementAndGet();
+				return super.encode(accessToken, authentication);
+			}
+		};
+		counting.setSigningKey("FOO");
+		counting.afterPropertiesSet();
+		ReflectionTestUtils.setField(services, "jwtTokenEnhancer", counting);
+		OAuth2AccessToken accessToken = services.createAccessToken(createAuthentication());
+		assertEquals(2, count.get());
+		// The refresh token has the same claims as the access token apart from the expiry
+		Map<String, Object> access = counting.decode(accessToken.getValue());
+		Map<String, Object> refresh = counting.decode(accessToken.getRefreshToken().getValue());
+		assertTrue(((Number) refresh.remove("exp")).longValue() > ((Number) access.remove("exp")).longValue());
+		assertEquals(access, refresh);
+	}
+
+	@Test
+	public void testClientLoadedOncePerToken() throws Exception {
+		ClientDetailsService clientDetailsService = Mockito.mock(ClientDetailsService.class);
+		Mockito.when(clientDetailsService.loadClientByClientId("id")).thenReturn(
+				new BaseClientDetails("id", "", "read", "password,refresh_token", "ROLE_CLIENT"));
+		services.setClientDetailsService(clientDetailsService);
+		OAuth2AccessToken accessToken = services.createAccessToken(createAuthentication());
+		assertNotNull(accessToken.getRefreshToken());
+		Mockito.verify(clientDetailsService, Mockito.times(1)).loadClientByClientId("id");
+		assertNull(GrantContextHolder.getContext());
+	}
+
 	private OAuth2Authentication createAuthentication() {
 		return new OAuth2Authentication(createOAuth2Request("id", Collections.singleton("read")),
 				new TestAuthentication("test2", false));
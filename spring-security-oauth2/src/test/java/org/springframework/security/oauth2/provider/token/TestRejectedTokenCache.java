@@ -0,0 +1,79 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.provider.token;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * @author Dave Syer
+ * 
+ */
+public class TestRejectedTokenCache {
+
+	private RejectedTokenCache cache = new RejectedTokenCache(2);
+
+	@Test
+	public void testReject() {
+		assertFalse(cache.isRejected("FOO"));
+		cache.reject("FOO", cache.getGeneration("FOO"));
+		assertTrue(cache.isRejected("FOO"));
+		assertFalse(cache.isRejected("BAR"));
+	}
+
+	@Test
+	public void testInvalidate() {
+		cache.reject("FOO", cache.getGeneration("FOO"));
+		cache.invalidate("FOO");
+		assertFalse(cache.isRejected("FOO"));
+	}
+
+	@Test
+	public void testConcurrentInvalidation() {
+		long generation = cache.getGeneration("FOO");
+		// The token is stored while it is being looked up
+		cache.invalidate("FOO");
+		cache.reject("FOO", generation);
+		assertFalse(cache.isRejected("FOO"));
+	}
+
+	@Test
+	public void testExpiry() {
+		cache.setTimeToLiveSeconds(0);
+		cache.reject("FOO", cache.getGeneration("FOO"));
+		assertFalse(cache.isRejected("FOO"));
+	}
+
+	@Test
+	public void testSizeLimit() {
+		for (String value : new String[] { "FOO", "BAR", "SPAM" }) {
+			cache.reject(value, cache.getGeneration(value));
+		}
+		assertTrue(cache.getSize() <= 2);
+		assertTrue(cache.isRejected("SPAM"));
+	}
+
+	@Test
+	public void testClear() {
+		cache.reject("FOO", cache.getGeneration("FOO"));
+		cache.clear();
+		assertFalse(cache.isRejected("FOO"));
+	}
+
+}
@@ -0,0 +1,246 @@
+/*
+ * Copyright 2012-2013 the original author or authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.springframework.security.oauth2.provider.token;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.codehaus.jackson.map.ObjectMapper;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.security.authentication.UsernamePasswordAuthenticationToken;
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.authority.AuthorityUtils;
+import org.springframework.security.crypto.codec.Base64;
+import org.springframework.security.oauth2.common.DefaultOAuth2AccessToken;
+import org.springframework.security.oauth2.common.exceptions.InvalidTokenException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.RequestTokenFactory;
+import org.springframework.security.oauth2.provider.endpoint.CheckTokenEndpoint;
+import org.springframework.util.FileCopyUtils;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Tests against a local stand-in for the authorization server (the JDK HTTP server in front of a
+ * {@link CheckTokenEndpoint}).
+ *
+ * @author Dave Syer
+ *
+ */
+public class TestRemoteTokenServices {
+
+	private static final Authentication CLIENT = new UsernamePasswordAuthenticationToken("client", null,
+			AuthorityUtils.commaSeparatedStringToAuthorityList("ROLE_CLIENT"));
+
+	private static final String AUTHORIZATION = "Basic " + new String(Base64.encode("client:secret".getBytes()));
+
+	private InMemoryTokenStore tokenStore = new InMemoryTokenStore();
+
+	private AtomicInteger requests = new AtomicInteger();
+
+	private volatile CountDownLatch latch = new CountDownLatch(0);
+
+	private HttpServer server;
+
+	private ExecutorService serverExecutor = Executors.newCachedThreadPool();
+
+	private RemoteTokenServices services = new RemoteTokenServices();
+
+	@Before
+	public void start() throws Exception {
+		DefaultTokenServices tokenServices = new DefaultTokenServices();
+		tokenServices.setTokenStore(tokenStore);
+		server = HttpServer.create(new InetSocketAddress("localhost", 0), 0);
+		server.createContext("/oauth/check_token", new CheckTokenHandler(new CheckTokenEndpoint(tokenServices)));
+		server.setExecutor(serverExecutor);
+		server.start();
+		services.setCheckTokenEndpointUrl("http://localhost:" + server.getAddress().getPort() + "/oauth/check_token");
+		services.setClientId("client");
+		services.setClientSecret("secret");
+	}
+
+	@After
+	public void stop() throws Exception {
+		services.destroy();
+		server.stop(0);
+		serverExecutor.shutdown();
+	}
+
+	@Test
+	public void testLoadAuthentication() {
+		DefaultOAuth2AccessToken token = storeAccessToken("FOO", 100000);
+		OAuth2Authentication authentication = services.loadAuthentication("FOO");
+		assertEquals("marissa", authentication.getName());
+		assertEquals("client", authentication.getOAuth2Request().getClientId());
+		assertEquals(Collections.singleton("resource"), authentication.getOAuth2Request().getResourceIds());
+		assertEquals(Collections.singleton("read"), services.readAccessToken("FOO").getScope());
+		assertEquals(token.getExpiration().getTime() / 1000,
+				services.readAccessToken("FOO").getExpiration().getTime() / 1000);
+	}
+
+	@Test
+	public void testValidTokenCached() {
+		storeAccessToken("FOO", 100000);
+		OAuth2Authentication authentication = services.loadAuthentication("FOO");
+		authentication.setDetails("details");
+		OAuth2Authentication cached = services.loadAuthentication("FOO");
+		// Each caller gets its own authentication to set details on
+		assertSame(authentication.getOAuth2Request(), cached.getOAuth2Request());
+		assertNotSame(authentication, cached);
+		assertNull(cached.getDetails());
+		assertEquals(1, requests.get());
+		assertEquals(1, services.getCacheSize());
+	}
+
+	@Test
+	public void testCacheBoundedByExpiry() {
+		// Expires before the end of the current second (the expiry sent back is in seconds)
+		storeAccessToken("FOO", 1000 - System.currentTimeMillis() % 1000);
+		services.setTimeToLiveSeconds(0);
+		services.readAccessToken("FOO");
+		sleepUntilNextSecond();
+		assertNull(services.readAccessToken("FOO"));
+		assertEquals(2, requests.get());
+	}
+
+	@Test(expected = InvalidTokenException.class)
+	public void testInvalidToken() {
+		services.loadAuthentication("FOO");
+	}
+
+	@Test
+	public void testInvalidTokenNotCached() {
+		assertNull(services.readAccessToken("FOO"));
+		storeAccessToken("FOO", 100000);
+		assertEquals("FOO", services.readAccessToken("FOO").getValue());
+		assertEquals(2, requests.get());
+	}
+
+	@Test
+	public void testConcurrentRequestsCoalesced() throws Exception {
+		storeAccessToken("FOO", 100000);
+		latch = new CountDownLatch(1);
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<OAuth2Authentication>> results = new ArrayList<Future<OAuth2Authentication>>();
+		for (int i = 0; i < 8; i++) {
+			results.add(executor.submit(new Callable<OAuth2Authentication>() {
+				public OAuth2Authentication call() throws Exception {
+					return services.loadAuthentication("FOO");
+				}
+			}));
+		}
+		// Give the callers time to pile up behind the first request
+		Thread.sleep(200L);
+		latch.countDown();
+		for (Future<OAuth2Authentication> result : results) {
+			assertEquals("marissa", result.get(10, TimeUnit.SECONDS).getName());
+		}
+		executor.shutdown();
+		assertEquals(1, requests.get());
+	}
+
+	private DefaultOAuth2AccessToken storeAccessToken(String value, long expiresInMillis) {
+		DefaultOAuth2AccessToken token = new DefaultOAuth2AccessToken(value);
+		token.setScope(Collections.singleton("read"));
+		token.setExpiration(new Date(System.currentTimeMillis() + expiresInMillis));
+		OAuth2Authentication authentication = new OAuth2Authentication(RequestTokenFactory.createOAuth2Request(null,
+				"client", null, true, Collections.singleton("read"), Collections.singleton("resource"), null, null,
+				null), new UsernamePasswordAuthenticationToken("marissa", null,
+				AuthorityUtils.commaSeparatedStringToAuthorityList("ROLE_USER")));
+		tokenStore.storeAccessToken(token, authentication);
+		return token;
+	}
+
+	private void sleepUntilNextSecond() {
+		try {
+			Thread.sleep(1000 - System.currentTimeMillis() % 1000 + 10);
+		}
+		catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private class CheckTokenHandler implements HttpHandler {
+
+		private final CheckTokenEndpoint endpoint;
+
+		private final ObjectMapper objectMapper = new ObjectMapper();
+
+		public CheckTokenHandler(CheckTokenEndpoint endpoint) {
+			this.endpoint = endpoint;
+		}
+
+		public void handle(HttpExchange exchange) throws IOException {
+			requests.incrementAndGet();
+			try {
+				latch.await();
+			}
+			catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			InputStream input = exchange.getRequestBody();
+			String body = new String(FileCopyUtils.copyToByteArray(input), "UTF-8");
+			int status = 200;
+			Object result;
+			if (!AUTHORIZATION.equals(exchange.getRequestHeaders().getFirst("Authorization"))
+					|| !body.startsWith("token=")) {
+				status = 401;
+				result = Collections.singletonMap("error", "unauthorized");
+			}
+			else {
+				try {
+					result = endpoint.checkToken(CLIENT, URLDecoder.decode(body.substring("token=".length()), "UTF-8"));
+				}
+				catch (InvalidTokenException e) {
+					status = 400;
+					result = Collections.singletonMap("error", e.getOAuth2ErrorCode());
+				}
+			}
+			byte[] content = objectMapper.writeValueAsBytes(result);
+			exchange.getResponseHeaders().set("Content-Type", "application/json");
+			exchange.sendResponseHeaders(status, content.length);
+			OutputStream output = exchange.getResponseBody();
+			output.write(content);
+			output.close();
+		}
+
+	}
+
+}
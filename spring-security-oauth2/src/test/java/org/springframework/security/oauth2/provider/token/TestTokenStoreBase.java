@@ -16,9 +16,12 @@ import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.Map;
 
 import org.junit.Test;
 import org.springframework.security.authentication.AbstractAuthenticationToken;
@@ -58,6 +61,41 @@ public abstract class TestTokenStoreBase {
 		assertNull(getTokenStore().readAuthentication(expectedOAuth2AccessToken.getValue()));
 	}
 
+	@Test
+	public void testReadStoredAccessToken() {
+		if (!(getTokenStore() instanceof StoredAccessTokenReader)) {
+			return;
+		}
+		StoredAccessTokenReader reader = (StoredAccessTokenReader) getTokenStore();
+		OAuth2Authentication expectedAuthentication = new OAuth2Authentication(RequestTokenFactory.createOAuth2Request(null, "id", null, false, null, null, null, null, null), new TestAuthentication("test2", false));
+		OAuth2AccessToken expectedOAuth2AccessToken = new DefaultOAuth2AccessToken("testToken");
+		getTokenStore().storeAccessToken(expectedOAuth2AccessToken, expectedAuthentication);
+
+		StoredAccessToken storedToken = reader.readStoredAccessToken("testToken");
+		assertEquals(expectedOAuth2AccessToken, storedToken.getAccessToken());
+		assertEquals(expectedAuthentication, storedToken.getAuthentication());
+		getTokenStore().removeAccessToken(expectedOAuth2AccessToken);
+		assertNull(reader.readStoredAccessToken("testToken"));
+	}
+
+	@Test
+	public void testReadStoredAccessTokens() {
+		if (!(getTokenStore() instanceof BatchStoredAccessTokenReader)) {
+			return;
+		}
+		BatchStoredAccessTokenReader reader = (BatchStoredAccessTokenReader) getTokenStore();
+		OAuth2Authentication expectedAuthentication = new OAuth2Authentication(RequestTokenFactory.createOAuth2Request(null, "id", null, false, null, null, null, null, null), new TestAuthentication("test2", false));
+		OAuth2AccessToken expectedOAuth2AccessToken = new DefaultOAuth2AccessToken("testToken");
+		getTokenStore().storeAccessToken(expectedOAuth2AccessToken, expectedAuthentication);
+
+		Map<String, StoredAccessToken> storedTokens = reader.readStoredAccessTokens(Arrays.asList("testToken", "other"));
+		assertEquals(1, storedTokens.size());
+		assertEquals(expectedOAuth2AccessToken, storedTokens.get("testToken").getAccessToken());
+		assertEquals(expectedAuthentication, storedTokens.get("testToken").getAuthentication());
+		getTokenStore().removeAccessToken(expectedOAuth2AccessToken);
+		assertTrue(reader.readStoredAccessTokens(Arrays.asList("testToken")).isEmpty());
+	}
+
 	@Test
 	public void testRetrieveAccessToken() {
 		//Test approved request